@@ -9,8 +9,10 @@ import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
 import com.leaky.tokens.analyticsservice.report.AnalyticsAnomalyResponse;
 import com.leaky.tokens.analyticsservice.report.AnalyticsReportResponse;
 import com.leaky.tokens.analyticsservice.report.AnalyticsReportService;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyResponse;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRepository;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderStore;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
@@ -25,9 +27,10 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "Analytics")
 @RequiredArgsConstructor
 public class AnalyticsController {
-    private final TokenUsageByProviderRepository byProviderRepository;
+    private final TokenUsageByProviderStore byProviderStore;
     private final AnalyticsMetrics metrics;
     private final AnalyticsReportService reportService;
+    private final HotUsageWindow hotWindow;
 
     @GetMapping("/api/v1/analytics/health")
     @Operation(
@@ -57,7 +60,8 @@ public class AnalyticsController {
         @RequestParam(name = "limit", defaultValue = "20") int limit
     ) {
         int safeLimit = Math.max(1, Math.min(limit, 200));
-        List<TokenUsageByProviderRecord> records = byProviderRepository.findRecentByProvider(provider, safeLimit);
+        List<TokenUsageByProviderRecord> records = hotWindow.recent(provider, safeLimit)
+            .orElseGet(() -> byProviderStore.findRecentByProvider(provider, safeLimit));
         metrics.usageQuery(provider, "success");
 
         Map<String, Object> response = new LinkedHashMap<>();
@@ -114,4 +118,23 @@ public class AnalyticsController {
         metrics.anomalyQuery(provider, "success");
         return response;
     }
+
+    @GetMapping("/api/v1/analytics/anomalies/streaming")
+    @PreAuthorize("hasRole('USER')")
+    @Operation(
+        summary = "Streaming EWMA/z-score anomaly check for the current minute",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Anomaly state returned"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+        }
+    )
+    public StreamingAnomalyResponse streamingAnomalies(
+        @RequestParam(name = "provider") String provider,
+        @RequestParam(name = "zScoreThreshold", required = false) Double zScoreThreshold
+    ) {
+        StreamingAnomalyResponse response = reportService.detectStreamingAnomaly(provider, zScoreThreshold);
+        metrics.anomalyQuery(provider, "success");
+        return response;
+    }
 }
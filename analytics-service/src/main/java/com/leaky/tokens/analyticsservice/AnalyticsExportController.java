@@ -0,0 +1,176 @@
+package com.leaky.tokens.analyticsservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderScanner;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageHourRollupRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageHourRollupStore;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+
+@RestController
+@Tag(name = "Analytics")
+@RequiredArgsConstructor
+public class AnalyticsExportController {
+    private static final byte[] NEWLINE = {'\n'};
+    private static final Duration MAX_HOURLY_RANGE = Duration.ofDays(366);
+
+    private final TokenUsageByProviderScanner scanner;
+    private final TokenUsageHourRollupStore hourStore;
+    private final ObjectMapper objectMapper;
+    private final AnalyticsMetrics metrics;
+
+    @GetMapping("/api/v1/analytics/usage/page")
+    @PreAuthorize("hasRole('USER')")
+    @Operation(
+        summary = "Page through usage by provider for a time range",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Page returned"),
+            @ApiResponse(responseCode = "400", description = "Invalid range or cursor"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+        }
+    )
+    public ResponseEntity<Map<String, Object>> page(
+        @RequestParam(name = "provider") String provider,
+        @RequestParam(name = "from") Instant from,
+        @RequestParam(name = "to") Instant to,
+        @RequestParam(name = "pageSize", defaultValue = "100") int pageSize,
+        @RequestParam(name = "cursor", required = false) String cursor
+    ) {
+        if (!from.isBefore(to)) {
+            metrics.usageQuery(provider, "invalid");
+            return ResponseEntity.badRequest().body(error("from must be before to"));
+        }
+        TokenUsageByProviderScanner.UsagePage page;
+        try {
+            page = scanner.page(provider, from, to, pageSize, cursor);
+        } catch (IllegalArgumentException ex) {
+            metrics.usageQuery(provider, "invalid");
+            return ResponseEntity.badRequest().body(error(ex.getMessage()));
+        }
+        metrics.usageQuery(provider, "success");
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("provider", provider);
+        response.put("count", page.items().size());
+        response.put("items", page.items());
+        response.put("nextCursor", page.nextCursor());
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/api/v1/analytics/usage/export")
+    @PreAuthorize("hasRole('USER')")
+    @Operation(
+        summary = "Stream usage by provider for a time range as NDJSON",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Rows streamed, one JSON object per line"),
+            @ApiResponse(responseCode = "400", description = "Invalid range"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+        }
+    )
+    public ResponseEntity<StreamingResponseBody> export(
+        @RequestParam(name = "provider") String provider,
+        @RequestParam(name = "from") Instant from,
+        @RequestParam(name = "to") Instant to
+    ) {
+        if (!from.isBefore(to)) {
+            metrics.usageQuery(provider, "invalid");
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = output -> {
+            scanner.export(provider, from, to, record -> writeLine(output, record));
+            metrics.usageQuery(provider, "success");
+        };
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+
+    @GetMapping("/api/v1/analytics/usage/hourly")
+    @PreAuthorize("hasRole('USER')")
+    @Operation(
+        summary = "Hourly downsampled usage by provider, kept beyond the raw and minute retention",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Hours returned, oldest first"),
+            @ApiResponse(responseCode = "400", description = "Invalid range"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized")
+        }
+    )
+    public ResponseEntity<Map<String, Object>> hourly(
+        @RequestParam(name = "provider") String provider,
+        @RequestParam(name = "from") Instant from,
+        @RequestParam(name = "to") Instant to
+    ) {
+        if (!from.isBefore(to)) {
+            metrics.usageQuery(provider, "invalid");
+            return ResponseEntity.badRequest().body(error("from must be before to"));
+        }
+        if (Duration.between(from, to).compareTo(MAX_HOURLY_RANGE) > 0) {
+            metrics.usageQuery(provider, "invalid");
+            return ResponseEntity.badRequest().body(error("range must not exceed " + MAX_HOURLY_RANGE.toDays() + " days"));
+        }
+        List<TokenUsageHourRollupRecord> hours = hourStore.findHoursAsync(
+            provider,
+            from.truncatedTo(ChronoUnit.HOURS),
+            to.minusNanos(1).truncatedTo(ChronoUnit.HOURS)
+        ).join();
+        metrics.usageQuery(provider, "success");
+
+        List<Map<String, Object>> items = new ArrayList<>(hours.size());
+        for (TokenUsageHourRollupRecord hour : hours) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("hour", hour.getKey().getHour());
+            item.put("totalTokens", hour.getTotalTokens());
+            item.put("allowedEvents", hour.getAllowedEvents());
+            item.put("deniedEvents", hour.getDeniedEvents());
+            item.put("uniqueUsers", hour.toSketch().distinctUsers());
+            items.add(item);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("provider", provider);
+        response.put("count", items.size());
+        response.put("items", items);
+        return ResponseEntity.ok(response);
+    }
+
+    private void writeLine(OutputStream output, TokenUsageByProviderRecord record) {
+        try {
+            output.write(objectMapper.writeValueAsBytes(record));
+            output.write(NEWLINE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", message);
+        response.put("timestamp", Instant.now().toString());
+        return response;
+    }
+}
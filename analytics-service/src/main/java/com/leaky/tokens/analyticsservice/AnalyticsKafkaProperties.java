@@ -0,0 +1,41 @@
+package com.leaky.tokens.analyticsservice;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Setter
+@Getter
+@Validated
+@ConfigurationProperties(prefix = "analytics.kafka")
+public class AnalyticsKafkaProperties {
+    @Valid
+    private Consumer consumer = new Consumer();
+    @Valid
+    private Lag lag = new Lag();
+
+    @Setter
+    @Getter
+    public static class Consumer {
+        @Min(1)
+        private int concurrency = 1;
+        @Min(1)
+        private int maxPollRecords = 500;
+        @Min(1)
+        private int fetchMinBytes = 1;
+        @Min(0)
+        private int fetchMaxWaitMs = 500;
+        private boolean virtualThreads = false;
+    }
+
+    @Setter
+    @Getter
+    public static class Lag {
+        private boolean enabled = true;
+        @Min(1)
+        private long timeoutMs = 5000;
+    }
+}
@@ -1,12 +1,19 @@
 package com.leaky.tokens.analyticsservice;
 
 import com.leaky.tokens.analyticsservice.report.AnalyticsReportProperties;
+import com.leaky.tokens.analyticsservice.storage.AnalyticsStorageProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
-@EnableConfigurationProperties(AnalyticsReportProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({
+    AnalyticsReportProperties.class,
+    AnalyticsKafkaProperties.class,
+    AnalyticsStorageProperties.class
+})
 @SpringBootApplication
 public class AnalyticsServiceApplication {
     static void main(String[] args) {
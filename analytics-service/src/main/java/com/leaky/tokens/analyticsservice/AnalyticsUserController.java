@@ -0,0 +1,94 @@
+package com.leaky.tokens.analyticsservice;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.report.ProviderUsageSummary;
+import com.leaky.tokens.analyticsservice.report.UserUsageReportResponse;
+import com.leaky.tokens.analyticsservice.report.UserUsageReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Tag(name = "Analytics")
+@RequiredArgsConstructor
+public class AnalyticsUserController {
+    private final UserUsageReportService userReportService;
+    private final AnalyticsMetrics metrics;
+
+    @GetMapping("/api/v1/analytics/users/report")
+    @PreAuthorize("hasRole('ADMIN') or #userId == authentication.name")
+    @Operation(
+        summary = "Usage report for a single user",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Report returned"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Forbidden"),
+            @ApiResponse(responseCode = "404", description = "Per-user table disabled")
+        }
+    )
+    public ResponseEntity<?> report(
+        @RequestParam(name = "userId") String userId,
+        @RequestParam(name = "windowMinutes", required = false) Integer windowMinutes,
+        @RequestParam(name = "limit", required = false) Integer limit
+    ) {
+        if (!userReportService.isEnabled()) {
+            metrics.userQuery("disabled");
+            return disabled();
+        }
+        UserUsageReportResponse response = userReportService.buildReport(userId, windowMinutes, limit);
+        metrics.userQuery("success");
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/api/v1/analytics/users/top-providers")
+    @PreAuthorize("hasRole('ADMIN') or #userId == authentication.name")
+    @Operation(
+        summary = "Top providers by token usage for a single user",
+        security = @SecurityRequirement(name = "bearerAuth"),
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Providers returned"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Forbidden"),
+            @ApiResponse(responseCode = "404", description = "Per-user table disabled")
+        }
+    )
+    public ResponseEntity<?> topProviders(
+        @RequestParam(name = "userId") String userId,
+        @RequestParam(name = "windowMinutes", required = false) Integer windowMinutes,
+        @RequestParam(name = "limit", required = false) Integer limit
+    ) {
+        if (!userReportService.isEnabled()) {
+            metrics.userQuery("disabled");
+            return disabled();
+        }
+        List<ProviderUsageSummary> providers = userReportService.topProviders(userId, windowMinutes, limit);
+        metrics.userQuery("success");
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("userId", userId);
+        response.put("count", providers.size());
+        response.put("providers", providers);
+        return ResponseEntity.ok(response);
+    }
+
+    private static ResponseEntity<Map<String, Object>> disabled() {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("message", "per-user usage is disabled");
+        response.put("timestamp", Instant.now().toString());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+    }
+}
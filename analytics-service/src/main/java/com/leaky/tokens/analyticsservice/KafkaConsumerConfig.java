@@ -1,14 +1,31 @@
 package com.leaky.tokens.analyticsservice;
 
+import com.leaky.tokens.analyticsservice.events.TokenUsagePartitionOwnership;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -16,14 +33,34 @@ import java.util.Map;
 @EnableKafka
 @Configuration
 public class KafkaConsumerConfig {
+    private static final Logger logger = LoggerFactory.getLogger(KafkaConsumerConfig.class);
+
     @Value(value = "${spring.kafka.bootstrap-servers}")
     private String bootstrapAddress;
 
     @Value(value = "${analytics.token-usage.group:analytics-service}")
     private String groupId;
 
-    @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    @Value(value = "${analytics.token-usage.batch.retry-max-interval-ms:30000}")
+    private long batchRetryMaxIntervalMs;
+
+    @Value(value = "${analytics.token-usage.batch.retry-max-elapsed-ms:300000}")
+    private long batchRetryMaxElapsedMs;
+
+    @Value(value = "${analytics.token-usage.batch.dead-letter-topic:${analytics.token-usage.topic:token-usage}-dlt}")
+    private String deadLetterTopic;
+
+    private final AnalyticsKafkaProperties properties;
+    private final TokenUsagePartitionOwnership partitionOwnership;
+
+    public KafkaConsumerConfig(AnalyticsKafkaProperties properties, TokenUsagePartitionOwnership partitionOwnership) {
+        this.properties = properties;
+        this.partitionOwnership = partitionOwnership;
+    }
+
+    static Map<String, Object> consumerConfigs(String bootstrapAddress,
+                                               String groupId,
+                                               AnalyticsKafkaProperties.Consumer consumer) {
         Map<String, Object> props = new HashMap<>();
         props.put(
           ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG,
@@ -36,15 +73,87 @@ public class KafkaConsumerConfig {
           StringDeserializer.class);
         props.put(
           ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, 
-          StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+          ByteArrayDeserializer.class);
+        props.put(
+          ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG,
+          false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, consumer.getMaxPollRecords());
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, consumer.getFetchMinBytes());
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, consumer.getFetchMaxWaitMs());
+        return props;
+    }
+
+    @Bean
+    public ConsumerFactory<String, byte[]> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerConfigs(bootstrapAddress, groupId, properties.getConsumer()));
+    }
+
+    static Map<String, Object> deadLetterProducerConfigs(String bootstrapAddress) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        return props;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+    public KafkaTemplate<String, byte[]> deadLetterKafkaTemplate() {
+        return new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(deadLetterProducerConfigs(bootstrapAddress)));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> kafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
           new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
+        applyConcurrency(factory, properties.getConsumer());
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionOwnership);
         return factory;
     }
-}
\ No newline at end of file
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, byte[]> batchKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory =
+          new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        applyConcurrency(factory, properties.getConsumer());
+        factory.getContainerProperties().setConsumerRebalanceListener(partitionOwnership);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        // The batch listener throws BatchListenerFailedException, so offsets before the failed record
+        // are committed and only that record is retried and, once the back-off runs out, recovered.
+        factory.setCommonErrorHandler(new DefaultErrorHandler(
+          batchRecoverer(deadLetterKafkaTemplate(), deadLetterTopic),
+          batchBackOff(batchRetryMaxIntervalMs, batchRetryMaxElapsedMs)));
+        return factory;
+    }
+
+    static ExponentialBackOff batchBackOff(long maxIntervalMs, long maxElapsedMs) {
+        ExponentialBackOff backOff = new ExponentialBackOff(500L, 2.0);
+        backOff.setMaxInterval(maxIntervalMs);
+        backOff.setMaxElapsedTime(maxElapsedMs);
+        return backOff;
+    }
+
+    // A blank dead-letter topic drops the record after logging it instead of publishing it.
+    static ConsumerRecordRecoverer batchRecoverer(KafkaOperations<String, byte[]> template, String deadLetterTopic) {
+        if (deadLetterTopic == null || deadLetterTopic.isBlank()) {
+            return (record, ex) -> logger.error("Dropping token usage record topic={} partition={} offset={} after retries",
+              record.topic(), record.partition(), record.offset(), ex);
+        }
+        return new DeadLetterPublishingRecoverer(template, (record, ex) -> new TopicPartition(deadLetterTopic, -1));
+    }
+
+    static void applyConcurrency(ConcurrentKafkaListenerContainerFactory<?, ?> factory,
+                                 AnalyticsKafkaProperties.Consumer consumer) {
+        // Consumers beyond the partition count sit idle, so keep concurrency <= partitions of the topic.
+        factory.setConcurrency(consumer.getConcurrency());
+        if (consumer.isVirtualThreads()) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("analytics-kafka-");
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
+}
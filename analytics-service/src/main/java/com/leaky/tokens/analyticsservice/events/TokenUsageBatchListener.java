@@ -0,0 +1,89 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageBatchWriter;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageWriteException;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "analytics.token-usage.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(name = "analytics.token-usage.batch.enabled", havingValue = "true")
+public class TokenUsageBatchListener {
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsageBatchListener.class);
+
+    private final ObjectMapper objectMapper;
+    private final TokenUsageBatchWriter batchWriter;
+    private final AnalyticsMetrics metrics;
+    private final StreamingAnomalyDetector streamingAnomalyDetector;
+    private final HotUsageWindow hotWindow;
+
+    @KafkaListener(
+            topics = "${analytics.token-usage.topic:token-usage}",
+            groupId = "${analytics.token-usage.group:analytics-service}",
+            containerFactory = "batchKafkaListenerContainerFactory"
+    )
+    public void onBatch(List<ConsumerRecord<String, byte[]>> messages) {
+        List<TokenUsageRecord> records = new ArrayList<>(messages.size());
+        List<ConsumerRecord<String, byte[]>> sources = new ArrayList<>(messages.size());
+        for (ConsumerRecord<String, byte[]> message : messages) {
+            try {
+                TokenUsageEvent event = TokenUsagePayloads.decode(objectMapper, message);
+                if (event.getProvider() == null || event.getTimestamp() == null) {
+                    logger.warn("Skipping token usage event without provider or timestamp key={} offset={}",
+                            message.key(), message.offset());
+                    metrics.ingest("skipped", 1);
+                    continue;
+                }
+                records.add(TokenUsagePayloads.toRecord(event, message));
+                sources.add(message);
+            } catch (Exception e) {
+                logger.warn("Failed to parse token usage event key={} offset={} contentType={}",
+                        message.key(), message.offset(), TokenUsagePayloads.contentType(message), e);
+                metrics.ingest("skipped", 1);
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+
+        // A failure names the first record that may be missing: the error handler commits everything
+        // before it and retries from there, then hands that record to the recoverer once retries run out.
+        try {
+            batchWriter.write(records);
+        } catch (TokenUsageWriteException e) {
+            saved(records.subList(0, e.getFailedIndex()));
+            throw new BatchListenerFailedException("token usage batch write failed", e.getCause(),
+                    sources.get(e.getFailedIndex()));
+        } catch (RuntimeException e) {
+            throw new BatchListenerFailedException("token usage batch write failed", e, sources.get(0));
+        }
+        saved(records);
+        logger.debug("token-usage batch saved size={} received={}", records.size(), messages.size());
+    }
+
+    private void saved(List<TokenUsageRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        metrics.ingest("saved", records.size());
+        for (TokenUsageRecord record : records) {
+            streamingAnomalyDetector.record(record);
+            hotWindow.record(record);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Mirrors token-service's encoder: version, flags (allowed, has-timestamp), tokens, epoch seconds,
+// nanos, then userId and provider as short-length-prefixed UTF-8 (-1 marks null).
+public final class TokenUsageEventCodec {
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_BINARY = "application/vnd.leaky.token-usage.v1+binary";
+
+    static final byte VERSION = 1;
+    private static final int FLAG_ALLOWED = 1;
+    private static final int FLAG_TIMESTAMP = 1 << 1;
+
+    private TokenUsageEventCodec() {
+    }
+
+    public static TokenUsageEvent decode(byte[] payload) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported token usage encoding version: " + version);
+            }
+            int flags = buffer.get();
+            long tokens = buffer.getLong();
+            long seconds = buffer.getLong();
+            int nanos = buffer.getInt();
+
+            TokenUsageEvent event = new TokenUsageEvent();
+            event.setUserId(getString(buffer));
+            event.setProvider(getString(buffer));
+            event.setTokens(tokens);
+            event.setAllowed((flags & FLAG_ALLOWED) != 0);
+            event.setTimestamp((flags & FLAG_TIMESTAMP) != 0 ? Instant.ofEpochSecond(seconds, nanos) : null);
+            return event;
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated token usage payload", ex);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -1,7 +1,13 @@
 package com.leaky.tokens.analyticsservice.events;
 
-import com.leaky.tokens.analyticsservice.storage.*;
+import java.util.List;
+
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageBatchWriter;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
 import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -9,45 +15,32 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import tools.jackson.databind.ObjectMapper;
 
-import java.util.UUID;
-
 @Component
 @RequiredArgsConstructor
 @ConditionalOnProperty(name = "analytics.token-usage.enabled", havingValue = "true", matchIfMissing = true)
+@ConditionalOnProperty(name = "analytics.token-usage.batch.enabled", havingValue = "false", matchIfMissing = true)
 public class TokenUsageListener {
     private static final Logger logger = LoggerFactory.getLogger(TokenUsageListener.class);
 
     private final ObjectMapper objectMapper;
-    private final TokenUsageRepository repository;
-    private final TokenUsageByProviderRepository byProviderRepository;
+    private final TokenUsageBatchWriter writer;
+    private final StreamingAnomalyDetector streamingAnomalyDetector;
+    private final HotUsageWindow hotWindow;
 
     @KafkaListener(
             topics = "${analytics.token-usage.topic:token-usage}",
             groupId = "${analytics.token-usage.group:analytics-service}"
     )
-    public void onMessage(String payload) {
-        logger.info("Received token usage event: {}", payload);
+    public void onMessage(ConsumerRecord<String, byte[]> message) {
         try {
-            TokenUsageEvent event = objectMapper.readValue(payload, TokenUsageEvent.class);
-            TokenUsageRecord record = new TokenUsageRecord();
-            record.setId(UUID.randomUUID());
-            record.setUserId(event.getUserId());
-            record.setProvider(event.getProvider());
-            record.setTokens(event.getTokens());
-            record.setAllowed(event.isAllowed());
-            record.setTimestamp(event.getTimestamp());
-            repository.save(record);
-
-            TokenUsageByProviderKey key = new TokenUsageByProviderKey(event.getProvider(), event.getTimestamp());
-            TokenUsageByProviderRecord byProvider = new TokenUsageByProviderRecord(
-                    key,
-                    event.getUserId(),
-                    event.getTokens(),
-                    event.isAllowed()
-            );
-            byProviderRepository.save(byProvider);
+            TokenUsageEvent event = TokenUsagePayloads.decode(objectMapper, message);
+            TokenUsageRecord record = TokenUsagePayloads.toRecord(event, message);
+            // Every table write for the event goes out at once through the async driver path.
+            writer.write(List.of(record));
+            streamingAnomalyDetector.record(record);
+            hotWindow.record(record);
 
-            logger.info(
+            logger.debug(
                     "token-usage saved userId={} provider={} tokens={} allowed={} timestamp={}",
                     event.getUserId(),
                     event.getProvider(),
@@ -56,7 +49,8 @@ public class TokenUsageListener {
                     event.getTimestamp()
             );
         } catch (Exception e) {
-            logger.warn("Failed to parse or persist token usage event: {}", payload, e);
+            logger.warn("Failed to parse or persist token usage event key={} contentType={}",
+                    message.key(), TokenUsagePayloads.contentType(message), e);
         }
     }
 }
@@ -0,0 +1,151 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRollupStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserRollupStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+// Tracks which partitions of the token usage topic the consumers of this instance own, across every
+// container thread. The hot window and the streaming detector only see what this instance consumes,
+// so they are switched on once it owns every partition and dropped as soon as it loses any. Rollup
+// rows cached for a partition are forgotten whenever it changes hands.
+@Component
+public class TokenUsagePartitionOwnership implements ConsumerAwareRebalanceListener {
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsagePartitionOwnership.class);
+
+    private final String topic;
+    private final HotUsageWindow hotWindow;
+    private final StreamingAnomalyDetector streamingDetector;
+    private final TokenUsageRollupStore rollupStore;
+    private final TokenUsageUserRollupStore userRollupStore;
+    private final Clock clock;
+    private final Set<Integer> owned = new HashSet<>();
+    private int partitionCount;
+    private boolean ownsAll;
+
+    @Autowired
+    public TokenUsagePartitionOwnership(@Value("${analytics.token-usage.topic:token-usage}") String topic,
+                                        HotUsageWindow hotWindow,
+                                        StreamingAnomalyDetector streamingDetector,
+                                        TokenUsageRollupStore rollupStore,
+                                        TokenUsageUserRollupStore userRollupStore) {
+        this(topic, hotWindow, streamingDetector, rollupStore, userRollupStore, Clock.systemUTC());
+    }
+
+    TokenUsagePartitionOwnership(String topic,
+                                 HotUsageWindow hotWindow,
+                                 StreamingAnomalyDetector streamingDetector,
+                                 TokenUsageRollupStore rollupStore,
+                                 TokenUsageUserRollupStore userRollupStore,
+                                 Clock clock) {
+        this.topic = topic;
+        this.hotWindow = hotWindow;
+        this.streamingDetector = streamingDetector;
+        this.rollupStore = rollupStore;
+        this.userRollupStore = userRollupStore;
+        this.clock = clock;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        forgetRollups(partitions);
+        int count = partitionCount(consumer);
+        synchronized (this) {
+            for (TopicPartition partition : partitions) {
+                if (topic.equals(partition.topic())) {
+                    owned.add(partition.partition());
+                }
+            }
+            if (count > 0) {
+                partitionCount = count;
+            }
+            update();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        release(partitions);
+    }
+
+    public synchronized boolean ownsAllPartitions() {
+        return ownsAll;
+    }
+
+    private synchronized void release(Collection<TopicPartition> partitions) {
+        forgetRollups(partitions);
+        for (TopicPartition partition : partitions) {
+            if (topic.equals(partition.topic())) {
+                owned.remove(partition.partition());
+            }
+        }
+        update();
+    }
+
+    private void update() {
+        boolean all = partitionCount > 0;
+        for (int partition = 0; all && partition < partitionCount; partition++) {
+            all = owned.contains(partition);
+        }
+        if (all == ownsAll) {
+            return;
+        }
+        ownsAll = all;
+        if (all) {
+            hotWindow.activate(clock.instant());
+            streamingDetector.activate();
+            logger.info("Owning all {} partitions of {}; serving the hot window and streaming detector from memory",
+                partitionCount, topic);
+        } else {
+            hotWindow.deactivate();
+            streamingDetector.deactivate();
+            logger.info("No longer owning every partition of {}; dropped the in-memory usage window", topic);
+        }
+    }
+
+    // Also done on assignment, since a lost partition may come back without a revoke callback.
+    private void forgetRollups(Collection<TopicPartition> partitions) {
+        List<Integer> numbers = new ArrayList<>();
+        for (TopicPartition partition : partitions) {
+            if (topic.equals(partition.topic())) {
+                numbers.add(partition.partition());
+            }
+        }
+        if (!numbers.isEmpty()) {
+            rollupStore.forgetPartitions(numbers);
+            userRollupStore.forgetPartitions(numbers);
+        }
+    }
+
+    // Zero when the metadata lookup fails, which leaves ownership unconfirmed.
+    private int partitionCount(Consumer<?, ?> consumer) {
+        try {
+            List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+            return partitions == null ? 0 : partitions.size();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read the partition count of {}", topic, e);
+            return 0;
+        }
+    }
+}
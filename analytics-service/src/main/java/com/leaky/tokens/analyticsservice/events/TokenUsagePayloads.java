@@ -0,0 +1,44 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import tools.jackson.databind.ObjectMapper;
+
+final class TokenUsagePayloads {
+    private TokenUsagePayloads() {
+    }
+
+    static TokenUsageEvent decode(ObjectMapper objectMapper, ConsumerRecord<String, byte[]> message) {
+        if (TokenUsageEventCodec.CONTENT_TYPE_BINARY.equals(contentType(message))) {
+            return TokenUsageEventCodec.decode(message.value());
+        }
+        return objectMapper.readValue(message.value(), TokenUsageEvent.class);
+    }
+
+    static String contentType(ConsumerRecord<String, byte[]> message) {
+        Header header = message.headers().lastHeader(TokenUsageEventCodec.CONTENT_TYPE_HEADER);
+        if (header == null || header.value() == null) {
+            return TokenUsageEventCodec.CONTENT_TYPE_JSON;
+        }
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    // The id is derived from the Kafka position, so a redelivered event maps to the same rows.
+    static TokenUsageRecord toRecord(TokenUsageEvent event, ConsumerRecord<String, byte[]> message) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setId(UUID.nameUUIDFromBytes(
+                (message.topic() + ":" + message.partition() + ":" + message.offset()).getBytes(StandardCharsets.UTF_8)));
+        record.setKafkaPartition(message.partition());
+        record.setKafkaOffset(message.offset());
+        record.setUserId(event.getUserId());
+        record.setProvider(event.getProvider());
+        record.setTokens(event.getTokens());
+        record.setAllowed(event.isAllowed());
+        record.setTimestamp(event.getTimestamp());
+        return record;
+    }
+}
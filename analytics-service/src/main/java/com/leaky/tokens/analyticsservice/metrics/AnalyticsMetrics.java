@@ -19,6 +19,14 @@ public class AnalyticsMetrics {
         registry.counter("analytics.report.query.total", "provider", provider, "outcome", outcome).increment();
     }
 
+    public void userQuery(String outcome) {
+        registry.counter("analytics.user.query.total", "outcome", outcome).increment();
+    }
+
+    public void ingest(String outcome, int count) {
+        registry.counter("analytics.ingest.events.total", "outcome", outcome).increment(count);
+    }
+
     public void anomalyQuery(String provider, String outcome) {
         registry.counter("analytics.anomaly.query.total", "provider", provider, "outcome", outcome).increment();
     }
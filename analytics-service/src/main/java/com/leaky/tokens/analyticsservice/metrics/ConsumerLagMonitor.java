@@ -0,0 +1,105 @@
+package com.leaky.tokens.analyticsservice.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.leaky.tokens.analyticsservice.AnalyticsKafkaProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "analytics.kafka.lag.enabled", havingValue = "true", matchIfMissing = true)
+public class ConsumerLagMonitor implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConsumerLagMonitor.class);
+
+    private final Admin admin;
+    private final MeterRegistry registry;
+    private final String groupId;
+    private final long timeoutMs;
+    private final Map<TopicPartition, AtomicLong> lagByPartition = new ConcurrentHashMap<>();
+
+    public ConsumerLagMonitor(MeterRegistry registry,
+                              AnalyticsKafkaProperties properties,
+                              @Value("${spring.kafka.bootstrap-servers}") String bootstrapAddress,
+                              @Value("${analytics.token-usage.group:analytics-service}") String groupId) {
+        this(Admin.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress)),
+                registry, groupId, properties.getLag().getTimeoutMs());
+    }
+
+    ConsumerLagMonitor(Admin admin, MeterRegistry registry, String groupId, long timeoutMs) {
+        this.admin = admin;
+        this.registry = registry;
+        this.groupId = groupId;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.kafka.lag.poll-interval:PT15S}")
+    public void refresh() {
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin.listConsumerGroupOffsets(groupId)
+                    .partitionsToOffsetAndMetadata()
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+            if (committed.isEmpty()) {
+                return;
+            }
+            Map<TopicPartition, OffsetSpec> latest = new HashMap<>();
+            for (TopicPartition partition : committed.keySet()) {
+                latest.put(partition, OffsetSpec.latest());
+            }
+            Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = admin.listOffsets(latest)
+                    .all()
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : committed.entrySet()) {
+                ListOffsetsResult.ListOffsetsResultInfo end = endOffsets.get(entry.getKey());
+                if (end == null || entry.getValue() == null) {
+                    continue;
+                }
+                long lag = Math.max(0, end.offset() - entry.getValue().offset());
+                gauge(entry.getKey()).set(lag);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Failed to refresh consumer lag for group {}", groupId, e);
+        }
+    }
+
+    long lag(TopicPartition partition) {
+        AtomicLong value = lagByPartition.get(partition);
+        return value == null ? -1 : value.get();
+    }
+
+    private AtomicLong gauge(TopicPartition partition) {
+        return lagByPartition.computeIfAbsent(partition, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder("analytics.kafka.consumer.lag", value, AtomicLong::get)
+                    .tag("group", groupId)
+                    .tag("topic", key.topic())
+                    .tag("partition", String.valueOf(key.partition()))
+                    .register(registry);
+            return value;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        admin.close();
+    }
+}
@@ -1,5 +1,7 @@
 package com.leaky.tokens.analyticsservice.report;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
 import jakarta.validation.constraints.DecimalMin;
 import jakarta.validation.constraints.Min;
 import lombok.Getter;
@@ -23,8 +25,40 @@ public class AnalyticsReportProperties {
     @Min(1)
     private int maxTopUsers = 5;
     @Min(1)
+    private int maxTopProviders = 5;
+    @Min(1)
     private int defaultBaselineWindows = 4;
     @DecimalMin("1.0")
     private double defaultAnomalyThresholdMultiplier = 2.0;
+    @DecimalMin("0.001")
+    @DecimalMax("1.0")
+    private double anomalyEwmaAlpha = 0.1;
+    @DecimalMin("0.1")
+    private double anomalyZScoreThreshold = 3.0;
+    @Min(1)
+    private int anomalyWarmupMinutes = 30;
+    @Valid
+    private HotWindow hotWindow = new HotWindow();
+    @Valid
+    private ResponseCache responseCache = new ResponseCache();
+
+    @Setter
+    @Getter
+    public static class HotWindow {
+        private boolean enabled = false;
+        @Min(1)
+        private int retainMinutes = 360;
+        @Min(1)
+        private int recentEvents = 200;
+    }
 
+    @Setter
+    @Getter
+    public static class ResponseCache {
+        private boolean enabled = true;
+        @Min(1)
+        private int bucketSeconds = 10;
+        @Min(1)
+        private long maxEntries = 1000;
+    }
 }
@@ -2,37 +2,109 @@ package com.leaky.tokens.analyticsservice.report;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import com.leaky.tokens.analyticsservice.sketch.HyperLogLog;
+import com.leaky.tokens.analyticsservice.sketch.TopKSketch;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRepository;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageMinuteRollupRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRollupStore;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 @Service
 @RequiredArgsConstructor
 public class AnalyticsReportService {
-    private final TokenUsageByProviderRepository byProviderRepository;
+    private final TokenUsageByProviderStore byProviderStore;
+    private final TokenUsageRollupStore rollupStore;
+    private final StreamingAnomalyDetector streamingDetector;
+    private final HotUsageWindow hotWindow;
+    private final ReportResponseCache responseCache;
     private final AnalyticsReportProperties properties;
 
     public AnalyticsReportResponse buildReport(String provider, Integer windowMinutes, Integer limit) {
         int window = clamp(windowMinutes, properties.getDefaultWindowMinutes(), properties.getMaxWindowMinutes());
         int sampleLimit = clamp(limit, properties.getMaxLimit(), properties.getMaxLimit());
+        return responseCache.report(provider, window, sampleLimit, Instant.now(),
+            () -> computeReport(provider, window, sampleLimit));
+    }
+
+    private AnalyticsReportResponse computeReport(String provider, int window, int sampleLimit) {
         Instant windowEnd = Instant.now();
+        Instant lastMinute = windowEnd.truncatedTo(ChronoUnit.MINUTES);
+        Instant alignedStart = lastMinute.minus(Duration.ofMinutes(window - 1L));
+        Optional<HotUsageWindow.Summary> hot = hotWindow.summarize(provider, alignedStart, lastMinute);
+        if (hot.isPresent()) {
+            HotUsageWindow.Summary summary = hot.get();
+            return alignedReport(provider, alignedStart, windowEnd, sampleLimit,
+                summary.allowedEvents(), summary.deniedEvents(), summary.totalTokens(), summary.users());
+        }
+        if (rollupStore.isEnabled()) {
+            return summarizeRollups(provider, alignedStart, lastMinute, windowEnd, sampleLimit);
+        }
         Instant windowStart = windowEnd.minus(Duration.ofMinutes(window));
 
-        List<TokenUsageByProviderRecord> records = byProviderRepository
-            .findByProviderAndTimestampRange(provider, windowStart, windowEnd, sampleLimit);
+        List<TokenUsageByProviderRecord> records = byProviderStore
+            .findByProviderAndTimestampRangeAsync(provider, windowStart, windowEnd, sampleLimit)
+            .join();
 
         return summarize(provider, windowStart, windowEnd, sampleLimit, records);
     }
 
+    // The window is aligned to whole minutes ending with the current one, so it spans exactly
+    // `window` rollup rows. Totals are exact; unique and top users come from merged minute sketches.
+    private AnalyticsReportResponse summarizeRollups(String provider,
+                                                     Instant windowStart,
+                                                     Instant lastMinute,
+                                                     Instant windowEnd,
+                                                     int sampleLimit) {
+        // Totals and sketches come from separate scans of the minute rows; run both concurrently.
+        CompletableFuture<List<TokenUsageMinuteRollupRecord>> rollups =
+            rollupStore.findRollupsAsync(provider, windowStart, lastMinute);
+        CompletableFuture<UserUsageSketch> sketch = rollupStore.findUserSketchAsync(provider, windowStart, lastMinute);
+        long allowedEvents = 0L;
+        long deniedEvents = 0L;
+        long totalTokens = 0L;
+        for (TokenUsageMinuteRollupRecord rollup : rollups.join()) {
+            allowedEvents += rollup.getAllowedEvents();
+            deniedEvents += rollup.getDeniedEvents();
+            totalTokens += rollup.getTotalTokens();
+        }
+        UserUsageSketch users = sketch.join();
+        return alignedReport(provider, windowStart, windowEnd, sampleLimit, allowedEvents, deniedEvents, totalTokens, users);
+    }
+
+    private AnalyticsReportResponse alignedReport(String provider,
+                                                  Instant windowStart,
+                                                  Instant windowEnd,
+                                                  int sampleLimit,
+                                                  long allowedEvents,
+                                                  long deniedEvents,
+                                                  long totalTokens,
+                                                  UserUsageSketch users) {
+        long totalEvents = allowedEvents + deniedEvents;
+
+        return new AnalyticsReportResponse(
+            provider,
+            windowStart,
+            windowEnd,
+            Math.toIntExact(totalEvents),
+            Math.toIntExact(allowedEvents),
+            Math.toIntExact(deniedEvents),
+            totalTokens,
+            totalEvents == 0 ? 0.0 : (double) totalTokens / totalEvents,
+            Math.toIntExact(users.distinctUsers()),
+            sampleLimit,
+            topUsers(users)
+        );
+    }
+
     public AnalyticsAnomalyResponse detectAnomaly(String provider,
                                                   Integer windowMinutes,
                                                   Integer baselineWindows,
@@ -45,14 +117,35 @@ public class AnalyticsReportService {
         int sampleLimit = clamp(limit, properties.getMaxLimit(), properties.getMaxLimit());
 
         Instant now = Instant.now();
-        Instant currentStart = now.minus(Duration.ofMinutes(window));
-        long currentTokens = sumTokens(provider, currentStart, now, sampleLimit);
-
+        Instant currentStart;
+        long currentTokens;
         double baselineSum = 0.0;
-        for (int i = 1; i <= baseline; i++) {
-            Instant end = now.minus(Duration.ofMinutes((long) window * i));
-            Instant start = end.minus(Duration.ofMinutes(window));
-            baselineSum += sumTokens(provider, start, end, sampleLimit);
+        Instant lastMinute = now.truncatedTo(ChronoUnit.MINUTES);
+        Instant firstMinute = lastMinute.minus(Duration.ofMinutes((long) window * (baseline + 1) - 1));
+        Optional<long[]> hot = hotWindow.tokensByMinute(provider, firstMinute, lastMinute);
+        if (hot.isPresent() || rollupStore.isEnabled()) {
+            long[] windows = hot.isPresent()
+                ? bucketMinutes(hot.get(), window, baseline)
+                : sumRollupWindows(provider, window, baseline, firstMinute, lastMinute);
+            currentStart = lastMinute.minus(Duration.ofMinutes(window - 1L));
+            currentTokens = windows[0];
+            for (int i = 1; i <= baseline; i++) {
+                baselineSum += windows[i];
+            }
+        } else {
+            // The current and baseline windows are independent range reads: issue them all, then wait.
+            currentStart = now.minus(Duration.ofMinutes(window));
+            List<CompletableFuture<Long>> windows = new ArrayList<>(baseline + 1);
+            windows.add(sumTokens(provider, currentStart, now, sampleLimit));
+            for (int i = 1; i <= baseline; i++) {
+                Instant end = now.minus(Duration.ofMinutes((long) window * i));
+                Instant start = end.minus(Duration.ofMinutes(window));
+                windows.add(sumTokens(provider, start, end, sampleLimit));
+            }
+            currentTokens = windows.getFirst().join();
+            for (int i = 1; i <= baseline; i++) {
+                baselineSum += windows.get(i).join();
+            }
         }
 
         double baselineAverage = baseline == 0 ? 0.0 : baselineSum / baseline;
@@ -82,32 +175,22 @@ public class AnalyticsReportService {
         int totalEvents = records.size();
         int allowedEvents = 0;
         long totalTokens = 0L;
-        Set<String> users = new HashSet<>();
-        Map<String, UserAggregate> aggregates = new HashMap<>();
+        UserUsageSketch users = new UserUsageSketch(
+            HyperLogLog.DEFAULT_PRECISION,
+            Math.max(TopKSketch.DEFAULT_CAPACITY, properties.getMaxTopUsers())
+        );
 
         for (TokenUsageByProviderRecord record : records) {
             if (record.isAllowed()) {
                 allowedEvents += 1;
             }
             totalTokens += record.getTokens();
-            String userId = record.getUserId();
-            if (userId != null) {
-                users.add(userId);
-                aggregates.computeIfAbsent(userId, key -> new UserAggregate())
-                    .add(record.getTokens());
-            }
+            users.add(record.getUserId(), record.getTokens());
         }
 
         int deniedEvents = totalEvents - allowedEvents;
         double averageTokens = totalEvents == 0 ? 0.0 : (double) totalTokens / totalEvents;
 
-        List<UserUsageSummary> topUsers = new ArrayList<>();
-        int topLimit = properties.getMaxTopUsers();
-        aggregates.entrySet().stream()
-            .sorted(Map.Entry.comparingByValue(Comparator.comparingLong(UserAggregate::totalTokens).reversed()))
-            .limit(topLimit)
-            .forEach(entry -> topUsers.add(new UserUsageSummary(entry.getKey(), entry.getValue().totalTokens(), entry.getValue().events())));
-
         return new AnalyticsReportResponse(
             provider,
             windowStart,
@@ -117,44 +200,82 @@ public class AnalyticsReportService {
             deniedEvents,
             totalTokens,
             averageTokens,
-            users.size(),
+            Math.toIntExact(users.distinctUsers()),
             sampleLimit,
-            topUsers
+            topUsers(users)
         );
     }
 
-    private long sumTokens(String provider, Instant start, Instant end, int limit) {
-        List<TokenUsageByProviderRecord> records =
-            byProviderRepository.findByProviderAndTimestampRange(provider, start, end, limit);
-        long sum = 0L;
-        for (TokenUsageByProviderRecord record : records) {
-            sum += record.getTokens();
+    private List<UserUsageSummary> topUsers(UserUsageSketch users) {
+        List<UserUsageSummary> topUsers = new ArrayList<>();
+        for (TopKSketch.Entry entry : users.topUsers(properties.getMaxTopUsers())) {
+            topUsers.add(new UserUsageSummary(entry.key(), entry.weight(), Math.toIntExact(entry.events())));
         }
-        return sum;
+        return topUsers;
     }
 
-    private int clamp(Integer value, int defaultValue, int max) {
-        if (value == null || value <= 0) {
-            return defaultValue;
+    // The in-memory detector has seen the whole stream only while this instance owns every partition;
+    // otherwise the same EWMA is replayed over the minute rollups every instance writes to.
+    public StreamingAnomalyResponse detectStreamingAnomaly(String provider, Double zScoreThreshold) {
+        Instant now = Instant.now();
+        if (streamingDetector.isActive()) {
+            return streamingDetector.check(provider, zScoreThreshold, now);
         }
-        return Math.min(value, max);
+        long[] minutes = new long[0];
+        if (rollupStore.isEnabled()) {
+            Instant lastMinute = now.truncatedTo(ChronoUnit.MINUTES);
+            minutes = new long[streamingDetector.replayMinutes()];
+            Instant firstMinute = lastMinute.minus(Duration.ofMinutes(minutes.length - 1L));
+            for (TokenUsageMinuteRollupRecord rollup : rollupStore.findRollupsAsync(provider, firstMinute, lastMinute).join()) {
+                long index = Duration.between(firstMinute, rollup.getKey().getMinute()).toMinutes();
+                if (index >= 0 && index < minutes.length) {
+                    minutes[(int) index] += rollup.getTotalTokens();
+                }
+            }
+        }
+        return streamingDetector.replay(provider, zScoreThreshold, now, minutes);
     }
 
-    private static class UserAggregate {
-        private long tokens;
-        private int events;
-
-        void add(long tokens) {
-            this.tokens += tokens;
-            this.events += 1;
+    // One range scan over the minute rollups covering the current window and every baseline window.
+    // Index 0 is the current window, index i the i-th window before it.
+    private long[] sumRollupWindows(String provider, int window, int baseline, Instant firstMinute, Instant lastMinute) {
+        long[] windows = new long[baseline + 1];
+        for (TokenUsageMinuteRollupRecord rollup : rollupStore.findRollupsAsync(provider, firstMinute, lastMinute).join()) {
+            long minutesAgo = Duration.between(rollup.getKey().getMinute(), lastMinute).toMinutes();
+            int index = (int) (minutesAgo / window);
+            if (minutesAgo >= 0 && index < windows.length) {
+                windows[index] += rollup.getTotalTokens();
+            }
         }
+        return windows;
+    }
 
-        long totalTokens() {
-            return tokens;
+    // Same bucketing for per-minute tokens from the hot window, where the last element is the current minute.
+    private static long[] bucketMinutes(long[] minutes, int window, int baseline) {
+        long[] windows = new long[baseline + 1];
+        for (int i = 0; i < minutes.length; i++) {
+            int index = (minutes.length - 1 - i) / window;
+            if (index < windows.length) {
+                windows[index] += minutes[i];
+            }
         }
+        return windows;
+    }
 
-        int events() {
-            return events;
+    private CompletableFuture<Long> sumTokens(String provider, Instant start, Instant end, int limit) {
+        return byProviderStore.findByProviderAndTimestampRangeAsync(provider, start, end, limit).thenApply(records -> {
+            long sum = 0L;
+            for (TokenUsageByProviderRecord record : records) {
+                sum += record.getTokens();
+            }
+            return sum;
+        });
+    }
+
+    private int clamp(Integer value, int defaultValue, int max) {
+        if (value == null || value <= 0) {
+            return defaultValue;
         }
+        return Math.min(value, max);
     }
 }
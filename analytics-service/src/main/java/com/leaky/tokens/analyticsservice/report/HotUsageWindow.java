@@ -0,0 +1,239 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.leaky.tokens.analyticsservice.sketch.HyperLogLog;
+import com.leaky.tokens.analyticsservice.sketch.TopKSketch;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// Per provider, a ring of minute slots over the last `retainMinutes` plus the latest raw events,
+// fed by the listeners. It only sees what this instance consumes, so reads answer only while this
+// instance owns every partition of the topic (see TokenUsagePartitionOwnership) and only for windows
+// that lie entirely inside what it has consumed since then; anything else returns empty and the
+// caller goes to Cassandra.
+@Component
+public class HotUsageWindow {
+    private static final Comparator<TokenUsageByProviderRecord> NEWEST_FIRST =
+        Comparator.comparing((TokenUsageByProviderRecord record) -> record.getKey().getTimestamp()).reversed();
+
+    private final AnalyticsReportProperties.HotWindow properties;
+    private final int topUsersCapacity;
+    // Replaced whole on every ownership change, so a read never mixes state from two owners.
+    private volatile Coverage coverage = Coverage.NONE;
+
+    @Autowired
+    public HotUsageWindow(AnalyticsReportProperties properties) {
+        this.properties = properties.getHotWindow();
+        this.topUsersCapacity = Math.max(TopKSketch.DEFAULT_CAPACITY, properties.getMaxTopUsers());
+    }
+
+    HotUsageWindow(AnalyticsReportProperties properties, Instant startedAt) {
+        this(properties);
+        activate(startedAt);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // Starts over from empty; called once this instance owns every partition of the topic.
+    public void activate(Instant ownedSince) {
+        // The previous owner may already have consumed part of the minute we take over in.
+        coverage = new Coverage(minuteOf(ownedSince) + 1, new ConcurrentHashMap<>());
+    }
+
+    // Drops everything; called as soon as any partition of the topic is revoked or lost.
+    public void deactivate() {
+        coverage = Coverage.NONE;
+    }
+
+    public boolean isActive() {
+        return isEnabled() && coverage != Coverage.NONE;
+    }
+
+    public void record(TokenUsageRecord record) {
+        if (!isEnabled() || record.getProvider() == null || record.getTimestamp() == null) {
+            return;
+        }
+        Coverage current = coverage;
+        if (current == Coverage.NONE) {
+            return;
+        }
+        ProviderWindow window = current.providers().computeIfAbsent(record.getProvider(), key -> new ProviderWindow());
+        synchronized (window) {
+            window.add(record);
+        }
+    }
+
+    public Optional<Summary> summarize(String provider, Instant fromMinute, Instant toMinute) {
+        Coverage current = coverage;
+        if (!covers(current, fromMinute, toMinute)) {
+            return Optional.empty();
+        }
+        UserUsageSketch users = newSketch();
+        ProviderWindow window = current.providers().get(provider);
+        if (window == null) {
+            return Optional.of(new Summary(0L, 0L, 0L, users));
+        }
+        long allowedEvents = 0L;
+        long deniedEvents = 0L;
+        long totalTokens = 0L;
+        synchronized (window) {
+            if (!window.retains(minuteOf(fromMinute))) {
+                return Optional.empty();
+            }
+            for (long minute = minuteOf(fromMinute); minute <= minuteOf(toMinute); minute++) {
+                int slot = window.slotOf(minute);
+                if (slot < 0) {
+                    continue;
+                }
+                allowedEvents += window.allowed[slot];
+                deniedEvents += window.denied[slot];
+                totalTokens += window.tokens[slot];
+                users.merge(window.users[slot]);
+            }
+        }
+        return Optional.of(new Summary(allowedEvents, deniedEvents, totalTokens, users));
+    }
+
+    // Index 0 is `fromMinute`, the last index `toMinute`.
+    public Optional<long[]> tokensByMinute(String provider, Instant fromMinute, Instant toMinute) {
+        Coverage current = coverage;
+        if (!covers(current, fromMinute, toMinute)) {
+            return Optional.empty();
+        }
+        long from = minuteOf(fromMinute);
+        long[] tokens = new long[Math.toIntExact(minuteOf(toMinute) - from + 1)];
+        ProviderWindow window = current.providers().get(provider);
+        if (window == null) {
+            return Optional.of(tokens);
+        }
+        synchronized (window) {
+            if (!window.retains(from)) {
+                return Optional.empty();
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                int slot = window.slotOf(from + i);
+                if (slot >= 0) {
+                    tokens[i] = window.tokens[slot];
+                }
+            }
+        }
+        return Optional.of(tokens);
+    }
+
+    // Only answers once the buffer holds `limit` events; with fewer, older rows may exist in Cassandra.
+    public Optional<List<TokenUsageByProviderRecord>> recent(String provider, int limit) {
+        Coverage current = coverage;
+        if (!isEnabled() || current == Coverage.NONE || limit > properties.getRecentEvents()) {
+            return Optional.empty();
+        }
+        ProviderWindow window = current.providers().get(provider);
+        if (window == null) {
+            return Optional.empty();
+        }
+        List<TokenUsageByProviderRecord> recent;
+        synchronized (window) {
+            if (window.recent.size() < limit) {
+                return Optional.empty();
+            }
+            recent = new ArrayList<>(window.recent);
+        }
+        recent.sort(NEWEST_FIRST);
+        return Optional.of(recent.subList(0, limit));
+    }
+
+    private boolean covers(Coverage current, Instant fromMinute, Instant toMinute) {
+        if (!isEnabled() || current == Coverage.NONE) {
+            return false;
+        }
+        long from = minuteOf(fromMinute);
+        long to = minuteOf(toMinute);
+        return from >= current.fromMinute() && to - from < properties.getRetainMinutes();
+    }
+
+    private UserUsageSketch newSketch() {
+        return new UserUsageSketch(HyperLogLog.DEFAULT_PRECISION, topUsersCapacity);
+    }
+
+    private static long minuteOf(Instant timestamp) {
+        return Math.floorDiv(timestamp.getEpochSecond(), 60L);
+    }
+
+    public record Summary(long allowedEvents, long deniedEvents, long totalTokens, UserUsageSketch users) {
+    }
+
+    private record Coverage(long fromMinute, Map<String, ProviderWindow> providers) {
+        static final Coverage NONE = new Coverage(Long.MAX_VALUE, Map.of());
+    }
+
+    private class ProviderWindow {
+        private final long[] minutes = new long[properties.getRetainMinutes()];
+        private final long[] tokens = new long[minutes.length];
+        private final long[] allowed = new long[minutes.length];
+        private final long[] denied = new long[minutes.length];
+        private final UserUsageSketch[] users = new UserUsageSketch[minutes.length];
+        private final Deque<TokenUsageByProviderRecord> recent = new ArrayDeque<>();
+        private long latestMinute = Long.MIN_VALUE;
+
+        private ProviderWindow() {
+            Arrays.fill(minutes, Long.MIN_VALUE);
+        }
+
+        void add(TokenUsageRecord record) {
+            long minute = minuteOf(record.getTimestamp());
+            latestMinute = Math.max(latestMinute, minute);
+            if (retains(minute)) {
+                int slot = (int) Math.floorMod(minute, (long) minutes.length);
+                if (minutes[slot] != minute) {
+                    minutes[slot] = minute;
+                    tokens[slot] = 0L;
+                    allowed[slot] = 0L;
+                    denied[slot] = 0L;
+                    users[slot] = newSketch();
+                }
+                tokens[slot] += record.getTokens();
+                if (record.isAllowed()) {
+                    allowed[slot] += 1;
+                } else {
+                    denied[slot] += 1;
+                }
+                users[slot].add(record.getUserId(), record.getTokens());
+            }
+
+            recent.addLast(new TokenUsageByProviderRecord(
+                new TokenUsageByProviderKey(record.getProvider(), record.getTimestamp()),
+                record.getUserId(),
+                record.getTokens(),
+                record.isAllowed()
+            ));
+            if (recent.size() > properties.getRecentEvents()) {
+                recent.removeFirst();
+            }
+        }
+
+        boolean retains(long minute) {
+            return latestMinute == Long.MIN_VALUE || minute > latestMinute - minutes.length;
+        }
+
+        // Slot holding `minute`, or -1 when it was never written or has been overwritten since.
+        int slotOf(long minute) {
+            int slot = (int) Math.floorMod(minute, (long) minutes.length);
+            return minutes[slot] == minute ? slot : -1;
+        }
+    }
+}
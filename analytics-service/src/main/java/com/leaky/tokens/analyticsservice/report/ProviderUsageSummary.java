@@ -0,0 +1,18 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class ProviderUsageSummary {
+    @Schema(example = "openai")
+    private String provider;
+    @Schema(example = "12000")
+    private long totalTokens;
+    @Schema(example = "42")
+    private int events;
+}
@@ -0,0 +1,47 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+// Reports are keyed by the normalized request plus the `bucketSeconds` slot the request falls in,
+// so pollers asking within one slot share a response. Caffeine runs the loader once per key and
+// concurrent callers for that key wait for its result instead of querying Cassandra themselves.
+@Component
+public class ReportResponseCache {
+    static final String CACHE_NAME = "analytics.report.responses";
+
+    private final AnalyticsReportProperties.ResponseCache properties;
+    private final Cache<ReportKey, AnalyticsReportResponse> reports;
+
+    public ReportResponseCache(AnalyticsReportProperties properties, MeterRegistry registry) {
+        this.properties = properties.getResponseCache();
+        this.reports = Caffeine.newBuilder()
+            .maximumSize(this.properties.getMaxEntries())
+            .expireAfterWrite(Duration.ofSeconds(this.properties.getBucketSeconds()))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(registry, reports, CACHE_NAME);
+    }
+
+    public AnalyticsReportResponse report(String provider,
+                                          int windowMinutes,
+                                          int limit,
+                                          Instant now,
+                                          Supplier<AnalyticsReportResponse> loader) {
+        if (!properties.isEnabled()) {
+            return loader.get();
+        }
+        long bucket = Math.floorDiv(now.getEpochSecond(), properties.getBucketSeconds());
+        return reports.get(new ReportKey(provider, windowMinutes, limit, bucket), key -> loader.get());
+    }
+
+    private record ReportKey(String provider, int windowMinutes, int limit, long bucket) {
+    }
+}
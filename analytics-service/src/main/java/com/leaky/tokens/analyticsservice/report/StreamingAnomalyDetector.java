@@ -0,0 +1,153 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import org.springframework.stereotype.Component;
+
+// Per provider, tracks an exponentially weighted mean and variance of tokens per minute.
+// Each event and each check costs O(1); closed minutes fold into the EWMA as the clock moves on.
+// The in-memory state only reflects the whole stream while this instance owns every partition of
+// the topic (isActive); otherwise callers replay the same EWMA over the shared minute rollups.
+@Component
+public class StreamingAnomalyDetector {
+    private static final int MAX_CATCH_UP_MINUTES = 24 * 60;
+
+    private final AnalyticsReportProperties properties;
+    private final Map<String, ProviderState> states = new ConcurrentHashMap<>();
+    private volatile boolean active;
+
+    public StreamingAnomalyDetector(AnalyticsReportProperties properties) {
+        this.properties = properties;
+    }
+
+    // Starts over from empty; called once this instance owns every partition of the topic.
+    public void activate() {
+        states.clear();
+        active = true;
+    }
+
+    // Called as soon as any partition of the topic is revoked or lost.
+    public void deactivate() {
+        active = false;
+        states.clear();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void record(TokenUsageRecord record) {
+        if (record.getProvider() == null || record.getTimestamp() == null) {
+            return;
+        }
+        ProviderState state = states.computeIfAbsent(record.getProvider(), key -> new ProviderState());
+        long minute = minuteOf(record.getTimestamp());
+        synchronized (state) {
+            state.advanceTo(minute, properties.getAnomalyEwmaAlpha());
+            // Late events from earlier minutes are folded into the open minute.
+            state.currentTokens += record.getTokens();
+        }
+    }
+
+    public StreamingAnomalyResponse check(String provider, Double zScoreThreshold, Instant now) {
+        double threshold = threshold(zScoreThreshold);
+        Instant minuteStart = now.truncatedTo(ChronoUnit.MINUTES);
+        ProviderState state = states.get(provider);
+        if (state == null) {
+            return new StreamingAnomalyResponse(provider, minuteStart, 0L, 0.0, 0.0, 0.0, threshold, false, 0L);
+        }
+        synchronized (state) {
+            state.advanceTo(minuteOf(now), properties.getAnomalyEwmaAlpha());
+            return respond(provider, minuteStart, state, threshold);
+        }
+    }
+
+    // Same check from per-minute totals read back from storage: the last element is the minute of
+    // `now`, every earlier one a closed minute folded into the EWMA in order.
+    public StreamingAnomalyResponse replay(String provider, Double zScoreThreshold, Instant now, long[] tokensByMinute) {
+        double threshold = threshold(zScoreThreshold);
+        Instant minuteStart = now.truncatedTo(ChronoUnit.MINUTES);
+        ProviderState state = new ProviderState();
+        long firstMinute = minuteOf(now) - tokensByMinute.length + 1;
+        for (int i = 0; i < tokensByMinute.length; i++) {
+            state.advanceTo(firstMinute + i, properties.getAnomalyEwmaAlpha());
+            state.currentTokens += tokensByMinute[i];
+        }
+        return respond(provider, minuteStart, state, threshold);
+    }
+
+    // Minutes to replay: enough for the EWMA to forget its starting point and to pass the warm-up.
+    public int replayMinutes() {
+        int settle = (int) Math.ceil(5.0 / properties.getAnomalyEwmaAlpha());
+        return Math.min(MAX_CATCH_UP_MINUTES, Math.max(settle, properties.getAnomalyWarmupMinutes()) + 1);
+    }
+
+    private StreamingAnomalyResponse respond(String provider, Instant minuteStart, ProviderState state, double threshold) {
+        double stdDev = Math.sqrt(state.variance);
+        double zScore = stdDev == 0.0 ? 0.0 : (state.currentTokens - state.mean) / stdDev;
+        boolean warmedUp = state.observedMinutes >= properties.getAnomalyWarmupMinutes();
+        return new StreamingAnomalyResponse(
+            provider,
+            minuteStart,
+            state.currentTokens,
+            state.mean,
+            stdDev,
+            zScore,
+            threshold,
+            warmedUp && zScore >= threshold,
+            state.observedMinutes
+        );
+    }
+
+    private double threshold(Double zScoreThreshold) {
+        return zScoreThreshold == null || zScoreThreshold <= 0
+            ? properties.getAnomalyZScoreThreshold()
+            : zScoreThreshold;
+    }
+
+    private static long minuteOf(Instant timestamp) {
+        return Math.floorDiv(timestamp.getEpochSecond(), 60L);
+    }
+
+    private static class ProviderState {
+        private long currentMinute = Long.MIN_VALUE;
+        private long currentTokens;
+        private double mean;
+        private double variance;
+        private long observedMinutes;
+
+        void advanceTo(long minute, double alpha) {
+            if (currentMinute == Long.MIN_VALUE) {
+                currentMinute = minute;
+                return;
+            }
+            if (minute <= currentMinute) {
+                return;
+            }
+            observe(currentTokens, alpha);
+            long idle = Math.min(minute - currentMinute - 1, MAX_CATCH_UP_MINUTES);
+            for (long i = 0; i < idle; i++) {
+                observe(0L, alpha);
+            }
+            currentMinute = minute;
+            currentTokens = 0L;
+        }
+
+        private void observe(long tokens, double alpha) {
+            if (observedMinutes == 0) {
+                mean = tokens;
+                variance = 0.0;
+            } else {
+                double diff = tokens - mean;
+                double increment = alpha * diff;
+                mean += increment;
+                variance = (1 - alpha) * (variance + diff * increment);
+            }
+            observedMinutes += 1;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class StreamingAnomalyResponse {
+    @Schema(example = "openai")
+    private String provider;
+    @Schema(example = "2026-02-04T17:00:00Z")
+    private Instant minuteStart;
+    @Schema(example = "5400")
+    private long currentTokens;
+    @Schema(example = "1200.5")
+    private double ewmaMeanTokens;
+    @Schema(example = "310.2")
+    private double ewmaStdDevTokens;
+    @Schema(example = "4.2")
+    private double zScore;
+    @Schema(example = "3.0")
+    private double zScoreThreshold;
+    @Schema(example = "true")
+    private boolean anomaly;
+    @Schema(example = "180")
+    private long observedMinutes;
+}
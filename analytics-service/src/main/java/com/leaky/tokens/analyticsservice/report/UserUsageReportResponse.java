@@ -0,0 +1,35 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Instant;
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+public class UserUsageReportResponse {
+    @Schema(example = "00000000-0000-0000-0000-000000000001")
+    private String userId;
+    @Schema(example = "2026-02-04T16:00:00Z")
+    private Instant windowStart;
+    @Schema(example = "2026-02-04T17:00:00Z")
+    private Instant windowEnd;
+    @Schema(example = "120")
+    private int totalEvents;
+    @Schema(example = "110")
+    private int allowedEvents;
+    @Schema(example = "10")
+    private int deniedEvents;
+    @Schema(example = "25000")
+    private long totalTokens;
+    @Schema(example = "208.33")
+    private double averageTokensPerEvent;
+    @Schema(example = "500")
+    private int sampleLimit;
+    @Schema(description = "Top providers by token usage in the reporting window")
+    private List<ProviderUsageSummary> topProviders;
+}
@@ -0,0 +1,155 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByUserRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByUserStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserMinuteRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserRollupStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+// Per-user views read only the caller's partitions: the per-user minute rollups when they are
+// enabled, so every event in the window counts, otherwise up to `limit` raw rows of
+// token_usage_by_user.
+@Service
+@RequiredArgsConstructor
+public class UserUsageReportService {
+    private final TokenUsageByUserStore byUserStore;
+    private final TokenUsageUserRollupStore userRollupStore;
+    private final AnalyticsReportProperties properties;
+
+    public boolean isEnabled() {
+        return byUserStore.isEnabled();
+    }
+
+    public UserUsageReportResponse buildReport(String userId, Integer windowMinutes, Integer limit) {
+        int window = clamp(windowMinutes, properties.getDefaultWindowMinutes(), properties.getMaxWindowMinutes());
+        int sampleLimit = clamp(limit, properties.getMaxLimit(), properties.getMaxLimit());
+        Instant windowEnd = Instant.now();
+        if (userRollupStore.isEnabled()) {
+            return summarizeRollups(userId, window, windowEnd, sampleLimit);
+        }
+        Instant windowStart = windowEnd.minus(Duration.ofMinutes(window));
+
+        List<TokenUsageByUserRecord> records = byUserStore
+            .findByUserAndTimestampRange(userId, windowStart, windowEnd, sampleLimit);
+
+        int allowedEvents = 0;
+        int deniedEvents = 0;
+        long totalTokens = 0L;
+        for (TokenUsageByUserRecord record : records) {
+            if (record.isAllowed()) {
+                allowedEvents++;
+            } else {
+                deniedEvents++;
+            }
+            totalTokens += record.getTokens();
+        }
+        int totalEvents = records.size();
+        double average = totalEvents == 0 ? 0.0 : (double) totalTokens / totalEvents;
+
+        return new UserUsageReportResponse(
+            userId,
+            windowStart,
+            windowEnd,
+            totalEvents,
+            allowedEvents,
+            deniedEvents,
+            totalTokens,
+            average,
+            sampleLimit,
+            topProviders(records, properties.getMaxTopProviders())
+        );
+    }
+
+    public List<ProviderUsageSummary> topProviders(String userId, Integer windowMinutes, Integer limit) {
+        int window = clamp(windowMinutes, properties.getDefaultWindowMinutes(), properties.getMaxWindowMinutes());
+        int top = clamp(limit, properties.getMaxTopProviders(), properties.getMaxTopProviders());
+        Instant windowEnd = Instant.now();
+        if (userRollupStore.isEnabled()) {
+            return rank(providerTotals(findRollups(userId, window, windowEnd)).values(), top);
+        }
+        List<TokenUsageByUserRecord> records = byUserStore.findByUserAndTimestampRange(
+            userId, windowEnd.minus(Duration.ofMinutes(window)), windowEnd, properties.getMaxLimit());
+        return topProviders(records, top);
+    }
+
+    // The window is aligned to whole minutes ending with the current one, like the provider report.
+    private UserUsageReportResponse summarizeRollups(String userId, int window, Instant windowEnd, int sampleLimit) {
+        Instant windowStart = windowEnd.truncatedTo(ChronoUnit.MINUTES).minus(Duration.ofMinutes(window - 1L));
+        List<TokenUsageUserMinuteRecord> rows = findRollups(userId, window, windowEnd);
+        long allowedEvents = 0L;
+        long deniedEvents = 0L;
+        long totalTokens = 0L;
+        for (TokenUsageUserMinuteRecord row : rows) {
+            allowedEvents += row.getAllowedEvents();
+            deniedEvents += row.getDeniedEvents();
+            totalTokens += row.getTotalTokens();
+        }
+        long totalEvents = allowedEvents + deniedEvents;
+        double average = totalEvents == 0 ? 0.0 : (double) totalTokens / totalEvents;
+        return new UserUsageReportResponse(
+            userId,
+            windowStart,
+            windowEnd,
+            Math.toIntExact(totalEvents),
+            Math.toIntExact(allowedEvents),
+            Math.toIntExact(deniedEvents),
+            totalTokens,
+            average,
+            sampleLimit,
+            rank(providerTotals(rows).values(), properties.getMaxTopProviders())
+        );
+    }
+
+    private List<TokenUsageUserMinuteRecord> findRollups(String userId, int window, Instant windowEnd) {
+        Instant lastMinute = windowEnd.truncatedTo(ChronoUnit.MINUTES);
+        return userRollupStore.findMinutesAsync(userId, lastMinute.minus(Duration.ofMinutes(window - 1L)), lastMinute)
+            .join();
+    }
+
+    private static Map<String, ProviderUsageSummary> providerTotals(List<TokenUsageUserMinuteRecord> rows) {
+        Map<String, ProviderUsageSummary> totals = new HashMap<>();
+        for (TokenUsageUserMinuteRecord row : rows) {
+            ProviderUsageSummary summary = totals.computeIfAbsent(
+                row.getKey().getProvider(), provider -> new ProviderUsageSummary(provider, 0L, 0));
+            summary.setTotalTokens(summary.getTotalTokens() + row.getTotalTokens());
+            summary.setEvents(Math.toIntExact(summary.getEvents() + row.getAllowedEvents() + row.getDeniedEvents()));
+        }
+        return totals;
+    }
+
+    private List<ProviderUsageSummary> topProviders(List<TokenUsageByUserRecord> records, int limit) {
+        Map<String, ProviderUsageSummary> totals = new HashMap<>();
+        for (TokenUsageByUserRecord record : records) {
+            ProviderUsageSummary summary = totals.computeIfAbsent(
+                record.getProvider(), provider -> new ProviderUsageSummary(provider, 0L, 0));
+            summary.setTotalTokens(summary.getTotalTokens() + record.getTokens());
+            summary.setEvents(summary.getEvents() + 1);
+        }
+        return rank(totals.values(), limit);
+    }
+
+    private static List<ProviderUsageSummary> rank(Collection<ProviderUsageSummary> totals, int limit) {
+        return totals.stream()
+            .sorted(Comparator.comparingLong(ProviderUsageSummary::getTotalTokens).reversed()
+                .thenComparing(ProviderUsageSummary::getProvider))
+            .limit(limit)
+            .toList();
+    }
+
+    private int clamp(Integer value, int defaultValue, int max) {
+        if (value == null || value <= 0) {
+            return defaultValue;
+        }
+        return Math.min(value, max);
+    }
+}
@@ -0,0 +1,165 @@
+package com.leaky.tokens.analyticsservice.sketch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Weighted Space-Saving summary: at most `capacity` counters, the lightest one is recycled
+// for a new key. Any key heavier than total/capacity is guaranteed to be tracked.
+public final class TopKSketch {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+
+    public TopKSketch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("TopKSketch capacity must be positive");
+        }
+        this.capacity = capacity;
+    }
+
+    public void add(String key, long weight) {
+        add(key, weight, 1L, 0L);
+    }
+
+    // Mergeable Space-Saving: a key one summary does not track may have reached that summary's lightest
+    // counter, so it is charged that counter, as weight and as error. Every weight stays an upper bound
+    // at most `error` above the true weight, and the guarantee above holds for the merged total.
+    public void merge(TopKSketch other) {
+        Counter ownFloor = floor();
+        Counter otherFloor = other.floor();
+        Map<String, Counter> merged = new HashMap<>();
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            Counter theirs = other.counters.get(entry.getKey());
+            merged.put(entry.getKey(), entry.getValue().plus(theirs != null ? theirs : otherFloor));
+        }
+        for (Map.Entry<String, Counter> entry : other.counters.entrySet()) {
+            if (!counters.containsKey(entry.getKey())) {
+                merged.put(entry.getKey(), entry.getValue().plus(ownFloor));
+            }
+        }
+        counters.clear();
+        counters.putAll(merged);
+        if (counters.size() > capacity) {
+            List<Map.Entry<String, Counter>> sorted = sortedEntries();
+            for (Map.Entry<String, Counter> entry : sorted.subList(capacity, sorted.size())) {
+                counters.remove(entry.getKey());
+            }
+        }
+    }
+
+    public List<Entry> top(int limit) {
+        List<Entry> top = new ArrayList<>(Math.min(limit, counters.size()));
+        for (Map.Entry<String, Counter> entry : sortedEntries()) {
+            if (top.size() >= limit) {
+                break;
+            }
+            Counter counter = entry.getValue();
+            top.add(new Entry(entry.getKey(), counter.weight, counter.events, counter.error));
+        }
+        return top;
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(capacity);
+            out.writeInt(counters.size());
+            for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().weight);
+                out.writeLong(entry.getValue().events);
+                out.writeLong(entry.getValue().error);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    public static TopKSketch fromBytes(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            TopKSketch sketch = new TopKSketch(in.readInt());
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                sketch.counters.put(in.readUTF(), new Counter(in.readLong(), in.readLong(), in.readLong()));
+            }
+            return sketch;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt top-k payload", e);
+        }
+    }
+
+    private void add(String key, long weight, long events, long error) {
+        if (key == null) {
+            return;
+        }
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.weight += weight;
+            counter.events += events;
+            return;
+        }
+        if (counters.size() < capacity) {
+            counters.put(key, new Counter(weight, events, error));
+            return;
+        }
+        Map.Entry<String, Counter> lightest = null;
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            if (lightest == null || entry.getValue().weight < lightest.getValue().weight) {
+                lightest = entry;
+            }
+        }
+        Counter evicted = counters.remove(lightest.getKey());
+        counters.put(key, new Counter(evicted.weight + weight, evicted.events + events, evicted.weight));
+    }
+
+    // The most an untracked key may have reached: nothing while there is still room, since every key
+    // seen so far is then tracked, otherwise the lightest counter.
+    private Counter floor() {
+        if (counters.size() < capacity) {
+            return new Counter(0L, 0L, 0L);
+        }
+        Counter lightest = null;
+        for (Counter counter : counters.values()) {
+            if (lightest == null || counter.weight < lightest.weight) {
+                lightest = counter;
+            }
+        }
+        return new Counter(lightest.weight, lightest.events, lightest.weight);
+    }
+
+    private List<Map.Entry<String, Counter>> sortedEntries() {
+        List<Map.Entry<String, Counter>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort(Map.Entry.comparingByValue(Comparator.comparingLong((Counter counter) -> counter.weight).reversed()));
+        return entries;
+    }
+
+    public record Entry(String key, long weight, long events, long error) {
+    }
+
+    private static final class Counter {
+        private long weight;
+        private long events;
+        private long error;
+
+        private Counter(long weight, long events, long error) {
+            this.weight = weight;
+            this.events = events;
+            this.error = error;
+        }
+
+        private Counter plus(Counter other) {
+            return new Counter(weight + other.weight, events + other.events, error + other.error);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.leaky.tokens.analyticsservice.sketch;
+
+import java.util.List;
+
+public final class UserUsageSketch {
+    private final HyperLogLog distinctUsers;
+    private final TopKSketch topUsers;
+
+    public UserUsageSketch(int precision, int topCapacity) {
+        this(new HyperLogLog(precision), new TopKSketch(topCapacity));
+    }
+
+    public UserUsageSketch(HyperLogLog distinctUsers, TopKSketch topUsers) {
+        this.distinctUsers = distinctUsers;
+        this.topUsers = topUsers;
+    }
+
+    public void add(String userId, long tokens) {
+        if (userId == null) {
+            return;
+        }
+        distinctUsers.add(userId);
+        topUsers.add(userId, tokens);
+    }
+
+    public void merge(UserUsageSketch other) {
+        distinctUsers.merge(other.distinctUsers);
+        topUsers.merge(other.topUsers);
+    }
+
+    public long distinctUsers() {
+        return distinctUsers.estimate();
+    }
+
+    public List<TopKSketch.Entry> topUsers(int limit) {
+        return topUsers.top(limit);
+    }
+
+    public byte[] distinctUsersBytes() {
+        return distinctUsers.toBytes();
+    }
+
+    public byte[] topUsersBytes() {
+        return topUsers.toBytes();
+    }
+}
@@ -0,0 +1,115 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Duration;
+
+import com.leaky.tokens.analyticsservice.sketch.HyperLogLog;
+import com.leaky.tokens.analyticsservice.sketch.TopKSketch;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Setter
+@Getter
+@Validated
+@ConfigurationProperties(prefix = "analytics.storage")
+public class AnalyticsStorageProperties {
+    @Valid
+    private ByProvider byProvider = new ByProvider();
+    @Valid
+    private ByUser byUser = new ByUser();
+    @Valid
+    private Rollup rollup = new Rollup();
+    @Valid
+    private Scan scan = new Scan();
+    @Valid
+    private Retention retention = new Retention();
+
+    @Setter
+    @Getter
+    public static class ByProvider {
+        @NotNull
+        private Layout layout = Layout.LEGACY;
+        private boolean dualWrite = true;
+        @NotNull
+        private TimeBucket bucket = TimeBucket.HOUR;
+        @Min(1)
+        private int fanOutParallelism = 8;
+        @Min(1)
+        private int maxRecentBuckets = 48;
+    }
+
+    @Setter
+    @Getter
+    public static class ByUser {
+        private boolean enabled = true;
+        private boolean rollupEnabled = true;
+        @NotNull
+        private TimeBucket bucket = TimeBucket.DAY;
+    }
+
+    @Setter
+    @Getter
+    public static class Rollup {
+        private boolean enabled = true;
+        @Min(4)
+        @Max(18)
+        private int sketchPrecision = HyperLogLog.DEFAULT_PRECISION;
+        @Min(1)
+        private int topUsersCapacity = TopKSketch.DEFAULT_CAPACITY;
+        @Min(1)
+        private int sketchRetainMinutes = 10;
+    }
+
+    @Setter
+    @Getter
+    public static class Scan {
+        @Min(1)
+        private int maxPageSize = 1000;
+        @Min(1)
+        private int exportFetchSize = 1000;
+    }
+
+    // A zero TTL keeps rows forever.
+    @Setter
+    @Getter
+    public static class Retention {
+        @NotNull
+        private Duration rawTtl = Duration.ofDays(30);
+        @NotNull
+        private Duration minuteRollupTtl = Duration.ofDays(90);
+        @NotNull
+        private Duration hourRollupTtl = Duration.ofDays(5 * 365);
+        private boolean downsampleEnabled = true;
+        @NotNull
+        private Duration downsampleLookback = Duration.ofHours(3);
+        @NotNull
+        private Duration downsampleDelay = Duration.ofMinutes(5);
+        private boolean applyTableOptions = false;
+
+        public int rawTtlSeconds() {
+            return seconds(rawTtl);
+        }
+
+        public int minuteRollupTtlSeconds() {
+            return seconds(minuteRollupTtl);
+        }
+
+        public int hourRollupTtlSeconds() {
+            return seconds(hourRollupTtl);
+        }
+
+        private static int seconds(Duration ttl) {
+            return Math.toIntExact(Math.max(0L, ttl.toSeconds()));
+        }
+    }
+
+    public enum Layout {
+        LEGACY,
+        BUCKETED
+    }
+}
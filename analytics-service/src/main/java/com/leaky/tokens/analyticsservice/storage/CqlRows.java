@@ -0,0 +1,65 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+// Non-blocking helpers over the driver's async API: no thread waits on a partition read.
+final class CqlRows {
+    private CqlRows() {
+    }
+
+    // Maps every row of an async result, following driver pages until the result is exhausted.
+    static <T> CompletableFuture<List<T>> collect(CompletionStage<AsyncResultSet> result, Function<Row, T> mapper) {
+        List<T> rows = new ArrayList<>();
+        return result.thenCompose(page -> drain(page, mapper, rows)).toCompletableFuture();
+    }
+
+    // Runs one query per input with at most `parallelism` in flight; results keep the input order.
+    static <I, T> CompletableFuture<List<T>> fanOut(List<I> inputs,
+                                                    int parallelism,
+                                                    Function<I, CompletableFuture<T>> query) {
+        Object[] results = new Object[inputs.size()];
+        int lanes = Math.max(1, Math.min(parallelism, inputs.size()));
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < inputs.size(); i += lanes) {
+                int index = i;
+                chain = chain.thenCompose(_ -> query.apply(inputs.get(index)))
+                    .thenAccept(result -> results[index] = result);
+            }
+            pending[lane] = chain;
+        }
+        return CompletableFuture.allOf(pending).thenApply(_ -> {
+            @SuppressWarnings("unchecked")
+            List<T> ordered = (List<T>) Arrays.asList(results);
+            return ordered;
+        });
+    }
+
+    static TokenUsageByProviderRecord byProviderRecord(String provider, Row row) {
+        return new TokenUsageByProviderRecord(
+            new TokenUsageByProviderKey(provider, row.getInstant("timestamp")),
+            row.getString("user_id"),
+            row.getLong("tokens"),
+            row.getBoolean("allowed")
+        );
+    }
+
+    private static <T> CompletionStage<List<T>> drain(AsyncResultSet page, Function<Row, T> mapper, List<T> rows) {
+        for (Row row : page.currentPage()) {
+            rows.add(mapper.apply(row));
+        }
+        if (page.hasMorePages()) {
+            return page.fetchNextPage().thenCompose(next -> drain(next, mapper, rows));
+        }
+        return CompletableFuture.completedFuture(rows);
+    }
+}
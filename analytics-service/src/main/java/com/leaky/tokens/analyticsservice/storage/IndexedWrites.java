@@ -0,0 +1,50 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Concurrent writes tagged with the first record each one covers, so a failure can name the
+// earliest record that may be missing instead of failing the whole input.
+final class IndexedWrites {
+    private final List<CompletableFuture<?>> futures = new ArrayList<>();
+    private final List<Integer> firstRecords = new ArrayList<>();
+
+    void add(int firstRecord, CompletableFuture<?> future) {
+        futures.add(future);
+        firstRecords.add(firstRecord);
+    }
+
+    // A failure that is itself a TokenUsageWriteException is offset by its own index.
+    CompletableFuture<Void> all() {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).handle((_, error) -> {
+            if (error == null) {
+                return null;
+            }
+            int failedIndex = Integer.MAX_VALUE;
+            Throwable cause = unwrap(error);
+            for (int i = 0; i < futures.size(); i++) {
+                CompletableFuture<?> future = futures.get(i);
+                if (!future.isCompletedExceptionally()) {
+                    continue;
+                }
+                Throwable failure = unwrap(future.exceptionNow());
+                int index = firstRecords.get(i);
+                if (failure instanceof TokenUsageWriteException nested) {
+                    index += nested.getFailedIndex();
+                    failure = nested.getCause();
+                }
+                if (index < failedIndex) {
+                    failedIndex = index;
+                    cause = failure;
+                }
+            }
+            throw new TokenUsageWriteException(failedIndex == Integer.MAX_VALUE ? 0 : failedIndex, cause);
+        });
+    }
+
+    static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
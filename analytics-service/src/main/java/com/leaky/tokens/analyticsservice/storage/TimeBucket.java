@@ -0,0 +1,43 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+public enum TimeBucket {
+    HOUR(ChronoUnit.HOURS),
+    DAY(ChronoUnit.DAYS),
+    MONTH(ChronoUnit.MONTHS);
+
+    private final ChronoUnit unit;
+
+    TimeBucket(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    public Instant start(Instant timestamp) {
+        if (this == MONTH) {
+            return timestamp.atZone(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1).toInstant();
+        }
+        return timestamp.truncatedTo(unit);
+    }
+
+    public Instant previous(Instant bucket) {
+        // Instant has no month arithmetic; UTC keeps every bucket boundary calendar-aligned.
+        return bucket.atZone(ZoneOffset.UTC).minus(1, unit).toInstant();
+    }
+
+    public List<Instant> covering(Instant start, Instant end) {
+        List<Instant> buckets = new ArrayList<>();
+        if (end.isBefore(start)) {
+            return buckets;
+        }
+        Instant first = start(start);
+        for (Instant bucket = start(end); !bucket.isBefore(first); bucket = previous(bucket)) {
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+}
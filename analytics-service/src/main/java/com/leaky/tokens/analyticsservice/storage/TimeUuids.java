@@ -0,0 +1,45 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Version 1 UUIDs carrying the event time instead of the wall clock, so rows cluster by when
+// the usage happened. Bounds use the same clock-seq/node extremes as CQL minTimeuuid/maxTimeuuid.
+public final class TimeUuids {
+    private static final long GREGORIAN_OFFSET = 0x01B21DD213814000L;
+    private static final long MIN_CLOCK_SEQ_AND_NODE = 0x8080808080808080L;
+    private static final long MAX_CLOCK_SEQ_AND_NODE = 0x7F7F7F7F7F7F7F7FL;
+
+    private TimeUuids() {
+    }
+
+    public static UUID of(Instant timestamp) {
+        return withLowBits(timestamp, ThreadLocalRandom.current().nextLong());
+    }
+
+    // Same event, same timeuuid: a redelivered event overwrites its row instead of adding one.
+    public static UUID of(Instant timestamp, UUID eventId) {
+        return eventId == null ? of(timestamp) : withLowBits(timestamp, eventId.getLeastSignificantBits());
+    }
+
+    public static UUID lowerBound(Instant timestamp) {
+        return new UUID(mostSignificantBits(timestamp), MIN_CLOCK_SEQ_AND_NODE);
+    }
+
+    public static UUID upperBound(Instant timestamp) {
+        return new UUID(mostSignificantBits(timestamp), MAX_CLOCK_SEQ_AND_NODE);
+    }
+
+    private static UUID withLowBits(Instant timestamp, long bits) {
+        return new UUID(mostSignificantBits(timestamp), (bits & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L);
+    }
+
+    private static long mostSignificantBits(Instant timestamp) {
+        long ticks = timestamp.getEpochSecond() * 10_000_000L + timestamp.getNano() / 100 + GREGORIAN_OFFSET;
+        return ((ticks & 0xFFFFFFFFL) << 32)
+            | (((ticks >>> 32) & 0xFFFFL) << 16)
+            | 0x1000L
+            | ((ticks >>> 48) & 0x0FFFL);
+    }
+}
@@ -0,0 +1,208 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchStatementBuilder;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Shared by both listeners: every statement is issued with executeAsync, so the writes for a record
+// or a batch proceed concurrently and the caller waits once for all of them. A failure is reported
+// as a TokenUsageWriteException naming the earliest record that may not be stored.
+@Component
+public class TokenUsageBatchWriter {
+    private static final String INSERT_EVENT =
+        "INSERT INTO token_usage_events (id, user_id, provider, tokens, allowed, timestamp) VALUES (?, ?, ?, ?, ?, ?) "
+            + "USING TTL ?";
+    private static final String INSERT_BY_PROVIDER =
+        "INSERT INTO token_usage_by_provider (provider, timestamp, user_id, tokens, allowed) VALUES (?, ?, ?, ?, ?) "
+            + "USING TTL ?";
+    private static final String INSERT_BY_PROVIDER_BUCKETED =
+        "INSERT INTO token_usage_by_provider_bucketed (provider, bucket, event_id, timestamp, user_id, tokens, allowed) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) USING TTL ?";
+    private static final String INSERT_BY_USER =
+        "INSERT INTO token_usage_by_user (user_id, bucket, event_id, provider, timestamp, tokens, allowed) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?) USING TTL ?";
+
+    private final CqlSession session;
+    private final TokenUsageByProviderStore byProviderStore;
+    private final TokenUsageByUserStore byUserStore;
+    private final TokenUsageRollupStore rollupStore;
+    private final TokenUsageUserRollupStore userRollupStore;
+    private final int maxStatementsPerBatch;
+    private final int rawTtlSeconds;
+    private volatile PreparedStatement insertEvent;
+    private volatile PreparedStatement insertByProvider;
+    private volatile PreparedStatement insertByProviderBucketed;
+    private volatile PreparedStatement insertByUser;
+
+    public TokenUsageBatchWriter(CqlSession session,
+                                 TokenUsageByProviderStore byProviderStore,
+                                 TokenUsageByUserStore byUserStore,
+                                 TokenUsageRollupStore rollupStore,
+                                 TokenUsageUserRollupStore userRollupStore,
+                                 AnalyticsStorageProperties properties,
+                                 @Value("${analytics.token-usage.batch.max-statements:100}") int maxStatementsPerBatch) {
+        this.session = session;
+        this.byProviderStore = byProviderStore;
+        this.byUserStore = byUserStore;
+        this.rollupStore = rollupStore;
+        this.userRollupStore = userRollupStore;
+        this.maxStatementsPerBatch = Math.max(1, maxStatementsPerBatch);
+        this.rawTtlSeconds = properties.getRetention().rawTtlSeconds();
+    }
+
+    public void write(List<TokenUsageRecord> records) {
+        try {
+            writeAsync(records).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    public CompletableFuture<Void> writeAsync(List<TokenUsageRecord> records) {
+        if (records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        prepareIfNeeded();
+        IndexedWrites pending = new IndexedWrites();
+
+        // token_usage_events is keyed by a random id, so every row is its own partition:
+        // write them concurrently rather than in a multi-partition batch.
+        for (int i = 0; i < records.size(); i++) {
+            TokenUsageRecord record = records.get(i);
+            pending.add(i, execute(insertEvent.bind(
+                record.getId(),
+                record.getUserId(),
+                record.getProvider(),
+                record.getTokens(),
+                record.isAllowed(),
+                record.getTimestamp(),
+                rawTtlSeconds
+            )));
+        }
+
+        if (byProviderStore.writesLegacy()) {
+            Map<String, List<IndexedStatement>> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                TokenUsageRecord record = records.get(i);
+                partitions.computeIfAbsent(record.getProvider(), key -> new ArrayList<>()).add(new IndexedStatement(
+                    i,
+                    insertByProvider.bind(
+                        record.getProvider(),
+                        record.getTimestamp(),
+                        record.getUserId(),
+                        record.getTokens(),
+                        record.isAllowed(),
+                        rawTtlSeconds
+                    )
+                ));
+            }
+            addBatches(pending, partitions);
+        }
+
+        if (byProviderStore.writesBucketed()) {
+            Map<TokenUsageByProviderBucketKey, List<IndexedStatement>> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                TokenUsageByProviderBucketRecord row = byProviderStore.toBucketRecord(records.get(i));
+                TokenUsageByProviderBucketKey key = row.getKey();
+                partitions.computeIfAbsent(
+                    new TokenUsageByProviderBucketKey(key.getProvider(), key.getBucket(), null),
+                    partition -> new ArrayList<>()
+                ).add(new IndexedStatement(i, insertByProviderBucketed.bind(
+                    key.getProvider(),
+                    key.getBucket(),
+                    key.getEventId(),
+                    row.getTimestamp(),
+                    row.getUserId(),
+                    row.getTokens(),
+                    row.isAllowed(),
+                    rawTtlSeconds
+                )));
+            }
+            addBatches(pending, partitions);
+        }
+
+        if (byUserStore.isEnabled()) {
+            Map<TokenUsageByUserKey, List<IndexedStatement>> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < records.size(); i++) {
+                TokenUsageRecord record = records.get(i);
+                if (record.getUserId() == null) {
+                    continue;
+                }
+                TokenUsageByUserRecord row = byUserStore.toRecord(record);
+                TokenUsageByUserKey key = row.getKey();
+                partitions.computeIfAbsent(
+                    new TokenUsageByUserKey(key.getUserId(), key.getBucket(), null),
+                    partition -> new ArrayList<>()
+                ).add(new IndexedStatement(i, insertByUser.bind(
+                    key.getUserId(),
+                    key.getBucket(),
+                    key.getEventId(),
+                    row.getProvider(),
+                    row.getTimestamp(),
+                    row.getTokens(),
+                    row.isAllowed(),
+                    rawTtlSeconds
+                )));
+            }
+            addBatches(pending, partitions);
+        }
+
+        pending.add(0, rollupStore.writeAsync(records));
+        pending.add(0, userRollupStore.writeAsync(records));
+
+        return pending.all();
+    }
+
+    // One unlogged batch per partition chunk keeps each batch on a single replica set. Statements
+    // are added in record order, so the first one in a chunk carries the chunk's lowest record.
+    private void addBatches(IndexedWrites pending, Map<?, List<IndexedStatement>> partitions) {
+        for (List<IndexedStatement> statements : partitions.values()) {
+            for (int from = 0; from < statements.size(); from += maxStatementsPerBatch) {
+                List<IndexedStatement> chunk = statements.subList(from, Math.min(statements.size(), from + maxStatementsPerBatch));
+                BatchStatementBuilder builder = BatchStatement.builder(DefaultBatchType.UNLOGGED);
+                for (IndexedStatement statement : chunk) {
+                    builder.addStatement(statement.statement());
+                }
+                pending.add(chunk.get(0).recordIndex(), execute(builder.build()));
+            }
+        }
+    }
+
+    private CompletableFuture<?> execute(Statement<?> statement) {
+        return session.executeAsync(statement).toCompletableFuture();
+    }
+
+    private void prepareIfNeeded() {
+        if (insertEvent == null) {
+            insertEvent = session.prepare(INSERT_EVENT);
+        }
+        if (insertByProvider == null) {
+            insertByProvider = session.prepare(INSERT_BY_PROVIDER);
+        }
+        if (insertByProviderBucketed == null) {
+            insertByProviderBucketed = session.prepare(INSERT_BY_PROVIDER_BUCKETED);
+        }
+        if (insertByUser == null) {
+            insertByUser = session.prepare(INSERT_BY_USER);
+        }
+    }
+
+    private record IndexedStatement(int recordIndex, BoundStatement statement) {
+    }
+}
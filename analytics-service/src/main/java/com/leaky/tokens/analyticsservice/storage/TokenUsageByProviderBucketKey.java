@@ -0,0 +1,50 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.CassandraType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageByProviderBucketKey implements Serializable {
+    @PrimaryKeyColumn(name = "provider", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String provider;
+
+    @PrimaryKeyColumn(name = "bucket", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant bucket;
+
+    @CassandraType(type = CassandraType.Name.TIMEUUID)
+    @PrimaryKeyColumn(name = "event_id", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.DESCENDING, ordinal = 2)
+    private UUID eventId;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageByProviderBucketKey that = (TokenUsageByProviderBucketKey) o;
+        return Objects.equals(provider, that.provider)
+            && Objects.equals(bucket, that.bucket)
+            && Objects.equals(eventId, that.eventId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(provider, bucket, eventId);
+    }
+}
@@ -0,0 +1,42 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("token_usage_by_provider_bucketed")
+public class TokenUsageByProviderBucketRecord {
+    @PrimaryKey
+    private TokenUsageByProviderBucketKey key;
+
+    @Column("timestamp")
+    private Instant timestamp;
+
+    @Column("user_id")
+    private String userId;
+
+    @Column("tokens")
+    private long tokens;
+
+    @Column("allowed")
+    private boolean allowed;
+
+    public TokenUsageByProviderRecord toByProviderRecord() {
+        return new TokenUsageByProviderRecord(
+            new TokenUsageByProviderKey(key.getProvider(), timestamp),
+            userId,
+            tokens,
+            allowed
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.cassandra.repository.CassandraRepository;
+import org.springframework.data.cassandra.repository.Query;
+
+public interface TokenUsageByProviderBucketRepository
+    extends CassandraRepository<TokenUsageByProviderBucketRecord, TokenUsageByProviderBucketKey> {
+    @Query("SELECT * FROM token_usage_by_provider_bucketed WHERE provider=?0 AND bucket=?1 LIMIT ?2")
+    List<TokenUsageByProviderBucketRecord> findRecentInBucket(String provider, Instant bucket, int limit);
+}
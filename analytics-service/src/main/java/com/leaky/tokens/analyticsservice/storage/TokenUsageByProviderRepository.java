@@ -1,7 +1,6 @@
 package com.leaky.tokens.analyticsservice.storage;
 
 import java.util.List;
-import java.time.Instant;
 
 import org.springframework.data.cassandra.repository.CassandraRepository;
 import org.springframework.data.cassandra.repository.Query;
@@ -9,7 +8,4 @@ import org.springframework.data.cassandra.repository.Query;
 public interface TokenUsageByProviderRepository extends CassandraRepository<TokenUsageByProviderRecord, TokenUsageByProviderKey> {
     @Query("SELECT * FROM token_usage_by_provider WHERE provider=?0 LIMIT ?1")
     List<TokenUsageByProviderRecord> findRecentByProvider(String provider, int limit);
-
-    @Query("SELECT * FROM token_usage_by_provider WHERE provider=?0 AND timestamp >= ?1 AND timestamp <= ?2 LIMIT ?3")
-    List<TokenUsageByProviderRecord> findByProviderAndTimestampRange(String provider, Instant start, Instant end, int limit);
 }
@@ -0,0 +1,113 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.springframework.stereotype.Component;
+
+// Reads provider usage for [from, to) newest-first without materializing the range: paged reads
+// hand the driver paging state back to the caller as a cursor, exports iterate the result set and
+// let the driver fetch one page at a time.
+@Component
+public class TokenUsageByProviderScanner {
+    private static final String SELECT_LEGACY =
+        "SELECT timestamp, user_id, tokens, allowed FROM token_usage_by_provider "
+            + "WHERE provider = ? AND timestamp >= ? AND timestamp < ?";
+    private static final String SELECT_BUCKETED =
+        "SELECT timestamp, user_id, tokens, allowed FROM token_usage_by_provider_bucketed "
+            + "WHERE provider = ? AND bucket = ? AND event_id >= ? AND event_id < ?";
+
+    private final CqlSession session;
+    private final AnalyticsStorageProperties properties;
+    private volatile PreparedStatement selectLegacy;
+    private volatile PreparedStatement selectBucketed;
+
+    public TokenUsageByProviderScanner(CqlSession session, AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.properties = properties;
+    }
+
+    public UsagePage page(String provider, Instant from, Instant to, int pageSize, String cursor) {
+        int size = Math.max(1, Math.min(pageSize, properties.getScan().getMaxPageSize()));
+        List<Instant> buckets = partitions(from, to);
+        long query = UsageCursor.query(provider, from, to);
+        UsageCursor position = cursor == null || cursor.isBlank() ? null : UsageCursor.decode(cursor);
+        int index = 0;
+        ByteBuffer pagingState = null;
+        if (position != null) {
+            index = position.query() == query ? buckets.indexOf(position.bucket()) : -1;
+            if (index < 0) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+            pagingState = position.pagingState();
+        }
+
+        List<TokenUsageByProviderRecord> items = new ArrayList<>(size);
+        for (; index < buckets.size(); index++) {
+            Instant bucket = buckets.get(index);
+            BoundStatement statement = select(provider, bucket, from, to)
+                .setPageSize(size - items.size())
+                .setPagingState(pagingState);
+            ResultSet rows = session.execute(statement);
+            for (Row row : rows.currentPage()) {
+                items.add(CqlRows.byProviderRecord(provider, row));
+            }
+            pagingState = rows.getExecutionInfo().getPagingState();
+            if (pagingState != null) {
+                return new UsagePage(items, new UsageCursor(query, bucket, pagingState).encode());
+            }
+            if (items.size() >= size) {
+                return new UsagePage(items, index + 1 < buckets.size()
+                    ? new UsageCursor(query, buckets.get(index + 1), null).encode()
+                    : null);
+            }
+        }
+        return new UsagePage(items, null);
+    }
+
+    public long export(String provider, Instant from, Instant to, Consumer<TokenUsageByProviderRecord> sink) {
+        long exported = 0L;
+        for (Instant bucket : partitions(from, to)) {
+            BoundStatement statement = select(provider, bucket, from, to)
+                .setPageSize(properties.getScan().getExportFetchSize());
+            for (Row row : session.execute(statement)) {
+                sink.accept(CqlRows.byProviderRecord(provider, row));
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    // Partitions to read newest-first; the legacy table is a single partition per provider.
+    private List<Instant> partitions(Instant from, Instant to) {
+        if (properties.getByProvider().getLayout() == AnalyticsStorageProperties.Layout.LEGACY) {
+            return Collections.singletonList(null);
+        }
+        return properties.getByProvider().getBucket().covering(from, to);
+    }
+
+    private BoundStatement select(String provider, Instant bucket, Instant from, Instant to) {
+        if (bucket == null) {
+            if (selectLegacy == null) {
+                selectLegacy = session.prepare(SELECT_LEGACY);
+            }
+            return selectLegacy.bind(provider, from, to);
+        }
+        if (selectBucketed == null) {
+            selectBucketed = session.prepare(SELECT_BUCKETED);
+        }
+        return selectBucketed.bind(provider, bucket, TimeUuids.lowerBound(from), TimeUuids.lowerBound(to));
+    }
+
+    public record UsagePage(List<TokenUsageByProviderRecord> items, String nextCursor) {
+    }
+}
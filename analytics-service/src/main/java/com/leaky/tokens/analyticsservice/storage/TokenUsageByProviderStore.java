@@ -0,0 +1,154 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TokenUsageByProviderStore {
+    private static final Comparator<TokenUsageByProviderRecord> NEWEST_FIRST =
+        Comparator.comparing((TokenUsageByProviderRecord record) -> record.getKey().getTimestamp()).reversed();
+    private static final String SELECT_LEGACY_RANGE =
+        "SELECT timestamp, user_id, tokens, allowed FROM token_usage_by_provider "
+            + "WHERE provider = ? AND timestamp >= ? AND timestamp <= ? LIMIT ?";
+    private static final String SELECT_BUCKET_RANGE =
+        "SELECT timestamp, user_id, tokens, allowed FROM token_usage_by_provider_bucketed "
+            + "WHERE provider = ? AND bucket = ? AND event_id >= ? AND event_id <= ? LIMIT ?";
+
+    private final CqlSession session;
+    private final TokenUsageByProviderRepository legacyRepository;
+    private final TokenUsageByProviderBucketRepository bucketRepository;
+    private final AnalyticsStorageProperties.ByProvider properties;
+    private volatile PreparedStatement selectLegacyRange;
+    private volatile PreparedStatement selectBucketRange;
+
+    public TokenUsageByProviderStore(CqlSession session,
+                                     TokenUsageByProviderRepository legacyRepository,
+                                     TokenUsageByProviderBucketRepository bucketRepository,
+                                     AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.legacyRepository = legacyRepository;
+        this.bucketRepository = bucketRepository;
+        this.properties = properties.getByProvider();
+    }
+
+    public void save(TokenUsageRecord record) {
+        if (writesLegacy()) {
+            legacyRepository.save(new TokenUsageByProviderRecord(
+                new TokenUsageByProviderKey(record.getProvider(), record.getTimestamp()),
+                record.getUserId(),
+                record.getTokens(),
+                record.isAllowed()
+            ));
+        }
+        if (writesBucketed()) {
+            bucketRepository.save(toBucketRecord(record));
+        }
+    }
+
+    public TokenUsageByProviderBucketRecord toBucketRecord(TokenUsageRecord record) {
+        Instant timestamp = record.getTimestamp();
+        return new TokenUsageByProviderBucketRecord(
+            new TokenUsageByProviderBucketKey(record.getProvider(), bucket().start(timestamp), TimeUuids.of(timestamp, record.getId())),
+            timestamp,
+            record.getUserId(),
+            record.getTokens(),
+            record.isAllowed()
+        );
+    }
+
+    public List<TokenUsageByProviderRecord> findRecentByProvider(String provider, int limit) {
+        if (properties.getLayout() == AnalyticsStorageProperties.Layout.LEGACY) {
+            return legacyRepository.findRecentByProvider(provider, limit);
+        }
+        List<TokenUsageByProviderRecord> result = new ArrayList<>(limit);
+        Instant bucket = bucket().start(Instant.now());
+        for (int i = 0; i < properties.getMaxRecentBuckets() && result.size() < limit; i++) {
+            for (TokenUsageByProviderBucketRecord row : bucketRepository.findRecentInBucket(provider, bucket, limit - result.size())) {
+                result.add(row.toByProviderRecord());
+            }
+            bucket = bucket().previous(bucket);
+        }
+        return result;
+    }
+
+    public List<TokenUsageByProviderRecord> findByProviderAndTimestampRange(String provider,
+                                                                           Instant start,
+                                                                           Instant end,
+                                                                           int limit) {
+        return findByProviderAndTimestampRangeAsync(provider, start, end, limit).join();
+    }
+
+    // Bucket reads go out through the driver's async API, at most `fan-out-parallelism` at a time,
+    // and are merged newest-first once all of them have completed.
+    public CompletableFuture<List<TokenUsageByProviderRecord>> findByProviderAndTimestampRangeAsync(String provider,
+                                                                                                  Instant start,
+                                                                                                  Instant end,
+                                                                                                  int limit) {
+        prepareIfNeeded();
+        if (properties.getLayout() == AnalyticsStorageProperties.Layout.LEGACY) {
+            return CqlRows.collect(
+                session.executeAsync(selectLegacyRange.bind(provider, start, end, limit)),
+                row -> CqlRows.byProviderRecord(provider, row)
+            );
+        }
+        return CqlRows.fanOut(
+            bucket().covering(start, end),
+            properties.getFanOutParallelism(),
+            bucket -> findInBucket(provider, bucket, start, end, limit)
+        ).thenApply(buckets -> {
+            List<TokenUsageByProviderRecord> merged = new ArrayList<>();
+            for (List<TokenUsageByProviderRecord> rows : buckets) {
+                merged.addAll(rows);
+            }
+            if (buckets.size() > 1) {
+                merged.sort(NEWEST_FIRST);
+            }
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        });
+    }
+
+    public boolean writesLegacy() {
+        return properties.getLayout() == AnalyticsStorageProperties.Layout.LEGACY || properties.isDualWrite();
+    }
+
+    public boolean writesBucketed() {
+        return properties.getLayout() == AnalyticsStorageProperties.Layout.BUCKETED || properties.isDualWrite();
+    }
+
+    public TimeBucket bucket() {
+        return properties.getBucket();
+    }
+
+    private CompletableFuture<List<TokenUsageByProviderRecord>> findInBucket(String provider,
+                                                                             Instant bucket,
+                                                                             Instant start,
+                                                                             Instant end,
+                                                                             int limit) {
+        return CqlRows.collect(
+            session.executeAsync(selectBucketRange.bind(
+                provider,
+                bucket,
+                TimeUuids.lowerBound(start),
+                TimeUuids.upperBound(end),
+                limit
+            )),
+            row -> CqlRows.byProviderRecord(provider, row)
+        );
+    }
+
+    private void prepareIfNeeded() {
+        if (selectLegacyRange == null) {
+            selectLegacyRange = session.prepare(SELECT_LEGACY_RANGE);
+        }
+        if (selectBucketRange == null) {
+            selectBucketRange = session.prepare(SELECT_BUCKET_RANGE);
+        }
+    }
+}
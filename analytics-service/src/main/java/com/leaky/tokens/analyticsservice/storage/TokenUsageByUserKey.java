@@ -0,0 +1,50 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.CassandraType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageByUserKey implements Serializable {
+    @PrimaryKeyColumn(name = "user_id", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String userId;
+
+    @PrimaryKeyColumn(name = "bucket", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant bucket;
+
+    @CassandraType(type = CassandraType.Name.TIMEUUID)
+    @PrimaryKeyColumn(name = "event_id", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.DESCENDING, ordinal = 2)
+    private UUID eventId;
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageByUserKey that = (TokenUsageByUserKey) o;
+        return Objects.equals(userId, that.userId)
+            && Objects.equals(bucket, that.bucket)
+            && Objects.equals(eventId, that.eventId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, bucket, eventId);
+    }
+}
@@ -0,0 +1,33 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("token_usage_by_user")
+public class TokenUsageByUserRecord {
+    @PrimaryKey
+    private TokenUsageByUserKey key;
+
+    @Column("provider")
+    private String provider;
+
+    @Column("timestamp")
+    private Instant timestamp;
+
+    @Column("tokens")
+    private long tokens;
+
+    @Column("allowed")
+    private boolean allowed;
+}
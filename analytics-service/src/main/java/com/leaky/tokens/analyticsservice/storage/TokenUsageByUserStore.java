@@ -0,0 +1,105 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import org.springframework.stereotype.Component;
+
+// Usage partitioned by (user, time bucket) so per-user views read a few partitions instead of
+// scanning every provider.
+@Component
+public class TokenUsageByUserStore {
+    private static final String SELECT_BUCKET_RANGE =
+        "SELECT event_id, provider, timestamp, tokens, allowed FROM token_usage_by_user "
+            + "WHERE user_id = ? AND bucket = ? AND event_id >= ? AND event_id <= ? LIMIT ?";
+
+    private final CqlSession session;
+    private final TokenUsageByUserRepository repository;
+    private final AnalyticsStorageProperties.ByUser properties;
+    private final int fanOutParallelism;
+    private volatile PreparedStatement selectBucketRange;
+
+    public TokenUsageByUserStore(CqlSession session,
+                                 TokenUsageByUserRepository repository,
+                                 AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.repository = repository;
+        this.properties = properties.getByUser();
+        this.fanOutParallelism = properties.getByProvider().getFanOutParallelism();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public void save(TokenUsageRecord record) {
+        if (isEnabled() && record.getUserId() != null) {
+            repository.save(toRecord(record));
+        }
+    }
+
+    public TokenUsageByUserRecord toRecord(TokenUsageRecord record) {
+        Instant timestamp = record.getTimestamp();
+        return new TokenUsageByUserRecord(
+            new TokenUsageByUserKey(record.getUserId(), bucket().start(timestamp), TimeUuids.of(timestamp, record.getId())),
+            record.getProvider(),
+            timestamp,
+            record.getTokens(),
+            record.isAllowed()
+        );
+    }
+
+    public List<TokenUsageByUserRecord> findByUserAndTimestampRange(String userId, Instant start, Instant end, int limit) {
+        return findByUserAndTimestampRangeAsync(userId, start, end, limit).join();
+    }
+
+    // Like the bucketed provider path: bucket reads go out through the async driver, at most
+    // `fan-out-parallelism` at a time. Buckets come back newest-first and rows cluster newest-first
+    // within a bucket, so concatenating them keeps the newest `limit` rows.
+    public CompletableFuture<List<TokenUsageByUserRecord>> findByUserAndTimestampRangeAsync(String userId,
+                                                                                          Instant start,
+                                                                                          Instant end,
+                                                                                          int limit) {
+        prepareIfNeeded();
+        return CqlRows.fanOut(
+            bucket().covering(start, end),
+            fanOutParallelism,
+            bucket -> CqlRows.collect(
+                session.executeAsync(selectBucketRange.bind(
+                    userId,
+                    bucket,
+                    TimeUuids.lowerBound(start),
+                    TimeUuids.upperBound(end),
+                    limit
+                )),
+                row -> new TokenUsageByUserRecord(
+                    new TokenUsageByUserKey(userId, bucket, row.getUuid("event_id")),
+                    row.getString("provider"),
+                    row.getInstant("timestamp"),
+                    row.getLong("tokens"),
+                    row.getBoolean("allowed")
+                )
+            )
+        ).thenApply(buckets -> {
+            List<TokenUsageByUserRecord> merged = new ArrayList<>();
+            for (List<TokenUsageByUserRecord> rows : buckets) {
+                merged.addAll(rows);
+            }
+            return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+        });
+    }
+
+    public TimeBucket bucket() {
+        return properties.getBucket();
+    }
+
+    private void prepareIfNeeded() {
+        if (selectBucketRange == null) {
+            selectBucketRange = session.prepare(SELECT_BUCKET_RANGE);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Folds completed hours of minute rollups into token_usage_hour_rollup and drops minute partitions
+// older than the minute TTL. Every run re-processes the whole lookback, so a missed run or a late
+// minute update is picked up by the next one; the hour rows are plain upserts.
+@Component
+@ConditionalOnProperty(name = "analytics.storage.retention.downsample-enabled", havingValue = "true", matchIfMissing = true)
+public class TokenUsageDownsampleJob {
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsageDownsampleJob.class);
+
+    private final TokenUsageRollupStore rollupStore;
+    private final TokenUsageHourRollupStore hourStore;
+    private final AnalyticsStorageProperties.Retention properties;
+    private final Clock clock;
+
+    @Autowired
+    public TokenUsageDownsampleJob(TokenUsageRollupStore rollupStore,
+                                   TokenUsageHourRollupStore hourStore,
+                                   AnalyticsStorageProperties properties) {
+        this(rollupStore, hourStore, properties, Clock.systemUTC());
+    }
+
+    TokenUsageDownsampleJob(TokenUsageRollupStore rollupStore,
+                            TokenUsageHourRollupStore hourStore,
+                            AnalyticsStorageProperties properties,
+                            Clock clock) {
+        this.rollupStore = rollupStore;
+        this.hourStore = hourStore;
+        this.properties = properties.getRetention();
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.storage.retention.downsample-interval:PT15M}")
+    public void run() {
+        if (!rollupStore.isEnabled()) {
+            return;
+        }
+        try {
+            DownsampleResult result = runOnce(clock.instant());
+            if (result.hours() > 0 || result.purgedPartitions() > 0) {
+                logger.info("Downsampled {} provider hours, purged {} minute rollup partitions",
+                    result.hours(), result.purgedPartitions());
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Usage downsampling failed", ex);
+        }
+    }
+
+    DownsampleResult runOnce(Instant now) {
+        Instant firstHour = now.minus(properties.getDownsampleLookback()).truncatedTo(ChronoUnit.HOURS);
+        Instant lastHour = now.minus(properties.getDownsampleDelay()).truncatedTo(ChronoUnit.HOURS).minus(Duration.ofHours(1));
+        Instant firstDay = TimeBucket.DAY.start(firstHour);
+        Duration minuteTtl = properties.getMinuteRollupTtl();
+        Instant purgeBefore = minuteTtl.isZero() ? null : TimeBucket.DAY.start(now.minus(minuteTtl));
+
+        List<TokenUsageRollupStore.MinutePartition> partitions = rollupStore.findMinutePartitionsAsync().join();
+        Set<String> providers = new TreeSet<>();
+        List<CompletableFuture<Void>> purges = new ArrayList<>();
+        for (TokenUsageRollupStore.MinutePartition partition : partitions) {
+            if (purgeBefore != null && partition.day().isBefore(purgeBefore)) {
+                purges.add(rollupStore.deleteMinutePartitionAsync(partition));
+            } else if (!partition.day().isBefore(firstDay) && !partition.day().isAfter(lastHour)) {
+                providers.add(partition.provider());
+            }
+        }
+
+        List<CompletableFuture<Boolean>> hours = new ArrayList<>();
+        for (String provider : providers) {
+            for (Instant hour = firstHour; !hour.isAfter(lastHour); hour = hour.plus(Duration.ofHours(1))) {
+                hours.add(downsample(provider, hour));
+            }
+        }
+        CompletableFuture.allOf(hours.toArray(CompletableFuture[]::new)).join();
+        CompletableFuture.allOf(purges.toArray(CompletableFuture[]::new)).join();
+
+        int written = (int) hours.stream().filter(CompletableFuture::join).count();
+        return new DownsampleResult(written, purges.size());
+    }
+
+    private CompletableFuture<Boolean> downsample(String provider, Instant hour) {
+        Instant lastMinute = hour.plus(Duration.ofMinutes(59));
+        CompletableFuture<List<TokenUsageMinuteRollupRecord>> rollups = rollupStore.findRollupsAsync(provider, hour, lastMinute);
+        CompletableFuture<UserUsageSketch> users = rollupStore.findUserSketchAsync(provider, hour, lastMinute);
+        return rollups.thenCombine(users, (minutes, sketch) -> {
+            long tokens = 0L;
+            long allowed = 0L;
+            long denied = 0L;
+            for (TokenUsageMinuteRollupRecord minute : minutes) {
+                tokens += minute.getTotalTokens();
+                allowed += minute.getAllowedEvents();
+                denied += minute.getDeniedEvents();
+            }
+            if (allowed + denied == 0L) {
+                return null;
+            }
+            return new TokenUsageHourRollupRecord(
+                TokenUsageHourRollupKey.of(provider, hour),
+                tokens,
+                allowed,
+                denied,
+                ByteBuffer.wrap(sketch.distinctUsersBytes()),
+                ByteBuffer.wrap(sketch.topUsersBytes())
+            );
+        }).thenCompose(record -> record == null
+            ? CompletableFuture.completedFuture(false)
+            : hourStore.writeAsync(record).thenApply(_ -> true));
+    }
+
+    record DownsampleResult(int hours, int purgedPartitions) {
+    }
+}
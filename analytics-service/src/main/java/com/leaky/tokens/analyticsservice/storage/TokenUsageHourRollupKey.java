@@ -0,0 +1,51 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageHourRollupKey implements Serializable {
+    @PrimaryKeyColumn(name = "provider", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String provider;
+
+    @PrimaryKeyColumn(name = "month", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant month;
+
+    @PrimaryKeyColumn(name = "hour", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 2)
+    private Instant hour;
+
+    public static TokenUsageHourRollupKey of(String provider, Instant hour) {
+        return new TokenUsageHourRollupKey(provider, TimeBucket.MONTH.start(hour), hour);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageHourRollupKey that = (TokenUsageHourRollupKey) o;
+        return Objects.equals(provider, that.provider)
+            && Objects.equals(month, that.month)
+            && Objects.equals(hour, that.hour);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(provider, month, hour);
+    }
+}
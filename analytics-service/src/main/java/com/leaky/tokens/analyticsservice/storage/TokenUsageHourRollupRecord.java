@@ -0,0 +1,42 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.ByteBuffer;
+
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+// Written whole by the downsample job from the summed minute rows of the hour.
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("token_usage_hour_rollup")
+public class TokenUsageHourRollupRecord {
+    @PrimaryKey
+    private TokenUsageHourRollupKey key;
+
+    @Column("total_tokens")
+    private long totalTokens;
+
+    @Column("allowed_events")
+    private long allowedEvents;
+
+    @Column("denied_events")
+    private long deniedEvents;
+
+    @Column("users_hll")
+    private ByteBuffer usersHll;
+
+    @Column("top_users")
+    private ByteBuffer topUsers;
+
+    public UserUsageSketch toSketch() {
+        return TokenUsageMinutePartialRecord.toSketch(usersHll, topUsers);
+    }
+}
@@ -0,0 +1,86 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TokenUsageHourRollupStore {
+    private static final String INSERT_HOUR =
+        "INSERT INTO token_usage_hour_rollup (provider, month, hour, total_tokens, allowed_events, denied_events, "
+            + "users_hll, top_users) VALUES (?, ?, ?, ?, ?, ?, ?, ?) USING TTL ?";
+    private static final String SELECT_HOURS =
+        "SELECT hour, total_tokens, allowed_events, denied_events, users_hll, top_users FROM token_usage_hour_rollup "
+            + "WHERE provider = ? AND month = ? AND hour >= ? AND hour <= ?";
+
+    private final CqlSession session;
+    private final int ttlSeconds;
+    private final int fanOutParallelism;
+    private volatile PreparedStatement insertHour;
+    private volatile PreparedStatement selectHours;
+
+    public TokenUsageHourRollupStore(CqlSession session, AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.ttlSeconds = properties.getRetention().hourRollupTtlSeconds();
+        this.fanOutParallelism = properties.getByProvider().getFanOutParallelism();
+    }
+
+    // Re-running the job for the same hour overwrites the row with the same values.
+    public CompletableFuture<Void> writeAsync(TokenUsageHourRollupRecord record) {
+        prepareIfNeeded();
+        TokenUsageHourRollupKey key = record.getKey();
+        return session.executeAsync(insertHour.bind(
+            key.getProvider(),
+            key.getMonth(),
+            key.getHour(),
+            record.getTotalTokens(),
+            record.getAllowedEvents(),
+            record.getDeniedEvents(),
+            record.getUsersHll(),
+            record.getTopUsers(),
+            ttlSeconds
+        )).toCompletableFuture().thenApply(_ -> null);
+    }
+
+    // Oldest hour first.
+    public CompletableFuture<List<TokenUsageHourRollupRecord>> findHoursAsync(String provider, Instant fromHour, Instant toHour) {
+        prepareIfNeeded();
+        return CqlRows.fanOut(
+            TimeBucket.MONTH.covering(fromHour, toHour),
+            fanOutParallelism,
+            month -> CqlRows.collect(
+                session.executeAsync(selectHours.bind(provider, month, fromHour, toHour)),
+                row -> new TokenUsageHourRollupRecord(
+                    new TokenUsageHourRollupKey(provider, month, row.getInstant("hour")),
+                    row.getLong("total_tokens"),
+                    row.getLong("allowed_events"),
+                    row.getLong("denied_events"),
+                    row.getByteBuffer("users_hll"),
+                    row.getByteBuffer("top_users")
+                )
+            )
+        ).thenApply(months -> {
+            List<TokenUsageHourRollupRecord> hours = new ArrayList<>();
+            for (List<TokenUsageHourRollupRecord> month : months) {
+                hours.addAll(month);
+            }
+            hours.sort(Comparator.comparing(record -> record.getKey().getHour()));
+            return hours;
+        });
+    }
+
+    private void prepareIfNeeded() {
+        if (insertHour == null) {
+            insertHour = session.prepare(INSERT_HOUR);
+        }
+        if (selectHours == null) {
+            selectHours = session.prepare(SELECT_HOURS);
+        }
+    }
+}
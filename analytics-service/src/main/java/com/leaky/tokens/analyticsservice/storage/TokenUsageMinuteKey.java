@@ -0,0 +1,52 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageMinuteKey implements Serializable {
+    @PrimaryKeyColumn(name = "provider", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String provider;
+
+    @PrimaryKeyColumn(name = "day", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant day;
+
+    @PrimaryKeyColumn(name = "minute", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 2)
+    private Instant minute;
+
+    public static TokenUsageMinuteKey of(String provider, Instant timestamp) {
+        return new TokenUsageMinuteKey(provider, TimeBucket.DAY.start(timestamp), timestamp.truncatedTo(ChronoUnit.MINUTES));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageMinuteKey that = (TokenUsageMinuteKey) o;
+        return Objects.equals(provider, that.provider)
+            && Objects.equals(day, that.day)
+            && Objects.equals(minute, that.minute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(provider, day, minute);
+    }
+}
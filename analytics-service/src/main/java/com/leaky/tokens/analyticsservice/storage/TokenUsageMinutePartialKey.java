@@ -0,0 +1,62 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageMinutePartialKey implements Serializable {
+    @PrimaryKeyColumn(name = "provider", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String provider;
+
+    @PrimaryKeyColumn(name = "day", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant day;
+
+    @PrimaryKeyColumn(name = "minute", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 2)
+    private Instant minute;
+
+    @PrimaryKeyColumn(name = "kafka_partition", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 3)
+    private int kafkaPartition;
+
+    public static TokenUsageMinutePartialKey of(TokenUsageRecord record) {
+        TokenUsageMinuteKey minute = TokenUsageMinuteKey.of(record.getProvider(), record.getTimestamp());
+        Integer kafkaPartition = record.getKafkaPartition();
+        return new TokenUsageMinutePartialKey(
+            minute.getProvider(),
+            minute.getDay(),
+            minute.getMinute(),
+            kafkaPartition == null ? TokenUsageRecord.NO_KAFKA_PARTITION : kafkaPartition
+        );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageMinutePartialKey that = (TokenUsageMinutePartialKey) o;
+        return Objects.equals(provider, that.provider)
+            && Objects.equals(day, that.day)
+            && Objects.equals(minute, that.minute)
+            && kafkaPartition == that.kafkaPartition;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(provider, day, minute, kafkaPartition);
+    }
+}
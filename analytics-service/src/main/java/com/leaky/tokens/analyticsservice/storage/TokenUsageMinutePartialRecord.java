@@ -0,0 +1,63 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.ByteBuffer;
+
+import com.leaky.tokens.analyticsservice.sketch.HyperLogLog;
+import com.leaky.tokens.analyticsservice.sketch.TopKSketch;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+// One provider minute as seen from one Kafka partition. Only the consumer that owns the partition
+// writes the row, and it rewrites it whole, so applied_offset tells a redelivered record apart from
+// a new one and a retried write is idempotent. Reads sum the rows of every partition.
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("token_usage_minute_partial")
+public class TokenUsageMinutePartialRecord {
+    @PrimaryKey
+    private TokenUsageMinutePartialKey key;
+
+    @Column("total_tokens")
+    private long totalTokens;
+
+    @Column("allowed_events")
+    private long allowedEvents;
+
+    @Column("denied_events")
+    private long deniedEvents;
+
+    @Column("applied_offset")
+    private long appliedOffset;
+
+    @Column("users_hll")
+    private ByteBuffer usersHll;
+
+    @Column("top_users")
+    private ByteBuffer topUsers;
+
+    public UserUsageSketch toSketch() {
+        return toSketch(usersHll, topUsers);
+    }
+
+    static UserUsageSketch toSketch(ByteBuffer usersHll, ByteBuffer topUsers) {
+        return new UserUsageSketch(
+            HyperLogLog.fromBytes(bytes(usersHll)),
+            TopKSketch.fromBytes(bytes(topUsers))
+        );
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        ByteBuffer copy = buffer.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+}
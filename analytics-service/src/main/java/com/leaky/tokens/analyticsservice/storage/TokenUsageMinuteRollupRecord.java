@@ -0,0 +1,21 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// A provider minute summed over the token_usage_minute_partial rows of every Kafka partition.
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenUsageMinuteRollupRecord {
+    private TokenUsageMinuteKey key;
+
+    private long totalTokens;
+
+    private long allowedEvents;
+
+    private long deniedEvents;
+}
@@ -6,6 +6,7 @@ import java.util.UUID;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.cassandra.core.mapping.Column;
 import org.springframework.data.cassandra.core.mapping.PrimaryKey;
 import org.springframework.data.cassandra.core.mapping.Table;
@@ -13,6 +14,8 @@ import org.springframework.data.cassandra.core.mapping.Table;
 @Data
 @Table("token_usage_events")
 public class TokenUsageRecord {
+    public static final int NO_KAFKA_PARTITION = -1;
+
     @PrimaryKey
     private UUID id;
 
@@ -30,4 +33,11 @@ public class TokenUsageRecord {
 
     @Column("timestamp")
     private Instant timestamp;
+
+    // Where the event was consumed from; rollups use it to skip records they already applied.
+    @Transient
+    private Integer kafkaPartition;
+
+    @Transient
+    private Long kafkaOffset;
 }
@@ -0,0 +1,330 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import org.springframework.stereotype.Component;
+
+@Component
+public class TokenUsageRollupStore {
+    private static final String INSERT_PARTIAL =
+        "INSERT INTO token_usage_minute_partial (provider, day, minute, kafka_partition, total_tokens, allowed_events, "
+            + "denied_events, applied_offset, users_hll, top_users) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "USING TIMESTAMP ? AND TTL ?";
+    private static final String SELECT_PARTIAL =
+        "SELECT total_tokens, allowed_events, denied_events, applied_offset, users_hll, top_users, "
+            + "WRITETIME(applied_offset) AS written_at FROM token_usage_minute_partial "
+            + "WHERE provider = ? AND day = ? AND minute = ? AND kafka_partition = ?";
+    private static final String SELECT_ROLLUPS =
+        "SELECT minute, total_tokens, allowed_events, denied_events FROM token_usage_minute_partial "
+            + "WHERE provider = ? AND day = ? AND minute >= ? AND minute <= ?";
+    private static final String SELECT_PARTITIONS = "SELECT DISTINCT provider, day FROM token_usage_minute_partial";
+    private static final String DELETE_PARTITION = "DELETE FROM token_usage_minute_partial WHERE provider = ? AND day = ?";
+    private static final String SELECT_SKETCHES =
+        "SELECT users_hll, top_users FROM token_usage_minute_partial "
+            + "WHERE provider = ? AND day = ? AND minute >= ? AND minute <= ?";
+    private static final long NO_OFFSET = -1L;
+
+    private final CqlSession session;
+    private final AnalyticsStorageProperties.Rollup properties;
+    private final int fanOutParallelism;
+    private final int rollupTtlSeconds;
+    private final Map<TokenUsageMinutePartialKey, CompletableFuture<Partial>> partials = new ConcurrentHashMap<>();
+    private volatile PreparedStatement insertPartial;
+    private volatile PreparedStatement selectPartial;
+    private volatile PreparedStatement selectRollups;
+    private volatile PreparedStatement selectSketches;
+    private volatile PreparedStatement selectPartitions;
+    private volatile PreparedStatement deletePartition;
+
+    public TokenUsageRollupStore(CqlSession session, AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.properties = properties.getRollup();
+        this.fanOutParallelism = properties.getByProvider().getFanOutParallelism();
+        this.rollupTtlSeconds = properties.getRetention().minuteRollupTtlSeconds();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public void record(TokenUsageRecord record) {
+        writeAsync(List.of(record)).join();
+    }
+
+    // Each (provider minute, Kafka partition) row is rewritten whole from its last stored state plus
+    // the records past its applied_offset, so a redelivered batch adds nothing twice. The new state is
+    // kept in memory only once the write succeeds; a failure names the earliest record of the row.
+    public CompletableFuture<Void> writeAsync(List<TokenUsageRecord> records) {
+        if (!isEnabled() || records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        prepareIfNeeded();
+        Map<TokenUsageMinutePartialKey, List<TokenUsageRecord>> rows = new LinkedHashMap<>();
+        Map<TokenUsageMinutePartialKey, Integer> firstRecords = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            TokenUsageRecord record = records.get(i);
+            TokenUsageMinutePartialKey key = TokenUsageMinutePartialKey.of(record);
+            rows.computeIfAbsent(key, row -> new ArrayList<>()).add(record);
+            firstRecords.putIfAbsent(key, i);
+        }
+
+        IndexedWrites pending = new IndexedWrites();
+        for (Map.Entry<TokenUsageMinutePartialKey, List<TokenUsageRecord>> row : rows.entrySet()) {
+            pending.add(firstRecords.get(row.getKey()), writePartial(row.getKey(), row.getValue()));
+        }
+        evictPartialsBefore(Instant.now().minus(Duration.ofMinutes(properties.getSketchRetainMinutes())));
+        return pending.all();
+    }
+
+    public List<TokenUsageMinuteRollupRecord> findRollups(String provider, Instant fromMinute, Instant toMinute) {
+        return findRollupsAsync(provider, fromMinute, toMinute).join();
+    }
+
+    public CompletableFuture<List<TokenUsageMinuteRollupRecord>> findRollupsAsync(String provider,
+                                                                                Instant fromMinute,
+                                                                                Instant toMinute) {
+        prepareIfNeeded();
+        return CqlRows.fanOut(
+            TimeBucket.DAY.covering(fromMinute, toMinute),
+            fanOutParallelism,
+            day -> CqlRows.collect(
+                session.executeAsync(selectRollups.bind(provider, day, fromMinute, toMinute)),
+                row -> new TokenUsageMinuteRollupRecord(
+                    new TokenUsageMinuteKey(provider, day, row.getInstant("minute")),
+                    row.getLong("total_tokens"),
+                    row.getLong("allowed_events"),
+                    row.getLong("denied_events")
+                )
+            )
+        ).thenApply(days -> {
+            // Rows cluster by minute, then Kafka partition, so the rows of one minute are adjacent.
+            List<TokenUsageMinuteRollupRecord> rows = new ArrayList<>();
+            for (List<TokenUsageMinuteRollupRecord> day : days) {
+                TokenUsageMinuteRollupRecord current = null;
+                for (TokenUsageMinuteRollupRecord row : day) {
+                    if (current != null && current.getKey().equals(row.getKey())) {
+                        current.setTotalTokens(current.getTotalTokens() + row.getTotalTokens());
+                        current.setAllowedEvents(current.getAllowedEvents() + row.getAllowedEvents());
+                        current.setDeniedEvents(current.getDeniedEvents() + row.getDeniedEvents());
+                    } else {
+                        current = row;
+                        rows.add(row);
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    public UserUsageSketch findUserSketch(String provider, Instant fromMinute, Instant toMinute) {
+        return findUserSketchAsync(provider, fromMinute, toMinute).join();
+    }
+
+    public CompletableFuture<UserUsageSketch> findUserSketchAsync(String provider, Instant fromMinute, Instant toMinute) {
+        prepareIfNeeded();
+        return CqlRows.fanOut(
+            TimeBucket.DAY.covering(fromMinute, toMinute),
+            fanOutParallelism,
+            day -> CqlRows.collect(
+                session.executeAsync(selectSketches.bind(provider, day, fromMinute, toMinute)),
+                row -> TokenUsageMinutePartialRecord.toSketch(
+                    row.getByteBuffer("users_hll"),
+                    row.getByteBuffer("top_users")
+                )
+            )
+        ).thenApply(days -> {
+            UserUsageSketch merged = newSketch();
+            for (List<UserUsageSketch> day : days) {
+                for (UserUsageSketch sketch : day) {
+                    merged.merge(sketch);
+                }
+            }
+            return merged;
+        });
+    }
+
+    // Rows carry the minute TTL; expired days are also dropped a whole partition at a time.
+    public CompletableFuture<List<MinutePartition>> findMinutePartitionsAsync() {
+        prepareIfNeeded();
+        return CqlRows.collect(
+            session.executeAsync(selectPartitions.bind()),
+            row -> new MinutePartition(row.getString("provider"), row.getInstant("day"))
+        );
+    }
+
+    public CompletableFuture<Void> deleteMinutePartitionAsync(MinutePartition partition) {
+        prepareIfNeeded();
+        return session.executeAsync(deletePartition.bind(partition.provider(), partition.day()))
+            .toCompletableFuture()
+            .thenApply(_ -> null);
+    }
+
+    public UserUsageSketch newSketch() {
+        return new UserUsageSketch(properties.getSketchPrecision(), properties.getTopUsersCapacity());
+    }
+
+    // Writes to one row are chained, so each starts from the state the previous one stored. A row not
+    // in memory (first touch, evicted by age, or forgotten on a rebalance) is read back.
+    private CompletableFuture<Void> writePartial(TokenUsageMinutePartialKey key, List<TokenUsageRecord> records) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        partials.compute(key, (row, previous) -> {
+            CompletableFuture<Partial> base = previous == null
+                ? loadPartial(row)
+                : previous.exceptionallyCompose(_ -> loadPartial(row));
+            return base.thenCompose(state -> {
+                Partial next = apply(state, records);
+                if (next == state) {
+                    written.complete(null);
+                    return CompletableFuture.completedFuture(state);
+                }
+                return insertPartial(row, next).handle((_, error) -> {
+                    if (error != null) {
+                        written.completeExceptionally(error);
+                        return state;
+                    }
+                    written.complete(null);
+                    return next;
+                });
+            }).whenComplete((_, error) -> {
+                if (error != null) {
+                    written.completeExceptionally(error);
+                }
+            });
+        });
+        return written;
+    }
+
+    private Partial apply(Partial state, List<TokenUsageRecord> records) {
+        long tokens = state.tokens();
+        long allowed = state.allowed();
+        long denied = state.denied();
+        long appliedOffset = state.appliedOffset();
+        UserUsageSketch sketch = null;
+        for (TokenUsageRecord record : records) {
+            Long offset = record.getKafkaOffset();
+            if (offset != null) {
+                if (offset <= appliedOffset) {
+                    continue;
+                }
+                appliedOffset = offset;
+            }
+            if (sketch == null) {
+                sketch = state.usersHll() == null
+                    ? newSketch()
+                    : TokenUsageMinutePartialRecord.toSketch(ByteBuffer.wrap(state.usersHll()), ByteBuffer.wrap(state.topUsers()));
+            }
+            tokens += record.getTokens();
+            if (record.isAllowed()) {
+                allowed++;
+            } else {
+                denied++;
+            }
+            sketch.add(record.getUserId(), record.getTokens());
+        }
+        if (sketch == null) {
+            return state;
+        }
+        // The write timestamp orders rewrites of the row, so a stale retry never wins.
+        long version = Math.max(state.version() + 1, TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+        return new Partial(tokens, allowed, denied, appliedOffset, sketch.distinctUsersBytes(), sketch.topUsersBytes(), version);
+    }
+
+    private CompletableFuture<Partial> loadPartial(TokenUsageMinutePartialKey key) {
+        return CqlRows.collect(
+            session.executeAsync(selectPartial.bind(key.getProvider(), key.getDay(), key.getMinute(), key.getKafkaPartition())),
+            row -> new Partial(
+                row.getLong("total_tokens"),
+                row.getLong("allowed_events"),
+                row.getLong("denied_events"),
+                row.getLong("applied_offset"),
+                bytes(row.getByteBuffer("users_hll")),
+                bytes(row.getByteBuffer("top_users")),
+                row.getLong("written_at")
+            )
+        ).thenApply(rows -> rows.isEmpty() ? Partial.EMPTY : rows.getFirst());
+    }
+
+    private CompletableFuture<?> insertPartial(TokenUsageMinutePartialKey key, Partial partial) {
+        return session.executeAsync(insertPartial.bind(
+            key.getProvider(),
+            key.getDay(),
+            key.getMinute(),
+            key.getKafkaPartition(),
+            partial.tokens(),
+            partial.allowed(),
+            partial.denied(),
+            partial.appliedOffset(),
+            ByteBuffer.wrap(partial.usersHll()),
+            ByteBuffer.wrap(partial.topUsers()),
+            partial.version(),
+            rollupTtlSeconds
+        )).toCompletableFuture();
+    }
+
+    // Another instance writes these rows while it owns the partitions, so whatever is cached for them
+    // is stale once they come back; rewriting it would drop that owner's events.
+    public void forgetPartitions(Collection<Integer> kafkaPartitions) {
+        partials.keySet().removeIf(key -> kafkaPartitions.contains(key.getKafkaPartition()));
+    }
+
+    private void evictPartialsBefore(Instant cutoff) {
+        partials.keySet().removeIf(key -> key.getMinute().isBefore(cutoff));
+    }
+
+    int cachedPartials() {
+        return partials.size();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        ByteBuffer copy = buffer.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return bytes;
+    }
+
+    private void prepareIfNeeded() {
+        if (insertPartial == null) {
+            insertPartial = session.prepare(INSERT_PARTIAL);
+        }
+        if (selectPartial == null) {
+            selectPartial = session.prepare(SELECT_PARTIAL);
+        }
+        if (selectRollups == null) {
+            selectRollups = session.prepare(SELECT_ROLLUPS);
+        }
+        if (selectSketches == null) {
+            selectSketches = session.prepare(SELECT_SKETCHES);
+        }
+        if (selectPartitions == null) {
+            selectPartitions = session.prepare(SELECT_PARTITIONS);
+        }
+        if (deletePartition == null) {
+            deletePartition = session.prepare(DELETE_PARTITION);
+        }
+    }
+
+    public record MinutePartition(String provider, Instant day) {
+    }
+
+    private record Partial(long tokens, long allowed, long denied, long appliedOffset,
+                           byte[] usersHll, byte[] topUsers, long version) {
+        static final Partial EMPTY = new Partial(0L, 0L, 0L, NO_OFFSET, null, null, 0L);
+    }
+}
@@ -0,0 +1,60 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// Tables are created from the entity mappings, which cannot express compaction or a default TTL,
+// so those are applied afterwards. Time-windowed compaction lets whole expired SSTables be dropped
+// instead of compacting tombstones.
+@Component
+@ConditionalOnProperty(name = "analytics.storage.retention.apply-table-options", havingValue = "true")
+public class TokenUsageTableOptions implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsageTableOptions.class);
+    // Roughly 30 SSTable windows over the retention period.
+    private static final int TARGET_WINDOWS = 30;
+
+    private final CqlSession session;
+    private final AnalyticsStorageProperties.Retention properties;
+
+    public TokenUsageTableOptions(CqlSession session, AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.properties = properties.getRetention();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        for (String statement : statements()) {
+            session.execute(statement);
+            logger.info("Applied table options: {}", statement);
+        }
+    }
+
+    List<String> statements() {
+        List<String> statements = new ArrayList<>();
+        for (String table : List.of("token_usage_events", "token_usage_by_provider",
+            "token_usage_by_provider_bucketed", "token_usage_by_user")) {
+            statements.add(alter(table, properties.getRawTtl()));
+        }
+        statements.add(alter("token_usage_minute_partial", properties.getMinuteRollupTtl()));
+        statements.add(alter("token_usage_user_minute", properties.getMinuteRollupTtl()));
+        statements.add(alter("token_usage_hour_rollup", properties.getHourRollupTtl()));
+        return statements;
+    }
+
+    private static String alter(String table, Duration ttl) {
+        long days = Math.max(1L, ttl.toDays());
+        long windowDays = Math.max(1L, (days + TARGET_WINDOWS - 1) / TARGET_WINDOWS);
+        return "ALTER TABLE " + table + " WITH compaction = {'class': 'TimeWindowCompactionStrategy', "
+            + "'compaction_window_unit': 'DAYS', 'compaction_window_size': " + windowDays + "} "
+            + "AND default_time_to_live = " + Math.max(0L, ttl.toSeconds());
+    }
+}
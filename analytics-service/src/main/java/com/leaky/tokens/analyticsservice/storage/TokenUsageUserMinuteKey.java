@@ -0,0 +1,67 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.cql.Ordering;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+@Setter
+@Getter
+@PrimaryKeyClass
+@AllArgsConstructor
+public class TokenUsageUserMinuteKey implements Serializable {
+    @PrimaryKeyColumn(name = "user_id", type = PrimaryKeyType.PARTITIONED, ordinal = 0)
+    private String userId;
+
+    @PrimaryKeyColumn(name = "day", type = PrimaryKeyType.PARTITIONED, ordinal = 1)
+    private Instant day;
+
+    @PrimaryKeyColumn(name = "minute", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 2)
+    private Instant minute;
+
+    @PrimaryKeyColumn(name = "provider", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 3)
+    private String provider;
+
+    @PrimaryKeyColumn(name = "kafka_partition", type = PrimaryKeyType.CLUSTERED, ordering = Ordering.ASCENDING, ordinal = 4)
+    private int kafkaPartition;
+
+    public static TokenUsageUserMinuteKey of(TokenUsageRecord record) {
+        TokenUsageMinuteKey minute = TokenUsageMinuteKey.of(record.getProvider(), record.getTimestamp());
+        Integer kafkaPartition = record.getKafkaPartition();
+        return new TokenUsageUserMinuteKey(
+            record.getUserId(),
+            minute.getDay(),
+            minute.getMinute(),
+            record.getProvider(),
+            kafkaPartition == null ? TokenUsageRecord.NO_KAFKA_PARTITION : kafkaPartition
+        );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TokenUsageUserMinuteKey that = (TokenUsageUserMinuteKey) o;
+        return Objects.equals(userId, that.userId)
+            && Objects.equals(day, that.day)
+            && Objects.equals(minute, that.minute)
+            && Objects.equals(provider, that.provider)
+            && kafkaPartition == that.kafkaPartition;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userId, day, minute, provider, kafkaPartition);
+    }
+}
@@ -0,0 +1,34 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.cassandra.core.mapping.Column;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+// One user's usage of one provider in one minute as seen from one Kafka partition. Like
+// token_usage_minute_partial, the partition's consumer rewrites the row whole and applied_offset
+// keeps a redelivered record from being counted twice. Per-user reports sum the rows.
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("token_usage_user_minute")
+public class TokenUsageUserMinuteRecord {
+    @PrimaryKey
+    private TokenUsageUserMinuteKey key;
+
+    @Column("total_tokens")
+    private long totalTokens;
+
+    @Column("allowed_events")
+    private long allowedEvents;
+
+    @Column("denied_events")
+    private long deniedEvents;
+
+    @Column("applied_offset")
+    private long appliedOffset;
+}
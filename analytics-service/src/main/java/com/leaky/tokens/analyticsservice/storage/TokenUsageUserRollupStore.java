@@ -0,0 +1,232 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import org.springframework.stereotype.Component;
+
+// Per-user minute counters written at ingest, so per-user reports sum a few hundred rows instead
+// of every raw event in the window. Rows follow the same offset-guarded whole-row rewrite as
+// TokenUsageRollupStore.
+@Component
+public class TokenUsageUserRollupStore {
+    private static final String INSERT_MINUTE =
+        "INSERT INTO token_usage_user_minute (user_id, day, minute, provider, kafka_partition, total_tokens, "
+            + "allowed_events, denied_events, applied_offset) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) "
+            + "USING TIMESTAMP ? AND TTL ?";
+    private static final String SELECT_MINUTE =
+        "SELECT total_tokens, allowed_events, denied_events, applied_offset, "
+            + "WRITETIME(applied_offset) AS written_at FROM token_usage_user_minute "
+            + "WHERE user_id = ? AND day = ? AND minute = ? AND provider = ? AND kafka_partition = ?";
+    private static final String SELECT_RANGE =
+        "SELECT minute, provider, kafka_partition, total_tokens, allowed_events, denied_events "
+            + "FROM token_usage_user_minute WHERE user_id = ? AND day = ? AND minute >= ? AND minute <= ?";
+    private static final long NO_OFFSET = -1L;
+
+    private final CqlSession session;
+    private final AnalyticsStorageProperties.ByUser properties;
+    private final int retainMinutes;
+    private final int fanOutParallelism;
+    private final int rollupTtlSeconds;
+    private final Map<TokenUsageUserMinuteKey, CompletableFuture<Counts>> rows = new ConcurrentHashMap<>();
+    private volatile PreparedStatement insertMinute;
+    private volatile PreparedStatement selectMinute;
+    private volatile PreparedStatement selectRange;
+
+    public TokenUsageUserRollupStore(CqlSession session, AnalyticsStorageProperties properties) {
+        this.session = session;
+        this.properties = properties.getByUser();
+        this.retainMinutes = properties.getRollup().getSketchRetainMinutes();
+        this.fanOutParallelism = properties.getByProvider().getFanOutParallelism();
+        this.rollupTtlSeconds = properties.getRetention().minuteRollupTtlSeconds();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && properties.isRollupEnabled();
+    }
+
+    // Records without a user id are skipped; a failure names the earliest record of the failed row.
+    public CompletableFuture<Void> writeAsync(List<TokenUsageRecord> records) {
+        if (!isEnabled() || records.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        prepareIfNeeded();
+        Map<TokenUsageUserMinuteKey, List<TokenUsageRecord>> grouped = new LinkedHashMap<>();
+        Map<TokenUsageUserMinuteKey, Integer> firstRecords = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            TokenUsageRecord record = records.get(i);
+            if (record.getUserId() == null) {
+                continue;
+            }
+            TokenUsageUserMinuteKey key = TokenUsageUserMinuteKey.of(record);
+            grouped.computeIfAbsent(key, row -> new ArrayList<>()).add(record);
+            firstRecords.putIfAbsent(key, i);
+        }
+
+        IndexedWrites pending = new IndexedWrites();
+        for (Map.Entry<TokenUsageUserMinuteKey, List<TokenUsageRecord>> row : grouped.entrySet()) {
+            pending.add(firstRecords.get(row.getKey()), writeRow(row.getKey(), row.getValue()));
+        }
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retainMinutes));
+        rows.keySet().removeIf(key -> key.getMinute().isBefore(cutoff));
+        return pending.all();
+    }
+
+    public CompletableFuture<List<TokenUsageUserMinuteRecord>> findMinutesAsync(String userId,
+                                                                               Instant fromMinute,
+                                                                               Instant toMinute) {
+        prepareIfNeeded();
+        return CqlRows.fanOut(
+            TimeBucket.DAY.covering(fromMinute, toMinute),
+            fanOutParallelism,
+            day -> CqlRows.collect(
+                session.executeAsync(selectRange.bind(userId, day, fromMinute, toMinute)),
+                row -> new TokenUsageUserMinuteRecord(
+                    new TokenUsageUserMinuteKey(
+                        userId,
+                        day,
+                        row.getInstant("minute"),
+                        row.getString("provider"),
+                        row.getInt("kafka_partition")
+                    ),
+                    row.getLong("total_tokens"),
+                    row.getLong("allowed_events"),
+                    row.getLong("denied_events"),
+                    NO_OFFSET
+                )
+            )
+        ).thenApply(days -> {
+            List<TokenUsageUserMinuteRecord> merged = new ArrayList<>();
+            for (List<TokenUsageUserMinuteRecord> day : days) {
+                merged.addAll(day);
+            }
+            return merged;
+        });
+    }
+
+    // Same as TokenUsageRollupStore.forgetPartitions: rows of a partition that changed hands are read back.
+    public void forgetPartitions(Collection<Integer> kafkaPartitions) {
+        rows.keySet().removeIf(key -> kafkaPartitions.contains(key.getKafkaPartition()));
+    }
+
+    int cachedRows() {
+        return rows.size();
+    }
+
+    // Writes to one row are chained; the new counts are kept only once the write has succeeded. A row
+    // not in memory (first touch, evicted by age, or forgotten on a rebalance) is read back.
+    private CompletableFuture<Void> writeRow(TokenUsageUserMinuteKey key, List<TokenUsageRecord> records) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        rows.compute(key, (row, previous) -> {
+            CompletableFuture<Counts> base = previous == null
+                ? loadRow(row)
+                : previous.exceptionallyCompose(_ -> loadRow(row));
+            return base.thenCompose(counts -> {
+                Counts next = apply(counts, records);
+                if (next == counts) {
+                    written.complete(null);
+                    return CompletableFuture.completedFuture(counts);
+                }
+                return insertRow(row, next).handle((_, error) -> {
+                    if (error != null) {
+                        written.completeExceptionally(error);
+                        return counts;
+                    }
+                    written.complete(null);
+                    return next;
+                });
+            }).whenComplete((_, error) -> {
+                if (error != null) {
+                    written.completeExceptionally(error);
+                }
+            });
+        });
+        return written;
+    }
+
+    private static Counts apply(Counts counts, List<TokenUsageRecord> records) {
+        long tokens = counts.tokens();
+        long allowed = counts.allowed();
+        long denied = counts.denied();
+        long appliedOffset = counts.appliedOffset();
+        boolean changed = false;
+        for (TokenUsageRecord record : records) {
+            Long offset = record.getKafkaOffset();
+            if (offset != null) {
+                if (offset <= appliedOffset) {
+                    continue;
+                }
+                appliedOffset = offset;
+            }
+            changed = true;
+            tokens += record.getTokens();
+            if (record.isAllowed()) {
+                allowed++;
+            } else {
+                denied++;
+            }
+        }
+        if (!changed) {
+            return counts;
+        }
+        long version = Math.max(counts.version() + 1, TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()));
+        return new Counts(tokens, allowed, denied, appliedOffset, version);
+    }
+
+    private CompletableFuture<Counts> loadRow(TokenUsageUserMinuteKey key) {
+        return CqlRows.collect(
+            session.executeAsync(selectMinute.bind(
+                key.getUserId(), key.getDay(), key.getMinute(), key.getProvider(), key.getKafkaPartition())),
+            row -> new Counts(
+                row.getLong("total_tokens"),
+                row.getLong("allowed_events"),
+                row.getLong("denied_events"),
+                row.getLong("applied_offset"),
+                row.getLong("written_at")
+            )
+        ).thenApply(found -> found.isEmpty() ? Counts.EMPTY : found.getFirst());
+    }
+
+    private CompletableFuture<?> insertRow(TokenUsageUserMinuteKey key, Counts counts) {
+        return session.executeAsync(insertMinute.bind(
+            key.getUserId(),
+            key.getDay(),
+            key.getMinute(),
+            key.getProvider(),
+            key.getKafkaPartition(),
+            counts.tokens(),
+            counts.allowed(),
+            counts.denied(),
+            counts.appliedOffset(),
+            counts.version(),
+            rollupTtlSeconds
+        )).toCompletableFuture();
+    }
+
+    private void prepareIfNeeded() {
+        if (insertMinute == null) {
+            insertMinute = session.prepare(INSERT_MINUTE);
+        }
+        if (selectMinute == null) {
+            selectMinute = session.prepare(SELECT_MINUTE);
+        }
+        if (selectRange == null) {
+            selectRange = session.prepare(SELECT_RANGE);
+        }
+    }
+
+    private record Counts(long tokens, long allowed, long denied, long appliedOffset, long version) {
+        static final Counts EMPTY = new Counts(0L, 0L, 0L, NO_OFFSET, 0L);
+    }
+}
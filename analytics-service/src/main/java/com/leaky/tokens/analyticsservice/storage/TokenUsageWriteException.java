@@ -0,0 +1,16 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+// Raised when part of a write failed. Every record before failedIndex is fully stored;
+// the record at failedIndex and anything after it may not be.
+public class TokenUsageWriteException extends RuntimeException {
+    private final int failedIndex;
+
+    public TokenUsageWriteException(int failedIndex, Throwable cause) {
+        super("token usage write failed at record " + failedIndex, cause);
+        this.failedIndex = failedIndex;
+    }
+
+    public int getFailedIndex() {
+        return failedIndex;
+    }
+}
@@ -0,0 +1,50 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+
+// Opaque position for paged usage reads: a fingerprint of the query it belongs to, the partition
+// bucket being read (absent for the legacy single-partition layout) and the driver paging state
+// inside it (absent at the start of a bucket). The fingerprint keeps a cursor from being replayed
+// against another provider or range, where Cassandra would reject its paging state.
+record UsageCursor(long query, Instant bucket, ByteBuffer pagingState) {
+    private static final long NO_BUCKET = Long.MIN_VALUE;
+
+    static long query(String provider, Instant from, Instant to) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((provider + '\n' + from + '\n' + to).getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(hash).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("hashing algorithm missing", ex);
+        }
+    }
+
+    String encode() {
+        int stateSize = pagingState == null ? 0 : pagingState.remaining();
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES + stateSize);
+        buffer.putLong(query);
+        buffer.putLong(bucket == null ? NO_BUCKET : bucket.toEpochMilli());
+        if (pagingState != null) {
+            buffer.put(pagingState.duplicate());
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static UsageCursor decode(String cursor) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(cursor));
+            long query = buffer.getLong();
+            long bucketMillis = buffer.getLong();
+            ByteBuffer pagingState = buffer.hasRemaining() ? buffer.slice() : null;
+            return new UsageCursor(query, bucketMillis == NO_BUCKET ? null : Instant.ofEpochMilli(bucketMillis), pagingState);
+        } catch (IllegalArgumentException | BufferUnderflowException ex) {
+            throw new IllegalArgumentException("invalid cursor", ex);
+        }
+    }
+}
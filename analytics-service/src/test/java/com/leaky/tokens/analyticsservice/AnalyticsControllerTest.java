@@ -12,10 +12,13 @@ import java.util.Map;
 import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
 import com.leaky.tokens.analyticsservice.report.AnalyticsAnomalyResponse;
 import com.leaky.tokens.analyticsservice.report.AnalyticsReportResponse;
+import com.leaky.tokens.analyticsservice.report.AnalyticsReportProperties;
 import com.leaky.tokens.analyticsservice.report.AnalyticsReportService;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyResponse;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderKey;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRepository;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderStore;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
@@ -23,11 +26,12 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 class AnalyticsControllerTest {
     @Test
     void healthReturnsStatus() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         Map<String, Object> response = controller.health();
@@ -38,11 +42,12 @@ class AnalyticsControllerTest {
 
     @Test
     void healthIncludesTimestamp() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         Map<String, Object> response = controller.health();
@@ -53,12 +58,13 @@ class AnalyticsControllerTest {
 
     @Test
     void usageClampsLimitAndReturnsRecords() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         TokenUsageByProviderKey key = new TokenUsageByProviderKey("openai", Instant.now());
@@ -80,11 +86,12 @@ class AnalyticsControllerTest {
 
     @Test
     void usageClampsLowLimitToOne() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         when(repository.findRecentByProvider(eq("openai"), eq(1))).thenReturn(List.of());
@@ -97,11 +104,12 @@ class AnalyticsControllerTest {
 
     @Test
     void usageUsesProvidedLimitWithinBounds() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         when(repository.findRecentByProvider(eq("openai"), eq(50))).thenReturn(List.of());
@@ -113,12 +121,13 @@ class AnalyticsControllerTest {
 
     @Test
     void usageRecordsMetricEvenWhenEmpty() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            Mockito.mock(AnalyticsReportService.class)
+            Mockito.mock(AnalyticsReportService.class),
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         when(repository.findRecentByProvider(eq("openai"), eq(10))).thenReturn(List.of());
@@ -132,13 +141,14 @@ class AnalyticsControllerTest {
 
     @Test
     void reportReturnsServiceResponse() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsReportResponse report = new AnalyticsReportResponse(
@@ -168,13 +178,14 @@ class AnalyticsControllerTest {
 
     @Test
     void reportRecordsMetric() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsReportResponse report = new AnalyticsReportResponse(
@@ -200,13 +211,14 @@ class AnalyticsControllerTest {
 
     @Test
     void anomaliesReturnsServiceResponse() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsAnomalyResponse anomaly = new AnalyticsAnomalyResponse(
@@ -234,13 +246,14 @@ class AnalyticsControllerTest {
 
     @Test
     void anomaliesRecordsMetric() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         SimpleMeterRegistry registry = new SimpleMeterRegistry();
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(registry),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsAnomalyResponse anomaly = new AnalyticsAnomalyResponse(
@@ -265,12 +278,13 @@ class AnalyticsControllerTest {
 
     @Test
     void reportPassesNullDefaultsToService() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsReportResponse report = new AnalyticsReportResponse(
@@ -296,12 +310,13 @@ class AnalyticsControllerTest {
 
     @Test
     void anomaliesPassesNullDefaultsToService() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
         AnalyticsController controller = new AnalyticsController(
             repository,
             new AnalyticsMetrics(new SimpleMeterRegistry()),
-            reportService
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
         );
 
         AnalyticsAnomalyResponse anomaly = new AnalyticsAnomalyResponse(
@@ -323,4 +338,34 @@ class AnalyticsControllerTest {
         verify(reportService).detectAnomaly(eq("openai"), eq(null), eq(null), eq(null), eq(null));
         assertThat(response.isAnomaly()).isFalse();
     }
+
+    @Test
+    void streamingAnomaliesDelegatesToReportService() {
+        AnalyticsReportService reportService = Mockito.mock(AnalyticsReportService.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AnalyticsController controller = new AnalyticsController(
+            Mockito.mock(TokenUsageByProviderStore.class),
+            new AnalyticsMetrics(registry),
+            reportService,
+            new HotUsageWindow(new AnalyticsReportProperties())
+        );
+        StreamingAnomalyResponse state = new StreamingAnomalyResponse(
+            "openai",
+            Instant.parse("2026-02-04T17:00:00Z"),
+            5400,
+            1200.0,
+            300.0,
+            14.0,
+            3.0,
+            true,
+            180
+        );
+        when(reportService.detectStreamingAnomaly("openai", null)).thenReturn(state);
+
+        StreamingAnomalyResponse response = controller.streamingAnomalies("openai", null);
+
+        assertThat(response.isAnomaly()).isTrue();
+        assertThat(registry.counter("analytics.anomaly.query.total", "provider", "openai", "outcome", "success").count())
+            .isEqualTo(1.0);
+    }
 }
@@ -0,0 +1,138 @@
+package com.leaky.tokens.analyticsservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderScanner;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageHourRollupKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageHourRollupRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageHourRollupStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectMapper;
+
+class AnalyticsExportControllerTest {
+    private static final Instant FROM = Instant.parse("2026-02-07T00:00:00Z");
+    private static final Instant TO = Instant.parse("2026-02-08T00:00:00Z");
+
+    private final TokenUsageByProviderScanner scanner = Mockito.mock(TokenUsageByProviderScanner.class);
+    private final TokenUsageHourRollupStore hourStore = Mockito.mock(TokenUsageHourRollupStore.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AnalyticsExportController controller =
+        new AnalyticsExportController(scanner, hourStore, new ObjectMapper(), new AnalyticsMetrics(registry));
+
+    @Test
+    void pageReturnsItemsAndNextCursor() {
+        TokenUsageByProviderRecord record = record("user-a");
+        when(scanner.page("openai", FROM, TO, 50, "abc"))
+            .thenReturn(new TokenUsageByProviderScanner.UsagePage(List.of(record), "next"));
+
+        ResponseEntity<Map<String, Object>> response = controller.page("openai", FROM, TO, 50, "abc");
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).containsEntry("count", 1).containsEntry("nextCursor", "next");
+        assertThat(registry.counter("analytics.usage.query.total", "provider", "openai", "outcome", "success").count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void pageRejectsInvalidCursor() {
+        when(scanner.page("openai", FROM, TO, 100, "bad")).thenThrow(new IllegalArgumentException("invalid cursor"));
+
+        ResponseEntity<Map<String, Object>> response = controller.page("openai", FROM, TO, 100, "bad");
+
+        assertThat(response.getStatusCode().value()).isEqualTo(400);
+        assertThat(response.getBody()).containsEntry("message", "invalid cursor");
+    }
+
+    @Test
+    void pageRejectsEmptyRange() {
+        ResponseEntity<Map<String, Object>> response = controller.page("openai", TO, FROM, 100, null);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(400);
+        verifyNoInteractions(scanner);
+    }
+
+    @Test
+    void exportWritesOneJsonObjectPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<TokenUsageByProviderRecord> sink = invocation.getArgument(3);
+            sink.accept(record("user-a"));
+            sink.accept(record("user-b"));
+            return 2L;
+        }).when(scanner).export(eq("openai"), eq(FROM), eq(TO), any());
+
+        ResponseEntity<StreamingResponseBody> response = controller.export("openai", FROM, TO);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        response.getBody().writeTo(output);
+
+        assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_NDJSON);
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).contains("\"userId\":\"user-a\"");
+        assertThat(lines[1]).contains("\"userId\":\"user-b\"");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void hourlyReturnsDownsampledHours() {
+        Instant hour = Instant.parse("2026-02-07T13:00:00Z");
+        UserUsageSketch users = new UserUsageSketch(12, 8);
+        users.add("user-a", 10);
+        users.add("user-b", 20);
+        when(hourStore.findHoursAsync("openai", FROM, Instant.parse("2026-02-07T23:00:00Z")))
+            .thenReturn(CompletableFuture.completedFuture(List.of(new TokenUsageHourRollupRecord(
+                TokenUsageHourRollupKey.of("openai", hour),
+                30L,
+                2L,
+                1L,
+                ByteBuffer.wrap(users.distinctUsersBytes()),
+                ByteBuffer.wrap(users.topUsersBytes())
+            ))));
+
+        ResponseEntity<Map<String, Object>> response = controller.hourly("openai", FROM, TO);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).containsEntry("count", 1);
+        Map<String, Object> item = ((List<Map<String, Object>>) response.getBody().get("items")).getFirst();
+        assertThat(item)
+            .containsEntry("hour", hour)
+            .containsEntry("totalTokens", 30L)
+            .containsEntry("deniedEvents", 1L)
+            .containsEntry("uniqueUsers", 2L);
+    }
+
+    @Test
+    void hourlyRejectsRangeBeyondOneYear() {
+        ResponseEntity<Map<String, Object>> response = controller.hourly("openai", FROM, FROM.plus(Duration.ofDays(400)));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(400);
+        verifyNoInteractions(hourStore);
+    }
+
+    private static TokenUsageByProviderRecord record(String userId) {
+        return new TokenUsageByProviderRecord(new TokenUsageByProviderKey("openai", FROM), userId, 10, true);
+    }
+}
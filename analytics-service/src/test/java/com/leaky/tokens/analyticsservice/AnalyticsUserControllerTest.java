@@ -0,0 +1,60 @@
+package com.leaky.tokens.analyticsservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.report.ProviderUsageSummary;
+import com.leaky.tokens.analyticsservice.report.UserUsageReportResponse;
+import com.leaky.tokens.analyticsservice.report.UserUsageReportService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.ResponseEntity;
+
+class AnalyticsUserControllerTest {
+    private final UserUsageReportService service = Mockito.mock(UserUsageReportService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AnalyticsUserController controller = new AnalyticsUserController(service, new AnalyticsMetrics(registry));
+
+    @Test
+    void reportDelegatesToService() {
+        UserUsageReportResponse report = new UserUsageReportResponse(
+            "user-1", Instant.EPOCH, Instant.EPOCH, 0, 0, 0, 0L, 0.0, 10, List.of());
+        when(service.isEnabled()).thenReturn(true);
+        when(service.buildReport("user-1", 60, 10)).thenReturn(report);
+
+        ResponseEntity<?> response = controller.report("user-1", 60, 10);
+
+        assertThat(response.getStatusCode().value()).isEqualTo(200);
+        assertThat(response.getBody()).isSameAs(report);
+        assertThat(registry.counter("analytics.user.query.total", "outcome", "success").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void topProvidersWrapsList() {
+        when(service.isEnabled()).thenReturn(true);
+        when(service.topProviders("user-1", null, 3))
+            .thenReturn(List.of(new ProviderUsageSummary("openai", 100L, 2)));
+
+        ResponseEntity<?> response = controller.topProviders("user-1", null, 3);
+
+        Map<String, Object> body = (Map<String, Object>) response.getBody();
+        assertThat(body).containsEntry("userId", "user-1").containsEntry("count", 1);
+        verify(service).topProviders("user-1", null, 3);
+    }
+
+    @Test
+    void disabledTableReturnsNotFound() {
+        when(service.isEnabled()).thenReturn(false);
+
+        assertThat(controller.report("user-1", null, null).getStatusCode().value()).isEqualTo(404);
+        assertThat(controller.topProviders("user-1", null, null).getStatusCode().value()).isEqualTo(404);
+    }
+}
@@ -0,0 +1,94 @@
+package com.leaky.tokens.analyticsservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.util.backoff.BackOffExecution;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+class KafkaConsumerConfigTest {
+    @Test
+    void consumerConfigsApplyFetchTuning() {
+        AnalyticsKafkaProperties.Consumer consumer = new AnalyticsKafkaProperties.Consumer();
+        consumer.setMaxPollRecords(1000);
+        consumer.setFetchMinBytes(65536);
+        consumer.setFetchMaxWaitMs(100);
+
+        Map<String, Object> configs = KafkaConsumerConfig.consumerConfigs("localhost:9092", "analytics", consumer);
+
+        assertThat(configs)
+            .containsEntry(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092")
+            .containsEntry(ConsumerConfig.GROUP_ID_CONFIG, "analytics")
+            .containsEntry(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false)
+            .containsEntry(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000)
+            .containsEntry(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 65536)
+            .containsEntry(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 100);
+    }
+
+    @Test
+    void applyConcurrencyUsesVirtualThreadExecutorWhenEnabled() {
+        AnalyticsKafkaProperties.Consumer consumer = new AnalyticsKafkaProperties.Consumer();
+        consumer.setConcurrency(6);
+        consumer.setVirtualThreads(true);
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+
+        KafkaConsumerConfig.applyConcurrency(factory, consumer);
+
+        assertThat(factory.getContainerProperties().getListenerTaskExecutor()).isNotNull();
+    }
+
+    @Test
+    void applyConcurrencyKeepsDefaultExecutorByDefault() {
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+
+        KafkaConsumerConfig.applyConcurrency(factory, new AnalyticsKafkaProperties.Consumer());
+
+        assertThat(factory.getContainerProperties().getListenerTaskExecutor()).isNull();
+    }
+
+    @Test
+    void batchBackOffStopsOnceTheElapsedTimeIsUsedUp() {
+        ExponentialBackOff backOff = KafkaConsumerConfig.batchBackOff(2000, 5000);
+        BackOffExecution execution = backOff.start();
+
+        long total = 0;
+        long next;
+        while ((next = execution.nextBackOff()) != BackOffExecution.STOP) {
+            assertThat(next).isLessThanOrEqualTo(2000);
+            total += next;
+        }
+
+        assertThat(backOff.getMaxElapsedTime()).isEqualTo(5000);
+        assertThat(total).isLessThanOrEqualTo(5000 + 2000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchRecovererPublishesToTheDeadLetterTopic() {
+        ConsumerRecordRecoverer recoverer =
+            KafkaConsumerConfig.batchRecoverer(mock(KafkaOperations.class), "token-usage-dlt");
+
+        assertThat(recoverer).isInstanceOf(DeadLetterPublishingRecoverer.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchRecovererOnlyLogsWithoutADeadLetterTopic() {
+        ConsumerRecordRecoverer recoverer = KafkaConsumerConfig.batchRecoverer(mock(KafkaOperations.class), "");
+
+        assertThat(recoverer).isNotInstanceOf(DeadLetterPublishingRecoverer.class);
+        assertThatCode(() -> recoverer.accept(new ConsumerRecord<>("token-usage", 0, 7L, "key", new byte[0]),
+            new IllegalStateException("poison")))
+            .doesNotThrowAnyException();
+    }
+}
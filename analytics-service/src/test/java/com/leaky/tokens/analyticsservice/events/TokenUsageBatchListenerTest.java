@@ -0,0 +1,152 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import com.leaky.tokens.analyticsservice.metrics.AnalyticsMetrics;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageBatchWriter;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageWriteException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import tools.jackson.databind.ObjectMapper;
+
+@ExtendWith(MockitoExtension.class)
+class TokenUsageBatchListenerTest {
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @Mock
+    private TokenUsageBatchWriter batchWriter;
+
+    @Mock
+    private StreamingAnomalyDetector streamingAnomalyDetector;
+
+    @Mock
+    private HotUsageWindow hotWindow;
+
+    @Captor
+    private ArgumentCaptor<List<TokenUsageRecord>> recordsCaptor;
+
+    private SimpleMeterRegistry registry;
+    private TokenUsageBatchListener listener;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        listener = new TokenUsageBatchListener(objectMapper, batchWriter, new AnalyticsMetrics(registry), streamingAnomalyDetector, hotWindow);
+    }
+
+    @Test
+    void onbatch_writes_valid_events_and_skips_invalid() {
+        byte[] good = "good".getBytes(StandardCharsets.UTF_8);
+        byte[] bad = "bad".getBytes(StandardCharsets.UTF_8);
+        byte[] missingProvider = "missing".getBytes(StandardCharsets.UTF_8);
+        when(objectMapper.readValue(good, TokenUsageEvent.class)).thenReturn(event("openai", 10));
+        when(objectMapper.readValue(bad, TokenUsageEvent.class)).thenThrow(new RuntimeException("bad"));
+        when(objectMapper.readValue(missingProvider, TokenUsageEvent.class)).thenReturn(event(null, 5));
+
+        listener.onBatch(List.of(record(0, good), record(1, bad), record(2, missingProvider)));
+
+        verify(batchWriter).write(recordsCaptor.capture());
+        assertThat(recordsCaptor.getValue()).hasSize(1);
+        assertThat(recordsCaptor.getValue().get(0).getProvider()).isEqualTo("openai");
+        assertThat(recordsCaptor.getValue().get(0).getTokens()).isEqualTo(10L);
+        verify(hotWindow).record(recordsCaptor.getValue().get(0));
+        assertThat(registry.counter("analytics.ingest.events.total", "outcome", "saved").count()).isEqualTo(1.0);
+        assertThat(registry.counter("analytics.ingest.events.total", "outcome", "skipped").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void onbatch_derives_record_ids_from_the_kafka_position() {
+        byte[] good = "good".getBytes(StandardCharsets.UTF_8);
+        when(objectMapper.readValue(good, TokenUsageEvent.class)).thenReturn(event("openai", 10));
+
+        listener.onBatch(List.of(record(7, good)));
+        listener.onBatch(List.of(record(7, good), record(8, good)));
+
+        verify(batchWriter, times(2)).write(recordsCaptor.capture());
+        TokenUsageRecord first = recordsCaptor.getAllValues().get(0).getFirst();
+        List<TokenUsageRecord> redelivered = recordsCaptor.getAllValues().get(1);
+        assertThat(first.getKafkaPartition()).isZero();
+        assertThat(first.getKafkaOffset()).isEqualTo(7L);
+        assertThat(redelivered.get(0).getId()).isEqualTo(first.getId());
+        assertThat(redelivered.get(1).getId()).isNotEqualTo(first.getId());
+    }
+
+    @Test
+    void onbatch_skips_write_when_nothing_is_valid() {
+        byte[] bad = "bad".getBytes(StandardCharsets.UTF_8);
+        when(objectMapper.readValue(bad, TokenUsageEvent.class)).thenThrow(new RuntimeException("bad"));
+
+        listener.onBatch(List.of(record(0, bad)));
+
+        verifyNoInteractions(batchWriter);
+    }
+
+    @Test
+    void onbatch_propagates_write_failure_so_offsets_are_not_committed() {
+        byte[] good = "good".getBytes(StandardCharsets.UTF_8);
+        when(objectMapper.readValue(good, TokenUsageEvent.class)).thenReturn(event("openai", 10));
+        doThrow(new RuntimeException("cassandra down")).when(batchWriter).write(anyList());
+
+        assertThatThrownBy(() -> listener.onBatch(List.of(record(0, good))))
+            .isInstanceOfSatisfying(BatchListenerFailedException.class, e -> assertThat(e.getRecord().offset()).isZero())
+            .hasRootCauseMessage("cassandra down");
+        assertThat(registry.counter("analytics.ingest.events.total", "outcome", "saved").count()).isEqualTo(0.0);
+    }
+
+    @Test
+    void onbatch_names_the_failed_record_and_keeps_the_ones_stored_before_it() {
+        byte[] first = "first".getBytes(StandardCharsets.UTF_8);
+        byte[] bad = "bad".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "second".getBytes(StandardCharsets.UTF_8);
+        when(objectMapper.readValue(first, TokenUsageEvent.class)).thenReturn(event("openai", 10));
+        when(objectMapper.readValue(bad, TokenUsageEvent.class)).thenThrow(new RuntimeException("bad"));
+        when(objectMapper.readValue(second, TokenUsageEvent.class)).thenReturn(event("openai", 20));
+        doThrow(new TokenUsageWriteException(1, new RuntimeException("write timeout"))).when(batchWriter).write(anyList());
+
+        assertThatThrownBy(() -> listener.onBatch(List.of(record(0, first), record(1, bad), record(2, second))))
+            .isInstanceOfSatisfying(BatchListenerFailedException.class, e -> assertThat(e.getRecord().offset()).isEqualTo(2L))
+            .hasRootCauseMessage("write timeout");
+        verify(batchWriter).write(recordsCaptor.capture());
+        verify(hotWindow).record(recordsCaptor.getValue().get(0));
+        verify(hotWindow, never()).record(recordsCaptor.getValue().get(1));
+        assertThat(registry.counter("analytics.ingest.events.total", "outcome", "saved").count()).isEqualTo(1.0);
+    }
+
+    private static TokenUsageEvent event(String provider, long tokens) {
+        TokenUsageEvent event = new TokenUsageEvent();
+        event.setUserId("user-1");
+        event.setProvider(provider);
+        event.setTokens(tokens);
+        event.setAllowed(true);
+        event.setTimestamp(Instant.parse("2026-02-07T13:00:00Z"));
+        return event;
+    }
+
+    private static ConsumerRecord<String, byte[]> record(long offset, byte[] payload) {
+        return new ConsumerRecord<>("token-usage", 0, offset, "user-1:openai", payload);
+    }
+}
@@ -1,10 +1,10 @@
 package com.leaky.tokens.analyticsservice.events;
 
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderKey;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRepository;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageBatchWriter;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
@@ -13,7 +13,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import tools.jackson.databind.ObjectMapper;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doThrow;
@@ -29,16 +32,19 @@ class TokenUsageListenerTest {
     private ObjectMapper objectMapper;
 
     @Mock
-    private TokenUsageRepository repository;
+    private TokenUsageBatchWriter writer;
 
     @Mock
-    private TokenUsageByProviderRepository byProviderRepository;
+    private StreamingAnomalyDetector streamingAnomalyDetector;
+
+    @Mock
+    private HotUsageWindow hotWindow;
 
     @InjectMocks
     private TokenUsageListener listener;
 
     @Test
-    void onmessage_persists_usage_and_by_provider_records() throws Exception {
+    void onmessage_writes_record_through_async_writer() throws Exception {
         TokenUsageEvent event = new TokenUsageEvent();
         event.setUserId("00000000-0000-0000-0000-000000000001");
         event.setProvider("openai");
@@ -46,14 +52,12 @@ class TokenUsageListenerTest {
         event.setAllowed(true);
         event.setTimestamp(Instant.parse("2026-02-07T13:00:00Z"));
 
-        String payload = "{\"userId\":\"00000000-0000-0000-0000-000000000001\"}";
+        byte[] payload = "{\"userId\":\"00000000-0000-0000-0000-000000000001\"}".getBytes(StandardCharsets.UTF_8);
         when(objectMapper.readValue(payload, TokenUsageEvent.class)).thenReturn(event);
 
-        listener.onMessage(payload);
+        listener.onMessage(record(payload, null));
 
-        ArgumentCaptor<TokenUsageRecord> recordCaptor = ArgumentCaptor.forClass(TokenUsageRecord.class);
-        verify(repository).save(recordCaptor.capture());
-        TokenUsageRecord record = recordCaptor.getValue();
+        TokenUsageRecord record = captureWritten();
         assertThat(record.getId()).isNotNull();
         assertThat(record.getUserId()).isEqualTo(event.getUserId());
         assertThat(record.getProvider()).isEqualTo(event.getProvider());
@@ -61,30 +65,22 @@ class TokenUsageListenerTest {
         assertThat(record.isAllowed()).isEqualTo(event.isAllowed());
         assertThat(record.getTimestamp()).isEqualTo(event.getTimestamp());
 
-        ArgumentCaptor<TokenUsageByProviderRecord> byProviderCaptor = ArgumentCaptor.forClass(TokenUsageByProviderRecord.class);
-        verify(byProviderRepository).save(byProviderCaptor.capture());
-        TokenUsageByProviderRecord byProvider = byProviderCaptor.getValue();
-        TokenUsageByProviderKey key = byProvider.getKey();
-        assertThat(key).isNotNull();
-        assertThat(key.getProvider()).isEqualTo(event.getProvider());
-        assertThat(key.getTimestamp()).isEqualTo(event.getTimestamp());
-        assertThat(byProvider.getUserId()).isEqualTo(event.getUserId());
-        assertThat(byProvider.getTokens()).isEqualTo(event.getTokens());
-        assertThat(byProvider.isAllowed()).isEqualTo(event.isAllowed());
+        verify(streamingAnomalyDetector).record(record);
+        verify(hotWindow).record(record);
     }
 
     @Test
     void onmessage_does_not_persist_when_payload_is_invalid() throws Exception {
-        String payload = "not-json";
+        byte[] payload = "not-json".getBytes(StandardCharsets.UTF_8);
         when(objectMapper.readValue(payload, TokenUsageEvent.class)).thenThrow(new RuntimeException("bad"));
 
-        listener.onMessage(payload);
+        listener.onMessage(record(payload, TokenUsageEventCodec.CONTENT_TYPE_JSON));
 
-        verifyNoInteractions(repository, byProviderRepository);
+        verifyNoInteractions(writer, streamingAnomalyDetector, hotWindow);
     }
 
     @Test
-    void onmessage_does_not_save_by_provider_when_primary_save_fails() throws Exception {
+    void onmessage_does_not_feed_in_memory_views_when_write_fails() throws Exception {
         TokenUsageEvent event = new TokenUsageEvent();
         event.setUserId("00000000-0000-0000-0000-000000000001");
         event.setProvider("openai");
@@ -92,12 +88,54 @@ class TokenUsageListenerTest {
         event.setAllowed(false);
         event.setTimestamp(Instant.parse("2026-02-07T13:10:00Z"));
 
-        String payload = "{\"userId\":\"00000000-0000-0000-0000-000000000001\"}";
+        byte[] payload = "{\"userId\":\"00000000-0000-0000-0000-000000000001\"}".getBytes(StandardCharsets.UTF_8);
         when(objectMapper.readValue(payload, TokenUsageEvent.class)).thenReturn(event);
-        doThrow(new RuntimeException("cassandra down")).when(repository).save(org.mockito.ArgumentMatchers.any(TokenUsageRecord.class));
+        doThrow(new RuntimeException("cassandra down")).when(writer).write(org.mockito.ArgumentMatchers.anyList());
+
+        listener.onMessage(record(payload, null));
+
+        verify(streamingAnomalyDetector, never()).record(org.mockito.ArgumentMatchers.any(TokenUsageRecord.class));
+        verify(hotWindow, never()).record(org.mockito.ArgumentMatchers.any(TokenUsageRecord.class));
+    }
 
-        listener.onMessage(payload);
+    @Test
+    void onmessage_decodes_binary_payload_without_json_mapper() {
+        byte[] userId = "user-7".getBytes(StandardCharsets.UTF_8);
+        byte[] provider = "gemini".getBytes(StandardCharsets.UTF_8);
+        Instant timestamp = Instant.parse("2026-02-07T13:20:00Z");
+        ByteBuffer buffer = ByteBuffer.allocate(22 + 2 + userId.length + 2 + provider.length);
+        buffer.put(TokenUsageEventCodec.VERSION);
+        buffer.put((byte) 0b11);
+        buffer.putLong(15L);
+        buffer.putLong(timestamp.getEpochSecond());
+        buffer.putInt(timestamp.getNano());
+        buffer.putShort((short) userId.length).put(userId);
+        buffer.putShort((short) provider.length).put(provider);
+
+        listener.onMessage(record(buffer.array(), TokenUsageEventCodec.CONTENT_TYPE_BINARY));
+
+        TokenUsageRecord saved = captureWritten();
+        assertThat(saved.getUserId()).isEqualTo("user-7");
+        assertThat(saved.getProvider()).isEqualTo("gemini");
+        assertThat(saved.getTokens()).isEqualTo(15L);
+        assertThat(saved.isAllowed()).isTrue();
+        assertThat(saved.getTimestamp()).isEqualTo(timestamp);
+        verifyNoInteractions(objectMapper);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TokenUsageRecord captureWritten() {
+        ArgumentCaptor<List<TokenUsageRecord>> captor = ArgumentCaptor.forClass(List.class);
+        verify(writer).write(captor.capture());
+        assertThat(captor.getValue()).hasSize(1);
+        return captor.getValue().getFirst();
+    }
 
-        verify(byProviderRepository, never()).save(org.mockito.ArgumentMatchers.any(TokenUsageByProviderRecord.class));
+    private static ConsumerRecord<String, byte[]> record(byte[] payload, String contentType) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>("token-usage", 0, 0L, "key-1", payload);
+        if (contentType != null) {
+            record.headers().add(TokenUsageEventCodec.CONTENT_TYPE_HEADER, contentType.getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
     }
 }
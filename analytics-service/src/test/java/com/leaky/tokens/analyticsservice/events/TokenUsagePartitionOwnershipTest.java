@@ -0,0 +1,111 @@
+package com.leaky.tokens.analyticsservice.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.leaky.tokens.analyticsservice.report.AnalyticsReportProperties;
+import com.leaky.tokens.analyticsservice.report.HotUsageWindow;
+import com.leaky.tokens.analyticsservice.report.StreamingAnomalyDetector;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRollupStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserRollupStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TokenUsagePartitionOwnershipTest {
+    private static final Instant NOW = Instant.parse("2026-02-07T13:00:30Z");
+
+    private final AnalyticsReportProperties properties = new AnalyticsReportProperties();
+    private final HotUsageWindow hotWindow = new HotUsageWindow(properties);
+    private final StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties);
+    private final TokenUsageRollupStore rollupStore = mock(TokenUsageRollupStore.class);
+    private final TokenUsageUserRollupStore userRollupStore = mock(TokenUsageUserRollupStore.class);
+    private final TokenUsagePartitionOwnership ownership = new TokenUsagePartitionOwnership(
+        "token-usage", hotWindow, detector, rollupStore, userRollupStore, Clock.fixed(NOW, ZoneOffset.UTC));
+    private final Consumer<?, ?> first = consumer(3);
+    private final Consumer<?, ?> second = consumer(3);
+
+    @BeforeEach
+    void enableHotWindow() {
+        properties.getHotWindow().setEnabled(true);
+    }
+
+    @Test
+    void activatesOnlyOnceEveryPartitionIsOwnedAcrossConsumers() {
+        ownership.onPartitionsAssigned(first, List.of(partition(0), partition(1)));
+
+        assertThat(ownership.ownsAllPartitions()).isFalse();
+        assertThat(hotWindow.isActive()).isFalse();
+        assertThat(detector.isActive()).isFalse();
+
+        ownership.onPartitionsAssigned(second, List.of(partition(2), new TopicPartition("other", 3)));
+
+        assertThat(ownership.ownsAllPartitions()).isTrue();
+        assertThat(hotWindow.isActive()).isTrue();
+        assertThat(detector.isActive()).isTrue();
+    }
+
+    @Test
+    void revokingOrLosingAnyPartitionDropsTheWindow() {
+        ownership.onPartitionsAssigned(first, List.of(partition(0), partition(1), partition(2)));
+
+        ownership.onPartitionsRevokedBeforeCommit(first, List.of(partition(1)));
+        assertThat(hotWindow.isActive()).isFalse();
+        assertThat(detector.isActive()).isFalse();
+
+        ownership.onPartitionsAssigned(first, List.of(partition(1)));
+        assertThat(hotWindow.isActive()).isTrue();
+
+        ownership.onPartitionsLost(first, List.of(partition(2)));
+        assertThat(ownership.ownsAllPartitions()).isFalse();
+        assertThat(hotWindow.isActive()).isFalse();
+    }
+
+    @Test
+    void partitionsChangingHandsDropTheirCachedRollupRows() {
+        ownership.onPartitionsAssigned(first, List.of(partition(0), new TopicPartition("other", 1)));
+        ownership.onPartitionsRevokedBeforeCommit(first, List.of(partition(0)));
+        ownership.onPartitionsLost(first, List.of(partition(2)));
+
+        verify(rollupStore, times(2)).forgetPartitions(List.of(0));
+        verify(rollupStore).forgetPartitions(List.of(2));
+        verify(userRollupStore, times(2)).forgetPartitions(List.of(0));
+        verify(userRollupStore).forgetPartitions(List.of(2));
+    }
+
+    @Test
+    void unknownPartitionCountNeverConfirmsOwnership() {
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        when(consumer.partitionsFor("token-usage")).thenThrow(new IllegalStateException("no metadata"));
+
+        ownership.onPartitionsAssigned(consumer, List.of(partition(0), partition(1), partition(2)));
+
+        assertThat(ownership.ownsAllPartitions()).isFalse();
+        assertThat(hotWindow.isActive()).isFalse();
+    }
+
+    private static TopicPartition partition(int partition) {
+        return new TopicPartition("token-usage", partition);
+    }
+
+    private static Consumer<?, ?> consumer(int partitions) {
+        Consumer<?, ?> consumer = mock(Consumer.class);
+        List<PartitionInfo> infos = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            infos.add(new PartitionInfo("token-usage", i, null, null, null));
+        }
+        when(consumer.partitionsFor("token-usage")).thenReturn(infos);
+        return consumer;
+    }
+}
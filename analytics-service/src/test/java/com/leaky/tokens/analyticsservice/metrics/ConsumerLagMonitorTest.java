@@ -0,0 +1,79 @@
+package com.leaky.tokens.analyticsservice.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.ListConsumerGroupOffsetsResult;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.junit.jupiter.api.Test;
+
+class ConsumerLagMonitorTest {
+    private final TopicPartition partition0 = new TopicPartition("token-usage", 0);
+    private final TopicPartition partition1 = new TopicPartition("token-usage", 1);
+
+    @Test
+    void refreshPublishesLagPerPartition() {
+        Admin admin = mock(Admin.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        stubOffsets(admin,
+                Map.of(partition0, new OffsetAndMetadata(90), partition1, new OffsetAndMetadata(10)),
+                Map.of(partition0, 100L, partition1, 10L));
+        ConsumerLagMonitor monitor = new ConsumerLagMonitor(admin, registry, "analytics-service", 1000);
+
+        monitor.refresh();
+
+        assertThat(monitor.lag(partition0)).isEqualTo(10);
+        assertThat(monitor.lag(partition1)).isZero();
+        assertThat(registry.get("analytics.kafka.consumer.lag")
+                .tag("group", "analytics-service")
+                .tag("partition", "0")
+                .gauge()
+                .value()).isEqualTo(10.0);
+    }
+
+    @Test
+    void refreshKeepsLastValueWhenBrokerUnavailable() {
+        Admin admin = mock(Admin.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        stubOffsets(admin, Map.of(partition0, new OffsetAndMetadata(5)), Map.of(partition0, 8L));
+        ConsumerLagMonitor monitor = new ConsumerLagMonitor(admin, registry, "analytics-service", 1000);
+        monitor.refresh();
+
+        ListConsumerGroupOffsetsResult failed = mock(ListConsumerGroupOffsetsResult.class);
+        KafkaFutureImpl<Map<TopicPartition, OffsetAndMetadata>> failure = new KafkaFutureImpl<>();
+        failure.completeExceptionally(new IllegalStateException("broker down"));
+        when(failed.partitionsToOffsetAndMetadata()).thenReturn(failure);
+        when(admin.listConsumerGroupOffsets("analytics-service")).thenReturn(failed);
+
+        monitor.refresh();
+
+        assertThat(monitor.lag(partition0)).isEqualTo(3);
+    }
+
+    private void stubOffsets(Admin admin,
+                             Map<TopicPartition, OffsetAndMetadata> committed,
+                             Map<TopicPartition, Long> endOffsets) {
+        ListConsumerGroupOffsetsResult groupOffsets = mock(ListConsumerGroupOffsetsResult.class);
+        when(groupOffsets.partitionsToOffsetAndMetadata()).thenReturn(KafkaFuture.completedFuture(committed));
+        when(admin.listConsumerGroupOffsets("analytics-service")).thenReturn(groupOffsets);
+
+        ListOffsetsResult listOffsets = mock(ListOffsetsResult.class);
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> infos = new HashMap<>();
+        endOffsets.forEach((partition, offset) ->
+                infos.put(partition, new ListOffsetsResult.ListOffsetsResultInfo(offset, 0L, Optional.empty())));
+        when(listOffsets.all()).thenReturn(KafkaFuture.completedFuture(infos));
+        when(admin.listOffsets(anyMap())).thenReturn(listOffsets);
+    }
+}
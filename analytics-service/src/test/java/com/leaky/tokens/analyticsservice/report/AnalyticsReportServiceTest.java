@@ -8,32 +8,40 @@ import static org.mockito.Mockito.when;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderKey;
 import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
-import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRepository;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageMinuteKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageMinuteRollupRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRollupStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 class AnalyticsReportServiceTest {
     @Test
     void buildReportSummarizesUsageAndTopUsers() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(100);
         properties.setMaxTopUsers(1);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(
                 record("openai", "user-a", 100, true),
                 record("openai", "user-a", 50, false),
                 record("openai", "user-b", 25, true)
-            ));
+            )));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", null, null);
 
         assertThat(response.getProvider()).isEqualTo("openai");
@@ -51,9 +59,46 @@ class AnalyticsReportServiceTest {
         assertThat(response.getTopUsers().get(0).getEvents()).isEqualTo(2);
     }
 
+    @Test
+    void buildReportReadsExactTotalsFromMinuteRollups() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setMaxWindowMinutes(120);
+        properties.setMaxLimit(100);
+        properties.setMaxTopUsers(1);
+        Instant minute = Instant.parse("2026-02-07T13:10:00Z");
+
+        when(rollupStore.isEnabled()).thenReturn(true);
+        when(rollupStore.findRollupsAsync(eq("openai"), any(), any())).thenReturn(CompletableFuture.completedFuture(List.of(
+            new TokenUsageMinuteRollupRecord(TokenUsageMinuteKey.of("openai", minute), 9000, 70, 5),
+            new TokenUsageMinuteRollupRecord(TokenUsageMinuteKey.of("openai", minute.plusSeconds(60)), 1000, 20, 5)
+        )));
+        UserUsageSketch users = new UserUsageSketch(12, 16);
+        users.add("user-a", 6000);
+        users.add("user-b", 3000);
+        users.add("user-c", 1000);
+        when(rollupStore.findUserSketchAsync(eq("openai"), any(), any())).thenReturn(CompletableFuture.completedFuture(users));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, rollupStore, new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
+        AnalyticsReportResponse response = service.buildReport("openai", 30, null);
+
+        assertThat(response.getTotalEvents()).isEqualTo(100);
+        assertThat(response.getAllowedEvents()).isEqualTo(90);
+        assertThat(response.getDeniedEvents()).isEqualTo(10);
+        assertThat(response.getTotalTokens()).isEqualTo(10000);
+        assertThat(response.getAverageTokensPerEvent()).isEqualTo(100.0);
+        assertThat(response.getUniqueUsers()).isEqualTo(3);
+        assertThat(response.getWindowStart().getEpochSecond() % 60).isZero();
+        assertThat(Duration.between(response.getWindowStart(), response.getWindowEnd()).toMinutes()).isEqualTo(29L);
+        assertThat(response.getTopUsers()).extracting(UserUsageSummary::getUserId).containsExactly("user-a");
+        assertThat(response.getTopUsers().get(0).getTotalTokens()).isEqualTo(6000);
+        Mockito.verifyNoInteractions(repository);
+    }
+
     @Test
     void detectAnomalyFlagsAboveThreshold() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -62,12 +107,12 @@ class AnalyticsReportServiceTest {
         properties.setMaxBaselineWindows(4);
         properties.setDefaultAnomalyThresholdMultiplier(2.0);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 200, true), record("openai", "user-b", 100, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 200, true), record("openai", "user-b", 100, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)))
             .thenReturn(List.of(record("openai", "user-b", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 2, 2.0, 100);
 
         assertThat(response.isAnomaly()).isTrue();
@@ -77,9 +122,37 @@ class AnalyticsReportServiceTest {
         assertThat(response.getThresholdMultiplier()).isEqualTo(2.0);
     }
 
+    @Test
+    void detectAnomalyBucketsRollupsFromSingleScan() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setMaxWindowMinutes(120);
+        properties.setMaxBaselineWindows(4);
+        Instant lastMinute = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+
+        when(rollupStore.isEnabled()).thenReturn(true);
+        when(rollupStore.findRollupsAsync(eq("openai"), any(), any())).thenReturn(CompletableFuture.completedFuture(List.of(
+            rollup(lastMinute, 200),
+            rollup(lastMinute.minus(Duration.ofMinutes(9)), 100),
+            rollup(lastMinute.minus(Duration.ofMinutes(10)), 60),
+            rollup(lastMinute.minus(Duration.ofMinutes(25)), 40)
+        )));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, rollupStore, new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
+        AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 10, 2, 2.0, 100);
+
+        verify(rollupStore).findRollupsAsync("openai", lastMinute.minus(Duration.ofMinutes(29)), lastMinute);
+        Mockito.verifyNoInteractions(repository);
+        assertThat(response.getCurrentTokens()).isEqualTo(300);
+        assertThat(response.getBaselineAverageTokens()).isEqualTo(50.0);
+        assertThat(response.getRatio()).isEqualTo(6.0);
+        assertThat(response.isAnomaly()).isTrue();
+    }
+
     @Test
     void detectAnomalyHandlesZeroBaseline() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -87,11 +160,11 @@ class AnalyticsReportServiceTest {
         properties.setDefaultBaselineWindows(1);
         properties.setMaxBaselineWindows(4);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 50, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 50, true))))
             .thenReturn(List.of());
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 1, null, 100);
 
         assertThat(response.getBaselineAverageTokens()).isEqualTo(0.0);
@@ -101,7 +174,7 @@ class AnalyticsReportServiceTest {
 
     @Test
     void detectAnomalyClampsThresholdMultiplier() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -109,11 +182,11 @@ class AnalyticsReportServiceTest {
         properties.setDefaultBaselineWindows(1);
         properties.setMaxBaselineWindows(4);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 100, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 100, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 1, 0.2, 100);
 
         assertThat(response.getThresholdMultiplier()).isEqualTo(1.0);
@@ -121,25 +194,25 @@ class AnalyticsReportServiceTest {
 
     @Test
     void buildReportClampsWindowAndUsesMaxLimit() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(50);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(50)))
-            .thenReturn(List.of());
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(50)))
+            .thenReturn(CompletableFuture.completedFuture(List.of()));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", 500, null);
 
         assertThat(response.getSampleLimit()).isEqualTo(50);
-        verify(repository).findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(50));
+        verify(repository).findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(50));
     }
 
     @Test
     void detectAnomalyClampsBaselineWindowsToMax() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -147,14 +220,14 @@ class AnalyticsReportServiceTest {
         properties.setDefaultBaselineWindows(2);
         properties.setMaxBaselineWindows(4);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 200, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 200, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)))
             .thenReturn(List.of(record("openai", "user-a", 100, true)))
             .thenReturn(List.of(record("openai", "user-a", 100, true)))
             .thenReturn(List.of(record("openai", "user-a", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 99, 2.0, 100);
 
         assertThat(response.getBaselineWindows()).isEqualTo(4);
@@ -162,16 +235,16 @@ class AnalyticsReportServiceTest {
 
     @Test
     void buildReportUsesDefaultWindowWhenInvalid() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(30);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(100);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of());
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of()));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", -5, null);
 
         assertThat(Duration.between(response.getWindowStart(), response.getWindowEnd()).toMinutes())
@@ -180,17 +253,17 @@ class AnalyticsReportServiceTest {
 
     @Test
     void buildReportHandlesEmptyRecords() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(100);
         properties.setMaxTopUsers(5);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of());
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of()));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", null, null);
 
         assertThat(response.getTotalEvents()).isEqualTo(0);
@@ -202,7 +275,7 @@ class AnalyticsReportServiceTest {
 
     @Test
     void detectAnomalyUsesDefaultBaselineWhenNull() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -211,12 +284,12 @@ class AnalyticsReportServiceTest {
         properties.setMaxBaselineWindows(4);
         properties.setDefaultAnomalyThresholdMultiplier(2.0);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 200, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 200, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)))
             .thenReturn(List.of(record("openai", "user-a", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, null, 2.0, 100);
 
         assertThat(response.getBaselineWindows()).isEqualTo(2);
@@ -225,20 +298,20 @@ class AnalyticsReportServiceTest {
 
     @Test
     void buildReportLimitsTopUsersToMax() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(100);
         properties.setMaxTopUsers(1);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(
                 record("openai", "user-a", 100, true),
                 record("openai", "user-b", 50, true)
-            ));
+            )));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", null, null);
 
         assertThat(response.getTopUsers()).hasSize(1);
@@ -247,7 +320,7 @@ class AnalyticsReportServiceTest {
 
     @Test
     void detectAnomalyReturnsFalseBelowThreshold() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -256,11 +329,11 @@ class AnalyticsReportServiceTest {
         properties.setMaxBaselineWindows(4);
         properties.setDefaultAnomalyThresholdMultiplier(2.0);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 150, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 150, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 1, null, 100);
 
         assertThat(response.isAnomaly()).isFalse();
@@ -270,21 +343,21 @@ class AnalyticsReportServiceTest {
 
     @Test
     void buildReportSkipsNullUsersAndCountsDenied() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
         properties.setMaxLimit(100);
         properties.setMaxTopUsers(5);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(
                 record("openai", null, 50, true),
                 record("openai", "user-a", 25, false),
                 record("openai", "user-a", 10, true)
-            ));
+            )));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsReportResponse response = service.buildReport("openai", null, null);
 
         assertThat(response.getTotalEvents()).isEqualTo(3);
@@ -297,7 +370,7 @@ class AnalyticsReportServiceTest {
 
     @Test
     void detectAnomalyUsesDefaultThresholdWhenNull() {
-        TokenUsageByProviderRepository repository = Mockito.mock(TokenUsageByProviderRepository.class);
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
         AnalyticsReportProperties properties = new AnalyticsReportProperties();
         properties.setDefaultWindowMinutes(60);
         properties.setMaxWindowMinutes(120);
@@ -306,19 +379,158 @@ class AnalyticsReportServiceTest {
         properties.setMaxBaselineWindows(4);
         properties.setDefaultAnomalyThresholdMultiplier(1.5);
 
-        when(repository.findByProviderAndTimestampRange(eq("openai"), any(), any(), eq(100)))
-            .thenReturn(List.of(record("openai", "user-a", 200, true)))
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 200, true))))
             .thenReturn(List.of(record("openai", "user-a", 100, true)));
 
-        AnalyticsReportService service = new AnalyticsReportService(repository, properties);
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
         AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 60, 1, null, 100);
 
         assertThat(response.getThresholdMultiplier()).isEqualTo(1.5);
         assertThat(response.isAnomaly()).isTrue();
     }
 
+    @Test
+    void buildReportServesCoveredWindowFromHotWindow() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.getHotWindow().setEnabled(true);
+        properties.setMaxTopUsers(1);
+        Instant now = Instant.now();
+        HotUsageWindow hotWindow = new HotUsageWindow(properties, now.minus(Duration.ofHours(2)));
+        hotWindow.record(usage("user-a", 100, true, now));
+        hotWindow.record(usage("user-b", 40, false, now));
+        hotWindow.record(usage("user-a", 10, true, now.minus(Duration.ofMinutes(90))));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, rollupStore, new StreamingAnomalyDetector(properties), hotWindow, cache(properties), properties);
+        AnalyticsReportResponse response = service.buildReport("openai", 60, null);
+
+        Mockito.verifyNoInteractions(repository, rollupStore);
+        assertThat(response.getTotalEvents()).isEqualTo(2);
+        assertThat(response.getAllowedEvents()).isEqualTo(1);
+        assertThat(response.getDeniedEvents()).isEqualTo(1);
+        assertThat(response.getTotalTokens()).isEqualTo(140);
+        assertThat(response.getUniqueUsers()).isEqualTo(2);
+        assertThat(response.getTopUsers()).extracting(UserUsageSummary::getUserId).containsExactly("user-a");
+    }
+
+    @Test
+    void buildReportFallsBackWhenWindowPredatesHotWindow() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.getHotWindow().setEnabled(true);
+        properties.setMaxLimit(100);
+        HotUsageWindow hotWindow = new HotUsageWindow(properties, Instant.now().minus(Duration.ofMinutes(30)));
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 100, true))));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), hotWindow, cache(properties), properties);
+        AnalyticsReportResponse response = service.buildReport("openai", 60, null);
+
+        assertThat(response.getTotalTokens()).isEqualTo(100);
+    }
+
+    @Test
+    void detectAnomalyBucketsHotWindowMinutes() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.getHotWindow().setEnabled(true);
+        properties.setMaxBaselineWindows(4);
+        Instant lastMinute = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        HotUsageWindow hotWindow = new HotUsageWindow(properties, lastMinute.minus(Duration.ofHours(1)));
+        hotWindow.record(usage("user-a", 200, true, lastMinute));
+        hotWindow.record(usage("user-a", 100, true, lastMinute.minus(Duration.ofMinutes(9))));
+        hotWindow.record(usage("user-b", 60, true, lastMinute.minus(Duration.ofMinutes(10))));
+        hotWindow.record(usage("user-b", 40, true, lastMinute.minus(Duration.ofMinutes(25))));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, rollupStore, new StreamingAnomalyDetector(properties), hotWindow, cache(properties), properties);
+        AnalyticsAnomalyResponse response = service.detectAnomaly("openai", 10, 2, 2.0, 100);
+
+        Mockito.verifyNoInteractions(repository, rollupStore);
+        assertThat(response.getCurrentTokens()).isEqualTo(300);
+        assertThat(response.getBaselineAverageTokens()).isEqualTo(50.0);
+        assertThat(response.isAnomaly()).isTrue();
+    }
+
+    @Test
+    void streamingAnomalyUsesTheLiveDetectorWhileItOwnsEveryPartition() {
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties);
+        detector.activate();
+        detector.record(usage("user-a", 70, true, Instant.now()));
+
+        AnalyticsReportService service = new AnalyticsReportService(Mockito.mock(TokenUsageByProviderStore.class), rollupStore, detector, new HotUsageWindow(properties), cache(properties), properties);
+        StreamingAnomalyResponse response = service.detectStreamingAnomaly("openai", null);
+
+        Mockito.verifyNoInteractions(rollupStore);
+        assertThat(response.getCurrentTokens()).isEqualTo(70);
+    }
+
+    @Test
+    void streamingAnomalyReplaysSharedRollupsWithoutFullOwnership() {
+        TokenUsageRollupStore rollupStore = Mockito.mock(TokenUsageRollupStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setAnomalyWarmupMinutes(5);
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties);
+        detector.record(usage("user-a", 5, true, Instant.now()));
+        when(rollupStore.isEnabled()).thenReturn(true);
+        when(rollupStore.findRollupsAsync(eq("openai"), any(), any())).thenAnswer(invocation -> {
+            Instant lastMinute = invocation.getArgument(2);
+            return CompletableFuture.completedFuture(List.of(
+                rollup(lastMinute.minus(Duration.ofMinutes(2)), 100),
+                rollup(lastMinute.minus(Duration.ofMinutes(1)), 100),
+                rollup(lastMinute, 40)
+            ));
+        });
+
+        AnalyticsReportService service = new AnalyticsReportService(Mockito.mock(TokenUsageByProviderStore.class), rollupStore, detector, new HotUsageWindow(properties), cache(properties), properties);
+        StreamingAnomalyResponse response = service.detectStreamingAnomaly("openai", null);
+
+        assertThat(response.getCurrentTokens()).isEqualTo(40);
+        assertThat(response.getObservedMinutes()).isEqualTo(detector.replayMinutes() - 1L);
+        assertThat(response.getEwmaMeanTokens()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void buildReportReusesResponseWithinCacheBucket() {
+        TokenUsageByProviderStore repository = Mockito.mock(TokenUsageByProviderStore.class);
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setMaxLimit(100);
+        properties.getResponseCache().setBucketSeconds(3600);
+        when(repository.findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100)))
+            .thenReturn(CompletableFuture.completedFuture(List.of(record("openai", "user-a", 100, true))));
+
+        AnalyticsReportService service = new AnalyticsReportService(repository, Mockito.mock(TokenUsageRollupStore.class), new StreamingAnomalyDetector(properties), new HotUsageWindow(properties), cache(properties), properties);
+        AnalyticsReportResponse first = service.buildReport("openai", null, null);
+        AnalyticsReportResponse second = service.buildReport("openai", 60, 100);
+
+        assertThat(second).isSameAs(first);
+        verify(repository, Mockito.times(1)).findByProviderAndTimestampRangeAsync(eq("openai"), any(), any(), eq(100));
+    }
+
+    private static ReportResponseCache cache(AnalyticsReportProperties properties) {
+        return new ReportResponseCache(properties, new SimpleMeterRegistry());
+    }
+
+    private static TokenUsageRecord usage(String userId, long tokens, boolean allowed, Instant timestamp) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setUserId(userId);
+        record.setProvider("openai");
+        record.setTokens(tokens);
+        record.setAllowed(allowed);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+
     private static TokenUsageByProviderRecord record(String provider, String userId, long tokens, boolean allowed) {
         TokenUsageByProviderKey key = new TokenUsageByProviderKey(provider, Instant.now());
         return new TokenUsageByProviderRecord(key, userId, tokens, allowed);
     }
+
+    private static TokenUsageMinuteRollupRecord rollup(Instant minute, long tokens) {
+        return new TokenUsageMinuteRollupRecord(TokenUsageMinuteKey.of("openai", minute), tokens, 1, 0);
+    }
 }
@@ -0,0 +1,126 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByProviderRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import org.junit.jupiter.api.Test;
+
+class HotUsageWindowTest {
+    private static final Instant STARTED = Instant.parse("2026-02-07T12:00:30Z");
+    private static final Instant MINUTE = Instant.parse("2026-02-07T13:00:00Z");
+
+    @Test
+    void summarizesMinutesInsideWindow() {
+        HotUsageWindow window = new HotUsageWindow(properties(60, 10), STARTED);
+        window.record(usage("user-a", 100, true, MINUTE.plusSeconds(5)));
+        window.record(usage("user-b", 50, false, MINUTE.plusSeconds(70)));
+        window.record(usage("user-a", 7, true, MINUTE.plusSeconds(130)));
+
+        HotUsageWindow.Summary summary = window.summarize("openai", MINUTE, MINUTE.plusSeconds(60)).orElseThrow();
+
+        assertThat(summary.totalTokens()).isEqualTo(150);
+        assertThat(summary.allowedEvents()).isEqualTo(1);
+        assertThat(summary.deniedEvents()).isEqualTo(1);
+        assertThat(summary.users().distinctUsers()).isEqualTo(2);
+        assertThat(window.tokensByMinute("openai", MINUTE, MINUTE.plusSeconds(120)).orElseThrow())
+            .containsExactly(100, 50, 7);
+    }
+
+    @Test
+    void unknownProviderInCoveredWindowIsEmpty() {
+        HotUsageWindow window = new HotUsageWindow(properties(60, 10), STARTED);
+
+        assertThat(window.summarize("gemini", MINUTE, MINUTE).orElseThrow().totalTokens()).isZero();
+    }
+
+    @Test
+    void declinesWindowsStartingBeforeCoverage() {
+        HotUsageWindow window = new HotUsageWindow(properties(60, 10), STARTED);
+
+        assertThat(window.summarize("openai", STARTED.minusSeconds(30), MINUTE)).isEmpty();
+        assertThat(window.tokensByMinute("openai", MINUTE.minus(Duration.ofMinutes(60)), MINUTE)).isEmpty();
+    }
+
+    @Test
+    void declinesMinutesAlreadyOverwrittenByTheRing() {
+        HotUsageWindow window = new HotUsageWindow(properties(5, 10), STARTED);
+        window.record(usage("user-a", 100, true, MINUTE));
+        window.record(usage("user-a", 1, true, MINUTE.plus(Duration.ofMinutes(5))));
+
+        assertThat(window.tokensByMinute("openai", MINUTE, MINUTE.plus(Duration.ofMinutes(4)))).isEmpty();
+        assertThat(window.tokensByMinute("openai", MINUTE.plus(Duration.ofMinutes(1)), MINUTE.plus(Duration.ofMinutes(5))).orElseThrow())
+            .containsExactly(0, 0, 0, 0, 1);
+    }
+
+    @Test
+    void recentServesNewestFirstOnceBufferHoldsLimit() {
+        HotUsageWindow window = new HotUsageWindow(properties(60, 3), STARTED);
+        window.record(usage("user-a", 1, true, MINUTE.plusSeconds(1)));
+        window.record(usage("user-b", 2, true, MINUTE.plusSeconds(3)));
+
+        assertThat(window.recent("openai", 2)).isPresent();
+        assertThat(window.recent("openai", 3)).isEmpty();
+
+        window.record(usage("user-c", 3, true, MINUTE.plusSeconds(2)));
+        window.record(usage("user-d", 4, true, MINUTE.plusSeconds(4)));
+
+        List<TokenUsageByProviderRecord> recent = window.recent("openai", 3).orElseThrow();
+        assertThat(recent).extracting(TokenUsageByProviderRecord::getUserId).containsExactly("user-d", "user-b", "user-c");
+        assertThat(window.recent("openai", 4)).isEmpty();
+    }
+
+    @Test
+    void disabledWindowAnswersNothing() {
+        AnalyticsReportProperties properties = properties(60, 10);
+        properties.getHotWindow().setEnabled(false);
+        HotUsageWindow window = new HotUsageWindow(properties, STARTED);
+        window.record(usage("user-a", 100, true, MINUTE));
+
+        assertThat(window.summarize("openai", MINUTE, MINUTE)).isEmpty();
+        assertThat(window.recent("openai", 1)).isEmpty();
+    }
+
+    @Test
+    void answersNothingUntilActivatedAndDropsEverythingOnDeactivation() {
+        HotUsageWindow window = new HotUsageWindow(properties(60, 1));
+        window.record(usage("user-a", 100, true, MINUTE));
+
+        assertThat(window.isActive()).isFalse();
+        assertThat(window.summarize("openai", MINUTE, MINUTE)).isEmpty();
+        assertThat(window.recent("openai", 1)).isEmpty();
+
+        window.activate(STARTED);
+        window.record(usage("user-a", 100, true, MINUTE));
+        assertThat(window.summarize("openai", MINUTE, MINUTE).orElseThrow().totalTokens()).isEqualTo(100);
+
+        window.deactivate();
+        assertThat(window.summarize("openai", MINUTE, MINUTE)).isEmpty();
+        assertThat(window.recent("openai", 1)).isEmpty();
+
+        window.activate(STARTED);
+        assertThat(window.summarize("openai", MINUTE, MINUTE).orElseThrow().totalTokens()).isZero();
+    }
+
+    private static AnalyticsReportProperties properties(int retainMinutes, int recentEvents) {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.getHotWindow().setEnabled(true);
+        properties.getHotWindow().setRetainMinutes(retainMinutes);
+        properties.getHotWindow().setRecentEvents(recentEvents);
+        return properties;
+    }
+
+    private static TokenUsageRecord usage(String userId, long tokens, boolean allowed, Instant timestamp) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setUserId(userId);
+        record.setProvider("openai");
+        record.setTokens(tokens);
+        record.setAllowed(allowed);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+}
@@ -0,0 +1,110 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class ReportResponseCacheTest {
+    private static final Instant NOW = Instant.parse("2026-02-07T13:00:01Z");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void sharesResponseWithinBucketAndReloadsInNextBucket() {
+        ReportResponseCache cache = new ReportResponseCache(properties(true), registry);
+
+        AnalyticsReportResponse first = cache.report("openai", 60, 100, NOW, this::load);
+        AnalyticsReportResponse sameBucket = cache.report("openai", 60, 100, NOW.plusSeconds(8), this::load);
+        AnalyticsReportResponse nextBucket = cache.report("openai", 60, 100, NOW.plusSeconds(9), this::load);
+
+        assertThat(sameBucket).isSameAs(first);
+        assertThat(nextBucket).isNotSameAs(first);
+        assertThat(loads).hasValue(2);
+        assertThat(registry.get("cache.gets").tag("cache", ReportResponseCache.CACHE_NAME).tag("result", "hit")
+            .functionCounter().count()).isEqualTo(1.0);
+        assertThat(registry.get("cache.gets").tag("cache", ReportResponseCache.CACHE_NAME).tag("result", "miss")
+            .functionCounter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void keysOnProviderWindowAndLimit() {
+        ReportResponseCache cache = new ReportResponseCache(properties(true), registry);
+
+        cache.report("openai", 60, 100, NOW, this::load);
+        cache.report("gemini", 60, 100, NOW, this::load);
+        cache.report("openai", 30, 100, NOW, this::load);
+        cache.report("openai", 60, 50, NOW, this::load);
+
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void coalescesConcurrentIdenticalRequests() throws Exception {
+        ReportResponseCache cache = new ReportResponseCache(properties(true), registry);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<AnalyticsReportResponse> slowLoad = () -> {
+            loading.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return load();
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CompletableFuture<AnalyticsReportResponse> leader =
+                CompletableFuture.supplyAsync(() -> cache.report("openai", 60, 100, NOW, slowLoad), executor);
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            List<CompletableFuture<AnalyticsReportResponse>> followers = List.of(
+                CompletableFuture.supplyAsync(() -> cache.report("openai", 60, 100, NOW, slowLoad), executor),
+                CompletableFuture.supplyAsync(() -> cache.report("openai", 60, 100, NOW, slowLoad), executor)
+            );
+            release.countDown();
+
+            AnalyticsReportResponse response = leader.get(5, TimeUnit.SECONDS);
+            for (CompletableFuture<AnalyticsReportResponse> follower : followers) {
+                assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(response);
+            }
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        ReportResponseCache cache = new ReportResponseCache(properties(false), registry);
+
+        cache.report("openai", 60, 100, NOW, this::load);
+        cache.report("openai", 60, 100, NOW, this::load);
+
+        assertThat(loads).hasValue(2);
+    }
+
+    private AnalyticsReportResponse load() {
+        loads.incrementAndGet();
+        return new AnalyticsReportResponse("openai", NOW, NOW, 0, 0, 0, 0L, 0.0, 0, 100, List.of());
+    }
+
+    private static AnalyticsReportProperties properties(boolean enabled) {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.getResponseCache().setEnabled(enabled);
+        properties.getResponseCache().setBucketSeconds(10);
+        return properties;
+    }
+}
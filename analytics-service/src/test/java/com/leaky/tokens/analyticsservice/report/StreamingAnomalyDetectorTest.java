@@ -0,0 +1,126 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import com.leaky.tokens.analyticsservice.storage.TokenUsageRecord;
+import org.junit.jupiter.api.Test;
+
+class StreamingAnomalyDetectorTest {
+    private static final Instant START = Instant.parse("2026-02-07T13:00:00Z");
+
+    @Test
+    void flagsSpikeAgainstEwmaBaseline() {
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties());
+        for (int minute = 0; minute < 20; minute++) {
+            detector.record(record(minute, minute % 2 == 0 ? 90 : 110));
+        }
+        detector.record(record(20, 1000));
+
+        StreamingAnomalyResponse response = detector.check("openai", null, START.plusSeconds(20 * 60 + 30));
+
+        assertThat(response.getObservedMinutes()).isEqualTo(20);
+        assertThat(response.getCurrentTokens()).isEqualTo(1000);
+        assertThat(response.getEwmaMeanTokens()).isBetween(90.0, 110.0);
+        assertThat(response.getZScore()).isGreaterThan(3.0);
+        assertThat(response.isAnomaly()).isTrue();
+    }
+
+    @Test
+    void staysQuietDuringWarmup() {
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties());
+        detector.record(record(0, 100));
+        detector.record(record(1, 110));
+        detector.record(record(2, 5000));
+
+        StreamingAnomalyResponse response = detector.check("openai", 1.0, START.plusSeconds(2 * 60 + 10));
+
+        assertThat(response.getObservedMinutes()).isEqualTo(2);
+        assertThat(response.isAnomaly()).isFalse();
+    }
+
+    @Test
+    void idleMinutesDecayTheMean() {
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties());
+        detector.record(record(0, 1000));
+        detector.record(record(1, 1000));
+
+        StreamingAnomalyResponse response = detector.check("openai", null, START.plusSeconds(30 * 60));
+
+        assertThat(response.getCurrentTokens()).isZero();
+        assertThat(response.getObservedMinutes()).isEqualTo(30);
+        assertThat(response.getEwmaMeanTokens()).isLessThan(1000.0);
+    }
+
+    @Test
+    void unknownProviderReturnsEmptyState() {
+        StreamingAnomalyResponse response = new StreamingAnomalyDetector(properties()).check("gemini", null, START);
+
+        assertThat(response.getObservedMinutes()).isZero();
+        assertThat(response.isAnomaly()).isFalse();
+        assertThat(response.getZScoreThreshold()).isEqualTo(3.0);
+    }
+
+    @Test
+    void replayMatchesTheLiveStateForTheSameMinutes() {
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties());
+        long[] minutes = new long[21];
+        for (int minute = 0; minute < 20; minute++) {
+            minutes[minute] = minute % 2 == 0 ? 90 : 110;
+            detector.record(record(minute, minutes[minute]));
+        }
+        minutes[20] = 1000;
+        detector.record(record(20, 1000));
+        Instant now = START.plusSeconds(20 * 60 + 30);
+
+        StreamingAnomalyResponse live = detector.check("openai", null, now);
+        StreamingAnomalyResponse replayed = detector.replay("openai", null, now, minutes);
+
+        assertThat(replayed.getObservedMinutes()).isEqualTo(live.getObservedMinutes());
+        assertThat(replayed.getCurrentTokens()).isEqualTo(1000);
+        assertThat(replayed.getEwmaMeanTokens()).isEqualTo(live.getEwmaMeanTokens());
+        assertThat(replayed.getZScore()).isEqualTo(live.getZScore());
+        assertThat(replayed.isAnomaly()).isTrue();
+    }
+
+    @Test
+    void activationStartsOverAndDeactivationDropsTheState() {
+        StreamingAnomalyDetector detector = new StreamingAnomalyDetector(properties());
+        detector.record(record(0, 100));
+
+        detector.activate();
+        assertThat(detector.isActive()).isTrue();
+        assertThat(detector.check("openai", null, START).getCurrentTokens()).isZero();
+
+        detector.record(record(0, 100));
+        detector.deactivate();
+        assertThat(detector.isActive()).isFalse();
+        assertThat(detector.check("openai", null, START).getCurrentTokens()).isZero();
+    }
+
+    @Test
+    void replaysEnoughMinutesToSettleAndWarmUp() {
+        assertThat(new StreamingAnomalyDetector(properties()).replayMinutes()).isEqualTo(26);
+    }
+
+    private static AnalyticsReportProperties properties() {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setAnomalyEwmaAlpha(0.2);
+        properties.setAnomalyZScoreThreshold(3.0);
+        properties.setAnomalyWarmupMinutes(10);
+        return properties;
+    }
+
+    private static TokenUsageRecord record(int minute, long tokens) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setId(UUID.randomUUID());
+        record.setUserId("user-1");
+        record.setProvider("openai");
+        record.setTokens(tokens);
+        record.setAllowed(true);
+        record.setTimestamp(START.plusSeconds(minute * 60L + 5));
+        return record;
+    }
+}
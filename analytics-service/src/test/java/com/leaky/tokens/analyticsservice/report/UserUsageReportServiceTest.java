@@ -0,0 +1,124 @@
+package com.leaky.tokens.analyticsservice.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.leaky.tokens.analyticsservice.storage.TimeBucket;
+import com.leaky.tokens.analyticsservice.storage.TimeUuids;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByUserKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByUserRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageByUserStore;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserMinuteKey;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserMinuteRecord;
+import com.leaky.tokens.analyticsservice.storage.TokenUsageUserRollupStore;
+import org.junit.jupiter.api.Test;
+
+class UserUsageReportServiceTest {
+    private final TokenUsageByUserStore store = mock(TokenUsageByUserStore.class);
+    private final TokenUsageUserRollupStore userRollupStore = mock(TokenUsageUserRollupStore.class);
+
+    @Test
+    void reportTotalsUserEventsAndRanksProviders() {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        when(store.findByUserAndTimestampRange(eq("user-1"), any(), any(), eq(properties.getMaxLimit())))
+            .thenReturn(List.of(
+                row("openai", 100, true),
+                row("gemini", 300, true),
+                row("openai", 250, false),
+                row("anthropic", 50, true)
+            ));
+        UserUsageReportService service = new UserUsageReportService(store, userRollupStore, properties);
+
+        UserUsageReportResponse report = service.buildReport("user-1", 60, null);
+
+        assertThat(report.getUserId()).isEqualTo("user-1");
+        assertThat(report.getTotalEvents()).isEqualTo(4);
+        assertThat(report.getAllowedEvents()).isEqualTo(3);
+        assertThat(report.getDeniedEvents()).isEqualTo(1);
+        assertThat(report.getTotalTokens()).isEqualTo(700L);
+        assertThat(report.getAverageTokensPerEvent()).isEqualTo(175.0);
+        assertThat(report.getTopProviders())
+            .extracting(ProviderUsageSummary::getProvider)
+            .containsExactly("openai", "gemini", "anthropic");
+        assertThat(report.getTopProviders().getFirst().getEvents()).isEqualTo(2);
+    }
+
+    @Test
+    void rollupReportCountsEveryEventInTheWindow() {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        when(userRollupStore.isEnabled()).thenReturn(true);
+        when(userRollupStore.findMinutesAsync(eq("user-1"), any(), any())).thenReturn(CompletableFuture.completedFuture(List.of(
+            rollup("openai", 0, 40_000L, 6_000L, 1_000L),
+            rollup("gemini", 0, 90_000L, 3_000L, 0L),
+            rollup("openai", 1, 60_000L, 2_000L, 500L)
+        )));
+        UserUsageReportService service = new UserUsageReportService(store, userRollupStore, properties);
+
+        UserUsageReportResponse report = service.buildReport("user-1", 60, null);
+
+        assertThat(report.getTotalEvents()).isEqualTo(12_500);
+        assertThat(report.getAllowedEvents()).isEqualTo(11_000);
+        assertThat(report.getDeniedEvents()).isEqualTo(1_500);
+        assertThat(report.getTotalTokens()).isEqualTo(190_000L);
+        assertThat(report.getTopProviders()).extracting(ProviderUsageSummary::getProvider).containsExactly("openai", "gemini");
+        assertThat(report.getTopProviders().getFirst().getEvents()).isEqualTo(9_500);
+        assertThat(Duration.between(report.getWindowStart(), report.getWindowEnd())).isLessThan(Duration.ofMinutes(60));
+        verifyNoInteractions(store);
+    }
+
+    @Test
+    void topProvidersClampsToConfiguredMaximum() {
+        AnalyticsReportProperties properties = new AnalyticsReportProperties();
+        properties.setMaxTopProviders(2);
+        when(store.findByUserAndTimestampRange(eq("user-1"), any(), any(), eq(properties.getMaxLimit())))
+            .thenReturn(List.of(row("openai", 10, true), row("gemini", 30, true), row("anthropic", 20, true)));
+        UserUsageReportService service = new UserUsageReportService(store, userRollupStore, properties);
+
+        List<ProviderUsageSummary> providers = service.topProviders("user-1", null, 10);
+
+        assertThat(providers).extracting(ProviderUsageSummary::getProvider).containsExactly("gemini", "anthropic");
+    }
+
+    @Test
+    void emptyWindowReportsZeroAverage() {
+        UserUsageReportService service = new UserUsageReportService(store, userRollupStore, new AnalyticsReportProperties());
+
+        UserUsageReportResponse report = service.buildReport("user-1", null, null);
+
+        assertThat(report.getTotalEvents()).isZero();
+        assertThat(report.getAverageTokensPerEvent()).isZero();
+        assertThat(report.getTopProviders()).isEmpty();
+    }
+
+    private static TokenUsageUserMinuteRecord rollup(String provider, int partition, long tokens, long allowed, long denied) {
+        Instant minute = Instant.now().truncatedTo(ChronoUnit.MINUTES);
+        return new TokenUsageUserMinuteRecord(
+            new TokenUsageUserMinuteKey("user-1", TimeBucket.DAY.start(minute), minute, provider, partition),
+            tokens,
+            allowed,
+            denied,
+            -1L
+        );
+    }
+
+    private static TokenUsageByUserRecord row(String provider, long tokens, boolean allowed) {
+        Instant timestamp = Instant.now();
+        return new TokenUsageByUserRecord(
+            new TokenUsageByUserKey("user-1", TimeBucket.DAY.start(timestamp), TimeUuids.of(timestamp)),
+            provider,
+            timestamp,
+            tokens,
+            allowed
+        );
+    }
+}
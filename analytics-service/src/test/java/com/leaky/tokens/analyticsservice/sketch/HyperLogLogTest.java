@@ -0,0 +1,63 @@
+package com.leaky.tokens.analyticsservice.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.jupiter.api.Test;
+
+class HyperLogLogTest {
+    @Test
+    void smallCardinalitiesAreExact() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        for (int i = 0; i < 3; i++) {
+            sketch.add("user-" + i);
+            sketch.add("user-" + i);
+        }
+
+        assertThat(sketch.estimate()).isEqualTo(3);
+    }
+
+    @Test
+    void estimatesLargeCardinalitiesWithinFewPercent() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        for (int i = 0; i < 100_000; i++) {
+            sketch.add("user-" + i);
+        }
+
+        assertThat((double) sketch.estimate()).isCloseTo(100_000, within(5_000.0));
+    }
+
+    @Test
+    void mergeCountsOverlappingMembersOnce() {
+        HyperLogLog first = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        HyperLogLog second = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        for (int i = 0; i < 20_000; i++) {
+            first.add("user-" + i);
+            second.add("user-" + (i + 10_000));
+        }
+
+        first.merge(second);
+
+        assertThat((double) first.estimate()).isCloseTo(30_000, within(1_500.0));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        HyperLogLog sketch = new HyperLogLog(10);
+        for (int i = 0; i < 5_000; i++) {
+            sketch.add("user-" + i);
+        }
+
+        HyperLogLog restored = HyperLogLog.fromBytes(sketch.toBytes());
+
+        assertThat(restored).isEqualTo(sketch);
+        assertThat(restored.estimate()).isEqualTo(sketch.estimate());
+    }
+
+    @Test
+    void rejectsMergeAcrossPrecisions() {
+        assertThatThrownBy(() -> new HyperLogLog(10).merge(new HyperLogLog(12)))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
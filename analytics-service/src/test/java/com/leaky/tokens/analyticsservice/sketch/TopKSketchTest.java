@@ -0,0 +1,95 @@
+package com.leaky.tokens.analyticsservice.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TopKSketchTest {
+    @Test
+    void tracksHeavyHittersAmongManyLightKeys() {
+        TopKSketch sketch = new TopKSketch(16);
+        for (int i = 0; i < 10_000; i++) {
+            sketch.add("light-" + i, 1);
+            if (i % 10 == 0) {
+                sketch.add("heavy-a", 50);
+                sketch.add("heavy-b", 20);
+            }
+        }
+
+        List<TopKSketch.Entry> top = sketch.top(2);
+
+        assertThat(top).extracting(TopKSketch.Entry::key).containsExactly("heavy-a", "heavy-b");
+        assertThat(top.get(0).weight()).isGreaterThanOrEqualTo(50_000);
+    }
+
+    @Test
+    void mergeSumsSharedKeysAndKeepsCapacity() {
+        TopKSketch first = new TopKSketch(2);
+        first.add("user-a", 10);
+        first.add("user-b", 5);
+        TopKSketch second = new TopKSketch(2);
+        second.add("user-b", 30);
+        second.add("user-c", 1);
+
+        first.merge(second);
+
+        // user-a may have reached second's lightest counter (1) there, so it is charged that as error.
+        assertThat(first.top(10)).containsExactly(
+            new TopKSketch.Entry("user-b", 35, 2, 0),
+            new TopKSketch.Entry("user-a", 11, 2, 1)
+        );
+    }
+
+    @Test
+    void mergeIntoAnEmptySketchCopiesTheOther() {
+        TopKSketch first = new TopKSketch(4);
+        TopKSketch second = new TopKSketch(4);
+        second.add("user-a", 10);
+        second.add("user-b", 3);
+
+        first.merge(second);
+
+        assertThat(first.top(4)).isEqualTo(second.top(4));
+    }
+
+    @Test
+    void mergedOverlappingSketchesBoundTheExactWeights() {
+        Map<String, Long> exact = new HashMap<>();
+        TopKSketch first = new TopKSketch(2);
+        add(first, exact, "user-k", 10);
+        add(first, exact, "user-m", 4);
+        // user-k is evicted again here, so this sketch does not track its 3.
+        TopKSketch second = new TopKSketch(2);
+        add(second, exact, "user-k", 3);
+        add(second, exact, "user-n", 20);
+        add(second, exact, "user-p", 5);
+
+        first.merge(second);
+
+        List<TopKSketch.Entry> top = first.top(2);
+        assertThat(top).extracting(TopKSketch.Entry::key).containsExactly("user-n", "user-k");
+        for (TopKSketch.Entry entry : top) {
+            long actual = exact.get(entry.key());
+            assertThat(entry.weight()).isGreaterThanOrEqualTo(actual);
+            assertThat(entry.weight() - entry.error()).isLessThanOrEqualTo(actual);
+        }
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        TopKSketch sketch = new TopKSketch(4);
+        sketch.add("user-a", 10);
+        sketch.add("user-b", 3);
+
+        assertThat(TopKSketch.fromBytes(sketch.toBytes()).top(4)).isEqualTo(sketch.top(4));
+    }
+
+    private static void add(TopKSketch sketch, Map<String, Long> exact, String key, long weight) {
+        sketch.add(key, weight);
+        exact.merge(key, weight, Long::sum);
+    }
+}
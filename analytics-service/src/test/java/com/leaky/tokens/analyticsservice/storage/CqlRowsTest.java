@@ -0,0 +1,59 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.junit.jupiter.api.Test;
+
+class CqlRowsTest {
+    @Test
+    void collectFollowsDriverPages() {
+        Row first = mock(Row.class);
+        Row second = mock(Row.class);
+        when(first.getLong("tokens")).thenReturn(1L);
+        when(second.getLong("tokens")).thenReturn(2L);
+        AsyncResultSet lastPage = mock(AsyncResultSet.class);
+        when(lastPage.currentPage()).thenReturn(List.of(second));
+        AsyncResultSet firstPage = mock(AsyncResultSet.class);
+        when(firstPage.currentPage()).thenReturn(List.of(first));
+        when(firstPage.hasMorePages()).thenReturn(true);
+        when(firstPage.fetchNextPage()).thenReturn(CompletableFuture.completedFuture(lastPage));
+
+        List<Long> tokens = CqlRows.collect(CompletableFuture.completedFuture(firstPage), row -> row.getLong("tokens")).join();
+
+        assertThat(tokens).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void fanOutBoundsInFlightQueriesAndKeepsInputOrder() {
+        List<CompletableFuture<String>> started = new ArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        CompletableFuture<List<String>> result = CqlRows.fanOut(List.of(1, 2, 3, 4, 5), 2, input -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<String> query = new CompletableFuture<>();
+            started.add(query);
+            return query.thenApply(_ -> {
+                inFlight.decrementAndGet();
+                return "bucket-" + input;
+            });
+        });
+
+        assertThat(started).hasSize(2);
+        for (int i = 0; i < started.size(); i++) {
+            started.get(i).complete("done");
+        }
+
+        assertThat(result.join()).containsExactly("bucket-1", "bucket-2", "bucket-3", "bucket-4", "bucket-5");
+        assertThat(maxInFlight.get()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,74 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class TimeUuidsTest {
+    @Test
+    void encodesEventTimeAsVersionOneUuid() {
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00.123456700Z");
+
+        UUID id = TimeUuids.of(timestamp);
+
+        assertThat(id.version()).isEqualTo(1);
+        assertThat(id.variant()).isEqualTo(2);
+        long ticksSinceEpoch = id.timestamp() - 0x01B21DD213814000L;
+        assertThat(Instant.ofEpochSecond(ticksSinceEpoch / 10_000_000L, (ticksSinceEpoch % 10_000_000L) * 100))
+            .isEqualTo(timestamp);
+    }
+
+    @Test
+    void sameTimestampYieldsDistinctIdsBetweenBounds() {
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00Z");
+
+        UUID first = TimeUuids.of(timestamp);
+        UUID second = TimeUuids.of(timestamp);
+
+        assertThat(first).isNotEqualTo(second);
+        assertThat(TimeUuids.lowerBound(timestamp).timestamp()).isEqualTo(first.timestamp());
+        assertThat(TimeUuids.upperBound(timestamp).timestamp()).isEqualTo(first.timestamp());
+    }
+
+    @Test
+    void sameEventIdYieldsTheSameTimeUuid() {
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00Z");
+        UUID eventId = UUID.randomUUID();
+
+        UUID first = TimeUuids.of(timestamp, eventId);
+
+        assertThat(TimeUuids.of(timestamp, eventId)).isEqualTo(first);
+        assertThat(TimeUuids.of(timestamp, UUID.randomUUID())).isNotEqualTo(first);
+        assertThat(first.version()).isEqualTo(1);
+        assertThat(first.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void timeBucketCoversRangeNewestFirst() {
+        assertThat(TimeBucket.HOUR.covering(
+            Instant.parse("2026-02-07T11:30:00Z"),
+            Instant.parse("2026-02-07T13:10:00Z")
+        )).containsExactly(
+            Instant.parse("2026-02-07T13:00:00Z"),
+            Instant.parse("2026-02-07T12:00:00Z"),
+            Instant.parse("2026-02-07T11:00:00Z")
+        );
+        assertThat(TimeBucket.DAY.start(Instant.parse("2026-02-07T13:10:00Z")))
+            .isEqualTo(Instant.parse("2026-02-07T00:00:00Z"));
+    }
+
+    @Test
+    void monthBucketsFollowTheCalendar() {
+        assertThat(TimeBucket.MONTH.covering(
+            Instant.parse("2026-01-31T23:00:00Z"),
+            Instant.parse("2026-03-01T00:00:00Z")
+        )).containsExactly(
+            Instant.parse("2026-03-01T00:00:00Z"),
+            Instant.parse("2026-02-01T00:00:00Z"),
+            Instant.parse("2026-01-01T00:00:00Z")
+        );
+    }
+}
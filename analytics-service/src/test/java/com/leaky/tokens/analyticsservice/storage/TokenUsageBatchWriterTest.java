@@ -0,0 +1,214 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageBatchWriterTest {
+    @Test
+    void writesEventsConcurrentlyAndGroupsByProviderIntoBatches() {
+        CqlSession session = mock(CqlSession.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(_ -> CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+
+        TokenUsageBatchWriter writer = new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.LEGACY, false), byUserStore(false), rollupStore(), userRollupStore(), new AnalyticsStorageProperties(), 2);
+        writer.write(List.of(
+            record("openai", 1),
+            record("openai", 2),
+            record("openai", 3),
+            record("gemini", 4)
+        ));
+
+        ArgumentCaptor<Statement<?>> captor = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(4 + 3)).executeAsync(captor.capture());
+        List<BatchStatement> batches = captor.getAllValues().stream()
+            .filter(BatchStatement.class::isInstance)
+            .map(BatchStatement.class::cast)
+            .toList();
+        assertThat(batches).extracting(BatchStatement::size).containsExactly(2, 1, 1);
+    }
+
+    @Test
+    void bucketedLayoutBatchesPerProviderAndBucket() {
+        CqlSession session = mock(CqlSession.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(_ -> CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+
+        TokenUsageBatchWriter writer = new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.BUCKETED, false), byUserStore(false), rollupStore(), userRollupStore(), new AnalyticsStorageProperties(), 100);
+        writer.write(List.of(
+            record("openai", 1, Instant.parse("2026-02-07T13:10:00Z")),
+            record("openai", 2, Instant.parse("2026-02-07T13:50:00Z")),
+            record("openai", 3, Instant.parse("2026-02-07T14:05:00Z")),
+            record("gemini", 4, Instant.parse("2026-02-07T13:20:00Z"))
+        ));
+
+        ArgumentCaptor<Statement<?>> captor = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(4 + 3)).executeAsync(captor.capture());
+        assertThat(captor.getAllValues().stream()
+            .filter(BatchStatement.class::isInstance)
+            .map(BatchStatement.class::cast)
+            .map(BatchStatement::size))
+            .containsExactly(2, 1, 1);
+    }
+
+    @Test
+    void byUserTableBatchesPerUserAndBucket() {
+        CqlSession session = mock(CqlSession.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(_ -> CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+
+        TokenUsageRecord otherUser = record("openai", 3, Instant.parse("2026-02-07T13:30:00Z"));
+        otherUser.setUserId("user-2");
+        TokenUsageRecord anonymous = record("openai", 5, Instant.parse("2026-02-07T13:40:00Z"));
+        anonymous.setUserId(null);
+
+        TokenUsageBatchWriter writer = new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.LEGACY, false), byUserStore(true), rollupStore(), userRollupStore(), new AnalyticsStorageProperties(), 100);
+        writer.write(List.of(
+            record("openai", 1, Instant.parse("2026-02-07T13:10:00Z")),
+            record("gemini", 2, Instant.parse("2026-02-07T13:50:00Z")),
+            record("openai", 4, Instant.parse("2026-02-08T01:00:00Z")),
+            otherUser,
+            anonymous
+        ));
+
+        // 5 events, 2 legacy provider batches, 3 user batches: user-1 on two days and user-2.
+        ArgumentCaptor<Statement<?>> captor = ArgumentCaptor.forClass(Statement.class);
+        verify(session, times(5 + 2 + 3)).executeAsync(captor.capture());
+        assertThat(captor.getAllValues().stream()
+            .filter(BatchStatement.class::isInstance)
+            .map(BatchStatement.class::cast)
+            .map(BatchStatement::size))
+            .containsExactly(4, 1, 2, 1, 1);
+    }
+
+    @Test
+    void everyRawInsertCarriesTheRawTtl() {
+        CqlSession session = mock(CqlSession.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(_ -> CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getRetention().setRawTtl(Duration.ofDays(7));
+
+        new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.BUCKETED, true), byUserStore(true), rollupStore(), userRollupStore(), properties, 100)
+            .write(List.of(record("openai", 1)));
+
+        ArgumentCaptor<Object[]> captor = ArgumentCaptor.forClass(Object[].class);
+        verify(prepared, times(4)).bind(captor.capture());
+        assertThat(captor.getAllValues()).allSatisfy(values -> assertThat(values[values.length - 1]).isEqualTo(7 * 24 * 3600));
+    }
+
+    @Test
+    void failureNamesTheEarliestRecordThatMayBeMissing() {
+        CqlSession session = mock(CqlSession.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        BoundStatement failing = mock(BoundStatement.class);
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class)))
+            .thenAnswer(_ -> mock(BoundStatement.class))
+            .thenAnswer(_ -> mock(BoundStatement.class))
+            .thenReturn(failing)
+            .thenAnswer(_ -> mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> invocation.getArgument(0) == failing
+            ? CompletableFuture.failedFuture(new IllegalStateException("write timeout"))
+            : CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+
+        TokenUsageBatchWriter writer = new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.BUCKETED, false), byUserStore(false), rollupStore(), userRollupStore(), new AnalyticsStorageProperties(), 100);
+
+        assertThatThrownBy(() -> writer.write(List.of(
+            record("openai", 1),
+            record("gemini", 2),
+            record("qwen", 3),
+            record("openai", 4)
+        )))
+            .isInstanceOfSatisfying(TokenUsageWriteException.class, e -> assertThat(e.getFailedIndex()).isEqualTo(2))
+            .hasRootCauseMessage("write timeout");
+    }
+
+    @Test
+    void skipsEmptyInput() {
+        CqlSession session = mock(CqlSession.class);
+
+        new TokenUsageBatchWriter(session, store(AnalyticsStorageProperties.Layout.LEGACY, false), byUserStore(false), rollupStore(), userRollupStore(), new AnalyticsStorageProperties(), 100).write(List.of());
+
+        verify(session, never()).prepare(anyString());
+        verify(session, never()).executeAsync(any(Statement.class));
+    }
+
+    private static TokenUsageByProviderStore store(AnalyticsStorageProperties.Layout layout, boolean dualWrite) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByProvider().setLayout(layout);
+        properties.getByProvider().setDualWrite(dualWrite);
+        return new TokenUsageByProviderStore(
+            mock(CqlSession.class),
+            mock(TokenUsageByProviderRepository.class),
+            mock(TokenUsageByProviderBucketRepository.class),
+            properties
+        );
+    }
+
+    private static TokenUsageByUserStore byUserStore(boolean enabled) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByUser().setEnabled(enabled);
+        return new TokenUsageByUserStore(mock(CqlSession.class), mock(TokenUsageByUserRepository.class), properties);
+    }
+
+    private static TokenUsageRollupStore rollupStore() {
+        TokenUsageRollupStore rollupStore = mock(TokenUsageRollupStore.class);
+        when(rollupStore.writeAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+        return rollupStore;
+    }
+
+    private static TokenUsageUserRollupStore userRollupStore() {
+        TokenUsageUserRollupStore userRollupStore = mock(TokenUsageUserRollupStore.class);
+        when(userRollupStore.writeAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+        return userRollupStore;
+    }
+
+    private static TokenUsageRecord record(String provider, long tokens) {
+        return record(provider, tokens, Instant.now());
+    }
+
+    private static TokenUsageRecord record(String provider, long tokens, Instant timestamp) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setId(UUID.randomUUID());
+        record.setUserId("user-1");
+        record.setProvider(provider);
+        record.setTokens(tokens);
+        record.setAllowed(true);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+}
@@ -0,0 +1,172 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+
+class TokenUsageByProviderScannerTest {
+    private static final Instant FROM = Instant.parse("2026-02-07T12:00:00Z");
+    private static final Instant TO = Instant.parse("2026-02-07T14:00:00Z");
+
+    private final CqlSession session = mock(CqlSession.class);
+    private final PreparedStatement prepared = mock(PreparedStatement.class);
+    private final BoundStatement statement = mock(BoundStatement.class);
+
+    @Test
+    void legacyPageReturnsDriverPagingStateAsCursor() {
+        stubStatements();
+        ByteBuffer pagingState = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        when(session.execute(any(Statement.class))).thenReturn(resultSet(pagingState, row("user-a", FROM.plusSeconds(60))));
+
+        TokenUsageByProviderScanner.UsagePage page = scanner(AnalyticsStorageProperties.Layout.LEGACY).page("openai", FROM, TO, 1, null);
+
+        assertThat(page.items()).extracting(TokenUsageByProviderRecord::getUserId).containsExactly("user-a");
+        assertThat(page.items().getFirst().getKey().getProvider()).isEqualTo("openai");
+        assertThat(page.nextCursor()).isNotNull();
+        verify(prepared).bind("openai", FROM, TO);
+
+        UsageCursor cursor = UsageCursor.decode(page.nextCursor());
+        assertThat(cursor.bucket()).isNull();
+        assertThat(cursor.pagingState()).isEqualTo(pagingState);
+    }
+
+    @Test
+    void legacyPageResumesFromCursorAndEndsWithoutNextCursor() {
+        stubStatements();
+        ByteBuffer pagingState = ByteBuffer.wrap(new byte[] {9});
+        when(session.execute(any(Statement.class))).thenReturn(resultSet(null, row("user-b", FROM)));
+
+        TokenUsageByProviderScanner.UsagePage page = scanner(AnalyticsStorageProperties.Layout.LEGACY)
+            .page("openai", FROM, TO, 10, new UsageCursor(UsageCursor.query("openai", FROM, TO), null, pagingState).encode());
+
+        assertThat(page.items()).hasSize(1);
+        assertThat(page.nextCursor()).isNull();
+        verify(statement).setPagingState(pagingState);
+    }
+
+    @Test
+    void bucketedPageFillsFromOlderBucketsWhenNewestIsExhausted() {
+        stubStatements();
+        Instant to = Instant.parse("2026-02-07T13:30:00Z");
+        when(session.execute(any(Statement.class)))
+            .thenReturn(resultSet(null, row("user-a", Instant.parse("2026-02-07T13:20:00Z"))))
+            .thenReturn(resultSet(null, row("user-b", Instant.parse("2026-02-07T12:30:00Z"))));
+
+        TokenUsageByProviderScanner.UsagePage page = scanner(AnalyticsStorageProperties.Layout.BUCKETED).page("openai", FROM, to, 2, null);
+
+        assertThat(page.items()).extracting(TokenUsageByProviderRecord::getUserId).containsExactly("user-a", "user-b");
+        assertThat(page.nextCursor()).isNull();
+        verify(prepared).bind("openai", Instant.parse("2026-02-07T13:00:00Z"), TimeUuids.lowerBound(FROM), TimeUuids.lowerBound(to));
+        verify(prepared).bind("openai", FROM, TimeUuids.lowerBound(FROM), TimeUuids.lowerBound(to));
+    }
+
+    @Test
+    void bucketedPagePointsCursorAtNextBucketWhenFilled() {
+        stubStatements();
+        Instant to = Instant.parse("2026-02-07T13:30:00Z");
+        when(session.execute(any(Statement.class)))
+            .thenReturn(resultSet(null, row("user-a", Instant.parse("2026-02-07T13:20:00Z"))));
+
+        TokenUsageByProviderScanner.UsagePage page = scanner(AnalyticsStorageProperties.Layout.BUCKETED).page("openai", FROM, to, 1, null);
+
+        assertThat(page.items()).hasSize(1);
+        assertThat(UsageCursor.decode(page.nextCursor())).isEqualTo(new UsageCursor(UsageCursor.query("openai", FROM, to), FROM, null));
+    }
+
+    @Test
+    void rejectsCursorForBucketOutsideRange() {
+        String cursor = new UsageCursor(UsageCursor.query("openai", FROM, TO), Instant.parse("2026-01-01T00:00:00Z"), null).encode();
+
+        assertThatThrownBy(() -> scanner(AnalyticsStorageProperties.Layout.BUCKETED).page("openai", FROM, TO, 10, cursor))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UsageCursor.decode("%%%"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsCursorIssuedForAnotherQuery() {
+        stubStatements();
+        ByteBuffer pagingState = ByteBuffer.wrap(new byte[] {1, 2, 3});
+        when(session.execute(any(Statement.class))).thenReturn(resultSet(pagingState, row("user-a", FROM.plusSeconds(60))));
+        TokenUsageByProviderScanner scanner = scanner(AnalyticsStorageProperties.Layout.LEGACY);
+        String cursor = scanner.page("openai", FROM, TO, 1, null).nextCursor();
+
+        assertThatThrownBy(() -> scanner.page("gemini", FROM, TO, 1, cursor))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("invalid cursor");
+        assertThatThrownBy(() -> scanner.page("openai", FROM.plusSeconds(1), TO, 1, cursor))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("invalid cursor");
+        verify(session, times(1)).execute(any(Statement.class));
+    }
+
+    @Test
+    void exportStreamsEveryBucketNewestFirst() {
+        stubStatements();
+        when(session.execute(any(Statement.class)))
+            .thenReturn(resultSet(null, row("user-c", TO.minusSeconds(1))))
+            .thenReturn(resultSet(null, row("user-b", FROM.plusSeconds(3599))))
+            .thenReturn(resultSet(null, row("user-a", FROM)));
+        List<String> users = new ArrayList<>();
+
+        long exported = scanner(AnalyticsStorageProperties.Layout.BUCKETED)
+            .export("openai", FROM, TO, record -> users.add(record.getUserId()));
+
+        assertThat(exported).isEqualTo(3);
+        assertThat(users).containsExactly("user-c", "user-b", "user-a");
+        verify(statement, times(3)).setPageSize(500);
+    }
+
+    private void stubStatements() {
+        when(session.prepare(anyString())).thenReturn(prepared);
+        when(prepared.bind(any(Object[].class))).thenReturn(statement);
+        when(statement.setPageSize(anyInt())).thenReturn(statement);
+        when(statement.setPagingState((ByteBuffer) any())).thenReturn(statement);
+    }
+
+    private TokenUsageByProviderScanner scanner(AnalyticsStorageProperties.Layout layout) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByProvider().setLayout(layout);
+        properties.getScan().setExportFetchSize(500);
+        return new TokenUsageByProviderScanner(session, properties);
+    }
+
+    private static ResultSet resultSet(ByteBuffer pagingState, Row... rows) {
+        ResultSet resultSet = mock(ResultSet.class);
+        ExecutionInfo executionInfo = mock(ExecutionInfo.class);
+        when(executionInfo.getPagingState()).thenReturn(pagingState);
+        when(resultSet.getExecutionInfo()).thenReturn(executionInfo);
+        when(resultSet.currentPage()).thenReturn(List.of(rows));
+        when(resultSet.iterator()).thenAnswer(invocation -> List.of(rows).iterator());
+        return resultSet;
+    }
+
+    private static Row row(String userId, Instant timestamp) {
+        Row row = mock(Row.class);
+        when(row.getInstant("timestamp")).thenReturn(timestamp);
+        when(row.getString("user_id")).thenReturn(userId);
+        when(row.getLong("tokens")).thenReturn(10L);
+        when(row.getBoolean("allowed")).thenReturn(true);
+        return row;
+    }
+}
@@ -0,0 +1,144 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageByProviderStoreTest {
+    private final CqlSession session = mock(CqlSession.class);
+    private final TokenUsageByProviderRepository legacyRepository = mock(TokenUsageByProviderRepository.class);
+    private final TokenUsageByProviderBucketRepository bucketRepository = mock(TokenUsageByProviderBucketRepository.class);
+    private final List<Object[]> boundSelects = new ArrayList<>();
+
+    @Test
+    void legacyLayoutReadsAndWritesProviderPartition() {
+        TokenUsageByProviderStore store = store(AnalyticsStorageProperties.Layout.LEGACY, false);
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00Z");
+        stubSelect(Map.of("openai", List.of(row("2026-02-07T13:09:00Z", 5))));
+
+        store.save(record("openai", 5, timestamp));
+        List<TokenUsageByProviderRecord> records =
+            store.findByProviderAndTimestampRange("openai", timestamp.minusSeconds(60), timestamp, 10);
+
+        ArgumentCaptor<TokenUsageByProviderRecord> captor = ArgumentCaptor.forClass(TokenUsageByProviderRecord.class);
+        verify(legacyRepository).save(captor.capture());
+        assertThat(captor.getValue().getKey().getProvider()).isEqualTo("openai");
+        assertThat(captor.getValue().getKey().getTimestamp()).isEqualTo(timestamp);
+        verify(bucketRepository, never()).save(any(TokenUsageByProviderBucketRecord.class));
+        assertThat(records).extracting(TokenUsageByProviderRecord::getTokens).containsExactly(5L);
+        assertThat(boundSelects).singleElement()
+            .isEqualTo(new Object[] {"openai", timestamp.minusSeconds(60), timestamp, 10});
+    }
+
+    @Test
+    void dualWriteStoresBucketedRowWithEventTimeUuid() {
+        TokenUsageByProviderStore store = store(AnalyticsStorageProperties.Layout.BUCKETED, true);
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00Z");
+
+        store.save(record("openai", 5, timestamp));
+
+        verify(legacyRepository).save(any(TokenUsageByProviderRecord.class));
+        ArgumentCaptor<TokenUsageByProviderBucketRecord> captor = ArgumentCaptor.forClass(TokenUsageByProviderBucketRecord.class);
+        verify(bucketRepository).save(captor.capture());
+        TokenUsageByProviderBucketKey key = captor.getValue().getKey();
+        assertThat(key.getProvider()).isEqualTo("openai");
+        assertThat(key.getBucket()).isEqualTo(Instant.parse("2026-02-07T13:00:00Z"));
+        assertThat(key.getEventId().timestamp()).isEqualTo(TimeUuids.lowerBound(timestamp).timestamp());
+    }
+
+    @Test
+    void bucketedRangeFansOutAcrossBucketsAndMergesNewestFirst() {
+        TokenUsageByProviderStore store = store(AnalyticsStorageProperties.Layout.BUCKETED, false);
+        Instant start = Instant.parse("2026-02-07T11:30:00Z");
+        Instant end = Instant.parse("2026-02-07T13:10:00Z");
+        stubSelect(Map.of(
+            Instant.parse("2026-02-07T13:00:00Z"), List.of(row("2026-02-07T13:05:00Z", 1)),
+            Instant.parse("2026-02-07T12:00:00Z"), List.of(row("2026-02-07T12:40:00Z", 2), row("2026-02-07T12:10:00Z", 3)),
+            Instant.parse("2026-02-07T11:00:00Z"), List.of(row("2026-02-07T11:45:00Z", 4))
+        ));
+
+        List<TokenUsageByProviderRecord> records = store.findByProviderAndTimestampRangeAsync("openai", start, end, 3).join();
+
+        assertThat(records).extracting(TokenUsageByProviderRecord::getTokens).containsExactly(1L, 2L, 3L);
+        verify(session, times(3)).executeAsync(any(Statement.class));
+        assertThat(boundSelects).contains(new Object[] {
+            "openai",
+            Instant.parse("2026-02-07T11:00:00Z"),
+            TimeUuids.lowerBound(start),
+            TimeUuids.upperBound(end),
+            3
+        });
+    }
+
+    // Each SELECT returns the rows registered for its partition: the provider for the legacy table,
+    // the bucket (second parameter) for the bucketed one.
+    private void stubSelect(Map<Object, List<Row>> rowsByPartition) {
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(select);
+        Map<Statement<?>, List<Row>> results = new ConcurrentHashMap<>();
+        when(select.bind(any(Object[].class))).thenAnswer(invocation -> {
+            Object[] values = invocation.getArguments();
+            boundSelects.add(values);
+            BoundStatement statement = mock(BoundStatement.class);
+            List<Row> rows = rowsByPartition.get(values[1]);
+            results.put(statement, rows != null ? rows : rowsByPartition.getOrDefault(values[0], List.of()));
+            return statement;
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(results.get(invocation.<Statement<?>>getArgument(0)));
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private TokenUsageByProviderStore store(AnalyticsStorageProperties.Layout layout, boolean dualWrite) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByProvider().setLayout(layout);
+        properties.getByProvider().setDualWrite(dualWrite);
+        properties.getByProvider().setBucket(TimeBucket.HOUR);
+        properties.getByProvider().setFanOutParallelism(2);
+        return new TokenUsageByProviderStore(session, legacyRepository, bucketRepository, properties);
+    }
+
+    private static TokenUsageRecord record(String provider, long tokens, Instant timestamp) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setId(UUID.randomUUID());
+        record.setUserId("user-1");
+        record.setProvider(provider);
+        record.setTokens(tokens);
+        record.setAllowed(true);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+
+    private static Row row(String timestamp, long tokens) {
+        Row row = mock(Row.class);
+        when(row.getInstant("timestamp")).thenReturn(Instant.parse(timestamp));
+        when(row.getString("user_id")).thenReturn("user-1");
+        when(row.getLong("tokens")).thenReturn(tokens);
+        when(row.getBoolean("allowed")).thenReturn(true);
+        return row;
+    }
+}
@@ -0,0 +1,126 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageByUserStoreTest {
+    private final CqlSession session = mock(CqlSession.class);
+    private final TokenUsageByUserRepository repository = mock(TokenUsageByUserRepository.class);
+
+    @Test
+    void savesRowInUserDayPartition() {
+        TokenUsageByUserStore store = store(true);
+        Instant timestamp = Instant.parse("2026-02-07T13:10:00Z");
+
+        store.save(record("user-1", "openai", 5, timestamp));
+
+        ArgumentCaptor<TokenUsageByUserRecord> captor = ArgumentCaptor.forClass(TokenUsageByUserRecord.class);
+        verify(repository).save(captor.capture());
+        TokenUsageByUserKey key = captor.getValue().getKey();
+        assertThat(key.getUserId()).isEqualTo("user-1");
+        assertThat(key.getBucket()).isEqualTo(Instant.parse("2026-02-07T00:00:00Z"));
+        assertThat(key.getEventId().timestamp()).isEqualTo(TimeUuids.lowerBound(timestamp).timestamp());
+        assertThat(captor.getValue().getProvider()).isEqualTo("openai");
+    }
+
+    @Test
+    void skipsAnonymousEventsAndDisabledTable() {
+        store(true).save(record(null, "openai", 5, Instant.now()));
+        store(false).save(record("user-1", "openai", 5, Instant.now()));
+
+        verify(repository, never()).save(any(TokenUsageByUserRecord.class));
+    }
+
+    @Test
+    void rangeReadsEveryBucketConcurrentlyAndKeepsTheNewestRows() {
+        Instant start = Instant.parse("2026-02-05T12:00:00Z");
+        Instant end = Instant.parse("2026-02-07T13:00:00Z");
+        stubSelect(Map.of(
+            Instant.parse("2026-02-07T00:00:00Z"), List.of(row("openai", Instant.parse("2026-02-07T12:00:00Z"))),
+            Instant.parse("2026-02-06T00:00:00Z"), List.of(row("gemini", Instant.parse("2026-02-06T12:00:00Z"))),
+            Instant.parse("2026-02-05T00:00:00Z"), List.of(row("openai", Instant.parse("2026-02-05T13:00:00Z")))
+        ));
+
+        List<TokenUsageByUserRecord> result = store(true).findByUserAndTimestampRange("user-1", start, end, 2);
+
+        assertThat(result).extracting(TokenUsageByUserRecord::getProvider).containsExactly("openai", "gemini");
+        assertThat(result).extracting(TokenUsageByUserRecord::getTimestamp)
+            .containsExactly(Instant.parse("2026-02-07T12:00:00Z"), Instant.parse("2026-02-06T12:00:00Z"));
+        verify(session, times(3)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    void disabledStoreNeverTouchesRepository() {
+        TokenUsageByUserStore store = store(false);
+
+        assertThat(store.isEnabled()).isFalse();
+        verifyNoInteractions(repository, session);
+    }
+
+    // Every bucket SELECT returns the rows registered for the bucket bound as its second parameter.
+    private void stubSelect(Map<Instant, List<Row>> rowsByBucket) {
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenReturn(select);
+        Map<Statement<?>, List<Row>> results = new ConcurrentHashMap<>();
+        when(select.bind(any(Object[].class))).thenAnswer(invocation -> {
+            BoundStatement statement = mock(BoundStatement.class);
+            results.put(statement, rowsByBucket.getOrDefault(invocation.<Instant>getArgument(1), List.of()));
+            return statement;
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(results.get(invocation.<Statement<?>>getArgument(0)));
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private TokenUsageByUserStore store(boolean enabled) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByUser().setEnabled(enabled);
+        return new TokenUsageByUserStore(session, repository, properties);
+    }
+
+    private static Row row(String provider, Instant timestamp) {
+        Row row = mock(Row.class);
+        when(row.getUuid("event_id")).thenReturn(TimeUuids.lowerBound(timestamp));
+        when(row.getString("provider")).thenReturn(provider);
+        when(row.getInstant("timestamp")).thenReturn(timestamp);
+        when(row.getLong("tokens")).thenReturn(10L);
+        when(row.getBoolean("allowed")).thenReturn(true);
+        return row;
+    }
+
+    private static TokenUsageRecord record(String userId, String provider, long tokens, Instant timestamp) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setId(UUID.randomUUID());
+        record.setUserId(userId);
+        record.setProvider(provider);
+        record.setTokens(tokens);
+        record.setAllowed(true);
+        record.setTimestamp(timestamp);
+        return record;
+    }
+}
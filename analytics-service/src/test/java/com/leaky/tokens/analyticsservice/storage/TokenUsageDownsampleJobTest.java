@@ -0,0 +1,98 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageDownsampleJobTest {
+    private static final Instant NOW = Instant.parse("2026-02-07T15:20:00Z");
+    private static final Instant TODAY = Instant.parse("2026-02-07T00:00:00Z");
+
+    private final TokenUsageRollupStore rollupStore = mock(TokenUsageRollupStore.class);
+    private final TokenUsageHourRollupStore hourStore = mock(TokenUsageHourRollupStore.class);
+    private final AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+
+    @Test
+    void foldsCompletedHoursAndSkipsEmptyOnes() {
+        properties.getRetention().setDownsampleLookback(Duration.ofHours(2));
+        partitions(new TokenUsageRollupStore.MinutePartition("openai", TODAY));
+        UserUsageSketch sketch = new UserUsageSketch(12, 8);
+        sketch.add("user-a", 30);
+        Instant busyHour = Instant.parse("2026-02-07T13:00:00Z");
+        Instant quietHour = Instant.parse("2026-02-07T14:00:00Z");
+        when(rollupStore.findRollupsAsync("openai", busyHour, busyHour.plus(Duration.ofMinutes(59))))
+            .thenReturn(CompletableFuture.completedFuture(List.of(
+                minute(busyHour, 10, 1, 0),
+                minute(busyHour.plus(Duration.ofMinutes(5)), 20, 1, 1)
+            )));
+        when(rollupStore.findRollupsAsync("openai", quietHour, quietHour.plus(Duration.ofMinutes(59))))
+            .thenReturn(CompletableFuture.completedFuture(List.of()));
+        when(rollupStore.findUserSketchAsync(eq("openai"), any(), any())).thenReturn(CompletableFuture.completedFuture(sketch));
+        when(hourStore.writeAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        TokenUsageDownsampleJob.DownsampleResult result = job().runOnce(NOW);
+
+        // 15:00 is still in progress, so the window is 13:00 and 14:00.
+        assertThat(result.hours()).isEqualTo(1);
+        ArgumentCaptor<TokenUsageHourRollupRecord> captor = ArgumentCaptor.forClass(TokenUsageHourRollupRecord.class);
+        verify(hourStore).writeAsync(captor.capture());
+        TokenUsageHourRollupRecord hour = captor.getValue();
+        assertThat(hour.getKey().getHour()).isEqualTo(busyHour);
+        assertThat(hour.getKey().getMonth()).isEqualTo(Instant.parse("2026-02-01T00:00:00Z"));
+        assertThat(hour.getTotalTokens()).isEqualTo(30L);
+        assertThat(hour.getAllowedEvents()).isEqualTo(2L);
+        assertThat(hour.getDeniedEvents()).isEqualTo(1L);
+        assertThat(hour.toSketch().distinctUsers()).isEqualTo(1L);
+    }
+
+    @Test
+    void purgesMinutePartitionsOlderThanTheMinuteTtl() {
+        TokenUsageRollupStore.MinutePartition expired =
+            new TokenUsageRollupStore.MinutePartition("openai", TODAY.minus(Duration.ofDays(91)));
+        TokenUsageRollupStore.MinutePartition kept =
+            new TokenUsageRollupStore.MinutePartition("openai", TODAY.minus(Duration.ofDays(89)));
+        partitions(expired, kept);
+        when(rollupStore.deleteMinutePartitionAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        TokenUsageDownsampleJob.DownsampleResult result = job().runOnce(NOW);
+
+        assertThat(result.purgedPartitions()).isEqualTo(1);
+        verify(rollupStore).deleteMinutePartitionAsync(expired);
+        verify(rollupStore, never()).deleteMinutePartitionAsync(kept);
+        verify(hourStore, never()).writeAsync(any());
+    }
+
+    @Test
+    void zeroMinuteTtlKeepsEveryPartition() {
+        properties.getRetention().setMinuteRollupTtl(Duration.ZERO);
+        partitions(new TokenUsageRollupStore.MinutePartition("openai", Instant.parse("2020-01-01T00:00:00Z")));
+
+        assertThat(job().runOnce(NOW).purgedPartitions()).isZero();
+        verify(rollupStore, never()).deleteMinutePartitionAsync(any());
+    }
+
+    private TokenUsageDownsampleJob job() {
+        return new TokenUsageDownsampleJob(rollupStore, hourStore, properties);
+    }
+
+    private void partitions(TokenUsageRollupStore.MinutePartition... partitions) {
+        when(rollupStore.findMinutePartitionsAsync()).thenReturn(CompletableFuture.completedFuture(List.of(partitions)));
+    }
+
+    private static TokenUsageMinuteRollupRecord minute(Instant minute, long tokens, long allowed, long denied) {
+        return new TokenUsageMinuteRollupRecord(TokenUsageMinuteKey.of("openai", minute), tokens, allowed, denied);
+    }
+}
@@ -0,0 +1,95 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import org.junit.jupiter.api.Test;
+
+class TokenUsageHourRollupStoreTest {
+    private final CqlSession session = mock(CqlSession.class);
+    private final PreparedStatement insert = mock(PreparedStatement.class);
+    private final PreparedStatement select = mock(PreparedStatement.class);
+
+    @Test
+    void writesHourRowIntoMonthPartitionWithHourTtl() {
+        stubSession(Map.of());
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getRetention().setHourRollupTtl(Duration.ofDays(400));
+        Instant hour = Instant.parse("2026-02-07T13:00:00Z");
+        ByteBuffer users = ByteBuffer.wrap(new byte[] {1});
+        ByteBuffer top = ByteBuffer.wrap(new byte[] {2});
+
+        new TokenUsageHourRollupStore(session, properties).writeAsync(new TokenUsageHourRollupRecord(
+            TokenUsageHourRollupKey.of("openai", hour), 120L, 3L, 1L, users, top
+        )).join();
+
+        verify(insert).bind("openai", Instant.parse("2026-02-01T00:00:00Z"), hour, 120L, 3L, 1L, users, top, 400 * 24 * 3600);
+    }
+
+    @Test
+    void rangeAcrossMonthsReturnsHoursOldestFirst() {
+        Instant lastOfJanuary = Instant.parse("2026-01-31T23:00:00Z");
+        Instant firstOfFebruary = Instant.parse("2026-02-01T00:00:00Z");
+        stubSession(Map.of(
+            Instant.parse("2026-01-01T00:00:00Z"), List.of(hourRow(lastOfJanuary, 5)),
+            firstOfFebruary, List.of(hourRow(firstOfFebruary, 7))
+        ));
+
+        List<TokenUsageHourRollupRecord> hours = new TokenUsageHourRollupStore(session, new AnalyticsStorageProperties())
+            .findHoursAsync("openai", lastOfJanuary, firstOfFebruary)
+            .join();
+
+        assertThat(hours).extracting(hour -> hour.getKey().getHour()).containsExactly(lastOfJanuary, firstOfFebruary);
+        assertThat(hours).extracting(TokenUsageHourRollupRecord::getTotalTokens).containsExactly(5L, 7L);
+        assertThat(hours.getFirst().getKey().getMonth()).isEqualTo(Instant.parse("2026-01-01T00:00:00Z"));
+    }
+
+    // SELECTs return the rows registered for the month bound as their second parameter.
+    private void stubSession(Map<Instant, List<Row>> rowsByMonth) {
+        when(session.prepare(anyString())).thenAnswer(invocation ->
+            invocation.<String>getArgument(0).startsWith("SELECT") ? select : insert);
+        when(insert.bind(any(Object[].class))).thenReturn(mock(BoundStatement.class));
+        Map<Statement<?>, List<Row>> results = new ConcurrentHashMap<>();
+        when(select.bind(any(Object[].class))).thenAnswer(invocation -> {
+            BoundStatement statement = mock(BoundStatement.class);
+            results.put(statement, rowsByMonth.getOrDefault(invocation.<Instant>getArgument(1), List.of()));
+            return statement;
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(results.getOrDefault(invocation.<Statement<?>>getArgument(0), List.of()));
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private static Row hourRow(Instant hour, long tokens) {
+        UserUsageSketch sketch = new UserUsageSketch(12, 8);
+        sketch.add("user-a", tokens);
+        Row row = mock(Row.class);
+        when(row.getInstant("hour")).thenReturn(hour);
+        when(row.getLong("total_tokens")).thenReturn(tokens);
+        when(row.getLong("allowed_events")).thenReturn(1L);
+        when(row.getByteBuffer("users_hll")).thenReturn(ByteBuffer.wrap(sketch.distinctUsersBytes()));
+        when(row.getByteBuffer("top_users")).thenReturn(ByteBuffer.wrap(sketch.topUsersBytes()));
+        return row;
+    }
+}
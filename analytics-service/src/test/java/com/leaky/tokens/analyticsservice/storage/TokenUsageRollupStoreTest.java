@@ -0,0 +1,336 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.leaky.tokens.analyticsservice.sketch.UserUsageSketch;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageRollupStoreTest {
+    private static final Instant DAY = Instant.parse("2026-02-07T00:00:00Z");
+
+    private final CqlSession session = mock(CqlSession.class);
+    private final PreparedStatement insertPartial = mock(PreparedStatement.class);
+    private final PreparedStatement selectPartial = mock(PreparedStatement.class);
+    private final BoundStatement selectBound = mock(BoundStatement.class);
+    private final List<Row> storedRows = new ArrayList<>();
+
+    @Test
+    void aggregatesRecordsPerProviderMinuteAndKafkaPartition() {
+        stubSession();
+
+        store(true).writeAsync(List.of(
+            record("user-a", 100, true, "2026-02-07T13:10:05Z", 0, 1),
+            record("user-b", 50, false, "2026-02-07T13:10:55Z", 0, 2),
+            record("user-a", 7, true, "2026-02-07T13:11:00Z", 0, 3),
+            record("user-c", 9, true, "2026-02-07T13:10:30Z", 1, 40)
+        )).join();
+
+        List<Object[]> rows = insertedRows(3);
+        assertThat(rows.get(0)).startsWith("openai", DAY, Instant.parse("2026-02-07T13:10:00Z"), 0, 150L, 1L, 1L, 2L);
+        assertThat(rows.get(1)).startsWith("openai", DAY, Instant.parse("2026-02-07T13:11:00Z"), 0, 7L, 1L, 0L, 3L);
+        assertThat(rows.get(2)).startsWith("openai", DAY, Instant.parse("2026-02-07T13:10:00Z"), 1, 9L, 1L, 0L, 40L);
+        assertThat(rows.get(0)[11]).isEqualTo(90 * 24 * 3600);
+    }
+
+    @Test
+    void redeliveredRecordsAreNotCountedTwice() {
+        stubSession();
+        TokenUsageRollupStore store = store(true);
+        String now = Instant.now().toString();
+
+        store.writeAsync(List.of(record("user-a", 10, true, now, 0, 1), record("user-b", 20, true, now, 0, 2))).join();
+        store.writeAsync(List.of(
+            record("user-a", 10, true, now, 0, 1),
+            record("user-b", 20, true, now, 0, 2),
+            record("user-c", 5, true, now, 0, 3)
+        )).join();
+        store.writeAsync(List.of(record("user-c", 5, true, now, 0, 3))).join();
+
+        List<Object[]> rows = insertedRows(2);
+        assertThat(Arrays.copyOfRange(rows.get(1), 4, 8)).containsExactly(35L, 3L, 0L, 3L);
+        assertThat(sketch(rows.get(1)).distinctUsers()).isEqualTo(3);
+        assertThat(sketch(rows.get(1)).topUsers(1).getFirst().weight()).isEqualTo(20);
+        assertThat((long) rows.get(1)[10]).isGreaterThan((long) rows.get(0)[10]);
+    }
+
+    @Test
+    void failedWriteKeepsThePreviousStateAndNamesTheRowsFirstRecord() {
+        stubSession();
+        CompletableFuture<AsyncResultSet> failure = CompletableFuture.failedFuture(new IllegalStateException("timeout"));
+        BoundStatement failingInsert = mock(BoundStatement.class);
+        when(insertPartial.bind(any(Object[].class)))
+            .thenReturn(mock(BoundStatement.class))
+            .thenReturn(failingInsert)
+            .thenAnswer(_ -> mock(BoundStatement.class));
+        doReturn(failure).when(session).executeAsync(failingInsert);
+        TokenUsageRollupStore store = store(true);
+        Instant minute = Instant.now().truncatedTo(ChronoUnit.MINUTES).minus(Duration.ofMinutes(2));
+        List<TokenUsageRecord> batch = List.of(
+            record("user-a", 10, true, minute.plusSeconds(5).toString(), 0, 1),
+            record("user-b", 20, true, minute.plusSeconds(65).toString(), 0, 2),
+            record("user-c", 30, true, minute.plusSeconds(70).toString(), 0, 3)
+        );
+
+        assertThatThrownBy(() -> store.writeAsync(batch).join())
+            .hasCauseInstanceOf(TokenUsageWriteException.class)
+            .satisfies(e -> assertThat(((TokenUsageWriteException) e.getCause()).getFailedIndex()).isEqualTo(1));
+        store.writeAsync(batch).join();
+
+        List<Object[]> rows = insertedRows(3);
+        assertThat(rows.get(2)).startsWith("openai", TimeBucket.DAY.start(minute), minute.plusSeconds(60), 0, 50L, 2L, 0L, 3L);
+    }
+
+    @Test
+    void rowNotInMemoryIsReadBackBeforeApplyingNewRecords() {
+        stubSession();
+        UserUsageSketch stored = store(true).newSketch();
+        stored.add("user-a", 100);
+        storedRows.add(partialRow(100L, 1L, 0L, 5L, stored));
+
+        store(true).writeAsync(List.of(
+            record("user-a", 100, true, "2026-02-07T13:10:05Z", 2, 5),
+            record("user-b", 40, false, "2026-02-07T13:10:15Z", 2, 6)
+        )).join();
+
+        verify(selectPartial).bind("openai", DAY, Instant.parse("2026-02-07T13:10:00Z"), 2);
+        Object[] row = insertedRows(1).getFirst();
+        assertThat(row).startsWith("openai", DAY, Instant.parse("2026-02-07T13:10:00Z"), 2, 140L, 1L, 1L, 6L);
+        assertThat(sketch(row).distinctUsers()).isEqualTo(2);
+    }
+
+    @Test
+    void reassignedPartitionKeepsWhatTheInterimOwnerWrote() {
+        stubSession();
+        TokenUsageRollupStore store = store(true);
+        String now = Instant.now().toString();
+        store.writeAsync(List.of(record("user-a", 10, true, now, 0, 1))).join();
+
+        // Partition 0 moved to another instance and back; that owner stored offsets 2 and 3.
+        UserUsageSketch interim = store.newSketch();
+        interim.add("user-a", 10);
+        interim.add("user-b", 20);
+        interim.add("user-c", 30);
+        storedRows.add(partialRow(60L, 3L, 0L, 3L, interim));
+        store.forgetPartitions(List.of(0));
+        store.writeAsync(List.of(record("user-d", 5, true, now, 0, 4))).join();
+
+        Object[] row = insertedRows(2).get(1);
+        assertThat(Arrays.copyOfRange(row, 4, 8)).containsExactly(65L, 4L, 0L, 4L);
+        assertThat(sketch(row).distinctUsers()).isEqualTo(4);
+    }
+
+    @Test
+    void recordsWithoutAKafkaPositionAreAlwaysApplied() {
+        stubSession();
+        TokenUsageRollupStore store = store(true);
+        TokenUsageRecord record = record("user-a", 10, true, Instant.now().toString(), 0, 0);
+        record.setKafkaPartition(null);
+        record.setKafkaOffset(null);
+
+        store.writeAsync(List.of(record)).join();
+        store.writeAsync(List.of(record)).join();
+
+        List<Object[]> rows = insertedRows(2);
+        assertThat(rows.get(1)[3]).isEqualTo(TokenUsageRecord.NO_KAFKA_PARTITION);
+        assertThat(rows.get(1)[4]).isEqualTo(20L);
+    }
+
+    @Test
+    void evictsRowsOutsideRetention() {
+        stubSession();
+        TokenUsageRollupStore store = store(true);
+
+        store.writeAsync(List.of(record("user-a", 10, true, "2026-02-07T13:10:05Z", 0, 1))).join();
+
+        assertThat(store.cachedPartials()).isZero();
+    }
+
+    @Test
+    void rollupReadsSumTheRowsOfEveryKafkaPartition() {
+        Instant minute = Instant.parse("2026-02-07T13:10:00Z");
+        stubSelect(Map.of(DAY, List.of(
+            rollupRow(minute, 10),
+            rollupRow(minute, 5),
+            rollupRow(minute.plusSeconds(60), 1)
+        )));
+
+        List<TokenUsageMinuteRollupRecord> rows = store(true).findRollups("openai", minute, minute.plusSeconds(60));
+
+        assertThat(rows).extracting(TokenUsageMinuteRollupRecord::getTotalTokens).containsExactly(15L, 1L);
+        assertThat(rows).extracting(TokenUsageMinuteRollupRecord::getAllowedEvents).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void disabledStoreSkipsWrites() {
+        store(false).writeAsync(List.of(record("user-a", 1, true, "2026-02-07T13:10:05Z", 0, 1))).join();
+
+        verify(session, never()).prepare(anyString());
+    }
+
+    @Test
+    void rangeSpanningMidnightQueriesBothDayPartitionsAsync() {
+        Instant from = Instant.parse("2026-02-07T23:50:00Z");
+        Instant to = Instant.parse("2026-02-08T00:10:00Z");
+        Instant firstDay = Instant.parse("2026-02-07T00:00:00Z");
+        Instant secondDay = Instant.parse("2026-02-08T00:00:00Z");
+        stubSelect(Map.of(
+            firstDay, List.of(rollupRow(from, 1)),
+            secondDay, List.of(rollupRow(to, 2))
+        ));
+
+        List<TokenUsageMinuteRollupRecord> rows = store(true).findRollupsAsync("openai", from, to).join();
+
+        assertThat(rows).extracting(TokenUsageMinuteRollupRecord::getTotalTokens).containsExactly(2L, 1L);
+        assertThat(rows).extracting(row -> row.getKey().getDay()).containsExactly(secondDay, firstDay);
+        assertThat(rows.getLast().getKey().getMinute()).isEqualTo(from);
+        verify(session, times(2)).executeAsync(any(Statement.class));
+    }
+
+    @Test
+    void findUserSketchMergesPartitionRows() {
+        Instant minute = Instant.parse("2026-02-07T13:10:00Z");
+        TokenUsageRollupStore store = store(true);
+        UserUsageSketch first = store.newSketch();
+        first.add("user-a", 10);
+        first.add("user-b", 5);
+        UserUsageSketch second = store.newSketch();
+        second.add("user-b", 30);
+        stubSelect(Map.of(TimeBucket.DAY.start(minute), List.of(sketchRow(first), sketchRow(second))));
+
+        UserUsageSketch merged = store.findUserSketch("openai", minute, minute);
+
+        assertThat(merged.distinctUsers()).isEqualTo(2);
+        assertThat(merged.topUsers(1).getFirst().key()).isEqualTo("user-b");
+        assertThat(merged.topUsers(1).getFirst().weight()).isEqualTo(35);
+    }
+
+    @Test
+    void purgeDeletesWholeDayPartition() {
+        PreparedStatement delete = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenAnswer(invocation ->
+            invocation.<String>getArgument(0).startsWith("DELETE") ? delete : mock(PreparedStatement.class));
+        when(delete.bind(any(Object[].class))).thenReturn(mock(BoundStatement.class));
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(_ -> CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+        Instant day = Instant.parse("2025-11-01T00:00:00Z");
+
+        store(true).deleteMinutePartitionAsync(new TokenUsageRollupStore.MinutePartition("openai", day)).join();
+
+        verify(delete).bind("openai", day);
+    }
+
+    // Every SELECT returns the rows registered for the day bound as its second parameter.
+    private void stubSelect(Map<Instant, List<Row>> rowsByDay) {
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenAnswer(invocation ->
+            invocation.<String>getArgument(0).startsWith("SELECT") ? select : mock(PreparedStatement.class));
+        Map<Statement<?>, List<Row>> results = new ConcurrentHashMap<>();
+        when(select.bind(any(Object[].class))).thenAnswer(invocation -> {
+            BoundStatement statement = mock(BoundStatement.class);
+            results.put(statement, rowsByDay.getOrDefault(invocation.<Instant>getArgument(1), List.of()));
+            return statement;
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(results.get(invocation.<Statement<?>>getArgument(0)));
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private void stubSession() {
+        when(session.prepare(anyString())).thenAnswer(invocation -> {
+            String cql = invocation.getArgument(0);
+            return cql.startsWith("INSERT") ? insertPartial : cql.startsWith("SELECT total_tokens") ? selectPartial : mock(PreparedStatement.class);
+        });
+        when(insertPartial.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(selectPartial.bind(any(Object[].class))).thenReturn(selectBound);
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(invocation.getArgument(0) == selectBound ? List.copyOf(storedRows) : List.of());
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private List<Object[]> insertedRows(int count) {
+        ArgumentCaptor<Object[]> captor = ArgumentCaptor.forClass(Object[].class);
+        verify(insertPartial, times(count)).bind(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private static UserUsageSketch sketch(Object[] row) {
+        return TokenUsageMinutePartialRecord.toSketch((ByteBuffer) row[8], (ByteBuffer) row[9]);
+    }
+
+    private TokenUsageRollupStore store(boolean enabled) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getRollup().setEnabled(enabled);
+        return new TokenUsageRollupStore(session, properties);
+    }
+
+    private static Row rollupRow(Instant minute, long tokens) {
+        Row row = mock(Row.class);
+        when(row.getInstant("minute")).thenReturn(minute);
+        when(row.getLong("total_tokens")).thenReturn(tokens);
+        when(row.getLong("allowed_events")).thenReturn(1L);
+        return row;
+    }
+
+    private static Row partialRow(long tokens, long allowed, long denied, long appliedOffset, UserUsageSketch sketch) {
+        Row row = sketchRow(sketch);
+        when(row.getLong("total_tokens")).thenReturn(tokens);
+        when(row.getLong("allowed_events")).thenReturn(allowed);
+        when(row.getLong("denied_events")).thenReturn(denied);
+        when(row.getLong("applied_offset")).thenReturn(appliedOffset);
+        when(row.getLong("written_at")).thenReturn(1L);
+        return row;
+    }
+
+    private static Row sketchRow(UserUsageSketch sketch) {
+        Row row = mock(Row.class);
+        when(row.getByteBuffer("users_hll")).thenReturn(ByteBuffer.wrap(sketch.distinctUsersBytes()));
+        when(row.getByteBuffer("top_users")).thenReturn(ByteBuffer.wrap(sketch.topUsersBytes()));
+        return row;
+    }
+
+    private static TokenUsageRecord record(String userId, long tokens, boolean allowed, String timestamp,
+                                           int partition, long offset) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setKafkaPartition(partition);
+        record.setKafkaOffset(offset);
+        record.setId(UUID.randomUUID());
+        record.setUserId(userId);
+        record.setProvider("openai");
+        record.setTokens(tokens);
+        record.setAllowed(allowed);
+        record.setTimestamp(Instant.parse(timestamp));
+        return record;
+    }
+}
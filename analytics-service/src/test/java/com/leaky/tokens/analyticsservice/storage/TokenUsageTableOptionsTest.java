@@ -0,0 +1,31 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.List;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import org.junit.jupiter.api.Test;
+
+class TokenUsageTableOptionsTest {
+    @Test
+    void sizesCompactionWindowsFromEachTierTtl() {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getRetention().setRawTtl(Duration.ofDays(30));
+
+        List<String> statements = new TokenUsageTableOptions(mock(CqlSession.class), properties).statements();
+
+        assertThat(statements).hasSize(7)
+            .anyMatch(statement -> statement.startsWith("ALTER TABLE token_usage_minute_partial "))
+            .anyMatch(statement -> statement.startsWith("ALTER TABLE token_usage_user_minute "));
+        assertThat(statements.getFirst())
+            .startsWith("ALTER TABLE token_usage_events ")
+            .contains("'compaction_window_size': 1}")
+            .endsWith("default_time_to_live = 2592000");
+        assertThat(statements.getLast())
+            .startsWith("ALTER TABLE token_usage_hour_rollup ")
+            .contains("'compaction_window_size': 61}");
+    }
+}
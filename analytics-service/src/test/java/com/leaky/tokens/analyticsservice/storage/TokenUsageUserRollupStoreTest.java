@@ -0,0 +1,213 @@
+package com.leaky.tokens.analyticsservice.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class TokenUsageUserRollupStoreTest {
+    private static final Instant DAY = Instant.parse("2026-02-07T00:00:00Z");
+    private static final Instant MINUTE = Instant.parse("2026-02-07T13:10:00Z");
+    private static final Instant NOW = Instant.now();
+
+    private final CqlSession session = mock(CqlSession.class);
+    private final PreparedStatement insertMinute = mock(PreparedStatement.class);
+    private final PreparedStatement selectMinute = mock(PreparedStatement.class);
+    private final BoundStatement selectBound = mock(BoundStatement.class);
+    private final List<Row> storedRows = new ArrayList<>();
+
+    @Test
+    void countsEveryRecordPerUserMinuteProviderAndKafkaPartition() {
+        stubSession();
+        TokenUsageRecord anonymous = record("user-a", "openai", 1, true, 0, 9);
+        anonymous.setUserId(null);
+
+        store(true).writeAsync(List.of(
+            record("user-a", "openai", 100, true, 0, 1),
+            record("user-a", "openai", 50, false, 0, 2),
+            record("user-a", "gemini", 7, true, 0, 3),
+            record("user-b", "openai", 9, true, 1, 40),
+            anonymous
+        )).join();
+
+        List<Object[]> rows = insertedRows(3);
+        assertThat(rows.get(0)).startsWith("user-a", DAY, MINUTE, "openai", 0, 150L, 1L, 1L, 2L);
+        assertThat(rows.get(1)).startsWith("user-a", DAY, MINUTE, "gemini", 0, 7L, 1L, 0L, 3L);
+        assertThat(rows.get(2)).startsWith("user-b", DAY, MINUTE, "openai", 1, 9L, 1L, 0L, 40L);
+        assertThat(rows.get(0)[10]).isEqualTo(90 * 24 * 3600);
+    }
+
+    @Test
+    void storedRowIsReadBackAndRedeliveredRecordsAreSkipped() {
+        stubSession();
+        storedRows.add(storedRow(100L, 1L, 0L, 5L));
+
+        store(true).writeAsync(List.of(
+            record("user-a", "openai", 100, true, 2, 5),
+            record("user-a", "openai", 40, false, 2, 6)
+        )).join();
+
+        verify(selectMinute).bind("user-a", DAY, MINUTE, "openai", 2);
+        assertThat(Arrays.copyOfRange(insertedRows(1).getFirst(), 5, 9)).containsExactly(140L, 1L, 1L, 6L);
+    }
+
+    @Test
+    void fullyRedeliveredRowIsNotRewritten() {
+        stubSession();
+        storedRows.add(storedRow(100L, 1L, 0L, 5L));
+
+        store(true).writeAsync(List.of(record("user-a", "openai", 100, true, 2, 5))).join();
+
+        verify(insertMinute, never()).bind(any(Object[].class));
+    }
+
+    @Test
+    void reassignedPartitionKeepsWhatTheInterimOwnerWrote() {
+        stubSession();
+        TokenUsageUserRollupStore store = store(true);
+        store.writeAsync(List.of(recordNow("user-a", 10, 2, 1))).join();
+
+        // Partition 2 moved to another instance and back; that owner stored offsets 2 and 3.
+        storedRows.add(storedRow(40L, 3L, 0L, 3L));
+        store.forgetPartitions(List.of(2));
+        store.writeAsync(List.of(recordNow("user-a", 5, 2, 4))).join();
+
+        assertThat(Arrays.copyOfRange(insertedRows(2).get(1), 5, 9)).containsExactly(45L, 4L, 0L, 4L);
+    }
+
+    @Test
+    void disabledByUserTableOrRollupSkipsWrites() {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByUser().setRollupEnabled(false);
+        TokenUsageUserRollupStore store = new TokenUsageUserRollupStore(session, properties);
+
+        store.writeAsync(List.of(record("user-a", "openai", 1, true, 0, 1))).join();
+        store(false).writeAsync(List.of(record("user-a", "openai", 1, true, 0, 1))).join();
+
+        assertThat(store.isEnabled()).isFalse();
+        verify(session, never()).prepare(anyString());
+    }
+
+    @Test
+    void rangeReadsEveryDayPartitionOfTheWindow() {
+        Instant from = Instant.parse("2026-02-07T23:50:00Z");
+        Instant to = Instant.parse("2026-02-08T00:10:00Z");
+        Instant secondDay = Instant.parse("2026-02-08T00:00:00Z");
+        stubSelect(Map.of(
+            DAY, List.of(rangeRow(from, "openai", 1)),
+            secondDay, List.of(rangeRow(to, "gemini", 2), rangeRow(to, "openai", 3))
+        ));
+
+        List<TokenUsageUserMinuteRecord> rows = store(true).findMinutesAsync("user-a", from, to).join();
+
+        assertThat(rows).extracting(TokenUsageUserMinuteRecord::getTotalTokens).containsExactly(2L, 3L, 1L);
+        assertThat(rows).extracting(row -> row.getKey().getProvider()).containsExactly("gemini", "openai", "openai");
+        verify(session, times(2)).executeAsync(any(Statement.class));
+    }
+
+    private void stubSession() {
+        when(session.prepare(anyString())).thenAnswer(invocation -> {
+            String cql = invocation.getArgument(0);
+            return cql.startsWith("INSERT") ? insertMinute : cql.contains("WRITETIME") ? selectMinute : mock(PreparedStatement.class);
+        });
+        when(insertMinute.bind(any(Object[].class))).thenAnswer(_ -> mock(BoundStatement.class));
+        when(selectMinute.bind(any(Object[].class))).thenReturn(selectBound);
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(invocation.getArgument(0) == selectBound ? List.copyOf(storedRows) : List.of());
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    // Every range SELECT returns the rows registered for the day bound as its second parameter.
+    private void stubSelect(Map<Instant, List<Row>> rowsByDay) {
+        PreparedStatement select = mock(PreparedStatement.class);
+        when(session.prepare(anyString())).thenAnswer(invocation ->
+            invocation.<String>getArgument(0).startsWith("SELECT minute") ? select : mock(PreparedStatement.class));
+        Map<Statement<?>, List<Row>> results = new ConcurrentHashMap<>();
+        when(select.bind(any(Object[].class))).thenAnswer(invocation -> {
+            BoundStatement statement = mock(BoundStatement.class);
+            results.put(statement, rowsByDay.getOrDefault(invocation.<Instant>getArgument(1), List.of()));
+            return statement;
+        });
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            AsyncResultSet page = mock(AsyncResultSet.class);
+            when(page.currentPage()).thenReturn(results.get(invocation.<Statement<?>>getArgument(0)));
+            return CompletableFuture.completedFuture(page);
+        });
+    }
+
+    private List<Object[]> insertedRows(int count) {
+        ArgumentCaptor<Object[]> captor = ArgumentCaptor.forClass(Object[].class);
+        verify(insertMinute, times(count)).bind(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private TokenUsageUserRollupStore store(boolean enabled) {
+        AnalyticsStorageProperties properties = new AnalyticsStorageProperties();
+        properties.getByUser().setEnabled(enabled);
+        return new TokenUsageUserRollupStore(session, properties);
+    }
+
+    private static Row storedRow(long tokens, long allowed, long denied, long appliedOffset) {
+        Row row = mock(Row.class);
+        when(row.getLong("total_tokens")).thenReturn(tokens);
+        when(row.getLong("allowed_events")).thenReturn(allowed);
+        when(row.getLong("denied_events")).thenReturn(denied);
+        when(row.getLong("applied_offset")).thenReturn(appliedOffset);
+        when(row.getLong("written_at")).thenReturn(1L);
+        return row;
+    }
+
+    private static Row rangeRow(Instant minute, String provider, long tokens) {
+        Row row = mock(Row.class);
+        when(row.getInstant("minute")).thenReturn(minute);
+        when(row.getString("provider")).thenReturn(provider);
+        when(row.getLong("total_tokens")).thenReturn(tokens);
+        when(row.getLong("allowed_events")).thenReturn(1L);
+        return row;
+    }
+
+    // Stamped now, so the row stays cached instead of being evicted by age.
+    private static TokenUsageRecord recordNow(String userId, long tokens, int partition, long offset) {
+        TokenUsageRecord record = record(userId, "openai", tokens, true, partition, offset);
+        record.setTimestamp(NOW);
+        return record;
+    }
+
+    private static TokenUsageRecord record(String userId, String provider, long tokens, boolean allowed,
+                                           int partition, long offset) {
+        TokenUsageRecord record = new TokenUsageRecord();
+        record.setKafkaPartition(partition);
+        record.setKafkaOffset(offset);
+        record.setId(UUID.randomUUID());
+        record.setUserId(userId);
+        record.setProvider(provider);
+        record.setTokens(tokens);
+        record.setAllowed(allowed);
+        record.setTimestamp(MINUTE.plusSeconds(5));
+        return record;
+    }
+}
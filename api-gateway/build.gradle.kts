@@ -22,6 +22,9 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-cache")
     implementation("com.github.ben-manes.caffeine:caffeine")
     
+    // Reactive Redis (Lettuce) for distributed rate limiting
+    implementation("org.springframework.boot:spring-boot-starter-data-redis-reactive")
+
     // Security
     implementation("org.springframework.boot:spring-boot-starter-security")
     implementation("org.springframework.boot:spring-boot-starter-validation")
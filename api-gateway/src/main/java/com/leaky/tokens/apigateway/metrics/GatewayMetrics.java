@@ -20,4 +20,8 @@ public class GatewayMetrics {
     public void rateLimit(String outcome) {
         registry.counter("gateway.rate_limit.total", "outcome", outcome).increment();
     }
+
+    public void rateLimitSync(String outcome) {
+        registry.counter("gateway.rate_limit.sync.total", "outcome", outcome).increment();
+    }
 }
@@ -0,0 +1,146 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.nio.charset.StandardCharsets;
+
+// Cheap peek at one top-level member of a small JSON body, without building a tree: strings are
+// skipped by their quotes and nested objects and arrays only change the depth. Values are read the
+// way the downstream Jackson binding coerces them into a long (quoted, fractional or exponent
+// numbers), and a repeated member takes its last value, so a body cannot claim a cheaper cost than
+// the service will actually charge.
+final class BodyCostReader {
+    static final long ABSENT = -1L;
+
+    private BodyCostReader() {
+    }
+
+    static long read(byte[] body, String field) {
+        long value = ABSENT;
+        int depth = 0;
+        int i = 0;
+        while (i < body.length) {
+            byte b = body[i];
+            if (b == '"') {
+                int end = skipString(body, i);
+                if (end < 0) {
+                    return value;
+                }
+                if (depth == 1 && nameEquals(body, i + 1, end - 1, field)) {
+                    int colon = skipWhitespace(body, end);
+                    if (colon < body.length && body[colon] == ':') {
+                        int start = skipWhitespace(body, colon + 1);
+                        value = readNumber(body, start);
+                        i = start;
+                        continue;
+                    }
+                }
+                i = end;
+                continue;
+            }
+            if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+            i++;
+        }
+        return value;
+    }
+
+    // Index just past the closing quote of the string starting at `start`, or -1 if unterminated.
+    private static int skipString(byte[] body, int start) {
+        for (int i = start + 1; i < body.length; i++) {
+            if (body[i] == '\\') {
+                i++;
+            } else if (body[i] == '"') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] body, int from) {
+        int i = from;
+        while (i < body.length && (body[i] == ' ' || body[i] == '\t' || body[i] == '\n' || body[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean nameEquals(byte[] body, int from, int to, String field) {
+        for (int i = from; i < to; i++) {
+            if (body[i] == '\\') {
+                return unescape(body, from, to).equals(field);
+            }
+        }
+        if (to - from != field.length()) {
+            return false;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (body[from + i] != field.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unescape(byte[] body, int from, int to) {
+        StringBuilder name = new StringBuilder(to - from);
+        int i = from;
+        while (i < to) {
+            if (body[i] != '\\' || i + 1 >= to) {
+                int next = i + 1;
+                while (next < to && body[next] != '\\') {
+                    next++;
+                }
+                name.append(new String(body, i, next - i, StandardCharsets.UTF_8));
+                i = next;
+                continue;
+            }
+            byte escaped = body[i + 1];
+            if (escaped == 'u' && i + 6 <= to) {
+                try {
+                    name.append((char) Integer.parseInt(new String(body, i + 2, 4, StandardCharsets.US_ASCII), 16));
+                } catch (NumberFormatException ex) {
+                    return "";
+                }
+                i += 6;
+                continue;
+            }
+            name.append(switch (escaped) {
+                case 'b' -> '\b';
+                case 'f' -> '\f';
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                default -> (char) escaped;
+            });
+            i += 2;
+        }
+        return name.toString();
+    }
+
+    private static long readNumber(byte[] body, int start) {
+        int from = start < body.length && body[start] == '"' ? start + 1 : start;
+        int to = from;
+        while (to < body.length && isNumberChar(body[to])) {
+            to++;
+        }
+        if (to == from) {
+            return ABSENT;
+        }
+        String text = new String(body, from, to - from, StandardCharsets.US_ASCII);
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException ex) {
+            try {
+                return (long) Double.parseDouble(text);
+            } catch (NumberFormatException notNumeric) {
+                return ABSENT;
+            }
+        }
+    }
+
+    private static boolean isNumberChar(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E';
+    }
+}
@@ -0,0 +1,284 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Shares fixed windows across gateway replicas without a Redis round trip per request.
+// Each replica decides locally against "count seen by the others at the last sync + own count",
+// and every sync-interval pushes its unsynced increments with one atomic INCRBY script per key.
+// Overshoot is bounded by what the other replicas admit within one interval. When Redis fails,
+// syncing pauses for failure-backoff and decisions use the local count (plus whatever the others
+// had reached in the current window), so the limiter degrades to per-replica limits.
+// Sliding windows, token buckets and GCRA keep their state in Redis instead: each request runs one
+// atomic script timed by the Redis clock, and is decided by the local counter while Redis is down.
+@Component
+@ConditionalOnProperty(prefix = "gateway.rate-limit.distributed", name = "enabled", havingValue = "true")
+public class DistributedRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(DistributedRateLimiter.class);
+    static final RedisScript<Long> INCREMENT_SCRIPT = RedisScript.of("""
+        local total = redis.call('INCRBY', KEYS[1], ARGV[1])
+        if redis.call('TTL', KEYS[1]) < 0 then
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+        end
+        return total
+        """, Long.class);
+    // Each script returns {allowed (1 or 0), remaining permits, wait in millis}: until the limit fully
+    // resets when allowed, until the request would fit when rejected. The math mirrors the local counters.
+    static final RedisScript<List<Long>> SLIDING_WINDOW_SCRIPT = decisionScript("""
+        local time = redis.call('TIME')
+        local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+        local windowMillis = tonumber(ARGV[1])
+        local limit = tonumber(ARGV[2])
+        local permits = tonumber(ARGV[3])
+        local index = math.floor(now / windowMillis)
+        local elapsed = now - index * windowMillis
+        local state = redis.call('HMGET', KEYS[1], 'window', 'count', 'previous')
+        local window = tonumber(state[1])
+        local count = tonumber(state[2]) or 0
+        local previous = tonumber(state[3]) or 0
+        if window ~= index then
+            if window == index - 1 then previous = count else previous = 0 end
+            count = 0
+        end
+        local estimated = count + math.floor(previous * (windowMillis - elapsed) / windowMillis)
+        if estimated + permits > limit then
+            local lowered = limit - permits + 1
+            if count >= lowered then
+                return {0, 0, windowMillis - elapsed + math.floor(windowMillis * (count - lowered) / count) + 1}
+            end
+            return {0, 0, math.max(1, windowMillis - elapsed - math.floor((lowered - count) * windowMillis / previous) + 1)}
+        end
+        redis.call('HSET', KEYS[1], 'window', index, 'count', count + permits, 'previous', previous)
+        redis.call('PEXPIRE', KEYS[1], 2 * windowMillis)
+        return {1, limit - estimated - permits, windowMillis - elapsed}
+        """);
+    static final RedisScript<List<Long>> TOKEN_BUCKET_SCRIPT = decisionScript("""
+        local time = redis.call('TIME')
+        local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+        local windowMillis = tonumber(ARGV[1])
+        local rate = tonumber(ARGV[2]) / windowMillis
+        local size = tonumber(ARGV[3])
+        local take = tonumber(ARGV[4])
+        local state = redis.call('HMGET', KEYS[1], 'tokens', 'refilled_at')
+        local tokens = tonumber(state[1]) or size
+        local refilledAt = tonumber(state[2]) or now
+        tokens = math.min(size, tokens + math.max(0, now - refilledAt) * rate)
+        if tokens < take then
+            return {0, 0, math.ceil((take - tokens) / rate)}
+        end
+        tokens = tokens - take
+        local full = math.ceil((size - tokens) / rate)
+        redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'refilled_at', now)
+        redis.call('PEXPIRE', KEYS[1], full + 1000)
+        return {1, math.floor(tokens), full}
+        """);
+    static final RedisScript<List<Long>> GCRA_SCRIPT = decisionScript("""
+        local time = redis.call('TIME')
+        local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+        local interval = tonumber(ARGV[1])
+        local tolerance = tonumber(ARGV[2])
+        local permits = tonumber(ARGV[3])
+        local arrival = math.max(tonumber(redis.call('GET', KEYS[1])) or now, now)
+        local nextArrival = arrival + interval * permits
+        if nextArrival - now > tolerance + interval then
+            return {0, 0, math.ceil((nextArrival - now - tolerance - interval) / 1000)}
+        end
+        local wait = math.ceil((nextArrival - now) / 1000)
+        redis.call('SET', KEYS[1], string.format('%d', nextArrival), 'PX', wait + 1000)
+        local remaining = 0
+        if nextArrival <= now + tolerance then
+            remaining = math.floor((now + tolerance - nextArrival) / interval) + 1
+        end
+        return {1, remaining, wait}
+        """);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final GatewayRateLimitProperties.Distributed properties;
+    private final GatewayMetrics metrics;
+    private final Map<String, SharedCounter> counters = new ConcurrentHashMap<>();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    private volatile long pausedUntilMillis;
+
+    public DistributedRateLimiter(ReactiveStringRedisTemplate redisTemplate,
+                                  GatewayRateLimitProperties properties,
+                                  GatewayMetrics metrics) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties.getDistributed();
+        this.metrics = metrics;
+    }
+
+    // Same contract as WindowCounter.acquire, with windows aligned to the epoch so that every
+    // replica agrees on them; the count is the cluster-wide estimate.
+    long acquire(String key, long nowSeconds, long capacity, long windowSeconds, long cost) {
+        long windowStart = nowSeconds - Math.floorMod(nowSeconds, windowSeconds);
+        SharedCounter counter = counters.computeIfAbsent(key, k -> new SharedCounter(windowStart, windowSeconds));
+        counter.windowSeconds = windowSeconds;
+        long remote = counter.remote;
+        long others = WindowCounter.windowStart(remote) == windowStart ? WindowCounter.count(remote) : 0L;
+        long limit = Math.max(0L, capacity - others);
+        long local = counter.local.acquire(windowStart, limit, windowSeconds, cost);
+        long count = WindowCounter.count(local);
+        if (count > limit) {
+            return WindowCounter.pack(windowStart, capacity + 1);
+        }
+        return WindowCounter.pack(windowStart, others + count);
+    }
+
+    // Returns a RateLimitDecision, or nothing while Redis is unavailable so the caller decides locally.
+    // Costs are capped like the local counters cap them.
+    Mono<Long> acquire(String key, RateLimitAlgorithm algorithm, long capacity, long windowSeconds,
+                       long burst, long cost) {
+        if (isPaused()) {
+            return Mono.empty();
+        }
+        long windowMillis = windowSeconds * 1000L;
+        List<String> keys = List.of(properties.getKeyPrefix() + algorithm.name() + ":" + key);
+        Flux<List<Long>> result = switch (algorithm) {
+            case SLIDING_WINDOW -> {
+                long limit = Math.min(capacity, SlidingWindowCounter.MAX_COUNT);
+                yield redisTemplate.execute(SLIDING_WINDOW_SCRIPT, keys,
+                    arguments(windowMillis, limit, Math.min(cost, limit)));
+            }
+            case TOKEN_BUCKET -> {
+                long size = Math.min(burst, TokenBucketCounter.MAX_TOKENS);
+                yield redisTemplate.execute(TOKEN_BUCKET_SCRIPT, keys,
+                    arguments(windowMillis, capacity, size, Math.min(cost, size)));
+            }
+            case GCRA -> {
+                long interval = Math.max(1L, windowSeconds * 1_000_000L / capacity);
+                long tolerance = interval * (Math.max(1L, burst) - 1);
+                yield redisTemplate.execute(GCRA_SCRIPT, keys,
+                    arguments(interval, tolerance, Math.min(cost, Math.max(1L, burst))));
+            }
+            case FIXED_WINDOW -> throw new IllegalArgumentException("Fixed windows are pre-aggregated locally");
+        };
+        return result.next()
+            .timeout(properties.getTimeout())
+            .map(reply -> reply.get(0) == 1L
+                ? RateLimitDecision.allowed(reply.get(1), reply.get(2))
+                : RateLimitDecision.rejected(reply.get(2)))
+            .onErrorResume(ex -> {
+                pause(ex);
+                return Mono.empty();
+            });
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.rate-limit.distributed.sync-interval:PT0.01S}")
+    public void scheduledSync() {
+        long now = System.currentTimeMillis();
+        if (now < pausedUntilMillis || !syncing.compareAndSet(false, true)) {
+            return;
+        }
+        sync(now / 1000L)
+            .doFinally(_ -> syncing.set(false))
+            .subscribe();
+    }
+
+    Mono<Void> sync(long nowSeconds) {
+        return Flux.fromIterable(counters.entrySet())
+            .flatMap(entry -> sync(entry.getKey(), entry.getValue(), nowSeconds), properties.getMaxConcurrentSyncs())
+            .then();
+    }
+
+    private Mono<Void> sync(String key, SharedCounter counter, long nowSeconds) {
+        long local = counter.local.current();
+        long windowStart = WindowCounter.windowStart(local);
+        long windowEnd = windowStart + counter.windowSeconds;
+        if (counter.syncedWindow != windowStart) {
+            counter.syncedWindow = windowStart;
+            counter.synced = 0L;
+        }
+        long delta = WindowCounter.count(local) - counter.synced;
+        if (delta <= 0L) {
+            if (nowSeconds >= windowEnd) {
+                // Idle key whose window has ended. A request racing the removal is only counted locally.
+                counters.remove(key, counter);
+            }
+            return Mono.empty();
+        }
+        long ttlSeconds = Math.max(1L, windowEnd - nowSeconds) + 1L;
+        return redisTemplate.execute(
+                INCREMENT_SCRIPT,
+                List.of(properties.getKeyPrefix() + key + ":" + windowStart),
+                List.of(Long.toString(delta), Long.toString(ttlSeconds))
+            )
+            .next()
+            .timeout(properties.getTimeout())
+            .doOnNext(total -> {
+                if (counter.syncedWindow == windowStart) {
+                    counter.synced += delta;
+                    counter.remote = WindowCounter.pack(windowStart, Math.max(0L, total - counter.synced));
+                }
+                metrics.rateLimitSync("success");
+            })
+            .then()
+            .onErrorResume(ex -> {
+                pause(ex);
+                return Mono.empty();
+            });
+    }
+
+    private void pause(Throwable ex) {
+        Duration backoff = properties.getFailureBackoff();
+        long now = System.currentTimeMillis();
+        if (pausedUntilMillis <= now) {
+            logger.warn("Rate limit sync with Redis failed, using local counts for {}: {}", backoff, ex.toString());
+        }
+        pausedUntilMillis = now + backoff.toMillis();
+        metrics.rateLimitSync("error");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<Long>> decisionScript(String source) {
+        return (RedisScript<List<Long>>) (RedisScript<?>) RedisScript.of(source, List.class);
+    }
+
+    private static List<String> arguments(long... values) {
+        List<String> arguments = new ArrayList<>(values.length);
+        for (long value : values) {
+            arguments.add(Long.toString(value));
+        }
+        return arguments;
+    }
+
+    boolean isPaused() {
+        return System.currentTimeMillis() < pausedUntilMillis;
+    }
+
+    int trackedKeys() {
+        return counters.size();
+    }
+
+    // `local` counts what this replica admitted in the window. `remote` packs the window with the
+    // others' count from the last sync. `syncedWindow` and `synced` are only touched by the sync.
+    private static final class SharedCounter {
+        private final WindowCounter local;
+        private volatile long windowSeconds;
+        private volatile long remote;
+        private long syncedWindow;
+        private long synced;
+
+        private SharedCounter(long windowStart, long windowSeconds) {
+            this.local = new WindowCounter(windowStart);
+            this.windowSeconds = windowSeconds;
+            this.remote = WindowCounter.pack(windowStart, 0L);
+            this.syncedWindow = windowStart;
+        }
+    }
+}
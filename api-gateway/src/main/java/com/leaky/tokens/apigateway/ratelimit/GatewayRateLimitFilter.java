@@ -2,50 +2,95 @@ package com.leaky.tokens.apigateway.ratelimit;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.leaky.tokens.apigateway.flags.GatewayFeatureFlags;
 import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
 import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
 import org.springframework.cloud.gateway.route.Route;
 import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.server.PathContainer;
 import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import org.springframework.web.util.pattern.PatternParseException;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.cloud.gateway.filter.GlobalFilter;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Component
 @ConditionalOnProperty(prefix = "gateway.rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
 public class GatewayRateLimitFilter implements GlobalFilter, Ordered {
+    public static final String RESOLVED_LIMIT_ATTR = GatewayRateLimitFilter.class.getName() + ".resolvedLimit";
+    private static final Logger logger = LoggerFactory.getLogger(GatewayRateLimitFilter.class);
+    private static final byte[] EMPTY_BODY = new byte[0];
+    // Counters cap a cost at what an idle counter holds, so this charges the whole limit.
+    private static final long FULL_CAPACITY = Long.MAX_VALUE;
+
     private final GatewayRateLimitProperties properties;
     private final GatewayMetrics metrics;
     private final GatewayFeatureFlags featureFlags;
-    private final ConcurrentHashMap<String, WindowCounter> counters = new ConcurrentHashMap<>();
-    private final AntPathMatcher pathMatcher = new AntPathMatcher();
-    private final List<String> whitelistPatterns = new ArrayList<>();
+    private final DistributedRateLimiter distributedLimiter;
+    private final ConcurrentHashMap<String, RateLimitCounter> counters = new ConcurrentHashMap<>();
+    private volatile Rules rules;
+
+    @Autowired
+    public GatewayRateLimitFilter(GatewayRateLimitProperties properties,
+                                  GatewayMetrics metrics,
+                                  GatewayFeatureFlags featureFlags,
+                                  ObjectProvider<DistributedRateLimiter> distributedLimiter) {
+        this(properties, metrics, featureFlags, distributedLimiter.getIfAvailable());
+    }
 
     public GatewayRateLimitFilter(GatewayRateLimitProperties properties,
                                   GatewayMetrics metrics,
                                   GatewayFeatureFlags featureFlags) {
+        this(properties, metrics, featureFlags, (DistributedRateLimiter) null);
+    }
+
+    GatewayRateLimitFilter(GatewayRateLimitProperties properties,
+                           GatewayMetrics metrics,
+                           GatewayFeatureFlags featureFlags,
+                           DistributedRateLimiter distributedLimiter) {
         this.properties = properties;
         this.metrics = metrics;
         this.featureFlags = featureFlags;
-        List<String> whitelist = properties.getWhitelistPaths();
-        if (whitelist != null) {
-            whitelistPatterns.addAll(whitelist);
+        this.distributedLimiter = distributedLimiter;
+        this.rules = Rules.compile(properties);
+    }
+
+    // Properties are rebound in place on refresh; recompiling afterwards swaps the rules atomically.
+    @EventListener(RefreshScopeRefreshedEvent.class)
+    public void refreshRules() {
+        try {
+            rules = Rules.compile(properties);
+        } catch (PatternParseException ex) {
+            logger.warn("Keeping previous rate limit rules, invalid path pattern: {}", ex.getMessage());
         }
     }
 
@@ -54,38 +99,105 @@ public class GatewayRateLimitFilter implements GlobalFilter, Ordered {
         if (!featureFlags.isRateLimiting()) {
             return chain.filter(exchange);
         }
-        if (isWhitelisted(exchange.getRequest().getPath().value())) {
+        Rules current = rules;
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        if (matchesAny(current.whitelist(), path)) {
             return chain.filter(exchange);
         }
 
+        GatewayRateLimitProperties.Weighted weighted = properties.getWeighted();
+        if (weighted == null || !weighted.isEnabled()) {
+            return limit(exchange, chain, 1L);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        long headerCost = parseCost(request.getHeaders().getFirst(weighted.getCostHeader()));
+        if (!matchesAny(current.bodyPaths(), path)) {
+            return limit(exchange, chain, headerCost);
+        }
+        // Bodies on these paths are always read, whatever their framing, so a chunked or mislabelled
+        // body cannot fall back to the cheaper header cost. At most maxBodyBytes are held, copied
+        // out of the pooled buffers and replayed to the downstream filters.
+        if (request.getHeaders().getContentLength() > weighted.getMaxBodyBytes()) {
+            return tooLarge(exchange);
+        }
+        return DataBufferUtils.join(request.getBody(), weighted.getMaxBodyBytes())
+            .map(buffer -> {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                DataBufferUtils.release(buffer);
+                return bytes;
+            })
+            .defaultIfEmpty(EMPTY_BODY)
+            .onErrorResume(DataBufferLimitException.class, _ -> tooLarge(exchange).then(Mono.<byte[]>empty()))
+            .flatMap(body -> {
+                // A header cannot talk the cost below what the body asks for, and a body without a
+                // readable cost is charged as much as the counter holds.
+                long bodyCost = BodyCostReader.read(body, weighted.getBodyField());
+                long cost = bodyCost == BodyCostReader.ABSENT ? FULL_CAPACITY : Math.max(headerCost, bodyCost);
+                return limit(withBody(exchange, body), chain, cost);
+            });
+    }
+
+    private Mono<Void> limit(ServerWebExchange exchange, GatewayFilterChain chain, long cost) {
         String key = resolveKey(exchange.getRequest());
-        long capacity = Math.max(1L, resolveCapacity(exchange));
-        long windowSeconds = Math.max(1L, resolveWindowSeconds(exchange));
-        Instant now = Instant.now();
-
-        WindowCounter counter = counters.computeIfAbsent(key, k -> new WindowCounter(now, 0L));
-        synchronized (counter) {
-            counter.lastSeen = now;
-            if (!now.isBefore(counter.windowStart.plusSeconds(windowSeconds))) {
-                counter.windowStart = now;
-                counter.count = 0L;
-            }
-            if (counter.count + 1 > capacity) {
-                long retryAfter = Math.max(0L, Duration.between(now, counter.windowStart.plusSeconds(windowSeconds)).getSeconds());
-                metrics.rateLimit("blocked");
-                return reject(exchange, capacity, 0L, retryAfter);
-            }
-            counter.count += 1;
-            long remaining = Math.max(0L, capacity - counter.count);
-            exchange.getResponse().getHeaders().set("X-RateLimit-Limit", String.valueOf(capacity));
-            exchange.getResponse().getHeaders().set("X-RateLimit-Remaining", String.valueOf(remaining));
-            exchange.getResponse().getHeaders().set("X-RateLimit-Reset", String.valueOf(counter.windowStart.plusSeconds(windowSeconds).getEpochSecond()));
+        ResolvedLimit limit = resolveLimit(exchange);
+        long nowMillis = System.currentTimeMillis();
+        long permits = Math.max(1L, cost);
+
+        if (distributedLimiter != null && limit.algorithm() != RateLimitAlgorithm.FIXED_WINDOW) {
+            return distributedLimiter.acquire(key, limit.algorithm(), limit.capacity(), limit.windowSeconds(),
+                    limit.burst(), permits)
+                .switchIfEmpty(Mono.fromSupplier(() -> acquire(key, limit.algorithm(), nowMillis, limit.capacity(),
+                    limit.windowSeconds(), limit.burst(), permits)))
+                .flatMap(decision -> respond(exchange, chain, limit.capacity(), nowMillis, decision));
         }
+        long decision = acquire(key, limit.algorithm(), nowMillis, limit.capacity(), limit.windowSeconds(),
+            limit.burst(), permits);
+        return respond(exchange, chain, limit.capacity(), nowMillis, decision);
+    }
+
+    private Mono<Void> respond(ServerWebExchange exchange, GatewayFilterChain chain, long capacity,
+                               long nowMillis, long decision) {
+        long waitMillis = RateLimitDecision.waitMillis(decision);
+        long resetAt = (nowMillis + waitMillis + 999L) / 1000L;
+        if (!RateLimitDecision.isAllowed(decision)) {
+            metrics.rateLimit("blocked");
+            return reject(exchange, capacity, 0L, (waitMillis + 999L) / 1000L, resetAt);
+        }
+        HttpHeaders headers = exchange.getResponse().getHeaders();
+        headers.set("X-RateLimit-Limit", String.valueOf(capacity));
+        headers.set("X-RateLimit-Remaining", String.valueOf(RateLimitDecision.remaining(decision)));
+        headers.set("X-RateLimit-Reset", String.valueOf(resetAt));
 
         metrics.rateLimit("allowed");
         return chain.filter(exchange);
     }
 
+    // Fixed windows keep the plain client key; the other algorithms get their own counters so a
+    // client crossing routes with different algorithms never shares state between them. With the
+    // distributed limiter on, the other algorithms only land here while Redis is unavailable.
+    private long acquire(String key, RateLimitAlgorithm algorithm, long nowMillis,
+                         long capacity, long windowSeconds, long burst, long cost) {
+        long nowSeconds = nowMillis / 1000L;
+        if (algorithm == RateLimitAlgorithm.FIXED_WINDOW && distributedLimiter != null) {
+            long limit = Math.min(capacity, WindowCounter.MAX_COUNT);
+            long state = distributedLimiter.acquire(key, nowSeconds, limit, windowSeconds, Math.min(cost, limit));
+            long resetAfterMillis = (WindowCounter.windowStart(state) + windowSeconds) * 1000L - nowMillis;
+            long count = WindowCounter.count(state);
+            return count > limit
+                ? RateLimitDecision.rejected(resetAfterMillis)
+                : RateLimitDecision.allowed(limit - count, resetAfterMillis);
+        }
+        String counterKey = algorithm == RateLimitAlgorithm.FIXED_WINDOW ? key : algorithm.name() + ":" + key;
+        RateLimitCounter counter = counters.computeIfAbsent(counterKey, k -> switch (algorithm) {
+            case FIXED_WINDOW -> new WindowCounter(nowSeconds);
+            case SLIDING_WINDOW -> new SlidingWindowCounter(nowSeconds);
+            case TOKEN_BUCKET -> new TokenBucketCounter(nowMillis, burst);
+            case GCRA -> new GcraCounter(nowSeconds);
+        });
+        return counter.tryAcquire(nowMillis, capacity, windowSeconds, burst, cost);
+    }
+
     @Override
     public int getOrder() {
         return Ordered.LOWEST_PRECEDENCE - 10;
@@ -97,24 +209,32 @@ public class GatewayRateLimitFilter implements GlobalFilter, Ordered {
         if (ttl == null || ttl.isZero() || ttl.isNegative()) {
             return;
         }
-        Instant now = Instant.now();
-        counters.entrySet().removeIf(entry -> entry.getValue().lastSeen.plus(ttl).isBefore(now));
+        long cutoff = System.currentTimeMillis() / 1000L - ttl.toSeconds();
+        counters.entrySet().removeIf(entry -> entry.getValue().lastSeenSeconds() < cutoff);
     }
 
-    private Mono<Void> reject(ServerWebExchange exchange, long capacity, long remaining, long retryAfterSeconds) {
+    private Mono<Void> reject(ServerWebExchange exchange, long capacity, long remaining, long retryAfterSeconds, long resetAt) {
         exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
         exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
         exchange.getResponse().getHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
         exchange.getResponse().getHeaders().set("X-RateLimit-Limit", String.valueOf(capacity));
         exchange.getResponse().getHeaders().set("X-RateLimit-Remaining", String.valueOf(remaining));
-        exchange.getResponse().getHeaders().set("X-RateLimit-Reset",
-            String.valueOf(Instant.now().plusSeconds(retryAfterSeconds).getEpochSecond()));
+        exchange.getResponse().getHeaders().set("X-RateLimit-Reset", String.valueOf(resetAt));
         String body = "{\"message\":\"rate limit exceeded\",\"retryAfterSeconds\":" + retryAfterSeconds + "}";
         byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
         return exchange.getResponse()
             .writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
     }
 
+    private Mono<Void> tooLarge(ServerWebExchange exchange) {
+        metrics.rateLimit("body_too_large");
+        exchange.getResponse().setStatusCode(HttpStatus.CONTENT_TOO_LARGE);
+        exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        byte[] bytes = "{\"message\":\"request body too large\"}".getBytes(StandardCharsets.UTF_8);
+        return exchange.getResponse()
+            .writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(bytes)));
+    }
+
     private String resolveKey(ServerHttpRequest request) {
         RateLimitKeyStrategy strategy = properties.getKeyStrategy();
         if (strategy == RateLimitKeyStrategy.AUTO || strategy == RateLimitKeyStrategy.API_KEY_HEADER) {
@@ -134,51 +254,112 @@ public class GatewayRateLimitFilter implements GlobalFilter, Ordered {
         return "ip:" + ip;
     }
 
-    private static final class WindowCounter {
-        private Instant windowStart;
-        private long count;
-        private Instant lastSeen;
-
-        private WindowCounter(Instant windowStart, long count) {
-            this.windowStart = windowStart;
-            this.count = count;
-            this.lastSeen = windowStart;
+    private static long parseCost(String header) {
+        if (header == null || header.isBlank()) {
+            return 1L;
+        }
+        try {
+            return Math.max(1L, Long.parseLong(header.trim()));
+        } catch (NumberFormatException ex) {
+            return 1L;
         }
     }
 
-    private boolean isWhitelisted(String path) {
-        if (whitelistPatterns.isEmpty()) {
-            return false;
-        }
-        for (String pattern : whitelistPatterns) {
-            if (pathMatcher.match(pattern, path)) {
+    private static ServerWebExchange withBody(ServerWebExchange exchange, byte[] body) {
+        ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @Override
+            public @NonNull Flux<DataBuffer> getBody() {
+                return Flux.defer(() -> Flux.just(exchange.getResponse().bufferFactory().wrap(body)));
+            }
+        };
+        return exchange.mutate().request(request).build();
+    }
+
+    private static boolean matchesAny(List<PathPattern> patterns, PathContainer path) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matches(path)) {
                 return true;
             }
         }
         return false;
     }
 
-    private long resolveCapacity(ServerWebExchange exchange) {
-        GatewayRateLimitProperties.RouteLimitConfig config = resolveRouteConfig(exchange);
-        if (config != null && config.getCapacity() != null && config.getCapacity() > 0) {
-            return config.getCapacity();
+    // Resolved once per exchange and kept on it, so a replayed or re-entered exchange does not look it up again.
+    private ResolvedLimit resolveLimit(ServerWebExchange exchange) {
+        if (exchange.getAttribute(RESOLVED_LIMIT_ATTR) instanceof ResolvedLimit resolved) {
+            return resolved;
+        }
+        Rules current = rules;
+        ResolvedLimit resolved = current.defaults();
+        if (exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR) instanceof Route route) {
+            resolved = current.routes().getOrDefault(route.getId(), resolved);
         }
-        return properties.getCapacity();
+        exchange.getAttributes().put(RESOLVED_LIMIT_ATTR, resolved);
+        return resolved;
     }
 
-    private long resolveWindowSeconds(ServerWebExchange exchange) {
-        GatewayRateLimitProperties.RouteLimitConfig config = resolveRouteConfig(exchange);
-        if (config != null && config.getWindowSeconds() != null && config.getWindowSeconds() > 0) {
-            return config.getWindowSeconds();
-        }
-        return properties.getWindowSeconds();
+    record ResolvedLimit(long capacity, long windowSeconds, RateLimitAlgorithm algorithm, long burst) {
     }
 
-    private GatewayRateLimitProperties.RouteLimitConfig resolveRouteConfig(ServerWebExchange exchange) {
-        Object routeAttr = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
-        if (!(routeAttr instanceof Route route)) {
-            return null;
+    // Everything the filter derives from its properties, built once per (re)binding: path patterns are
+    // parsed up front and every route's limit is merged with the defaults, so a request does a list
+    // scan over precompiled patterns and a single map lookup.
+    private record Rules(List<PathPattern> whitelist,
+                         List<PathPattern> bodyPaths,
+                         ResolvedLimit defaults,
+                         Map<String, ResolvedLimit> routes) {
+        static Rules compile(GatewayRateLimitProperties properties) {
+            long capacity = Math.max(1L, properties.getCapacity());
+            Long burstCapacity = properties.getBurstCapacity();
+            ResolvedLimit defaults = new ResolvedLimit(
+                capacity,
+                Math.max(1L, properties.getWindowSeconds()),
+                properties.getAlgorithm(),
+                burstCapacity != null && burstCapacity > 0 ? burstCapacity : capacity
+            );
+            Map<String, ResolvedLimit> routes = new HashMap<>();
+            if (properties.getRoutes() != null) {
+                properties.getRoutes().forEach((routeId, config) ->
+                    routes.put(routeId, merge(defaults, properties, config)));
+            }
+            GatewayRateLimitProperties.Weighted weighted = properties.getWeighted();
+            return new Rules(
+                parse(properties.getWhitelistPaths()),
+                parse(weighted == null ? null : weighted.getBodyPaths()),
+                defaults,
+                Map.copyOf(routes)
+            );
+        }
+
+        private static ResolvedLimit merge(ResolvedLimit defaults, GatewayRateLimitProperties properties,
+                                           GatewayRateLimitProperties.RouteLimitConfig config) {
+            long capacity = config.getCapacity() != null && config.getCapacity() > 0
+                ? config.getCapacity()
+                : defaults.capacity();
+            long windowSeconds = config.getWindowSeconds() != null && config.getWindowSeconds() > 0
+                ? config.getWindowSeconds()
+                : defaults.windowSeconds();
+            RateLimitAlgorithm algorithm = config.getAlgorithm() != null ? config.getAlgorithm() : defaults.algorithm();
+            long burst;
+            if (config.getBurstCapacity() != null && config.getBurstCapacity() > 0) {
+                burst = config.getBurstCapacity();
+            } else if (properties.getBurstCapacity() != null && properties.getBurstCapacity() > 0) {
+                burst = properties.getBurstCapacity();
+            } else {
+                burst = capacity;
+            }
+            return new ResolvedLimit(capacity, windowSeconds, algorithm, burst);
+        }
+
+        private static List<PathPattern> parse(List<String> patterns) {
+            if (patterns == null) {
+                return List.of();
+            }
+            List<PathPattern> parsed = new ArrayList<>(patterns.size());
+            for (String pattern : patterns) {
+                parsed.add(PathPatternParser.defaultInstance.parse(pattern));
+            }
+            return List.copyOf(parsed);
         }
-        return properties.getRoutes().get(route.getId());
     }
 }
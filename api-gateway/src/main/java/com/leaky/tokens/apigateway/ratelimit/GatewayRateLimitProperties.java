@@ -20,6 +20,11 @@ public class GatewayRateLimitProperties {
     @Min(1)
     private long windowSeconds = 60;
     @NotNull
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    // Bucket size for TOKEN_BUCKET and burst tolerance for GCRA; defaults to `capacity`.
+    @Min(1)
+    private Long burstCapacity;
+    @NotNull
     private RateLimitKeyStrategy keyStrategy = RateLimitKeyStrategy.IP;
     @NotBlank
     private String headerName = "X-Api-Key";
@@ -30,6 +35,10 @@ public class GatewayRateLimitProperties {
     private java.util.List<String> whitelistPaths = java.util.List.of();
     @Valid
     private java.util.Map<String, RouteLimitConfig> routes = new java.util.HashMap<>();
+    @Valid
+    private Distributed distributed = new Distributed();
+    @Valid
+    private Weighted weighted = new Weighted();
 
     @Setter
     @Getter
@@ -38,6 +47,37 @@ public class GatewayRateLimitProperties {
         private Long capacity;
         @Min(1)
         private Long windowSeconds;
+        private RateLimitAlgorithm algorithm;
+        @Min(1)
+        private Long burstCapacity;
+    }
+
+    @Setter
+    @Getter
+    public static class Distributed {
+        private boolean enabled = false;
+        @NotBlank
+        private String keyPrefix = "gateway:rate-limit:";
+        @NotNull
+        private java.time.Duration syncInterval = java.time.Duration.ofMillis(10);
+        @NotNull
+        private java.time.Duration timeout = java.time.Duration.ofMillis(100);
+        @NotNull
+        private java.time.Duration failureBackoff = java.time.Duration.ofSeconds(5);
+        @Min(1)
+        private int maxConcurrentSyncs = 64;
+    }
 
+    @Setter
+    @Getter
+    public static class Weighted {
+        private boolean enabled = false;
+        @NotBlank
+        private String costHeader = "X-RateLimit-Cost";
+        private java.util.List<String> bodyPaths = java.util.List.of("/api/v1/tokens/consume");
+        @NotBlank
+        private String bodyField = "tokens";
+        @Min(1)
+        private int maxBodyBytes = 8192;
     }
 }
@@ -0,0 +1,40 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Generic cell rate algorithm: the whole state is the theoretical arrival time (TAT) of the next
+// request in epoch microseconds. Permits are spaced by the emission interval window / capacity;
+// up to `burst` of them may arrive back to back. A request of `cost` permits advances the TAT by
+// `cost` intervals.
+final class GcraCounter extends RateLimitCounter {
+    private final AtomicLong theoreticalArrival = new AtomicLong();
+
+    GcraCounter(long nowSeconds) {
+        super(nowSeconds);
+    }
+
+    @Override
+    long tryAcquire(long nowMillis, long capacity, long windowSeconds, long burst, long cost) {
+        touch(nowMillis / 1000L);
+        long now = nowMillis * 1000L;
+        long interval = Math.max(1L, windowSeconds * 1_000_000L / capacity);
+        long permits = Math.min(cost, Math.max(1L, burst));
+        long tolerance = interval * (Math.max(1L, burst) - 1);
+        while (true) {
+            long current = theoreticalArrival.get();
+            long arrival = Math.max(current, now);
+            long next = arrival + interval * permits;
+            if (next - now > tolerance + interval) {
+                return RateLimitDecision.rejected(ceilMillis(next - now - tolerance - interval));
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                long remaining = next > now + tolerance ? 0L : (now + tolerance - next) / interval + 1;
+                return RateLimitDecision.allowed(remaining, ceilMillis(next - now));
+            }
+        }
+    }
+
+    private static long ceilMillis(long micros) {
+        return (micros + 999L) / 1000L;
+    }
+}
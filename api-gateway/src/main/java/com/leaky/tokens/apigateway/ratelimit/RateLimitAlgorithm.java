@@ -0,0 +1,8 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+public enum RateLimitAlgorithm {
+    FIXED_WINDOW,
+    SLIDING_WINDOW,
+    TOKEN_BUCKET,
+    GCRA
+}
@@ -0,0 +1,26 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+// Per-key limiter state. Implementations keep everything in one AtomicLong updated by CAS.
+abstract class RateLimitCounter {
+    private volatile long lastSeenSeconds;
+
+    RateLimitCounter(long nowSeconds) {
+        this.lastSeenSeconds = nowSeconds;
+    }
+
+    // `capacity` permits per `windowSeconds`; `burst` is only used by the rate-based algorithms.
+    // `cost` permits are taken at once, capped at what an idle counter holds so that an oversized
+    // request is still admitted once the counter is full. Returns a RateLimitDecision.
+    abstract long tryAcquire(long nowMillis, long capacity, long windowSeconds, long burst, long cost);
+
+    long lastSeenSeconds() {
+        return lastSeenSeconds;
+    }
+
+    final void touch(long nowSeconds) {
+        // Skip the volatile write when unchanged; a hot key would otherwise bounce the cache line.
+        if (lastSeenSeconds != nowSeconds) {
+            lastSeenSeconds = nowSeconds;
+        }
+    }
+}
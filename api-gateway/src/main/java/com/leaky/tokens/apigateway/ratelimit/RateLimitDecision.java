@@ -0,0 +1,37 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+// Outcome of one acquire packed into a long, so the hot path allocates nothing.
+// Allowed: remaining permits in the high 32 bits, milliseconds until the limit fully resets in the low 32.
+// Rejected: -1 - retryAfterMillis.
+final class RateLimitDecision {
+    private static final long LOW_MASK = 0xFFFF_FFFFL;
+    private static final long MAX_VALUE = Integer.MAX_VALUE;
+
+    private RateLimitDecision() {
+    }
+
+    static long allowed(long remaining, long resetAfterMillis) {
+        return (clamp(remaining) << 32) | clamp(resetAfterMillis);
+    }
+
+    static long rejected(long retryAfterMillis) {
+        return -1L - clamp(retryAfterMillis);
+    }
+
+    static boolean isAllowed(long decision) {
+        return decision >= 0L;
+    }
+
+    static long remaining(long decision) {
+        return isAllowed(decision) ? decision >>> 32 : 0L;
+    }
+
+    // Time until the limit fully resets when allowed, until the next permit when rejected.
+    static long waitMillis(long decision) {
+        return isAllowed(decision) ? decision & LOW_MASK : -1L - decision;
+    }
+
+    private static long clamp(long value) {
+        return Math.max(0L, Math.min(MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,58 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sliding window counter: the previous window's count, weighted by how much of it still overlaps
+// the sliding window, plus the current window's count. This removes the double burst a fixed
+// window allows at its edges. Packed from the high bits down as window index (22 bits) | current
+// count (21) | previous count (21); window indexes are compared modulo 2^22, which only aliases after
+// millions of idle windows.
+final class SlidingWindowCounter extends RateLimitCounter {
+    static final long MAX_COUNT = (1L << 21) - 1;
+    private static final long WINDOW_MASK = (1L << 22) - 1;
+
+    private final AtomicLong state = new AtomicLong();
+
+    SlidingWindowCounter(long nowSeconds) {
+        super(nowSeconds);
+    }
+
+    @Override
+    long tryAcquire(long nowMillis, long capacity, long windowSeconds, long burst, long cost) {
+        touch(nowMillis / 1000L);
+        long limit = Math.min(capacity, MAX_COUNT);
+        long permits = Math.min(cost, limit);
+        long windowMillis = windowSeconds * 1000L;
+        long index = nowMillis / windowMillis;
+        long elapsed = nowMillis - index * windowMillis;
+        long remainingInWindow = windowMillis - elapsed;
+        while (true) {
+            long current = state.get();
+            long window = current >>> 42;
+            long count = (current >>> 21) & MAX_COUNT;
+            long previous = current & MAX_COUNT;
+            if (window != (index & WINDOW_MASK)) {
+                previous = window == ((index - 1) & WINDOW_MASK) ? count : 0L;
+                count = 0L;
+            }
+            long estimated = count + previous * remainingInWindow / windowMillis;
+            if (estimated + permits > limit) {
+                // Same wait as a single permit against a limit lowered by the extra permits.
+                return RateLimitDecision.rejected(retryAfter(limit - permits + 1, count, previous, elapsed, windowMillis));
+            }
+            long next = ((index & WINDOW_MASK) << 42) | ((count + permits) << 21) | previous;
+            if (state.compareAndSet(current, next)) {
+                return RateLimitDecision.allowed(limit - estimated - permits, remainingInWindow);
+            }
+        }
+    }
+
+    // Time until the weighted estimate drops below the limit again.
+    private static long retryAfter(long limit, long count, long previous, long elapsed, long windowMillis) {
+        if (count >= limit) {
+            // Only once this window has become the previous one and enough of it has slid out.
+            return windowMillis - elapsed + windowMillis * (count - limit) / count + 1;
+        }
+        return Math.max(1L, windowMillis - elapsed - (limit - count) * windowMillis / previous + 1);
+    }
+}
@@ -0,0 +1,62 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token bucket holding up to `burst` tokens, refilled at `capacity` per window. Packed as the last
+// refill time (low 36 bits of epoch millis, compared with wrap-around, ~795 days) and the token
+// count in 1/1024 units (28 bits, up to 262143 tokens).
+final class TokenBucketCounter extends RateLimitCounter {
+    static final long MAX_TOKENS = (1L << 18) - 1;
+    private static final long TIME_MASK = (1L << 36) - 1;
+    private static final long SCALE = 1024L;
+
+    private final AtomicLong state;
+
+    TokenBucketCounter(long nowMillis, long burst) {
+        super(nowMillis / 1000L);
+        this.state = new AtomicLong(pack(nowMillis, Math.min(burst, MAX_TOKENS) * SCALE));
+    }
+
+    @Override
+    long tryAcquire(long nowMillis, long capacity, long windowSeconds, long burst, long cost) {
+        touch(nowMillis / 1000L);
+        long size = Math.min(burst, MAX_TOKENS) * SCALE;
+        long take = Math.min(cost, Math.min(burst, MAX_TOKENS)) * SCALE;
+        long windowMillis = windowSeconds * 1000L;
+        // Scaled tokens added per millisecond is capacity * SCALE / windowMillis.
+        long refillRate = capacity * SCALE;
+        while (true) {
+            long current = state.get();
+            long refilledAt = current >>> 28;
+            long tokens = current & ((1L << 28) - 1);
+            long elapsed = (nowMillis - refilledAt) & TIME_MASK;
+            long refillAt;
+            long needed = size - tokens;
+            if (needed <= 0L || elapsed >= ceilDiv(needed * windowMillis, refillRate)) {
+                tokens = size;
+                refillAt = nowMillis;
+            } else {
+                long added = elapsed * refillRate / windowMillis;
+                tokens += added;
+                // Only move the clock by the time the whole units took, so fractions are not lost.
+                refillAt = refilledAt + added * windowMillis / refillRate;
+            }
+            if (tokens < take) {
+                return RateLimitDecision.rejected(ceilDiv((take - tokens) * windowMillis, refillRate));
+            }
+            long next = pack(refillAt, tokens - take);
+            if (state.compareAndSet(current, next)) {
+                long left = tokens - take;
+                return RateLimitDecision.allowed(left / SCALE, ceilDiv((size - left) * windowMillis, refillRate));
+            }
+        }
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static long pack(long refilledAtMillis, long scaledTokens) {
+        return ((refilledAtMillis & TIME_MASK) << 28) | scaledTokens;
+    }
+}
@@ -0,0 +1,68 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fixed window counter in one AtomicLong: window start in epoch seconds in the high 32 bits,
+// request count in the low 32. Every update is a single CAS, so event-loop threads never block
+// and nothing is allocated per request.
+final class WindowCounter extends RateLimitCounter {
+    static final long MAX_COUNT = 0xFFFF_FFFFL - 1;
+    private static final long COUNT_MASK = 0xFFFF_FFFFL;
+
+    private final AtomicLong state;
+
+    WindowCounter(long nowSeconds) {
+        super(nowSeconds);
+        this.state = new AtomicLong(pack(nowSeconds, 0L));
+    }
+
+    @Override
+    long tryAcquire(long nowMillis, long capacity, long windowSeconds, long burst, long cost) {
+        long limit = Math.min(capacity, MAX_COUNT);
+        long packed = acquire(nowMillis / 1000L, limit, windowSeconds, Math.min(cost, limit));
+        long resetAfterMillis = (windowStart(packed) + windowSeconds) * 1000L - nowMillis;
+        long count = count(packed);
+        return count > limit
+            ? RateLimitDecision.rejected(resetAfterMillis)
+            : RateLimitDecision.allowed(limit - count, resetAfterMillis);
+    }
+
+    // `capacity` must not exceed MAX_COUNT. Returns the packed state as seen by this request.
+    // When the request is rejected nothing is stored and the returned count is capacity + 1,
+    // so callers test `count(result) <= capacity`.
+    long acquire(long nowSeconds, long capacity, long windowSeconds, long cost) {
+        touch(nowSeconds);
+        while (true) {
+            long current = state.get();
+            long windowStart = windowStart(current);
+            long count = count(current);
+            if (nowSeconds >= windowStart + windowSeconds) {
+                windowStart = nowSeconds;
+                count = 0L;
+            }
+            if (count + cost > capacity) {
+                return pack(windowStart, capacity + 1);
+            }
+            long next = pack(windowStart, count + cost);
+            if (state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    long current() {
+        return state.get();
+    }
+
+    static long windowStart(long packed) {
+        return packed >>> 32;
+    }
+
+    static long count(long packed) {
+        return packed & COUNT_MASK;
+    }
+
+    static long pack(long windowStartSeconds, long count) {
+        return (windowStartSeconds << 32) | (count & COUNT_MASK);
+    }
+}
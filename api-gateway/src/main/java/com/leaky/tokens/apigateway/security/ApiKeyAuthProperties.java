@@ -1,5 +1,9 @@
 package com.leaky.tokens.apigateway.security;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Getter;
@@ -25,5 +29,51 @@ public class ApiKeyAuthProperties {
     private long cacheTtlSeconds = 120;
     @Min(1)
     private long cacheMaxSize = 10000;
+    // Valid entries older than this are served while reloaded in the background; 0 disables.
+    @Min(0)
+    private long cacheRefreshSeconds = 90;
+    @Min(0)
+    private long negativeCacheTtlSeconds = 10;
+    @Valid
+    private Revocation revocation = new Revocation();
+    @Valid
+    private Signing signing = new Signing();
+
+    @Setter
+    @Getter
+    public static class Revocation {
+        private boolean enabled = false;
+        @NotBlank
+        private String channel = "auth:api-key:revocations";
+        // Resubscribe backoff after the Redis connection drops.
+        @Min(1)
+        private long maxBackoffSeconds = 30;
+        // Revoked hashes remembered for signed keys, which are verified without asking auth-server.
+        @Min(1)
+        private long maxRevokedKeys = 100000;
+        @Valid
+        private Filter filter = new Filter();
+    }
+
+    // Bloom filter of auth-server's whole blacklist, so signed keys only go to auth-server on a hit.
+    @Setter
+    @Getter
+    public static class Filter {
+        private boolean enabled = false;
+        @Min(1)
+        private long syncIntervalSeconds = 60;
+        // A filter older than this is distrusted and every signed key is checked with auth-server.
+        @Min(1)
+        private long maxAgeSeconds = 300;
+        // Sent as X-Service-Token; must match auth.api-key.service-token on auth-server.
+        private String serviceToken = "";
+    }
 
+    @Setter
+    @Getter
+    public static class Signing {
+        private boolean enabled = false;
+        // Key id to HMAC secret; keep the previous id listed while auth-server rotates to a new one.
+        private Map<String, String> keys = new LinkedHashMap<>();
+    }
 }
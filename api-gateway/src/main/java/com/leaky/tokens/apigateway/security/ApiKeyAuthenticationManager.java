@@ -7,6 +7,7 @@ import java.util.Optional;
 
 import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
 import org.jspecify.annotations.NonNull;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
@@ -20,15 +21,25 @@ public class ApiKeyAuthenticationManager implements ReactiveAuthenticationManage
     private final ApiKeyAuthProperties properties;
     private final ApiKeyValidationCache cache;
     private final GatewayMetrics metrics;
+    private final SignedApiKeyVerifier verifier;
 
     public ApiKeyAuthenticationManager(WebClient.Builder builder,
                                        ApiKeyAuthProperties properties,
                                        ApiKeyValidationCache cache,
                                        GatewayMetrics metrics) {
+        this(builder, properties, cache, metrics, null);
+    }
+
+    public ApiKeyAuthenticationManager(WebClient.Builder builder,
+                                       ApiKeyAuthProperties properties,
+                                       ApiKeyValidationCache cache,
+                                       GatewayMetrics metrics,
+                                       SignedApiKeyVerifier verifier) {
         this.webClient = builder.baseUrl(properties.getAuthServerUrl()).build();
         this.properties = properties;
         this.cache = cache;
         this.metrics = metrics;
+        this.verifier = verifier;
     }
 
     @Override
@@ -37,41 +48,60 @@ public class ApiKeyAuthenticationManager implements ReactiveAuthenticationManage
             return Mono.empty();
         }
         String apiKey = String.valueOf(token.getCredentials());
-        Optional<ApiKeyValidationCache.CacheEntry> cached =
-            cache.get(apiKey, properties.getCacheTtlSeconds());
-        if (cached.isPresent()) {
-            metrics.apiKeyCache("hit");
-            metrics.apiKeyValidation("success");
-            return Mono.just(new ApiKeyAuthenticationToken(apiKey, cached.get().getUserId(), cached.get().getRoles()));
-        }
-        metrics.apiKeyCache("miss");
+        // Signed keys are answered locally and never touch the cache or auth-server.
+        Mono<ApiKeyValidationCache.CacheEntry> lookup = Optional.ofNullable(verifier)
+            .flatMap(signed -> signed.verify(apiKey))
+            .map(Mono::just)
+            .orElseGet(() -> cache.get(apiKey, this::validate));
+        return lookup
+            .switchIfEmpty(Mono.error(() -> new BadCredentialsException("invalid api key")))
+            .flatMap(entry -> {
+                if (!entry.isValid()) {
+                    metrics.apiKeyValidation("failure");
+                    return Mono.error(new BadCredentialsException("invalid api key"));
+                }
+                metrics.apiKeyValidation("success");
+                return Mono.just(new ApiKeyAuthenticationToken(apiKey, entry.getUserId(), entry.getRoles()));
+            });
+    }
+
+    // A rejection is a definitive answer and becomes a (negatively cached) invalid entry; any other
+    // error status means auth-server could not answer, so it fails the request without being cached.
+    private Mono<ApiKeyValidationCache.CacheEntry> validate(String apiKey) {
         return webClient.get()
             .uri("/api/v1/auth/api-keys/validate")
             .header(properties.getHeaderName(), apiKey)
-            .retrieve()
-            .onStatus(HttpStatusCode::isError, _ -> {
-                metrics.apiKeyValidation("failure");
-                return Mono.error(new BadCredentialsException("invalid api key"));
-            })
-            .bodyToMono(Map.class)
-            .map(body -> {
-                String userId = String.valueOf(body.get("userId"));
-                Instant expiresAt = null;
-                Object expires = body.get("expiresAt");
-                if (expires instanceof String expiresText && !expiresText.isBlank()) {
-                    try {
-                        expiresAt = Instant.parse(expiresText);
-                    } catch (Exception ignored) {
-                    }
+            .exchangeToMono(response -> {
+                if (isRejection(response.statusCode())) {
+                    return response.releaseBody().thenReturn(ApiKeyValidationCache.CacheEntry.invalid(Instant.now()));
                 }
-                List<String> roles = extractRoles(body.get("roles"));
-                cache.put(apiKey, new ApiKeyValidationCache.CacheEntry(userId, expiresAt, roles, Instant.now()),
-                    properties.getCacheMaxSize());
-                metrics.apiKeyValidation("success");
-                return new ApiKeyAuthenticationToken(apiKey, userId, roles);
+                if (response.statusCode().isError()) {
+                    metrics.apiKeyValidation("failure");
+                    return response.releaseBody().then(Mono.error(new BadCredentialsException("invalid api key")));
+                }
+                return response.bodyToMono(Map.class).map(this::toEntry);
             });
     }
 
+    private ApiKeyValidationCache.CacheEntry toEntry(Map<?, ?> body) {
+        String userId = String.valueOf(body.get("userId"));
+        Instant expiresAt = null;
+        Object expires = body.get("expiresAt");
+        if (expires instanceof String expiresText && !expiresText.isBlank()) {
+            try {
+                expiresAt = Instant.parse(expiresText);
+            } catch (Exception ignored) {
+            }
+        }
+        return new ApiKeyValidationCache.CacheEntry(userId, expiresAt, extractRoles(body.get("roles")), Instant.now());
+    }
+
+    private static boolean isRejection(HttpStatusCode status) {
+        return status.value() == HttpStatus.UNAUTHORIZED.value()
+            || status.value() == HttpStatus.FORBIDDEN.value()
+            || status.value() == HttpStatus.NOT_FOUND.value();
+    }
+
     private List<String> extractRoles(Object value) {
         if (value instanceof List<?> list) {
             return list.stream()
@@ -0,0 +1,81 @@
+package com.leaky.tokens.apigateway.security;
+
+import java.time.Duration;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+// Evicts keys auth-server revokes or sees expire, so they stop authenticating before the cache TTL
+// runs out. Pub/sub is fire-and-forget: whatever is published while this replica is not subscribed
+// is lost, so every (re)subscription flushes the whole cache instead of trusting it.
+@Component
+@ConditionalOnProperty(prefix = "gateway.api-key.revocation", name = "enabled", havingValue = "true")
+public class ApiKeyRevocationListener implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ApiKeyRevocationListener.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ApiKeyValidationCache cache;
+    private final RevokedApiKeys revokedKeys;
+    private final ApiKeyAuthProperties.Revocation properties;
+    private final GatewayMetrics metrics;
+    private volatile Disposable subscription;
+
+    public ApiKeyRevocationListener(ReactiveStringRedisTemplate redisTemplate,
+                                    ApiKeyValidationCache cache,
+                                    RevokedApiKeys revokedKeys,
+                                    ApiKeyAuthProperties properties,
+                                    GatewayMetrics metrics) {
+        this.redisTemplate = redisTemplate;
+        this.cache = cache;
+        this.revokedKeys = revokedKeys;
+        this.properties = properties.getRevocation();
+        this.metrics = metrics;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        if (subscription != null && !subscription.isDisposed()) {
+            return;
+        }
+        String channel = properties.getChannel();
+        subscription = redisTemplate.listenToChannelLater(channel)
+            .doOnNext(_ -> {
+                cache.invalidateAll();
+                logger.info("Subscribed to API key revocations on {}", channel);
+            })
+            .flatMapMany(messages -> messages)
+            .doOnError(ex -> logger.warn("API key revocation subscription failed: {}", ex.getMessage()))
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                .maxBackoff(Duration.ofSeconds(properties.getMaxBackoffSeconds())))
+            .subscribe(this::evict);
+    }
+
+    private void evict(ReactiveSubscription.Message<String, String> message) {
+        String hashedKey = message.getMessage();
+        if (hashedKey == null || hashedKey.isBlank()) {
+            return;
+        }
+        cache.invalidateHashed(hashedKey);
+        revokedKeys.add(hashedKey);
+        metrics.apiKeyCache("revoked");
+    }
+
+    @Override
+    public void destroy() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+}
@@ -1,50 +1,199 @@
 package com.leaky.tokens.apigateway.security;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HexFormat;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import reactor.core.publisher.Mono;
+
+// Bounded by Caffeine's W-TinyLFU policy, so a full cache evicts the coldest keys instead of
+// dropping everything. Concurrent misses for one key share a single in-flight load, rejected keys
+// are cached for a short negative TTL, and a valid entry past `cacheRefreshSeconds` is served as is
+// while one background reload replaces it. TTLs are read from the properties on every write, so a
+// rebound value applies to new entries without rebuilding the cache. Entries are keyed by the
+// SHA-256 of the key, the same form auth-server stores and publishes revocations under.
 @Component
 public class ApiKeyValidationCache {
-    private final ConcurrentHashMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
+    private final ApiKeyAuthProperties properties;
+    private final GatewayMetrics metrics;
+    private final Clock clock;
+    private final AsyncCache<String, CacheEntry> cache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
 
-    public Optional<CacheEntry> get(String apiKey, long ttlSeconds) {
-        CacheEntry entry = cache.get(apiKey);
-        if (entry == null) {
-            return Optional.empty();
-        }
-        if (entry.isExpired(ttlSeconds)) {
-            cache.remove(apiKey);
+    @Autowired
+    public ApiKeyValidationCache(ApiKeyAuthProperties properties, GatewayMetrics metrics) {
+        this(properties, metrics, Clock.systemUTC(), Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    ApiKeyValidationCache(ApiKeyAuthProperties properties, GatewayMetrics metrics,
+                          Clock clock, Ticker ticker, Executor executor) {
+        this.properties = properties;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getCacheMaxSize())
+            .expireAfter(new EntryExpiry())
+            .ticker(ticker)
+            .executor(executor)
+            .buildAsync();
+    }
+
+    // The loader emits an invalid entry for keys auth-server rejects; errors (auth-server unavailable)
+    // are passed on and not cached.
+    public Mono<CacheEntry> get(String apiKey, Function<String, Mono<CacheEntry>> loader) {
+        return Mono.defer(() -> {
+            String hashedKey = hash(apiKey);
+            CompletableFuture<CacheEntry> cached = cache.getIfPresent(hashedKey);
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                CacheEntry entry = cached.join();
+                if (entry != null) {
+                    metrics.apiKeyCache(entry.isValid() ? "hit" : "negative_hit");
+                    refreshIfStale(apiKey, hashedKey, cached, entry, loader);
+                    return Mono.just(entry);
+                }
+            }
+            metrics.apiKeyCache("miss");
+            CompletableFuture<CacheEntry> pending = cache.get(hashedKey, (_, _) -> loader.apply(apiKey).toFuture());
+            // One caller cancelling must not cancel the load the others are waiting on.
+            return Mono.fromFuture(pending, true);
+        });
+    }
+
+    public Optional<CacheEntry> getIfPresent(String apiKey) {
+        CompletableFuture<CacheEntry> cached = cache.getIfPresent(hash(apiKey));
+        if (cached == null || !cached.isDone() || cached.isCompletedExceptionally()) {
             return Optional.empty();
         }
-        return Optional.of(entry);
+        return Optional.ofNullable(cached.join());
+    }
+
+    public void put(String apiKey, CacheEntry entry) {
+        cache.put(hash(apiKey), CompletableFuture.completedFuture(entry));
+    }
+
+    public void invalidate(String apiKey) {
+        invalidateHashed(hash(apiKey));
     }
 
-    public void put(String apiKey, CacheEntry entry, long maxSize) {
-        if (maxSize <= 0) {
+    public void invalidateHashed(String hashedKey) {
+        cache.synchronous().invalidate(hashedKey);
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    public long estimatedSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    private void refreshIfStale(String apiKey, String hashedKey, CompletableFuture<CacheEntry> observed,
+                                CacheEntry entry, Function<String, Mono<CacheEntry>> loader) {
+        long refreshSeconds = properties.getCacheRefreshSeconds();
+        if (!entry.isValid() || refreshSeconds <= 0 || refreshSeconds >= properties.getCacheTtlSeconds()) {
+            return;
+        }
+        if (entry.getCachedAt().plusSeconds(refreshSeconds).isAfter(clock.instant()) || !refreshing.add(hashedKey)) {
             return;
         }
-        if (cache.size() >= maxSize) {
-            cache.clear();
+        metrics.apiKeyCache("refresh");
+        loader.apply(apiKey)
+            .doFinally(_ -> refreshing.remove(hashedKey))
+            // On failure the current entry keeps being served until it expires. The result only replaces
+            // the entry it was started for, so a revocation evicting the key mid-refresh is not undone.
+            .subscribe(
+                fresh -> cache.asMap().replace(hashedKey, observed, CompletableFuture.completedFuture(fresh)),
+                _ -> metrics.apiKeyCache("refresh_failure")
+            );
+    }
+
+    static String hash(String apiKey) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(apiKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("hashing algorithm missing", ex);
+        }
+    }
+
+    private final class EntryExpiry implements Expiry<String, CacheEntry> {
+        @Override
+        public long expireAfterCreate(String key, CacheEntry entry, long currentTime) {
+            return ttlNanos(entry);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CacheEntry entry, long currentTime, long currentDuration) {
+            return ttlNanos(entry);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CacheEntry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        // Never outlives the key itself.
+        private long ttlNanos(CacheEntry entry) {
+            Duration ttl = Duration.ofSeconds(entry.isValid()
+                ? properties.getCacheTtlSeconds()
+                : properties.getNegativeCacheTtlSeconds());
+            if (entry.getExpiresAt() != null) {
+                Duration untilExpiry = Duration.between(clock.instant(), entry.getExpiresAt());
+                if (untilExpiry.compareTo(ttl) < 0) {
+                    ttl = untilExpiry.isNegative() ? Duration.ZERO : untilExpiry;
+                }
+            }
+            return ttl.toNanos();
         }
-        cache.put(apiKey, entry);
     }
 
     public static final class CacheEntry {
+        private final boolean valid;
         private final String userId;
         private final Instant expiresAt;
         private final java.util.List<String> roles;
         private final Instant cachedAt;
 
         public CacheEntry(String userId, Instant expiresAt, java.util.List<String> roles, Instant cachedAt) {
+            this(true, userId, expiresAt, roles, cachedAt);
+        }
+
+        private CacheEntry(boolean valid, String userId, Instant expiresAt,
+                           java.util.List<String> roles, Instant cachedAt) {
+            this.valid = valid;
             this.userId = userId;
             this.expiresAt = expiresAt;
             this.roles = roles == null ? java.util.List.of() : java.util.List.copyOf(roles);
             this.cachedAt = cachedAt;
         }
 
+        public static CacheEntry invalid(Instant cachedAt) {
+            return new CacheEntry(false, null, null, null, cachedAt);
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
         public String getUserId() {
             return userId;
         }
@@ -60,16 +209,5 @@ public class ApiKeyValidationCache {
         public Instant getCachedAt() {
             return cachedAt;
         }
-
-        private boolean isExpired(long ttlSeconds) {
-            Instant now = Instant.now();
-            if (expiresAt != null && expiresAt.isBefore(now)) {
-                return true;
-            }
-            if (ttlSeconds <= 0) {
-                return false;
-            }
-            return cachedAt.plusSeconds(ttlSeconds).isBefore(now);
-        }
     }
 }
@@ -9,7 +9,10 @@ import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
 import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
 import org.springframework.security.web.server.authentication.ServerAuthenticationFailureHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.context.ServerSecurityContextRepository;
 import org.springframework.security.web.server.context.WebSessionServerSecurityContextRepository;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
 import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
@@ -29,21 +32,30 @@ public class GatewaySecurityConfig {
                                                            ApiKeyAuthProperties apiKeyProperties,
                                                            GatewaySecurityProperties securityProperties,
                                                            ApiKeyValidationCache cache,
+                                                           SignedApiKeyVerifier signedApiKeyVerifier,
                                                            GatewayMetrics metrics,
                                                            GatewayFeatureFlags featureFlags,
                                                            WebClient.Builder webClientBuilder) {
+        ServerSecurityContextRepository contextRepository = securityProperties.isStateless()
+            ? NoOpServerSecurityContextRepository.getInstance()
+            : new WebSessionServerSecurityContextRepository();
         if (apiKeyProperties.isEnabled() && featureFlags.isApiKeyValidation()) {
             AuthenticationWebFilter apiKeyFilter = new AuthenticationWebFilter(
-                new ApiKeyAuthenticationManager(webClientBuilder, apiKeyProperties, cache, metrics)
+                new ApiKeyAuthenticationManager(webClientBuilder, apiKeyProperties, cache, metrics, signedApiKeyVerifier)
             );
             apiKeyFilter.setServerAuthenticationConverter(new ApiKeyAuthenticationConverter(apiKeyProperties));
-            apiKeyFilter.setSecurityContextRepository(new WebSessionServerSecurityContextRepository());
+            apiKeyFilter.setSecurityContextRepository(contextRepository);
             apiKeyFilter.setRequiresAuthenticationMatcher(ServerWebExchangeMatchers.anyExchange());
             apiKeyFilter.setAuthenticationFailureHandler(unauthorizedHandler());
             http.addFilterBefore(apiKeyFilter, SecurityWebFiltersOrder.AUTHENTICATION);
         }
 
-        ServerHttpSecurity configured = http.csrf(ServerHttpSecurity.CsrfSpec::disable);
+        ServerHttpSecurity configured = http.csrf(ServerHttpSecurity.CsrfSpec::disable)
+            .securityContextRepository(contextRepository);
+        if (securityProperties.isStateless()) {
+            // The default request cache would still open a session to remember every 401'd request.
+            configured.requestCache(requestCache -> requestCache.requestCache(NoOpServerRequestCache.getInstance()));
+        }
 
         if (securityProperties.isPermitAll()) {
             configured.authorizeExchange(exchanges -> exchanges.anyExchange().permitAll());
@@ -9,5 +9,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "gateway.security")
 public class GatewaySecurityProperties {
     private boolean permitAll = false;
-
+    // Authenticate every request from its credentials and never create a WebSession; clients of
+    // the gateway send API keys or bearer tokens, not session cookies.
+    private boolean stateless = true;
 }
@@ -0,0 +1,59 @@
+package com.leaky.tokens.apigateway.security;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Read side of auth-server's filter of revoked key hashes: probe positions come from the first 128
+// bits of the hex SHA-256 (double hashing), exactly as auth-server sets them. Revocations pushed
+// between two syncs are added in place.
+final class RevocationBloomFilter {
+    private final AtomicLongArray words;
+    private final int bits;
+    private final int hashes;
+    private final long createdAtMillis;
+
+    RevocationBloomFilter(int bits, int hashes, byte[] filter, long createdAtMillis) {
+        if (bits <= 0 || bits % Long.SIZE != 0 || hashes <= 0 || filter.length != bits / Byte.SIZE) {
+            throw new IllegalArgumentException("malformed revocation filter");
+        }
+        LongBuffer buffer = ByteBuffer.wrap(filter).asLongBuffer();
+        long[] values = new long[bits / Long.SIZE];
+        buffer.get(values);
+        this.words = new AtomicLongArray(values);
+        this.bits = bits;
+        this.hashes = hashes;
+        this.createdAtMillis = createdAtMillis;
+    }
+
+    void add(String hashedKey) {
+        long h1 = HexFormat.fromHexDigitsToLong(hashedKey, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(hashedKey, 16, 32) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(h1, h2, i);
+            long mask = 1L << bit;
+            words.getAndUpdate(bit >>> 6, word -> word | mask);
+        }
+    }
+
+    boolean mightContain(String hashedKey) {
+        long h1 = HexFormat.fromHexDigitsToLong(hashedKey, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(hashedKey, 16, 32) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            int bit = bit(h1, h2, i);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long createdAtMillis() {
+        return createdAtMillis;
+    }
+
+    private int bit(long h1, long h2, int i) {
+        return (int) Math.floorMod(h1 + i * h2, (long) bits);
+    }
+}
@@ -0,0 +1,108 @@
+package com.leaky.tokens.apigateway.security;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+
+// Pulls the full revocation filter from auth-server; revocations pushed on the channel in between
+// are added to the current filter by RevokedApiKeys. A filter's age counts from when auth-server
+// built it, since auth-server may serve a cached copy. A failed sync keeps the previous filter until
+// it is older than max-age-seconds.
+@Component
+@ConditionalOnProperty(prefix = "gateway.api-key.revocation.filter", name = "enabled", havingValue = "true")
+public class RevocationFilterSync {
+    private static final Logger logger = LoggerFactory.getLogger(RevocationFilterSync.class);
+
+    private final WebClient webClient;
+    private final RevokedApiKeys revokedKeys;
+    private final GatewayMetrics metrics;
+    private final String serviceToken;
+    private final Clock clock;
+    private final AtomicBoolean syncing = new AtomicBoolean();
+
+    @Autowired
+    public RevocationFilterSync(WebClient.Builder builder,
+                                ApiKeyAuthProperties properties,
+                                RevokedApiKeys revokedKeys,
+                                GatewayMetrics metrics) {
+        this(builder, properties, revokedKeys, metrics, Clock.systemUTC());
+    }
+
+    RevocationFilterSync(WebClient.Builder builder,
+                         ApiKeyAuthProperties properties,
+                         RevokedApiKeys revokedKeys,
+                         GatewayMetrics metrics,
+                         Clock clock) {
+        this.webClient = builder.baseUrl(properties.getAuthServerUrl()).build();
+        this.revokedKeys = revokedKeys;
+        this.metrics = metrics;
+        this.serviceToken = properties.getRevocation().getFilter().getServiceToken();
+        this.clock = clock;
+    }
+
+    @Scheduled(
+        fixedDelayString = "${gateway.api-key.revocation.filter.sync-interval-seconds:60}",
+        timeUnit = TimeUnit.SECONDS
+    )
+    public void scheduledSync() {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        sync()
+            .doFinally(_ -> syncing.set(false))
+            .subscribe();
+    }
+
+    Mono<Void> sync() {
+        return webClient.get()
+            .uri("/internal/api-keys/revocations/filter")
+            .header("X-Service-Token", serviceToken)
+            .retrieve()
+            .bodyToMono(Map.class)
+            .map(this::toFilter)
+            .doOnNext(filter -> {
+                revokedKeys.replaceFilter(filter);
+                metrics.apiKeyCache("filter_sync");
+            })
+            .doOnError(ex -> {
+                metrics.apiKeyCache("filter_sync_failure");
+                logger.warn("Revocation filter sync failed: {}", ex.getMessage());
+            })
+            .onErrorResume(_ -> Mono.empty())
+            .then();
+    }
+
+    private RevocationBloomFilter toFilter(Map<?, ?> body) {
+        if (!(body.get("bits") instanceof Number bits)
+            || !(body.get("hashes") instanceof Number hashes)
+            || !(body.get("filter") instanceof String filter)) {
+            throw new IllegalArgumentException("malformed revocation filter");
+        }
+        return new RevocationBloomFilter(bits.intValue(), hashes.intValue(), Base64.getDecoder().decode(filter),
+            generatedAtMillis(body.get("generatedAt")));
+    }
+
+    private long generatedAtMillis(Object generatedAt) {
+        Instant instant = switch (generatedAt) {
+            case String text -> Instant.parse(text);
+            case Number seconds -> Instant.ofEpochMilli(Math.round(seconds.doubleValue() * 1000));
+            case null, default -> throw new IllegalArgumentException("malformed revocation filter");
+        };
+        // An auth-server clock ahead of ours must not stretch the filter's lifetime.
+        return Math.min(instant.toEpochMilli(), clock.millis());
+    }
+}
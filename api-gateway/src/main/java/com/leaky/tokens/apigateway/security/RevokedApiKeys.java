@@ -0,0 +1,67 @@
+package com.leaky.tokens.apigateway.security;
+
+import java.time.Clock;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// Hashes of keys revoked while this replica was listening. Signed keys are verified locally and
+// never reach auth-server, so this is where their revocation becomes visible to the gateway.
+// The synced bloom filter of auth-server's blacklist covers revocations this replica never heard
+// about. Without it (filter disabled, not synced yet, or stale) every key counts as possibly
+// revoked, so signed keys fail closed to auth-server.
+@Component
+public class RevokedApiKeys {
+    private final ApiKeyAuthProperties.Filter filterProperties;
+    private final Clock clock;
+    private final Cache<String, Boolean> revoked;
+    private volatile RevocationBloomFilter filter;
+
+    @Autowired
+    public RevokedApiKeys(ApiKeyAuthProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    RevokedApiKeys(ApiKeyAuthProperties properties, Clock clock) {
+        this.filterProperties = properties.getRevocation().getFilter();
+        this.clock = clock;
+        this.revoked = Caffeine.newBuilder()
+            .maximumSize(properties.getRevocation().getMaxRevokedKeys())
+            .build();
+    }
+
+    public void add(String hashedKey) {
+        revoked.put(hashedKey, Boolean.TRUE);
+        RevocationBloomFilter current = filter;
+        if (current != null) {
+            try {
+                current.add(hashedKey);
+            } catch (IllegalArgumentException ex) {
+                // Not a key hash; the exact set above still has it.
+            }
+        }
+    }
+
+    public boolean contains(String hashedKey) {
+        return revoked.getIfPresent(hashedKey) != null;
+    }
+
+    // False only when the filter rules the key out; true means "ask auth-server".
+    public boolean mightBeRevoked(String hashedKey) {
+        if (!filterProperties.isEnabled()) {
+            return true;
+        }
+        RevocationBloomFilter current = filter;
+        if (current == null
+            || clock.millis() - current.createdAtMillis() > filterProperties.getMaxAgeSeconds() * 1000L) {
+            return true;
+        }
+        return current.mightContain(hashedKey);
+    }
+
+    void replaceFilter(RevocationBloomFilter next) {
+        filter = next;
+    }
+}
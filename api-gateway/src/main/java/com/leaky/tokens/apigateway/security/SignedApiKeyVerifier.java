@@ -0,0 +1,119 @@
+package com.leaky.tokens.apigateway.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// Verifies keys auth-server signs as leaky_v1.<keyId>.<base64url claims>.<base64url HMAC-SHA256>,
+// with claims "userId|expiresAtEpochSeconds|ROLE,ROLE|nonce". Empty means "not ours to decide"
+// (signing off, another key format, a key id this replica has no secret for, a key without an
+// expiry, or no synced revocation filter ruling the key out) and the key goes to auth-server as
+// before; a present entry is final, valid or not.
+@Component
+public class SignedApiKeyVerifier {
+    private static final Logger logger = LoggerFactory.getLogger(SignedApiKeyVerifier.class);
+    static final String PREFIX = "leaky_v1.";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final ApiKeyAuthProperties.Signing properties;
+    private final RevokedApiKeys revokedKeys;
+    private final Clock clock;
+
+    @Autowired
+    public SignedApiKeyVerifier(ApiKeyAuthProperties properties, RevokedApiKeys revokedKeys) {
+        this(properties, revokedKeys, Clock.systemUTC());
+    }
+
+    SignedApiKeyVerifier(ApiKeyAuthProperties properties, RevokedApiKeys revokedKeys, Clock clock) {
+        this.properties = properties.getSigning();
+        this.revokedKeys = revokedKeys;
+        this.clock = clock;
+        if (this.properties.isEnabled() && !properties.getRevocation().getFilter().isEnabled()) {
+            logger.warn("API key signing is enabled without gateway.api-key.revocation.filter.enabled; "
+                + "every signed key will be checked with auth-server");
+        }
+    }
+
+    public Optional<ApiKeyValidationCache.CacheEntry> verify(String apiKey) {
+        if (!properties.isEnabled() || !apiKey.startsWith(PREFIX)) {
+            return Optional.empty();
+        }
+        Instant now = clock.instant();
+        int keyIdEnd = apiKey.indexOf('.', PREFIX.length());
+        int claimsEnd = keyIdEnd < 0 ? -1 : apiKey.indexOf('.', keyIdEnd + 1);
+        if (claimsEnd < 0 || apiKey.indexOf('.', claimsEnd + 1) >= 0) {
+            return Optional.of(ApiKeyValidationCache.CacheEntry.invalid(now));
+        }
+        String secret = properties.getKeys().get(apiKey.substring(PREFIX.length(), keyIdEnd));
+        if (secret == null || secret.isBlank()) {
+            return Optional.empty();
+        }
+
+        Claims claims;
+        try {
+            byte[] signature = Base64.getUrlDecoder().decode(apiKey.substring(claimsEnd + 1));
+            if (!MessageDigest.isEqual(signature, mac(secret, apiKey.substring(0, claimsEnd)))) {
+                return Optional.of(ApiKeyValidationCache.CacheEntry.invalid(now));
+            }
+            claims = Claims.parse(Base64.getUrlDecoder().decode(apiKey.substring(keyIdEnd + 1, claimsEnd)));
+        } catch (IllegalArgumentException ex) {
+            return Optional.of(ApiKeyValidationCache.CacheEntry.invalid(now));
+        }
+        // auth-server no longer signs keys without an expiry; older ones are only trusted from there.
+        if (claims.expiresAt() == null) {
+            return Optional.empty();
+        }
+        if (!claims.expiresAt().isAfter(now)) {
+            return Optional.of(ApiKeyValidationCache.CacheEntry.invalid(now));
+        }
+        String hashedKey = ApiKeyValidationCache.hash(apiKey);
+        if (revokedKeys.contains(hashedKey)) {
+            return Optional.of(ApiKeyValidationCache.CacheEntry.invalid(now));
+        }
+        // A filter hit may be a false positive; auth-server knows for sure.
+        if (revokedKeys.mightBeRevoked(hashedKey)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ApiKeyValidationCache.CacheEntry(claims.userId(), claims.expiresAt(), claims.roles(), now));
+    }
+
+    private static byte[] mac(String secret, String unsigned) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac.doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("signing algorithm missing", ex);
+        }
+    }
+
+    private record Claims(String userId, Instant expiresAt, List<String> roles) {
+        static Claims parse(byte[] encoded) {
+            String[] fields = new String(encoded, StandardCharsets.UTF_8).split("\\|", -1);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("malformed claims");
+            }
+            String userId = UUID.fromString(fields[0]).toString();
+            Instant expiresAt = fields[1].isEmpty() ? null : Instant.ofEpochSecond(Long.parseLong(fields[1]));
+            List<String> roles = fields[2].isEmpty()
+                ? List.of()
+                : Arrays.stream(fields[2].split(",")).filter(role -> !role.isBlank()).toList();
+            return new Claims(userId, expiresAt, roles);
+        }
+    }
+}
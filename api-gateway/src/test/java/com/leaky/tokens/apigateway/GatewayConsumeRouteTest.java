@@ -115,16 +115,7 @@ class GatewayConsumeRouteTest {
     @BeforeEach
     void resetCache() {
         apiKeyAuthProperties.setCacheTtlSeconds(1);
-        try {
-            java.lang.reflect.Field cacheField =
-                com.leaky.tokens.apigateway.security.ApiKeyValidationCache.class.getDeclaredField("cache");
-            cacheField.setAccessible(true);
-            Object cache = cacheField.get(apiKeyValidationCache);
-            if (cache instanceof java.util.Map<?, ?> map) {
-                map.clear();
-            }
-        } catch (Exception ignored) {
-        }
+        apiKeyValidationCache.invalidateAll();
         meterRegistry.getMeters().forEach(meterRegistry::remove);
         newClient().get()
             .uri("/actuator/health")
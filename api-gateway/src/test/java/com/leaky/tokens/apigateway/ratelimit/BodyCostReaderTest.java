@@ -0,0 +1,43 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class BodyCostReaderTest {
+    @Test
+    void readsTopLevelField() {
+        assertThat(read("{\"userId\":\"u-1\",\"provider\":\"openai\",\"tokens\":1500}")).isEqualTo(1500L);
+        assertThat(read("{ \"tokens\" : 42 , \"provider\":\"openai\"}")).isEqualTo(42L);
+    }
+
+    @Test
+    void ignoresNestedFieldsAndStringValues() {
+        assertThat(read("{\"meta\":{\"tokens\":999},\"note\":\"tokens\",\"tokens\":7}")).isEqualTo(7L);
+        assertThat(read("{\"meta\":{\"tokens\":999}}")).isEqualTo(BodyCostReader.ABSENT);
+        assertThat(read("{\"note\":\"\\\"tokens\\\":5\"}")).isEqualTo(BodyCostReader.ABSENT);
+    }
+
+    @Test
+    void coercesValuesLikeTheDownstreamBinding() {
+        assertThat(read("{\"tokens\":\"250\"}")).isEqualTo(250L);
+        assertThat(read("{\"tokens\":1e5}")).isEqualTo(100_000L);
+        assertThat(read("{\"tokens\":12.9}")).isEqualTo(12L);
+        assertThat(read("{\"tok\\u0065ns\":300}")).isEqualTo(300L);
+        assertThat(read("{\"tokens\":1,\"tokens\":800}")).isEqualTo(800L);
+    }
+
+    @Test
+    void returnsAbsentForMissingOrInvalidValues() {
+        assertThat(read("{\"tokens\":null}")).isEqualTo(BodyCostReader.ABSENT);
+        assertThat(read("{\"tokens\":")).isEqualTo(BodyCostReader.ABSENT);
+        assertThat(read("not json")).isEqualTo(BodyCostReader.ABSENT);
+        assertThat(read("")).isEqualTo(BodyCostReader.ABSENT);
+    }
+
+    private static long read(String body) {
+        return BodyCostReader.read(body.getBytes(StandardCharsets.UTF_8), "tokens");
+    }
+}
@@ -0,0 +1,153 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import reactor.core.publisher.Flux;
+
+class DistributedRateLimiterTest {
+    private static final long NOW = 1_000_040L;
+    private static final long WINDOW_START = 1_000_020L;
+
+    private final ReactiveStringRedisTemplate redisTemplate = mock(ReactiveStringRedisTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final DistributedRateLimiter limiter =
+        new DistributedRateLimiter(redisTemplate, new GatewayRateLimitProperties(), new GatewayMetrics(registry));
+
+    @Test
+    void pushesLocalIncrementsAndCountsOtherReplicas() {
+        stubScript(Flux.just(8L));
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+
+        limiter.sync(NOW).block();
+
+        verify(redisTemplate).execute(
+            eq(DistributedRateLimiter.INCREMENT_SCRIPT),
+            eq(List.of("gateway:rate-limit:apiKey:a:" + WINDOW_START)),
+            eq(List.of("2", "41"))
+        );
+        // Redis reports 8: 2 from this replica, 6 from the others.
+        long state = limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+        assertThat(WindowCounter.count(state)).isEqualTo(9L);
+        assertThat(WindowCounter.count(limiter.acquire("apiKey:a", NOW, 10, 60, 1))).isEqualTo(10L);
+        assertThat(WindowCounter.count(limiter.acquire("apiKey:a", NOW, 10, 60, 1))).isEqualTo(11L);
+    }
+
+    @Test
+    void onlySendsIncrementsSinceTheLastSync() {
+        stubScript(Flux.just(1L), Flux.just(3L));
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+        limiter.sync(NOW).block();
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+
+        limiter.sync(NOW).block();
+
+        verify(redisTemplate).execute(any(), anyList(), eq(List.of("1", "41")));
+        verify(redisTemplate).execute(any(), anyList(), eq(List.of("2", "41")));
+        assertThat(WindowCounter.count(limiter.acquire("apiKey:a", NOW, 10, 60, 1))).isEqualTo(4L);
+    }
+
+    @Test
+    void redisFailureFallsBackToLocalCountsAndPausesSync() {
+        stubScript(Flux.error(new IllegalStateException("connection refused")));
+        limiter.acquire("apiKey:a", NOW, 2, 60, 1);
+
+        limiter.sync(NOW).block();
+
+        assertThat(limiter.isPaused()).isTrue();
+        assertThat(WindowCounter.count(limiter.acquire("apiKey:a", NOW, 2, 60, 1))).isEqualTo(2L);
+        assertThat(WindowCounter.count(limiter.acquire("apiKey:a", NOW, 2, 60, 1))).isEqualTo(3L);
+        assertThat(registry.counter("gateway.rate_limit.sync.total", "outcome", "error").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void dropsIdleKeysOnceTheirWindowHasEnded() {
+        limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+        stubScript(Flux.just(1L));
+        limiter.sync(NOW).block();
+
+        limiter.sync(WINDOW_START + 60).block();
+
+        assertThat(limiter.trackedKeys()).isZero();
+    }
+
+    @Test
+    void windowsAreAlignedAcrossReplicas() {
+        long state = limiter.acquire("apiKey:a", NOW, 10, 60, 1);
+
+        assertThat(WindowCounter.windowStart(state)).isEqualTo(WINDOW_START);
+        verify(redisTemplate, never()).execute(any(), anyList(), anyList());
+    }
+
+    @Test
+    void gcraRunsOneScriptAgainstTheSharedArrivalTime() {
+        when(redisTemplate.<List<Long>>execute(eq(DistributedRateLimiter.GCRA_SCRIPT), anyList(), anyList()))
+            .thenReturn(Flux.just(List.of(1L, 4L, 6_000L)));
+
+        Long decision = limiter.acquire("apiKey:a", RateLimitAlgorithm.GCRA, 10, 60, 5, 1).block();
+
+        // 60 s / 10 permits apart, with 4 more intervals of tolerance for a burst of 5.
+        verify(redisTemplate).execute(
+            eq(DistributedRateLimiter.GCRA_SCRIPT),
+            eq(List.of("gateway:rate-limit:GCRA:apiKey:a")),
+            eq(List.of("6000000", "24000000", "1"))
+        );
+        assertThat(RateLimitDecision.isAllowed(decision)).isTrue();
+        assertThat(RateLimitDecision.remaining(decision)).isEqualTo(4L);
+        assertThat(RateLimitDecision.waitMillis(decision)).isEqualTo(6_000L);
+    }
+
+    @Test
+    void scriptRejectionCarriesTheWaitAndCostIsCappedAtTheLimit() {
+        when(redisTemplate.<List<Long>>execute(eq(DistributedRateLimiter.SLIDING_WINDOW_SCRIPT), anyList(), anyList()))
+            .thenReturn(Flux.just(List.of(0L, 0L, 1_500L)));
+
+        Long decision = limiter.acquire("user:u", RateLimitAlgorithm.SLIDING_WINDOW, 10, 60, 10, 50).block();
+
+        verify(redisTemplate).execute(
+            eq(DistributedRateLimiter.SLIDING_WINDOW_SCRIPT),
+            eq(List.of("gateway:rate-limit:SLIDING_WINDOW:user:u")),
+            eq(List.of("60000", "10", "10"))
+        );
+        assertThat(RateLimitDecision.isAllowed(decision)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(decision)).isEqualTo(1_500L);
+    }
+
+    @Test
+    void scriptFailureLeavesDecisionsToTheLocalCounterUntilTheBackoffEnds() {
+        when(redisTemplate.<List<Long>>execute(eq(DistributedRateLimiter.TOKEN_BUCKET_SCRIPT), anyList(), anyList()))
+            .thenReturn(Flux.error(new IllegalStateException("connection refused")));
+
+        Long first = limiter.acquire("apiKey:a", RateLimitAlgorithm.TOKEN_BUCKET, 10, 60, 20, 1).block();
+        Long second = limiter.acquire("apiKey:a", RateLimitAlgorithm.TOKEN_BUCKET, 10, 60, 20, 1).block();
+
+        assertThat(first).isNull();
+        assertThat(second).isNull();
+        assertThat(limiter.isPaused()).isTrue();
+        verify(redisTemplate).execute(
+            eq(DistributedRateLimiter.TOKEN_BUCKET_SCRIPT),
+            eq(List.of("gateway:rate-limit:TOKEN_BUCKET:apiKey:a")),
+            eq(List.of("60000", "10", "20", "1"))
+        );
+    }
+
+    @SafeVarargs
+    private void stubScript(Flux<Long> first, Flux<Long>... rest) {
+        when(redisTemplate.<Long>execute(any(), anyList(), anyList())).thenReturn(first, rest);
+    }
+}
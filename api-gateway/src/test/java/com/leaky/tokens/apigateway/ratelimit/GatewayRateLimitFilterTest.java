@@ -1,21 +1,35 @@
 package com.leaky.tokens.apigateway.ratelimit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.leaky.tokens.apigateway.flags.GatewayFeatureFlags;
 import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
 class GatewayRateLimitFilterTest {
     @Test
     void cleanupRemovesExpiredCounters() throws Exception {
@@ -27,8 +41,8 @@ class GatewayRateLimitFilterTest {
             featureFlags()
         );
 
-        ConcurrentHashMap<String, Object> counters = counters(filter);
-        Object counter = newWindowCounter(Instant.now().minusSeconds(5), 0L);
+        ConcurrentHashMap<String, RateLimitCounter> counters = counters(filter);
+        WindowCounter counter = new WindowCounter(Instant.now().minusSeconds(5).getEpochSecond());
         counters.put("key-1", counter);
 
         filter.cleanup();
@@ -46,8 +60,8 @@ class GatewayRateLimitFilterTest {
             featureFlags()
         );
 
-        ConcurrentHashMap<String, Object> counters = counters(filter);
-        Object counter = newWindowCounter(Instant.now().minusSeconds(5), 0L);
+        ConcurrentHashMap<String, RateLimitCounter> counters = counters(filter);
+        WindowCounter counter = new WindowCounter(Instant.now().minusSeconds(5).getEpochSecond());
         counters.put("key-1", counter);
 
         filter.cleanup();
@@ -65,8 +79,8 @@ class GatewayRateLimitFilterTest {
             featureFlags()
         );
 
-        ConcurrentHashMap<String, Object> counters = counters(filter);
-        Object counter = newWindowCounter(Instant.now(), 0L);
+        ConcurrentHashMap<String, RateLimitCounter> counters = counters(filter);
+        WindowCounter counter = new WindowCounter(Instant.now().getEpochSecond());
         counters.put("key-1", counter);
 
         filter.cleanup();
@@ -117,6 +131,41 @@ class GatewayRateLimitFilterTest {
         assertThat(counters(filter)).isEmpty();
     }
 
+    @Test
+    void refreshRecompilesWhitelistAndRouteLimits() throws Exception {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        GatewayRateLimitFilter filter = new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags()
+        );
+        GatewayFilterChain chain = ex -> ex.getResponse().setComplete();
+
+        GatewayRateLimitProperties.RouteLimitConfig route = new GatewayRateLimitProperties.RouteLimitConfig();
+        route.setCapacity(5L);
+        properties.setWhitelistPaths(java.util.List.of("/internal/**"));
+        properties.setRoutes(java.util.Map.of("token-service", route));
+        filter.refreshRules();
+
+        MockServerWebExchange whitelisted = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/internal/ping").build()
+        );
+        filter.filter(whitelisted, chain).block();
+        MockServerWebExchange routed = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/api/v1/tokens/quota").build()
+        );
+        routed.getAttributes().put(
+            ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+            Route.async().id("token-service").uri("http://localhost").predicate(_ -> true).build()
+        );
+        filter.filter(routed, chain).block();
+
+        assertThat(whitelisted.getResponse().getHeaders().getFirst("X-RateLimit-Limit")).isNull();
+        assertThat(routed.getResponse().getHeaders().getFirst("X-RateLimit-Limit")).isEqualTo("5");
+        assertThat(routed.<Object>getAttribute(GatewayRateLimitFilter.RESOLVED_LIMIT_ATTR))
+            .isEqualTo(new GatewayRateLimitFilter.ResolvedLimit(5L, 60L, RateLimitAlgorithm.FIXED_WINDOW, 5L));
+    }
+
     @Test
     void filterUsesUserHeaderWhenConfigured() throws Exception {
         GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
@@ -139,18 +188,219 @@ class GatewayRateLimitFilterTest {
         assertThat(counters(filter).keySet()).contains("user:user-9");
     }
 
+    @Test
+    void filterUsesRouteAlgorithmWithItsOwnCounter() throws Exception {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        properties.setKeyStrategy(RateLimitKeyStrategy.USER_HEADER);
+        GatewayRateLimitProperties.RouteLimitConfig route = new GatewayRateLimitProperties.RouteLimitConfig();
+        route.setCapacity(60L);
+        route.setAlgorithm(RateLimitAlgorithm.TOKEN_BUCKET);
+        route.setBurstCapacity(2L);
+        properties.setRoutes(java.util.Map.of("token-service", route));
+        GatewayRateLimitFilter filter = new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags()
+        );
+        GatewayFilterChain chain = ex -> ex.getResponse().setComplete();
+
+        MockServerWebExchange last = null;
+        for (int i = 0; i < 3; i++) {
+            last = MockServerWebExchange.from(
+                MockServerHttpRequest.post("/api/v1/tokens/consume").header("X-User-Id", "user-9").build()
+            );
+            last.getAttributes().put(
+                ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR,
+                Route.async().id("token-service").uri("http://localhost").predicate(_ -> true).build()
+            );
+            filter.filter(last, chain).block();
+        }
+
+        assertThat(last.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(last.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("1");
+        assertThat(counters(filter).keySet()).containsExactly("TOKEN_BUCKET:user:user-9");
+    }
+
+    @Test
+    void distributedModeDecidesStatefulAlgorithmsInRedisAndFallsBackLocally() throws Exception {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        properties.setKeyStrategy(RateLimitKeyStrategy.USER_HEADER);
+        properties.setAlgorithm(RateLimitAlgorithm.GCRA);
+        DistributedRateLimiter distributed = mock(DistributedRateLimiter.class);
+        when(distributed.acquire("user:user-9", RateLimitAlgorithm.GCRA, 120L, 60L, 120L, 1L))
+            .thenReturn(Mono.just(RateLimitDecision.rejected(2_500L)), Mono.empty());
+        GatewayRateLimitFilter filter = new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags(),
+            distributed
+        );
+        GatewayFilterChain chain = ex -> ex.getResponse().setComplete();
+
+        MockServerWebExchange rejected = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/api/v1/test").header("X-User-Id", "user-9").build()
+        );
+        filter.filter(rejected, chain).block();
+        MockServerWebExchange local = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/api/v1/test").header("X-User-Id", "user-9").build()
+        );
+        filter.filter(local, chain).block();
+
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        assertThat(rejected.getResponse().getHeaders().getFirst("Retry-After")).isEqualTo("3");
+        assertThat(local.getResponse().getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("119");
+        assertThat(counters(filter).keySet()).containsExactly("GCRA:user:user-9");
+    }
+
+    @Test
+    void weightedModeChargesTheRequestedTokensAndReplaysTheBody() throws Exception {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        properties.setKeyStrategy(RateLimitKeyStrategy.USER_HEADER);
+        properties.setCapacity(1_000);
+        properties.getWeighted().setEnabled(true);
+        GatewayRateLimitFilter filter = new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags()
+        );
+        AtomicReference<String> forwarded = new AtomicReference<>();
+        GatewayFilterChain chain = ex -> DataBufferUtils.join(ex.getRequest().getBody())
+            .doOnNext(buffer -> forwarded.set(buffer.toString(StandardCharsets.UTF_8)))
+            .then(ex.getResponse().setComplete());
+
+        MockServerWebExchange first = consume("{\"provider\":\"openai\",\"tokens\":600}");
+        filter.filter(first, chain).block();
+        MockServerWebExchange second = consume("{\"provider\":\"openai\",\"tokens\":600}");
+        filter.filter(second, chain).block();
+
+        assertThat(first.getResponse().getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("400");
+        assertThat(forwarded.get()).isEqualTo("{\"provider\":\"openai\",\"tokens\":600}");
+        assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    @Test
+    void weightedModeUsesCostHeaderOutsideBodyPaths() throws Exception {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        properties.setKeyStrategy(RateLimitKeyStrategy.USER_HEADER);
+        properties.setCapacity(100);
+        properties.getWeighted().setEnabled(true);
+        GatewayRateLimitFilter filter = new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags()
+        );
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.get("/api/v1/analytics/report")
+                .header("X-User-Id", "user-9")
+                .header("X-RateLimit-Cost", "30")
+                .build()
+        );
+        filter.filter(exchange, ex -> ex.getResponse().setComplete()).block();
+
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("70");
+    }
+
+    @Test
+    void weightedModeReadsChunkedBodiesInsteadOfTrustingTheHeader() {
+        GatewayRateLimitFilter filter = weightedFilter(1_000);
+        AtomicReference<String> forwarded = new AtomicReference<>();
+        GatewayFilterChain chain = ex -> DataBufferUtils.join(ex.getRequest().getBody())
+            .doOnNext(buffer -> forwarded.set(buffer.toString(StandardCharsets.UTF_8)))
+            .then(ex.getResponse().setComplete());
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+            MockServerHttpRequest.post("/api/v1/tokens/consume")
+                .header("X-User-Id", "user-9")
+                .header("X-RateLimit-Cost", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chunks("{\"provider\":\"openai\",", "\"tokens\":600}"))
+        );
+        filter.filter(exchange, chain).block();
+
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("400");
+        assertThat(forwarded.get()).isEqualTo("{\"provider\":\"openai\",\"tokens\":600}");
+    }
+
+    @Test
+    void weightedModeRejectsBodiesOverTheLimitWhetherDeclaredOrChunked() throws Exception {
+        int maxBodyBytes = new GatewayRateLimitProperties().getWeighted().getMaxBodyBytes();
+        GatewayRateLimitFilter filter = weightedFilter(1_000);
+        AtomicBoolean forwarded = new AtomicBoolean();
+        GatewayFilterChain chain = ex -> {
+            forwarded.set(true);
+            return ex.getResponse().setComplete();
+        };
+        String padding = "x".repeat(maxBodyBytes);
+
+        MockServerWebExchange chunked = MockServerWebExchange.from(
+            MockServerHttpRequest.post("/api/v1/tokens/consume")
+                .header("X-User-Id", "user-9")
+                .body(chunks("{\"tokens\":1,\"pad\":\"", padding, "\"}"))
+        );
+        filter.filter(chunked, chain).block();
+        MockServerWebExchange declared = MockServerWebExchange.from(
+            MockServerHttpRequest.post("/api/v1/tokens/consume")
+                .header("X-User-Id", "user-9")
+                .contentLength(maxBodyBytes + 1L)
+                .body(chunks("{\"tokens\":1}"))
+        );
+        filter.filter(declared, chain).block();
+
+        assertThat(chunked.getResponse().getStatusCode()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+        assertThat(declared.getResponse().getStatusCode()).isEqualTo(HttpStatus.CONTENT_TOO_LARGE);
+        assertThat(forwarded).isFalse();
+        assertThat(counters(filter)).isEmpty();
+    }
+
+    @Test
+    void weightedModeChargesTheFullCapacityWhenTheBodyHasNoReadableCost() {
+        GatewayRateLimitFilter filter = weightedFilter(1_000);
+        GatewayFilterChain chain = ex -> ex.getResponse().setComplete();
+
+        MockServerWebExchange unreadable = consume("{\"provider\":\"openai\",\"tokens\":\"lots\"}");
+        filter.filter(unreadable, chain).block();
+        MockServerWebExchange next = consume("{\"provider\":\"openai\",\"tokens\":1}");
+        filter.filter(next, chain).block();
+
+        assertThat(unreadable.getResponse().getHeaders().getFirst("X-RateLimit-Remaining")).isEqualTo("0");
+        assertThat(next.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private GatewayRateLimitFilter weightedFilter(long capacity) {
+        GatewayRateLimitProperties properties = new GatewayRateLimitProperties();
+        properties.setKeyStrategy(RateLimitKeyStrategy.USER_HEADER);
+        properties.setCapacity(capacity);
+        properties.getWeighted().setEnabled(true);
+        return new GatewayRateLimitFilter(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            featureFlags()
+        );
+    }
+
+    // A body sent without Content-Length, as several buffers.
+    private static Flux<DataBuffer> chunks(String... parts) {
+        return Flux.fromArray(parts)
+            .map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private MockServerWebExchange consume(String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return MockServerWebExchange.from(
+            MockServerHttpRequest.post("/api/v1/tokens/consume")
+                .header("X-User-Id", "user-9")
+                .contentType(MediaType.APPLICATION_JSON)
+                .contentLength(bytes.length)
+                .body(body)
+        );
+    }
+
     @SuppressWarnings("unchecked")
-    private ConcurrentHashMap<String, Object> counters(GatewayRateLimitFilter filter) throws Exception {
+    private ConcurrentHashMap<String, RateLimitCounter> counters(GatewayRateLimitFilter filter) throws Exception {
         Field field = GatewayRateLimitFilter.class.getDeclaredField("counters");
         field.setAccessible(true);
-        return (ConcurrentHashMap<String, Object>) field.get(filter);
-    }
-
-    private Object newWindowCounter(Instant start, long count) throws Exception {
-        Class<?> counterClass = Class.forName("com.leaky.tokens.apigateway.ratelimit.GatewayRateLimitFilter$WindowCounter");
-        Constructor<?> ctor = counterClass.getDeclaredConstructor(Instant.class, long.class);
-        ctor.setAccessible(true);
-        return ctor.newInstance(start, count);
+        return (ConcurrentHashMap<String, RateLimitCounter>) field.get(filter);
     }
 
     private GatewayFeatureFlags featureFlags() {
@@ -0,0 +1,57 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class GcraCounterTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void spacesRequestsByTheEmissionInterval() {
+        // 10 per second, no burst: one request every 100ms.
+        GcraCounter counter = new GcraCounter(NOW / 1000L);
+
+        long first = counter.tryAcquire(NOW, 10, 1, 1, 1);
+        long tooSoon = counter.tryAcquire(NOW + 40L, 10, 1, 1, 1);
+        long onTime = counter.tryAcquire(NOW + 100L, 10, 1, 1, 1);
+
+        assertThat(RateLimitDecision.isAllowed(first)).isTrue();
+        assertThat(RateLimitDecision.remaining(first)).isZero();
+        assertThat(RateLimitDecision.isAllowed(tooSoon)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(tooSoon)).isEqualTo(60L);
+        assertThat(RateLimitDecision.isAllowed(onTime)).isTrue();
+    }
+
+    @Test
+    void burstToleranceAdmitsBackToBackRequests() {
+        GcraCounter counter = new GcraCounter(NOW / 1000L);
+
+        long first = counter.tryAcquire(NOW, 10, 1, 3, 1);
+        counter.tryAcquire(NOW, 10, 1, 3, 1);
+        long third = counter.tryAcquire(NOW, 10, 1, 3, 1);
+        long fourth = counter.tryAcquire(NOW, 10, 1, 3, 1);
+
+        assertThat(RateLimitDecision.remaining(first)).isEqualTo(2L);
+        assertThat(RateLimitDecision.isAllowed(third)).isTrue();
+        assertThat(RateLimitDecision.waitMillis(third)).isEqualTo(300L);
+        assertThat(RateLimitDecision.isAllowed(fourth)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(fourth)).isEqualTo(100L);
+    }
+
+    @Test
+    void weightedRequestsAdvanceByOneIntervalPerPermit() {
+        // 10 per second with a burst of 5.
+        GcraCounter counter = new GcraCounter(NOW / 1000L);
+
+        long five = counter.tryAcquire(NOW, 10, 1, 5, 5);
+        long one = counter.tryAcquire(NOW, 10, 1, 5, 1);
+        long afterTwoIntervals = counter.tryAcquire(NOW + 200L, 10, 1, 5, 2);
+
+        assertThat(RateLimitDecision.isAllowed(five)).isTrue();
+        assertThat(RateLimitDecision.remaining(five)).isZero();
+        assertThat(RateLimitDecision.isAllowed(one)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(one)).isEqualTo(100L);
+        assertThat(RateLimitDecision.isAllowed(afterTwoIntervals)).isTrue();
+    }
+}
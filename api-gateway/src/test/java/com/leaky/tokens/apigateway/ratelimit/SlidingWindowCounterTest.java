@@ -0,0 +1,55 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class SlidingWindowCounterTest {
+    private static final long WINDOW_START = 1_000_020_000L;
+
+    @Test
+    void weightsThePreviousWindowSoEdgesDoNotDoubleTheBurst() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW_START / 1000L);
+        for (int i = 0; i < 10; i++) {
+            assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(WINDOW_START + 59_000L, 10, 60, 10, 1))).isTrue();
+        }
+
+        // A fixed window would admit another 10 right after the edge; here the previous window still counts ~100%.
+        long atEdge = counter.tryAcquire(WINDOW_START + 60_000L, 10, 60, 10, 1);
+        // Halfway through the next window, half of the previous window has slid out.
+        long halfway = counter.tryAcquire(WINDOW_START + 90_000L, 10, 60, 10, 1);
+
+        assertThat(RateLimitDecision.isAllowed(atEdge)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(atEdge)).isEqualTo(1L);
+        assertThat(RateLimitDecision.isAllowed(halfway)).isTrue();
+        assertThat(RateLimitDecision.remaining(halfway)).isEqualTo(4L);
+    }
+
+    @Test
+    void rejectionsAreNotCounted() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW_START / 1000L);
+        counter.tryAcquire(WINDOW_START, 1, 60, 1, 1);
+        counter.tryAcquire(WINDOW_START + 1_000L, 1, 60, 1, 1);
+        counter.tryAcquire(WINDOW_START + 2_000L, 1, 60, 1, 1);
+
+        // Two windows later the old count has fully expired.
+        assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(WINDOW_START + 120_000L, 1, 60, 1, 1))).isTrue();
+        assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(WINDOW_START + 120_000L, 1, 60, 1, 1))).isFalse();
+    }
+
+    @Test
+    void weightedRequestsCountTheirCost() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW_START / 1000L);
+
+        long first = counter.tryAcquire(WINDOW_START, 10, 60, 10, 7);
+        long tooExpensive = counter.tryAcquire(WINDOW_START, 10, 60, 10, 4);
+        long fits = counter.tryAcquire(WINDOW_START, 10, 60, 10, 3);
+
+        assertThat(RateLimitDecision.remaining(first)).isEqualTo(3L);
+        assertThat(RateLimitDecision.isAllowed(tooExpensive)).isFalse();
+        // 7 of 10 used: 4 more only fit once the first millisecond of the previous window has slid out.
+        assertThat(RateLimitDecision.waitMillis(tooExpensive)).isEqualTo(60_001L);
+        assertThat(RateLimitDecision.isAllowed(fits)).isTrue();
+        assertThat(RateLimitDecision.remaining(fits)).isZero();
+    }
+}
@@ -0,0 +1,59 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketCounterTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    void allowsBurstThenRefillsAtTheConfiguredRate() {
+        // 60 per minute = one token per second, bucket of 3.
+        TokenBucketCounter counter = new TokenBucketCounter(NOW, 3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(NOW, 60, 60, 3, 1))).isTrue();
+        }
+
+        long rejected = counter.tryAcquire(NOW, 60, 60, 3, 1);
+        long halfSecondLater = counter.tryAcquire(NOW + 500L, 60, 60, 3, 1);
+        long oneSecondLater = counter.tryAcquire(NOW + 1_000L, 60, 60, 3, 1);
+
+        assertThat(RateLimitDecision.isAllowed(rejected)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(rejected)).isEqualTo(1_000L);
+        assertThat(RateLimitDecision.isAllowed(halfSecondLater)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(halfSecondLater)).isEqualTo(500L);
+        assertThat(RateLimitDecision.isAllowed(oneSecondLater)).isTrue();
+        assertThat(RateLimitDecision.remaining(oneSecondLater)).isZero();
+        assertThat(RateLimitDecision.waitMillis(oneSecondLater)).isEqualTo(3_000L);
+    }
+
+    @Test
+    void refillKeepsFractionsAcrossFrequentCalls() {
+        TokenBucketCounter counter = new TokenBucketCounter(NOW, 1);
+        counter.tryAcquire(NOW, 60, 60, 1, 1);
+
+        // Polling every 300ms must not lose the partial refills in between.
+        for (long t = 300L; t < 1_000L; t += 300L) {
+            assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(NOW + t, 60, 60, 1, 1))).isFalse();
+        }
+
+        assertThat(RateLimitDecision.isAllowed(counter.tryAcquire(NOW + 1_000L, 60, 60, 1, 1))).isTrue();
+    }
+
+    @Test
+    void weightedRequestsWaitForEnoughTokens() {
+        TokenBucketCounter counter = new TokenBucketCounter(NOW, 10);
+        counter.tryAcquire(NOW, 60, 60, 10, 4);
+        counter.tryAcquire(NOW, 60, 60, 10, 4);
+
+        long rejected = counter.tryAcquire(NOW, 60, 60, 10, 4);
+        // Larger than the bucket: capped at the bucket size, so it passes once the bucket is full.
+        long oversized = counter.tryAcquire(NOW + 8_000L, 60, 60, 10, 1_000);
+
+        assertThat(RateLimitDecision.isAllowed(rejected)).isFalse();
+        assertThat(RateLimitDecision.waitMillis(rejected)).isEqualTo(2_000L);
+        assertThat(RateLimitDecision.isAllowed(oversized)).isTrue();
+        assertThat(RateLimitDecision.remaining(oversized)).isZero();
+    }
+}
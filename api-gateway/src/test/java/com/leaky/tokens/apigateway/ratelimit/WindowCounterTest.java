@@ -0,0 +1,86 @@
+package com.leaky.tokens.apigateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class WindowCounterTest {
+    @Test
+    void rejectsOnceCapacityIsReachedWithoutCountingTheRejection() {
+        WindowCounter counter = new WindowCounter(1_000L);
+
+        long first = counter.acquire(1_000L, 2, 60, 1);
+        long second = counter.acquire(1_010L, 2, 60, 1);
+        long third = counter.acquire(1_020L, 2, 60, 1);
+        long fourth = counter.acquire(1_030L, 2, 60, 1);
+
+        assertThat(WindowCounter.count(first)).isEqualTo(1L);
+        assertThat(WindowCounter.count(second)).isEqualTo(2L);
+        assertThat(WindowCounter.count(third)).isEqualTo(3L);
+        assertThat(WindowCounter.count(fourth)).isEqualTo(3L);
+        assertThat(WindowCounter.windowStart(fourth)).isEqualTo(1_000L);
+        assertThat(counter.lastSeenSeconds()).isEqualTo(1_030L);
+    }
+
+    @Test
+    void startsNewWindowWhenTheCurrentOneHasElapsed() {
+        WindowCounter counter = new WindowCounter(1_000L);
+        counter.acquire(1_000L, 1, 60, 1);
+
+        long state = counter.acquire(1_060L, 1, 60, 1);
+
+        assertThat(WindowCounter.windowStart(state)).isEqualTo(1_060L);
+        assertThat(WindowCounter.count(state)).isEqualTo(1L);
+    }
+
+    @Test
+    void concurrentCallersNeverExceedCapacity() throws Exception {
+        WindowCounter counter = new WindowCounter(1_000L);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int j = 0; j < 10_000; j++) {
+                    if (WindowCounter.count(counter.acquire(1_000L, 5_000, 60, 1)) <= 5_000) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(allowed.get()).isEqualTo(5_000);
+    }
+
+    @Test
+    void weightedRequestsTakeTheirCostAndOversizedOnesAreCappedAtCapacity() {
+        WindowCounter counter = new WindowCounter(1_000L);
+
+        long first = counter.tryAcquire(1_000_000L, 10, 60, 10, 6);
+        long tooExpensive = counter.tryAcquire(1_000_000L, 10, 60, 10, 5);
+        long fits = counter.tryAcquire(1_000_000L, 10, 60, 10, 4);
+        long oversizedInNextWindow = counter.tryAcquire(1_060_000L, 10, 60, 10, 500);
+
+        assertThat(RateLimitDecision.remaining(first)).isEqualTo(4L);
+        assertThat(RateLimitDecision.isAllowed(tooExpensive)).isFalse();
+        assertThat(RateLimitDecision.isAllowed(fits)).isTrue();
+        assertThat(RateLimitDecision.remaining(fits)).isZero();
+        assertThat(RateLimitDecision.isAllowed(oversizedInNextWindow)).isTrue();
+        assertThat(RateLimitDecision.remaining(oversizedInNextWindow)).isZero();
+    }
+}
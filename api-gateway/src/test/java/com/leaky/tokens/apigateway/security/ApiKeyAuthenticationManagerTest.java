@@ -1,33 +1,39 @@
 package com.leaky.tokens.apigateway.security;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 class ApiKeyAuthenticationManagerTest {
     @Test
     void returnsCachedEntryWithoutCallingAuthServer() {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         cache.put("cached-key", new ApiKeyValidationCache.CacheEntry(
             "user-1",
             Instant.now().plusSeconds(60),
             List.of("USER"),
             Instant.now()
-        ), 100);
+        ));
 
         WebClient.Builder builder = WebClient.builder().exchangeFunction(_ -> Mono.error(new IllegalStateException("should not call")));
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -45,11 +51,41 @@ class ApiKeyAuthenticationManagerTest {
         assertThat(auth.getRoles()).containsExactly("USER");
     }
 
+    @Test
+    void verifiesSignedKeyLocallyWithoutCallingAuthServer() {
+        ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+        properties.setAuthServerUrl("http://localhost");
+        properties.getSigning().setEnabled(true);
+        properties.getSigning().setKeys(Map.of("k1", "0123456789abcdef0123456789abcdef"));
+        properties.getRevocation().getFilter().setEnabled(true);
+        RevokedApiKeys revokedKeys = new RevokedApiKeys(properties);
+        revokedKeys.replaceFilter(SignedApiKeyVerifierTest.emptyFilter(Instant.now()));
+        String userId = UUID.randomUUID().toString();
+        String signedKey = SignedApiKeyVerifierTest.sign("k1", "0123456789abcdef0123456789abcdef",
+            userId + "|" + Instant.now().plusSeconds(3600).getEpochSecond() + "|USER|ab");
+
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(_ -> Mono.error(new IllegalStateException("should not call")));
+        ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
+            builder,
+            properties,
+            cache(properties),
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            new SignedApiKeyVerifier(properties, revokedKeys)
+        );
+
+        ApiKeyAuthenticationToken auth =
+            (ApiKeyAuthenticationToken) manager.authenticate(new ApiKeyAuthenticationToken(signedKey)).block();
+
+        assertThat(auth).isNotNull();
+        assertThat(auth.getPrincipal()).isEqualTo(userId);
+        assertThat(auth.getRoles()).containsExactly("USER");
+    }
+
     @Test
     void failsWhenAuthServerRejectsKey() {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(rejectingExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -70,7 +106,7 @@ class ApiKeyAuthenticationManagerTest {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
         properties.setCacheMaxSize(10);
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(successExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -84,14 +120,14 @@ class ApiKeyAuthenticationManagerTest {
         ApiKeyAuthenticationToken auth = (ApiKeyAuthenticationToken) manager.authenticate(token).block();
 
         assertThat(auth.getPrincipal()).isEqualTo("user-123");
-        assertThat(cache.get("fresh-key", 60)).isPresent();
+        assertThat(cache.getIfPresent("fresh-key")).isPresent();
     }
 
     @Test
     void handlesNonListRolesAsEmpty() {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(nonListRolesExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -111,7 +147,7 @@ class ApiKeyAuthenticationManagerTest {
     void ignoresNonApiKeyAuthentication() {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(successExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -131,7 +167,7 @@ class ApiKeyAuthenticationManagerTest {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
         properties.setCacheMaxSize(10);
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(invalidExpiresExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -145,15 +181,15 @@ class ApiKeyAuthenticationManagerTest {
         ApiKeyAuthenticationToken auth = (ApiKeyAuthenticationToken) manager.authenticate(token).block();
 
         assertThat(auth).isNotNull();
-        assertThat(cache.get("bad-exp-key", 60)).isPresent();
-        assertThat(cache.get("bad-exp-key", 60).get().getExpiresAt()).isNull();
+        assertThat(cache.getIfPresent("bad-exp-key")).isPresent();
+        assertThat(cache.getIfPresent("bad-exp-key").get().getExpiresAt()).isNull();
     }
 
     @Test
     void filtersBlankRolesFromResponse() {
         ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
         properties.setAuthServerUrl("http://localhost");
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+        ApiKeyValidationCache cache = cache(properties);
         WebClient.Builder builder = WebClient.builder().exchangeFunction(blankRolesExchange());
 
         ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
@@ -169,6 +205,71 @@ class ApiKeyAuthenticationManagerTest {
         assertThat(auth.getRoles()).containsExactly("ADMIN");
     }
 
+    @Test
+    void cachesRejectedKeyButNotUnavailableAuthServer() {
+        ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+        properties.setAuthServerUrl("http://localhost");
+        ApiKeyValidationCache cache = cache(properties);
+        AtomicInteger calls = new AtomicInteger();
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> {
+            calls.incrementAndGet();
+            HttpStatus status = request.headers().getFirst("X-Api-Key").equals("bad-key")
+                ? HttpStatus.UNAUTHORIZED
+                : HttpStatus.SERVICE_UNAVAILABLE;
+            return Mono.just(ClientResponse.create(status).build());
+        });
+        ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
+            builder,
+            properties,
+            cache,
+            new GatewayMetrics(new SimpleMeterRegistry())
+        );
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> manager.authenticate(new ApiKeyAuthenticationToken("bad-key")).block())
+                .isInstanceOf(BadCredentialsException.class);
+            assertThatThrownBy(() -> manager.authenticate(new ApiKeyAuthenticationToken("other-key")).block())
+                .isInstanceOf(BadCredentialsException.class);
+        }
+
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(cache.getIfPresent("bad-key")).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+        assertThat(cache.getIfPresent("other-key")).isEmpty();
+    }
+
+    @Test
+    void concurrentMissesShareOneAuthServerCall() {
+        ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+        properties.setAuthServerUrl("http://localhost");
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<ClientResponse> response = Sinks.one();
+        WebClient.Builder builder = WebClient.builder().exchangeFunction(_ -> {
+            calls.incrementAndGet();
+            return response.asMono();
+        });
+        ApiKeyAuthenticationManager manager = new ApiKeyAuthenticationManager(
+            builder,
+            properties,
+            cache(properties),
+            new GatewayMetrics(new SimpleMeterRegistry())
+        );
+
+        var first = manager.authenticate(new ApiKeyAuthenticationToken("shared-key")).toFuture();
+        var second = manager.authenticate(new ApiKeyAuthenticationToken("shared-key")).toFuture();
+        response.tryEmitValue(ClientResponse.create(HttpStatus.OK)
+            .header("Content-Type", "application/json")
+            .body("{\"userId\":\"user-123\",\"roles\":[\"USER\"]}")
+            .build());
+
+        assertThat(first.join().getPrincipal()).isEqualTo("user-123");
+        assertThat(second.join().getPrincipal()).isEqualTo("user-123");
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    private ApiKeyValidationCache cache(ApiKeyAuthProperties properties) {
+        return new ApiKeyValidationCache(properties, new GatewayMetrics(new SimpleMeterRegistry()));
+    }
+
     private ExchangeFunction rejectingExchange() {
         return _ -> Mono.just(ClientResponse.create(HttpStatus.UNAUTHORIZED).build());
     }
@@ -0,0 +1,75 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class ApiKeyRevocationListenerTest {
+    private static final String CHANNEL = "auth:api-key:revocations";
+
+    private final ReactiveStringRedisTemplate redisTemplate = mock(ReactiveStringRedisTemplate.class);
+    private final ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ApiKeyValidationCache cache =
+        new ApiKeyValidationCache(properties, new GatewayMetrics(registry));
+    private final Sinks.Many<ReactiveSubscription.Message<String, String>> messages =
+        Sinks.many().multicast().onBackpressureBuffer();
+    private ApiKeyRevocationListener listener;
+
+    @AfterEach
+    void tearDown() {
+        if (listener != null) {
+            listener.destroy();
+        }
+    }
+
+    @Test
+    void evictsPublishedKeysAndKeepsTheRest() {
+        doReturn(Mono.just(messages.asFlux())).when(redisTemplate).listenToChannelLater(CHANNEL);
+        listener = listener();
+        listener.subscribe();
+
+        cache.put("revoked-key", entry());
+        cache.put("other-key", entry());
+        messages.tryEmitNext(new ReactiveSubscription.ChannelMessage<>(
+            CHANNEL, ApiKeyValidationCache.hash("revoked-key")));
+
+        assertThat(cache.getIfPresent("revoked-key")).isEmpty();
+        assertThat(cache.getIfPresent("other-key")).isPresent();
+        assertThat(registry.get("gateway.api_key.cache.total").tag("outcome", "revoked").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void flushesTheCacheOnSubscribeSinceMissedRevocationsAreLost() {
+        cache.put("key-1", entry());
+        doReturn(Mono.just(messages.asFlux())).when(redisTemplate).listenToChannelLater(CHANNEL);
+        listener = listener();
+
+        listener.subscribe();
+
+        assertThat(cache.getIfPresent("key-1")).isEmpty();
+    }
+
+    private ApiKeyRevocationListener listener() {
+        return new ApiKeyRevocationListener(
+            redisTemplate, cache, new RevokedApiKeys(properties), properties, new GatewayMetrics(registry));
+    }
+
+    private static ApiKeyValidationCache.CacheEntry entry() {
+        return new ApiKeyValidationCache.CacheEntry("user-1", null, List.of("USER"), Instant.now());
+    }
+}
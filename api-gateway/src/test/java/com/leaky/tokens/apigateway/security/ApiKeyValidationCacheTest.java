@@ -2,73 +2,179 @@ package com.leaky.tokens.apigateway.security;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
 class ApiKeyValidationCacheTest {
+    private final TestTime time = new TestTime();
+    private final ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+
     @Test
     void expiresEntriesByTtl() {
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
-        ApiKeyValidationCache.CacheEntry entry = new ApiKeyValidationCache.CacheEntry(
-            "user-1",
-            null,
-            List.of("USER"),
-            Instant.now().minusSeconds(5)
-        );
+        properties.setCacheTtlSeconds(10);
+        ApiKeyValidationCache cache = cache();
 
-        cache.put("key-1", entry, 10);
+        cache.put("key-1", entry("user-1", null));
+        time.advance(Duration.ofSeconds(9));
+        assertThat(cache.getIfPresent("key-1")).isPresent();
 
-        assertThat(cache.get("key-1", 1)).isEmpty();
-        assertThat(cache.get("key-1", 0)).isEmpty();
+        time.advance(Duration.ofSeconds(2));
+        assertThat(cache.getIfPresent("key-1")).isEmpty();
     }
 
     @Test
     void expiresWhenKeyExpires() {
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
-        ApiKeyValidationCache.CacheEntry entry = new ApiKeyValidationCache.CacheEntry(
-            "user-1",
-            Instant.now().minusSeconds(1),
-            List.of("USER"),
-            Instant.now()
-        );
+        ApiKeyValidationCache cache = cache();
 
-        cache.put("key-2", entry, 10);
+        cache.put("key-2", entry("user-1", time.instant().plusSeconds(5)));
+        time.advance(Duration.ofSeconds(6));
 
-        assertThat(cache.get("key-2", 120)).isEmpty();
+        assertThat(cache.getIfPresent("key-2")).isEmpty();
     }
 
     @Test
-    void clearsCacheWhenMaxSizeReached() {
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+    void negativeEntriesUseTheNegativeTtl() {
+        properties.setNegativeCacheTtlSeconds(10);
+        ApiKeyValidationCache cache = cache();
 
-        cache.put("key-1", new ApiKeyValidationCache.CacheEntry("u1", null, List.of(), Instant.now()), 1);
-        cache.put("key-2", new ApiKeyValidationCache.CacheEntry("u2", null, List.of(), Instant.now()), 1);
+        cache.put("bad-key", ApiKeyValidationCache.CacheEntry.invalid(time.instant()));
+        time.advance(Duration.ofSeconds(9));
+        assertThat(cache.getIfPresent("bad-key")).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
 
-        assertThat(cache.get("key-1", 120)).isEmpty();
-        assertThat(cache.get("key-2", 120)).isPresent();
+        time.advance(Duration.ofSeconds(2));
+        assertThat(cache.getIfPresent("bad-key")).isEmpty();
     }
 
     @Test
-    void getReturnsEmptyWhenMissing() {
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
+    void evictsColdKeysInsteadOfClearingWhenFull() {
+        properties.setCacheMaxSize(100);
+        ApiKeyValidationCache cache = cache();
+        cache.put("hot-key", entry("hot", null));
+
+        for (int i = 0; i < 1_000; i++) {
+            cache.getIfPresent("hot-key");
+            cache.put("cold-" + i, entry("cold", null));
+        }
+
+        assertThat(cache.estimatedSize()).isLessThanOrEqualTo(100);
+        assertThat(cache.getIfPresent("hot-key")).isPresent();
+    }
+
+    @Test
+    void servesStaleEntryWhileRefreshingInBackground() {
+        properties.setCacheTtlSeconds(120);
+        properties.setCacheRefreshSeconds(60);
+        ApiKeyValidationCache cache = cache();
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("key-3", _ -> Mono.just(entry("user-" + loads.incrementAndGet(), null))).block();
+        time.advance(Duration.ofSeconds(61));
+        ApiKeyValidationCache.CacheEntry served =
+            cache.get("key-3", _ -> Mono.just(entry("user-" + loads.incrementAndGet(), null))).block();
+
+        assertThat(served.getUserId()).isEqualTo("user-1");
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.getIfPresent("key-3"))
+            .hasValueSatisfying(entry -> assertThat(entry.getUserId()).isEqualTo("user-2"));
+    }
+
+    @Test
+    void refreshLandingAfterARevocationDoesNotRestoreTheKey() {
+        properties.setCacheTtlSeconds(120);
+        properties.setCacheRefreshSeconds(60);
+        ApiKeyValidationCache cache = cache();
+        Sinks.One<ApiKeyValidationCache.CacheEntry> refresh = Sinks.one();
+
+        cache.get("key-5", _ -> Mono.just(entry("user-1", null))).block();
+        time.advance(Duration.ofSeconds(61));
+        cache.get("key-5", _ -> refresh.asMono()).block();
+        cache.invalidateHashed(ApiKeyValidationCache.hash("key-5"));
+        refresh.tryEmitValue(entry("user-1", null));
+
+        assertThat(cache.getIfPresent("key-5")).isEmpty();
+    }
+
+    @Test
+    void failedLoadsAreNotCached() {
+        ApiKeyValidationCache cache = cache();
+
+        Mono<ApiKeyValidationCache.CacheEntry> failing =
+            cache.get("key-4", _ -> Mono.error(new IllegalStateException("auth-server unavailable")));
 
-        assertThat(cache.get("missing", 60)).isEmpty();
+        assertThat(failing.onErrorResume(_ -> Mono.empty()).block()).isNull();
+        assertThat(cache.getIfPresent("key-4")).isEmpty();
     }
 
     @Test
-    void ttlZeroDoesNotExpireFreshEntry() {
-        ApiKeyValidationCache cache = new ApiKeyValidationCache();
-        ApiKeyValidationCache.CacheEntry entry = new ApiKeyValidationCache.CacheEntry(
-            "user-1",
-            null,
-            null,
-            Instant.now()
+    void invalidatesByTheHashAuthServerPublishes() {
+        ApiKeyValidationCache cache = cache();
+        cache.put("leaky_raw_key", entry("user-1", null));
+
+        // SHA-256 hex of "leaky_raw_key", as auth-server stores and publishes it.
+        cache.invalidateHashed(ApiKeyValidationCache.hash("leaky_raw_key"));
+
+        assertThat(cache.getIfPresent("leaky_raw_key")).isEmpty();
+        assertThat(ApiKeyValidationCache.hash("abc"))
+            .isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test
+    void getReturnsEmptyWhenMissing() {
+        assertThat(cache().getIfPresent("missing")).isEmpty();
+    }
+
+    private ApiKeyValidationCache cache() {
+        return new ApiKeyValidationCache(
+            properties,
+            new GatewayMetrics(new SimpleMeterRegistry()),
+            time,
+            time,
+            Runnable::run
         );
+    }
+
+    private ApiKeyValidationCache.CacheEntry entry(String userId, Instant expiresAt) {
+        return new ApiKeyValidationCache.CacheEntry(userId, expiresAt, List.of("USER"), time.instant());
+    }
+
+    private static final class TestTime extends Clock implements Ticker {
+        private long nanos = Duration.ofDays(20_000).toNanos();
+
+        void advance(Duration duration) {
+            nanos += duration.toNanos();
+        }
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.EPOCH.plusNanos(nanos);
+        }
 
-        cache.put("key-3", entry, 10);
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
 
-        assertThat(cache.get("key-3", 0)).isPresent();
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
     }
 }
@@ -68,8 +68,13 @@ class GatewaySecurityConfigPermitAllTest {
         }
 
         @Bean
-        ApiKeyValidationCache apiKeyValidationCache() {
-            return new ApiKeyValidationCache();
+        ApiKeyValidationCache apiKeyValidationCache(ApiKeyAuthProperties properties, GatewayMetrics metrics) {
+            return new ApiKeyValidationCache(properties, metrics);
+        }
+
+        @Bean
+        SignedApiKeyVerifier signedApiKeyVerifier(ApiKeyAuthProperties properties) {
+            return new SignedApiKeyVerifier(properties, new RevokedApiKeys(properties));
         }
 
         @Bean
@@ -0,0 +1,157 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.leaky.tokens.apigateway.flags.GatewayFeatureFlags;
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+import org.springframework.web.server.session.WebSessionManager;
+
+import reactor.core.publisher.Mono;
+
+class GatewaySecurityConfigStatelessTest {
+    private AnnotationConfigApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    void statelessModeAuthenticatesApiKeysWithoutSessions() {
+        context = context(true);
+        WebTestClient client = WebTestClient.bindToApplicationContext(context).build();
+
+        for (int i = 0; i < 3; i++) {
+            client.get().uri("/api/v1/secure")
+                .header("X-Api-Key", "cached-key")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist(HttpHeaders.SET_COOKIE);
+        }
+        client.get().uri("/api/v1/secure")
+            .exchange()
+            .expectStatus().isUnauthorized()
+            .expectHeader().doesNotExist(HttpHeaders.SET_COOKIE);
+
+        assertThat(context.getBean(InMemoryWebSessionStore.class).getSessions()).isEmpty();
+    }
+
+    @Test
+    void sessionModeStoresTheContextInAWebSession() {
+        context = context(false);
+        WebTestClient client = WebTestClient.bindToApplicationContext(context).build();
+
+        client.get().uri("/api/v1/secure")
+            .header("X-Api-Key", "cached-key")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().exists(HttpHeaders.SET_COOKIE);
+
+        assertThat(context.getBean(InMemoryWebSessionStore.class).getSessions()).hasSize(1);
+    }
+
+    static AnnotationConfigApplicationContext context(boolean stateless) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.registerBean(GatewaySecurityProperties.class, () -> {
+            GatewaySecurityProperties properties = new GatewaySecurityProperties();
+            properties.setStateless(stateless);
+            return properties;
+        });
+        context.register(GatewaySecurityConfig.class, TestConfig.class);
+        context.refresh();
+        return context;
+    }
+
+    @Configuration
+    @EnableWebFlux
+    static class TestConfig {
+        @Bean
+        ApiKeyAuthProperties apiKeyAuthProperties() {
+            ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+            properties.setAuthServerUrl("http://localhost");
+            return properties;
+        }
+
+        @Bean
+        ApiKeyValidationCache apiKeyValidationCache(ApiKeyAuthProperties properties, GatewayMetrics metrics) {
+            ApiKeyValidationCache cache = new ApiKeyValidationCache(properties, metrics);
+            cache.put("cached-key", new ApiKeyValidationCache.CacheEntry("user-1", null, List.of("USER"), Instant.now()));
+            return cache;
+        }
+
+        @Bean
+        SignedApiKeyVerifier signedApiKeyVerifier(ApiKeyAuthProperties properties) {
+            return new SignedApiKeyVerifier(properties, new RevokedApiKeys(properties));
+        }
+
+        @Bean
+        GatewayFeatureFlags gatewayFeatureFlags() {
+            GatewayFeatureFlags flags = new GatewayFeatureFlags();
+            flags.setApiKeyValidation(true);
+            flags.setRateLimiting(false);
+            return flags;
+        }
+
+        @Bean
+        GatewayMetrics gatewayMetrics() {
+            return new GatewayMetrics(new SimpleMeterRegistry());
+        }
+
+        @Bean
+        WebClient.Builder webClientBuilder() {
+            return WebClient.builder().exchangeFunction(_ -> Mono.error(new IllegalStateException("should not call")));
+        }
+
+        @Bean
+        ReactiveJwtDecoder reactiveJwtDecoder() {
+            return token -> Mono.error(new IllegalStateException("no JWTs in this test"));
+        }
+
+        @Bean
+        InMemoryWebSessionStore webSessionStore() {
+            InMemoryWebSessionStore store = new InMemoryWebSessionStore();
+            store.setMaxSessions(Integer.MAX_VALUE);
+            return store;
+        }
+
+        @Bean
+        WebSessionManager webSessionManager(InMemoryWebSessionStore webSessionStore) {
+            DefaultWebSessionManager manager = new DefaultWebSessionManager();
+            manager.setSessionStore(webSessionStore);
+            return manager;
+        }
+
+        @Bean
+        TestController testController() {
+            return new TestController();
+        }
+    }
+
+    @RestController
+    static class TestController {
+        @GetMapping("/api/v1/secure")
+        String secure() {
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.server.session.InMemoryWebSessionStore;
+
+// API-key requests against the security chain with the context kept in a WebSession versus not
+// stored at all. Clients send no cookies, so the session mode creates one session per request.
+class GatewaySecurityContextBenchmarkIT {
+    private static final Logger logger = LoggerFactory.getLogger(GatewaySecurityContextBenchmarkIT.class);
+    private static final int REQUESTS = Integer.getInteger("bench.requests", 20_000);
+
+    @Test
+    void comparesSessionAndStatelessSecurityContext() {
+        run(true, REQUESTS / 10);
+        run(false, REQUESTS / 10);
+        BenchResult session = run(false, REQUESTS);
+        BenchResult stateless = run(true, REQUESTS);
+
+        logger.info("security context benchmark requests={} session={} stateless={}", REQUESTS, session, stateless);
+        assertThat(session.sessions()).isEqualTo(REQUESTS);
+        assertThat(stateless.sessions()).isZero();
+    }
+
+    private BenchResult run(boolean stateless, int requests) {
+        try (AnnotationConfigApplicationContext context = GatewaySecurityConfigStatelessTest.context(stateless)) {
+            WebTestClient client = WebTestClient.bindToApplicationContext(context).build();
+            long heapBefore = usedHeap();
+            long[] latencies = new long[requests];
+            long started = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                long requestStarted = System.nanoTime();
+                client.get().uri("/api/v1/secure")
+                    .header("X-Api-Key", "cached-key")
+                    .exchange()
+                    .expectStatus().isOk();
+                latencies[i] = System.nanoTime() - requestStarted;
+            }
+            long elapsedNanos = System.nanoTime() - started;
+            long retained = usedHeap() - heapBefore;
+            Arrays.sort(latencies);
+            return new BenchResult(
+                context.getBean(InMemoryWebSessionStore.class).getSessions().size(),
+                requests * 1_000_000_000.0 / elapsedNanos,
+                latencies[requests / 2] / 1_000.0,
+                latencies[(int) (requests * 0.99)] / 1_000.0,
+                retained
+            );
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private record BenchResult(int sessions, double requestsPerSecond, double p50Micros, double p99Micros,
+                               long retainedBytes) {
+        @Override
+        public String toString() {
+            return String.format("%.0f req/s, p50 %.0fus, p99 %.0fus, %d sessions, ~%d KiB retained",
+                requestsPerSecond, p50Micros, p99Micros, sessions, retainedBytes / 1024);
+        }
+    }
+}
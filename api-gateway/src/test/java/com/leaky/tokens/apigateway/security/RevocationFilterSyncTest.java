@@ -0,0 +1,104 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.leaky.tokens.apigateway.metrics.GatewayMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import reactor.core.publisher.Mono;
+
+class RevocationFilterSyncTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+
+    @Test
+    void installsTheFilterAuthServerBuilt() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        properties.getRevocation().getFilter().setServiceToken("service-secret");
+        RevokedApiKeys keys = new RevokedApiKeys(properties, clock);
+        String revoked = ApiKeyValidationCache.hash("revoked-key");
+        String body = body(filterWith(revoked, 1024, 7), NOW);
+        AtomicReference<ClientRequest> request = new AtomicReference<>();
+
+        sync(keys, WebClient.builder().exchangeFunction(sent -> {
+            request.set(sent);
+            return Mono.just(
+                ClientResponse.create(HttpStatus.OK).header("Content-Type", "application/json").body(body).build()
+            );
+        })).sync().block();
+
+        assertThat(keys.mightBeRevoked(revoked)).isTrue();
+        assertThat(keys.mightBeRevoked(ApiKeyValidationCache.hash("other-key"))).isFalse();
+        assertThat(registry.get("gateway.api_key.cache.total").tag("outcome", "filter_sync").counter().count())
+            .isEqualTo(1.0);
+        assertThat(request.get().url().getPath()).isEqualTo("/internal/api-keys/revocations/filter");
+        assertThat(request.get().headers().getFirst("X-Service-Token")).isEqualTo("service-secret");
+    }
+
+    @Test
+    void failedSyncKeepsThePreviousState() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        RevokedApiKeys keys = new RevokedApiKeys(properties, clock);
+
+        sync(keys, WebClient.builder().exchangeFunction(_ -> Mono.just(
+            ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build()
+        ))).sync().block();
+
+        assertThat(keys.mightBeRevoked(ApiKeyValidationCache.hash("other-key"))).isTrue();
+        assertThat(registry.get("gateway.api_key.cache.total").tag("outcome", "filter_sync_failure").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void filterAgeCountsFromWhenAuthServerBuiltIt() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        properties.getRevocation().getFilter().setMaxAgeSeconds(300);
+        RevokedApiKeys keys = new RevokedApiKeys(properties, clock);
+        String body = body(filterWith(ApiKeyValidationCache.hash("revoked-key"), 1024, 7), NOW.minusSeconds(301));
+
+        sync(keys, WebClient.builder().exchangeFunction(_ -> Mono.just(
+            ClientResponse.create(HttpStatus.OK).header("Content-Type", "application/json").body(body).build()
+        ))).sync().block();
+
+        assertThat(keys.mightBeRevoked(ApiKeyValidationCache.hash("other-key"))).isTrue();
+    }
+
+    private RevocationFilterSync sync(RevokedApiKeys keys, WebClient.Builder builder) {
+        return new RevocationFilterSync(builder, properties, keys, new GatewayMetrics(registry), clock);
+    }
+
+    private static String body(String filter, Instant generatedAt) {
+        return "{\"bits\":1024,\"hashes\":7,\"count\":1,\"generatedAt\":\"" + generatedAt
+            + "\",\"filter\":\"" + filter + "\"}";
+    }
+
+    // Same layout auth-server produces: double hashing over the first 128 bits of the hex hash.
+    private static String filterWith(String hashedKey, int bits, int hashes) {
+        long[] words = new long[bits / 64];
+        long h1 = HexFormat.fromHexDigitsToLong(hashedKey, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(hashedKey, 16, 32) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+            words[bit >>> 6] |= 1L << bit;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+        buffer.asLongBuffer().put(words);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+}
@@ -0,0 +1,74 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class RevokedApiKeysTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+    private final String revoked = ApiKeyValidationCache.hash("revoked-key");
+    private final String other = ApiKeyValidationCache.hash("other-key");
+
+    @Test
+    void filterDisabledDefersEveryKeyToAuthServer() {
+        RevokedApiKeys keys = new RevokedApiKeys(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        keys.add(revoked);
+        keys.replaceFilter(emptyFilter(NOW));
+
+        assertThat(keys.contains(revoked)).isTrue();
+        assertThat(keys.mightBeRevoked(other)).isTrue();
+    }
+
+    @Test
+    void treatsEverythingAsPossiblyRevokedUntilFirstSync() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        RevokedApiKeys keys = new RevokedApiKeys(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        assertThat(keys.mightBeRevoked(other)).isTrue();
+
+        keys.replaceFilter(emptyFilter(NOW));
+        assertThat(keys.mightBeRevoked(other)).isFalse();
+    }
+
+    @Test
+    void pushedRevocationsAreAddedToTheSyncedFilter() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        RevokedApiKeys keys = new RevokedApiKeys(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+        keys.replaceFilter(emptyFilter(NOW));
+
+        keys.add(revoked);
+
+        assertThat(keys.mightBeRevoked(revoked)).isTrue();
+        assertThat(keys.mightBeRevoked(other)).isFalse();
+    }
+
+    @Test
+    void staleFilterIsNotTrusted() {
+        properties.getRevocation().getFilter().setEnabled(true);
+        properties.getRevocation().getFilter().setMaxAgeSeconds(300);
+        RevokedApiKeys keys = new RevokedApiKeys(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+
+        keys.replaceFilter(emptyFilter(NOW.minus(Duration.ofSeconds(301))));
+
+        assertThat(keys.mightBeRevoked(other)).isTrue();
+    }
+
+    @Test
+    void rejectsFilterWithWrongSize() {
+        assertThatThrownBy(() -> new RevocationBloomFilter(1024, 7, new byte[64], NOW.toEpochMilli()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static RevocationBloomFilter emptyFilter(Instant createdAt) {
+        return new RevocationBloomFilter(1024, 7, new byte[128], createdAt.toEpochMilli());
+    }
+}
@@ -0,0 +1,140 @@
+package com.leaky.tokens.apigateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SignedApiKeyVerifierTest {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final ApiKeyAuthProperties properties = new ApiKeyAuthProperties();
+    private final Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+    private final RevokedApiKeys revokedKeys = new RevokedApiKeys(properties, clock);
+    private final SignedApiKeyVerifier verifier = new SignedApiKeyVerifier(properties, revokedKeys, clock);
+    private final String userId = UUID.randomUUID().toString();
+    private final String expiring = "|" + NOW.plusSeconds(60).getEpochSecond() + "|";
+
+    @BeforeEach
+    void enableSigningWithASyncedRevocationFilter() {
+        properties.getSigning().setEnabled(true);
+        properties.getSigning().setKeys(Map.of("k1", SECRET));
+        properties.getRevocation().getFilter().setEnabled(true);
+        revokedKeys.replaceFilter(emptyFilter(NOW));
+    }
+
+    @Test
+    void acceptsValidSignatureWithClaims() {
+        String key = sign("k1", SECRET, userId + "|" + NOW.plusSeconds(60).getEpochSecond() + "|ADMIN,USER|ab");
+
+        ApiKeyValidationCache.CacheEntry entry = verifier.verify(key).orElseThrow();
+
+        assertThat(entry.isValid()).isTrue();
+        assertThat(entry.getUserId()).isEqualTo(userId);
+        assertThat(entry.getRoles()).containsExactly("ADMIN", "USER");
+        assertThat(entry.getExpiresAt()).isEqualTo(NOW.plusSeconds(60));
+    }
+
+    @Test
+    void defersKeysWithoutExpiryToAuthServer() {
+        assertThat(verifier.verify(sign("k1", SECRET, userId + "||USER|ab"))).isEmpty();
+    }
+
+    @Test
+    void rejectsTamperedClaimsAndForeignSecrets() {
+        String key = sign("k1", SECRET, userId + expiring + "USER|ab");
+        String[] parts = key.split("\\.");
+        String elevated = parts[0] + "." + parts[1] + "."
+            + encode(userId + expiring + "ADMIN|ab") + "." + parts[3];
+
+        assertThat(verifier.verify(elevated)).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+        assertThat(verifier.verify(sign("k1", "another-secret-another-secret-xx", userId + expiring + "USER|ab")))
+            .hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+    }
+
+    @Test
+    void rejectsExpiredAndRevokedKeys() {
+        String expired = sign("k1", SECRET, userId + "|" + NOW.minusSeconds(1).getEpochSecond() + "|USER|ab");
+        String revoked = sign("k1", SECRET, userId + expiring + "USER|cd");
+        revokedKeys.add(ApiKeyValidationCache.hash(revoked));
+
+        assertThat(verifier.verify(expired)).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+        assertThat(verifier.verify(revoked)).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+    }
+
+    @Test
+    void rejectsMalformedSignedKeys() {
+        assertThat(verifier.verify("leaky_v1.k1.only-two")).hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+        assertThat(verifier.verify(sign("k1", SECRET, "not-a-uuid" + expiring + "USER|ab")))
+            .hasValueSatisfying(entry -> assertThat(entry.isValid()).isFalse());
+    }
+
+    @Test
+    void leavesOtherKeysToAuthServer() {
+        String unknownKeyId = sign("k2", SECRET, userId + expiring + "USER|ab");
+
+        assertThat(verifier.verify("leaky_" + userId + "_abcdef")).isEmpty();
+        assertThat(verifier.verify(unknownKeyId)).isEmpty();
+
+        properties.getSigning().setEnabled(false);
+        assertThat(verifier.verify(sign("k1", SECRET, userId + expiring + "USER|ab"))).isEmpty();
+    }
+
+    @Test
+    void defersToAuthServerUntilTheRevocationFilterIsSynced() {
+        RevokedApiKeys unsynced = new RevokedApiKeys(properties, clock);
+        String key = sign("k1", SECRET, userId + expiring + "USER|ab");
+
+        assertThat(new SignedApiKeyVerifier(properties, unsynced, clock).verify(key)).isEmpty();
+    }
+
+    @Test
+    void defersEverySignedKeyWhileTheRevocationFilterIsOff() {
+        properties.getRevocation().getFilter().setEnabled(false);
+        String key = sign("k1", SECRET, userId + expiring + "USER|ab");
+
+        assertThat(verifier.verify(key)).isEmpty();
+    }
+
+    @Test
+    void acceptsEveryConfiguredKeyIdDuringRotation() {
+        properties.getSigning().setKeys(Map.of("k1", SECRET, "k2", "fedcba9876543210fedcba9876543210"));
+
+        assertThat(verifier.verify(sign("k1", SECRET, userId + expiring + "USER|ab")))
+            .hasValueSatisfying(entry -> assertThat(entry.isValid()).isTrue());
+        assertThat(verifier.verify(sign("k2", "fedcba9876543210fedcba9876543210", userId + expiring + "USER|ab")))
+            .hasValueSatisfying(entry -> assertThat(entry.isValid()).isTrue());
+    }
+
+    static String sign(String keyId, String secret, String claims) {
+        try {
+            String unsigned = SignedApiKeyVerifier.PREFIX + keyId + "." + encode(claims);
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] signature = mac.doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+            return unsigned + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static RevocationBloomFilter emptyFilter(Instant createdAt) {
+        return new RevocationBloomFilter(1024, 7, new byte[128], createdAt.toEpochMilli());
+    }
+
+    private static String encode(String claims) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+    }
+}
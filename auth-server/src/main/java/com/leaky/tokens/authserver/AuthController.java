@@ -168,4 +168,24 @@ public class AuthController {
                 .body(new ErrorResponse(ex.getMessage(), Instant.now()));
         }
     }
+
+    // Outside /api/v1/auth so the gateway never routes it; gateways call auth-server directly.
+    @GetMapping("/internal/api-keys/revocations/filter")
+    @Operation(
+        summary = "Bloom filter of revoked API key hashes (gateway use)",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Filter built from the current blacklist"),
+            @ApiResponse(responseCode = "401", description = "Missing or wrong service token", content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+        }
+    )
+    public ResponseEntity<?> revocationFilter(
+        @Parameter(description = "Token shared by auth-server and the gateways")
+        @RequestHeader(value = "X-Service-Token", required = false) String serviceToken
+    ) {
+        if (!apiKeyService.isServiceToken(serviceToken)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(new ErrorResponse("invalid service token", Instant.now()));
+        }
+        return ResponseEntity.ok(apiKeyService.revocationFilter());
+    }
 }
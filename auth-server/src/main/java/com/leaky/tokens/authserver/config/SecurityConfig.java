@@ -25,6 +25,8 @@ public class SecurityConfig {
                 .requestMatchers("/api/v1/auth/register").permitAll()
                 .requestMatchers("/api/v1/auth/login").permitAll()
                 .requestMatchers("/api/v1/auth/api-keys/validate").permitAll()
+                // Guarded by the service token in AuthController.
+                .requestMatchers(HttpMethod.GET, "/internal/api-keys/revocations/filter").permitAll()
                 .requestMatchers("/oauth2/jwks").permitAll()
                 .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
                 .requestMatchers(HttpMethod.GET, "/actuator/**").permitAll()
@@ -0,0 +1,14 @@
+package com.leaky.tokens.authserver.dto;
+
+import java.time.Instant;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+public record ApiKeyRevocationFilterResponse(
+    @Schema(example = "9600") int bits,
+    @Schema(example = "7") int hashes,
+    @Schema(example = "1000") long count,
+    @Schema(example = "2026-01-01T00:00:00Z") Instant generatedAt,
+    @Schema(description = "Filter bits as big-endian 64-bit words, base64") String filter
+) {
+}
@@ -6,6 +6,8 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Instant;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
@@ -15,6 +17,7 @@ import com.leaky.tokens.authserver.domain.Role;
 import com.leaky.tokens.authserver.domain.UserAccount;
 import com.leaky.tokens.authserver.dto.ApiKeyCreateRequest;
 import com.leaky.tokens.authserver.dto.ApiKeyResponse;
+import com.leaky.tokens.authserver.dto.ApiKeyRevocationFilterResponse;
 import com.leaky.tokens.authserver.dto.ApiKeySummary;
 import com.leaky.tokens.authserver.dto.ApiKeyValidationResponse;
 import com.leaky.tokens.authserver.metrics.AuthMetrics;
@@ -23,35 +26,59 @@ import com.leaky.tokens.authserver.repo.UserAccountRepository;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import tools.jackson.core.JacksonException;
 import tools.jackson.databind.ObjectMapper;
 
 @Service
 public class ApiKeyService {
+    private static final String BLACKLIST_PREFIX = "auth:api-key:blacklist:";
+    // Bumped on every revocation, so each auth-server instance can tell its cached filter is stale.
+    private static final String REVOCATION_GENERATION_KEY = "auth:api-key:revocation-generation";
+
     private final ApiKeyRepository apiKeyRepository;
     private final UserAccountRepository userAccountRepository;
     private final AuthMetrics metrics;
     private final ObjectMapper objectMapper;
     private final StringRedisTemplate redisTemplate;
+    private final ApiKeySigner signer;
     private final long cacheTtlSeconds;
     private final long blacklistTtlSeconds;
+    private final String revocationChannel;
+    private final double revocationFilterFpp;
+    private final long revocationFilterRefreshMillis;
+    private final byte[] serviceToken;
     private final SecureRandom secureRandom = new SecureRandom();
+    private final Object revocationFilterLock = new Object();
+    private volatile CachedRevocationFilter revocationFilter;
 
     public ApiKeyService(ApiKeyRepository apiKeyRepository,
                          UserAccountRepository userAccountRepository,
                          AuthMetrics metrics,
                          ObjectMapper objectMapper,
                          ObjectProvider<StringRedisTemplate> redisProvider,
+                         ApiKeySigner signer,
                          @Value("${auth.api-key.cache-ttl-seconds:300}") long cacheTtlSeconds,
-                         @Value("${auth.api-key.blacklist-ttl-seconds:3600}") long blacklistTtlSeconds) {
+                         @Value("${auth.api-key.blacklist-ttl-seconds:3600}") long blacklistTtlSeconds,
+                         @Value("${auth.api-key.revocation-channel:auth:api-key:revocations}") String revocationChannel,
+                         @Value("${auth.api-key.revocation-filter-fpp:0.01}") double revocationFilterFpp,
+                         @Value("${auth.api-key.revocation-filter-refresh-seconds:30}") long revocationFilterRefreshSeconds,
+                         @Value("${auth.api-key.service-token:}") String serviceToken) {
         this.apiKeyRepository = apiKeyRepository;
         this.userAccountRepository = userAccountRepository;
         this.metrics = metrics;
         this.objectMapper = objectMapper;
         this.redisTemplate = redisProvider.getIfAvailable();
+        this.signer = signer;
         this.cacheTtlSeconds = cacheTtlSeconds;
         this.blacklistTtlSeconds = blacklistTtlSeconds;
+        this.revocationChannel = revocationChannel;
+        this.revocationFilterFpp = revocationFilterFpp;
+        this.revocationFilterRefreshMillis = Duration.ofSeconds(revocationFilterRefreshSeconds).toMillis();
+        this.serviceToken = serviceToken == null ? new byte[0] : serviceToken.getBytes(StandardCharsets.UTF_8);
     }
 
     public ApiKeyResponse create(ApiKeyCreateRequest request) {
@@ -61,14 +88,15 @@ public class ApiKeyService {
                 .orElseThrow(() -> new IllegalArgumentException("user not found"));
 
             String name = request.getName() == null ? null : request.getName().trim();
-            String rawKey = generateRawKey(user.getId());
+            List<String> roles = user.getRoles().stream().map(Role::getName).sorted().toList();
+            String rawKey = generateRawKey(user.getId(), roles, request.getExpiresAt());
             String hashed = hash(rawKey);
             Instant now = Instant.now();
 
             ApiKey apiKey = new ApiKey(UUID.randomUUID(), user.getId(), hashed, name, now, request.getExpiresAt());
             apiKeyRepository.save(apiKey);
 
-            cacheApiKey(apiKey, user.getRoles().stream().map(Role::getName).sorted().toList());
+            cacheApiKey(apiKey, roles);
             metrics.apiKeyCreateSuccess();
             return new ApiKeyResponse(apiKey.getId(), apiKey.getUserId(), apiKey.getName(),
                 apiKey.getCreatedAt(), apiKey.getExpiresAt(), rawKey);
@@ -114,6 +142,7 @@ public class ApiKeyService {
         if (apiKey.getExpiresAt() != null && apiKey.getExpiresAt().isBefore(Instant.now())) {
             metrics.apiKeyValidateFailure("expired");
             evictCache(hashed);
+            publishRevocation(hashed);
             throw new IllegalArgumentException("api key expired");
         }
         List<String> roles = userAccountRepository.findById(apiKey.getUserId())
@@ -126,6 +155,76 @@ public class ApiKeyService {
         return response;
     }
 
+    // Every gateway polls this, so the blacklist is scanned at most once per refresh interval, or on the
+    // next poll after a revocation on any instance; gateways get pushed deltas between polls either way.
+    public ApiKeyRevocationFilterResponse revocationFilter() {
+        // Read before the scan, so a revocation that lands during it marks the result stale.
+        long generation = revocationGeneration();
+        CachedRevocationFilter cached = revocationFilter;
+        if (isFresh(cached, generation)) {
+            return cached.response();
+        }
+        synchronized (revocationFilterLock) {
+            cached = revocationFilter;
+            if (isFresh(cached, generation)) {
+                return cached.response();
+            }
+            long builtAt = System.currentTimeMillis();
+            ApiKeyRevocationFilterResponse response = buildRevocationFilter();
+            revocationFilter = new CachedRevocationFilter(response, builtAt, generation);
+            return response;
+        }
+    }
+
+    // The filter is for gateways only; no token is accepted while none is configured.
+    public boolean isServiceToken(String token) {
+        if (serviceToken.length == 0 || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(serviceToken, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean isFresh(CachedRevocationFilter cached, long generation) {
+        return cached != null
+            && cached.generation() == generation
+            && System.currentTimeMillis() - cached.builtAtMillis() < revocationFilterRefreshMillis;
+    }
+
+    private long revocationGeneration() {
+        if (redisTemplate == null) {
+            return 0L;
+        }
+        String value = redisTemplate.opsForValue().get(REVOCATION_GENERATION_KEY);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    private ApiKeyRevocationFilterResponse buildRevocationFilter() {
+        List<String> revoked = new ArrayList<>();
+        if (redisTemplate != null) {
+            ScanOptions options = ScanOptions.scanOptions().match(BLACKLIST_PREFIX + "*").count(1000).build();
+            try (Cursor<String> cursor = redisTemplate.scan(options)) {
+                while (cursor.hasNext()) {
+                    String hashedKey = cursor.next().substring(BLACKLIST_PREFIX.length());
+                    if (hashedKey.length() == 64) {
+                        revoked.add(hashedKey);
+                    }
+                }
+            }
+        }
+        RevokedKeyBloomFilter filter = RevokedKeyBloomFilter.forExpected(revoked.size(), revocationFilterFpp);
+        long count = 0;
+        for (String hashedKey : revoked) {
+            try {
+                filter.add(hashedKey);
+                count++;
+            } catch (IllegalArgumentException ex) {
+                // Not a key hash; nothing the gateway could look up either.
+            }
+        }
+        return new ApiKeyRevocationFilterResponse(filter.bits(), filter.hashes(), count, Instant.now(),
+            Base64.getEncoder().encodeToString(filter.toByteArray()));
+    }
+
     private UUID parseUserId(String raw) {
         if (raw == null || raw.isBlank()) {
             throw new IllegalArgumentException("userId is required");
@@ -137,9 +236,13 @@ public class ApiKeyService {
         }
     }
 
-    private String generateRawKey(UUID userId) {
+    private String generateRawKey(UUID userId, List<String> roles, Instant expiresAt) {
         byte[] random = new byte[24];
         secureRandom.nextBytes(random);
+        // Keys that never expire stay opaque, so the gateway always checks them with us.
+        if (signer.isEnabled() && expiresAt != null) {
+            return signer.sign(userId, roles, expiresAt, random);
+        }
         return "leaky_" + userId + "_" + HexFormat.of().formatHex(random);
     }
 
@@ -212,9 +315,39 @@ public class ApiKeyService {
         }
         String hashed = apiKey.getKeyValue();
         redisTemplate.delete(cacheKey(hashed));
-        Duration ttl = blacklistTtl(apiKey.getExpiresAt());
-        if (ttl != null) {
-            redisTemplate.opsForValue().set(blacklistKey(hashed), "1", ttl);
+        if (signer.isEnabled()) {
+            // Gateways verify signed keys without asking us, so the entry has to outlive the key.
+            blacklistUntilExpiry(hashed, apiKey.getExpiresAt());
+        } else {
+            Duration ttl = blacklistTtl(apiKey.getExpiresAt());
+            if (ttl != null) {
+                redisTemplate.opsForValue().set(blacklistKey(hashed), "1", ttl);
+            }
+        }
+        redisTemplate.opsForValue().increment(REVOCATION_GENERATION_KEY);
+        publishRevocation(hashed);
+    }
+
+    // Lets gateways evict the key from their validation caches right away instead of at TTL expiry.
+    private void publishRevocation(String hashedKey) {
+        if (redisTemplate == null || revocationChannel == null || revocationChannel.isBlank()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(revocationChannel, hashedKey);
+        } catch (DataAccessException ex) {
+            // Best-effort; gateway caches still expire the key within their TTL.
+        }
+    }
+
+    private void blacklistUntilExpiry(String hashedKey, Instant expiresAt) {
+        if (expiresAt == null) {
+            redisTemplate.opsForValue().set(blacklistKey(hashedKey), "1");
+            return;
+        }
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        if (!remaining.isNegative() && !remaining.isZero()) {
+            redisTemplate.opsForValue().set(blacklistKey(hashedKey), "1", remaining);
         }
     }
 
@@ -261,6 +394,10 @@ public class ApiKeyService {
     }
 
     private String blacklistKey(String hashedKey) {
-        return "auth:api-key:blacklist:" + hashedKey;
+        return BLACKLIST_PREFIX + hashedKey;
+    }
+
+    private record CachedRevocationFilter(ApiKeyRevocationFilterResponse response, long builtAtMillis,
+                                          long generation) {
     }
 }
@@ -0,0 +1,79 @@
+package com.leaky.tokens.authserver.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Issues keys the gateway can verify without calling back:
+// leaky_v1.<keyId>.<base64url claims>.<base64url HMAC-SHA256 of everything before it>, where the
+// claims are "userId|expiresAtEpochSeconds|ROLE,ROLE|nonce". The key id selects the secret, so the
+// gateway can accept an old and a new secret side by side while the signing secret is rotated.
+// Signed keys are still stored hashed, so validation by auth-server and revocation work as before.
+// Every signed key carries an expiry, so a revocation the gateway misses cannot outlive it forever.
+@Component
+public class ApiKeySigner {
+    public static final String PREFIX = "leaky_v1.";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_BYTES = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final String keyId;
+    private final SecretKeySpec secret;
+
+    public ApiKeySigner(@Value("${auth.api-key.signing.key-id:}") String keyId,
+                        @Value("${auth.api-key.signing.secret:}") String secret) {
+        if (keyId == null || keyId.isBlank() || secret == null || secret.isBlank()) {
+            this.keyId = null;
+            this.secret = null;
+            return;
+        }
+        if (keyId.contains(".")) {
+            throw new IllegalStateException("auth.api-key.signing.key-id must not contain '.'");
+        }
+        byte[] secretBytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (secretBytes.length < MIN_SECRET_BYTES) {
+            throw new IllegalStateException("auth.api-key.signing.secret must be at least " + MIN_SECRET_BYTES + " bytes");
+        }
+        this.keyId = keyId;
+        this.secret = new SecretKeySpec(secretBytes, ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return secret != null;
+    }
+
+    public String sign(UUID userId, List<String> roles, Instant expiresAt, byte[] nonce) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("api key signing is not configured");
+        }
+        if (expiresAt == null) {
+            throw new IllegalArgumentException("signed api keys must expire");
+        }
+        String claims = userId
+            + "|" + expiresAt.getEpochSecond()
+            + "|" + String.join(",", roles)
+            + "|" + HexFormat.of().formatHex(nonce);
+        String unsigned = PREFIX + keyId + "." + ENCODER.encodeToString(claims.getBytes(StandardCharsets.UTF_8));
+        return unsigned + "." + ENCODER.encodeToString(mac(unsigned));
+    }
+
+    private byte[] mac(String unsigned) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac.doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("signing algorithm missing", ex);
+        }
+    }
+}
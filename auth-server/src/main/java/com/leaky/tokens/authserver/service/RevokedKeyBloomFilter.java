@@ -0,0 +1,53 @@
+package com.leaky.tokens.authserver.service;
+
+import java.nio.ByteBuffer;
+import java.util.HexFormat;
+
+// Bloom filter over the hex SHA-256 hashes of revoked keys. The hashes are already uniform, so the
+// probe positions come straight from their first 128 bits (double hashing) and the gateway only has
+// to repeat this arithmetic, not share a hash function implementation.
+public final class RevokedKeyBloomFilter {
+    private static final int MIN_BITS = 1024;
+    private static final int MAX_HASHES = 16;
+
+    private final long[] words;
+    private final int bits;
+    private final int hashes;
+
+    private RevokedKeyBloomFilter(int bits, int hashes) {
+        this.words = new long[bits / Long.SIZE];
+        this.bits = bits;
+        this.hashes = hashes;
+    }
+
+    public static RevokedKeyBloomFilter forExpected(long expectedKeys, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        double optimalBits = -Math.max(1L, expectedKeys) * Math.log(falsePositiveRate) / (ln2 * ln2);
+        long bits = Math.max(MIN_BITS, (long) Math.ceil(optimalBits / Long.SIZE) * Long.SIZE);
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(-Math.log(falsePositiveRate) / ln2)));
+        return new RevokedKeyBloomFilter(Math.toIntExact(bits), hashes);
+    }
+
+    public void add(String hashedKey) {
+        long h1 = HexFormat.fromHexDigitsToLong(hashedKey, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(hashedKey, 16, 32) | 1L;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+            words[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length * Long.BYTES);
+        buffer.asLongBuffer().put(words);
+        return buffer.array();
+    }
+}
@@ -4,33 +4,43 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
 import java.util.HexFormat;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.leaky.tokens.authserver.domain.ApiKey;
 import com.leaky.tokens.authserver.domain.Role;
 import com.leaky.tokens.authserver.domain.UserAccount;
 import com.leaky.tokens.authserver.dto.ApiKeyCreateRequest;
+import com.leaky.tokens.authserver.dto.ApiKeyRevocationFilterResponse;
 import com.leaky.tokens.authserver.dto.ApiKeySummary;
 import com.leaky.tokens.authserver.dto.ApiKeyValidationResponse;
 import com.leaky.tokens.authserver.metrics.AuthMetrics;
 import com.leaky.tokens.authserver.repo.ApiKeyRepository;
 import com.leaky.tokens.authserver.repo.UserAccountRepository;
 import com.leaky.tokens.authserver.service.ApiKeyService;
+import com.leaky.tokens.authserver.service.ApiKeySigner;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
 import tools.jackson.databind.ObjectMapper;
 
 class ApiKeyServiceTest {
@@ -59,6 +69,51 @@ class ApiKeyServiceTest {
         assertThat(captor.getValue().getUserId()).isEqualTo(userId);
     }
 
+    @Test
+    void createIssuesSignedKeyWhenSigningIsConfigured() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        ApiKeySigner signer = new ApiKeySigner("k1", "0123456789abcdef0123456789abcdef");
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, null, signer);
+
+        UUID userId = UUID.randomUUID();
+        UserAccount user = new UserAccount(userId, "alice", "alice@example.com", "hashed");
+        user.addRole(new Role(UUID.randomUUID(), "USER", "Default user role"));
+        when(userAccountRepository.findById(eq(userId))).thenReturn(Optional.of(user));
+
+        ApiKeyCreateRequest request = new ApiKeyCreateRequest();
+        request.setUserId(userId.toString());
+        request.setExpiresAt(Instant.now().plus(Duration.ofDays(30)));
+
+        var response = service.create(request);
+
+        assertThat(response.apiKey()).startsWith(ApiKeySigner.PREFIX + "k1.");
+        ArgumentCaptor<ApiKey> captor = ArgumentCaptor.forClass(ApiKey.class);
+        verify(apiKeyRepository).save(captor.capture());
+        assertThat(captor.getValue().getKeyValue()).isNotEqualTo(response.apiKey()).hasSize(64);
+    }
+
+    @Test
+    void createKeepsKeysWithoutExpiryOpaqueWhenSigningIsConfigured() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        ApiKeySigner signer = new ApiKeySigner("k1", "0123456789abcdef0123456789abcdef");
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, null, signer);
+
+        UUID userId = UUID.randomUUID();
+        UserAccount user = new UserAccount(userId, "alice", "alice@example.com", "hashed");
+        when(userAccountRepository.findById(eq(userId))).thenReturn(Optional.of(user));
+
+        ApiKeyCreateRequest request = new ApiKeyCreateRequest();
+        request.setUserId(userId.toString());
+
+        var response = service.create(request);
+
+        assertThat(response.apiKey()).startsWith("leaky_" + userId + "_").doesNotStartWith(ApiKeySigner.PREFIX);
+    }
+
     @Test
     void createRejectsMissingUserId() {
         ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
@@ -245,6 +300,173 @@ class ApiKeyServiceTest {
         verify(apiKeyRepository).delete(eq(apiKey));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokeBlacklistsAndPublishesHashedKey() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate);
+
+        UUID userId = UUID.randomUUID();
+        UUID keyId = UUID.randomUUID();
+        ApiKey apiKey = new ApiKey(keyId, userId, "hashed", "cli", Instant.now(), null);
+        when(apiKeyRepository.findByIdAndUserId(eq(keyId), eq(userId))).thenReturn(Optional.of(apiKey));
+
+        service.revoke(userId, keyId);
+
+        verify(redisTemplate).delete("auth:api-key:cache:hashed");
+        verify(valueOperations).set(eq("auth:api-key:blacklist:hashed"), eq("1"), any(Duration.class));
+        verify(redisTemplate).convertAndSend("auth:api-key:revocations", "hashed");
+    }
+
+    @Test
+    void validatePublishesExpiredKey() throws Exception {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate);
+
+        UUID userId = UUID.randomUUID();
+        String rawKey = "leaky_" + userId + "_raw";
+        String hashed = hash(rawKey);
+        ApiKey apiKey = new ApiKey(
+                UUID.randomUUID(),
+                userId,
+                hashed,
+                "cli",
+                Instant.now().minusSeconds(10),
+                Instant.now().minusSeconds(5)
+        );
+        when(redisTemplate.opsForValue()).thenReturn(Mockito.mock(ValueOperations.class));
+        when(apiKeyRepository.findByKeyValue(eq(hashed))).thenReturn(Optional.of(apiKey));
+
+        assertThatThrownBy(() -> service.validate(rawKey))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("api key expired");
+
+        verify(redisTemplate).convertAndSend("auth:api-key:revocations", hashed);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokeKeepsSignedKeysBlacklistedUntilTheyExpire() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        ApiKeySigner signer = new ApiKeySigner("k1", "0123456789abcdef0123456789abcdef");
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate, signer);
+
+        UUID userId = UUID.randomUUID();
+        ApiKey expiring = new ApiKey(UUID.randomUUID(), userId, "expiring", "cli", Instant.now(),
+            Instant.now().plus(Duration.ofDays(30)));
+        ApiKey permanent = new ApiKey(UUID.randomUUID(), userId, "permanent", "cli", Instant.now(), null);
+        when(apiKeyRepository.findByIdAndUserId(eq(expiring.getId()), eq(userId))).thenReturn(Optional.of(expiring));
+        when(apiKeyRepository.findByIdAndUserId(eq(permanent.getId()), eq(userId))).thenReturn(Optional.of(permanent));
+
+        service.revoke(userId, expiring.getId());
+        service.revoke(userId, permanent.getId());
+
+        ArgumentCaptor<Duration> ttl = ArgumentCaptor.forClass(Duration.class);
+        verify(valueOperations).set(eq("auth:api-key:blacklist:expiring"), eq("1"), ttl.capture());
+        assertThat(ttl.getValue()).isGreaterThan(Duration.ofDays(29));
+        verify(valueOperations).set("auth:api-key:blacklist:permanent", "1");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revocationFilterCoversEveryBlacklistedHash() throws Exception {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        Cursor<String> cursor = Mockito.mock(Cursor.class);
+        String revoked = hash("revoked-key");
+        when(cursor.hasNext()).thenReturn(true, true, false);
+        when(cursor.next()).thenReturn("auth:api-key:blacklist:" + revoked, "auth:api-key:blacklist:not-a-hash");
+        when(redisTemplate.scan(any(ScanOptions.class))).thenReturn(cursor);
+        when(redisTemplate.opsForValue()).thenReturn(Mockito.mock(ValueOperations.class));
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate);
+
+        ApiKeyRevocationFilterResponse response = service.revocationFilter();
+
+        assertThat(response.count()).isEqualTo(1);
+        assertThat(response.bits()).isEqualTo(1024);
+        long[] words = new long[response.bits() / 64];
+        ByteBuffer.wrap(Base64.getDecoder().decode(response.filter())).asLongBuffer().get(words);
+        long h1 = HexFormat.fromHexDigitsToLong(revoked, 0, 16);
+        long h2 = HexFormat.fromHexDigitsToLong(revoked, 16, 32) | 1L;
+        for (int i = 0; i < response.hashes(); i++) {
+            int bit = (int) Math.floorMod(h1 + i * h2, (long) response.bits());
+            assertThat(words[bit >>> 6] & (1L << bit)).isNotZero();
+        }
+        verify(cursor).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revocationFilterIsServedFromCacheUntilARevocationOnAnyInstance() {
+        ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
+        UserAccountRepository userAccountRepository = Mockito.mock(UserAccountRepository.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+        StringRedisTemplate redisTemplate = Mockito.mock(StringRedisTemplate.class);
+        ValueOperations<String, String> valueOperations = Mockito.mock(ValueOperations.class);
+        AtomicLong generation = new AtomicLong();
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get("auth:api-key:revocation-generation")).thenAnswer(_ -> String.valueOf(generation.get()));
+        when(valueOperations.increment("auth:api-key:revocation-generation")).thenAnswer(_ -> generation.incrementAndGet());
+        when(redisTemplate.scan(any(ScanOptions.class))).thenAnswer(_ -> Mockito.mock(Cursor.class));
+        ApiKeyService service = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate);
+        ApiKeyService otherInstance = newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate);
+
+        ApiKeyRevocationFilterResponse first = service.revocationFilter();
+        assertThat(service.revocationFilter()).isSameAs(first);
+        verify(redisTemplate, times(1)).scan(any(ScanOptions.class));
+
+        UUID userId = UUID.randomUUID();
+        UUID keyId = UUID.randomUUID();
+        ApiKey apiKey = new ApiKey(keyId, userId, "hashed", "cli", Instant.now(), null);
+        when(apiKeyRepository.findByIdAndUserId(eq(keyId), eq(userId))).thenReturn(Optional.of(apiKey));
+        otherInstance.revoke(userId, keyId);
+
+        assertThat(service.revocationFilter()).isNotSameAs(first);
+        verify(redisTemplate, times(2)).scan(any(ScanOptions.class));
+    }
+
+    @Test
+    void serviceTokenMustMatchTheConfiguredOne() {
+        ApiKeyService service = newService(
+            Mockito.mock(ApiKeyRepository.class),
+            Mockito.mock(UserAccountRepository.class),
+            Mockito.mock(AuthMetrics.class)
+        );
+
+        assertThat(service.isServiceToken("service-secret")).isTrue();
+        assertThat(service.isServiceToken("other")).isFalse();
+        assertThat(service.isServiceToken(null)).isFalse();
+    }
+
+    @Test
+    void revocationFilterIsEmptyWithoutRedis() {
+        ApiKeyService service = newService(
+            Mockito.mock(ApiKeyRepository.class),
+            Mockito.mock(UserAccountRepository.class),
+            Mockito.mock(AuthMetrics.class)
+        );
+
+        ApiKeyRevocationFilterResponse response = service.revocationFilter();
+
+        assertThat(response.count()).isZero();
+        assertThat(Base64.getDecoder().decode(response.filter())).containsOnly(0);
+    }
+
     @Test
     void revokeRejectsMissingKey() {
         ApiKeyRepository apiKeyRepository = Mockito.mock(ApiKeyRepository.class);
@@ -270,8 +492,26 @@ class ApiKeyServiceTest {
     private ApiKeyService newService(ApiKeyRepository apiKeyRepository,
                                      UserAccountRepository userAccountRepository,
                                      AuthMetrics metrics) {
+        return newService(apiKeyRepository, userAccountRepository, metrics, null);
+    }
+
+    private ApiKeyService newService(ApiKeyRepository apiKeyRepository,
+                                     UserAccountRepository userAccountRepository,
+                                     AuthMetrics metrics,
+                                     StringRedisTemplate redisTemplate) {
+        return newService(apiKeyRepository, userAccountRepository, metrics, redisTemplate, new ApiKeySigner("", ""));
+    }
+
+    private ApiKeyService newService(ApiKeyRepository apiKeyRepository,
+                                     UserAccountRepository userAccountRepository,
+                                     AuthMetrics metrics,
+                                     StringRedisTemplate redisTemplate,
+                                     ApiKeySigner signer) {
         ObjectMapper objectMapper = new ObjectMapper();
         DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        if (redisTemplate != null) {
+            beanFactory.registerSingleton("redisTemplate", redisTemplate);
+        }
         ObjectProvider<StringRedisTemplate> redisProvider = beanFactory.getBeanProvider(StringRedisTemplate.class);
         return new ApiKeyService(
             apiKeyRepository,
@@ -279,8 +519,13 @@ class ApiKeyServiceTest {
             metrics,
             objectMapper,
             redisProvider,
+            signer,
             300,
-            3600
+            3600,
+            "auth:api-key:revocations",
+            0.01,
+            30,
+            "service-secret"
         );
     }
 }
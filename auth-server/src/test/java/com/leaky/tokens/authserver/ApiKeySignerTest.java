@@ -0,0 +1,63 @@
+package com.leaky.tokens.authserver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.leaky.tokens.authserver.service.ApiKeySigner;
+import org.junit.jupiter.api.Test;
+
+class ApiKeySignerTest {
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    @Test
+    void signsClaimsWithTheConfiguredKeyId() throws Exception {
+        ApiKeySigner signer = new ApiKeySigner("k1", SECRET);
+        UUID userId = UUID.randomUUID();
+
+        String key = signer.sign(userId, List.of("ADMIN", "USER"), Instant.ofEpochSecond(1_900_000_000L), new byte[] {1, 2});
+
+        String[] parts = key.substring(ApiKeySigner.PREFIX.length()).split("\\.");
+        assertThat(parts).hasSize(3);
+        assertThat(parts[0]).isEqualTo("k1");
+        assertThat(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8))
+            .isEqualTo(userId + "|1900000000|ADMIN,USER|0102");
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        byte[] expected = mac.doFinal(key.substring(0, key.lastIndexOf('.')).getBytes(StandardCharsets.US_ASCII));
+        assertThat(Base64.getUrlDecoder().decode(parts[2])).isEqualTo(expected);
+    }
+
+    @Test
+    void refusesKeysThatDoNotExpire() {
+        ApiKeySigner signer = new ApiKeySigner("k1", SECRET);
+
+        assertThatThrownBy(() -> signer.sign(UUID.randomUUID(), List.of(), null, new byte[] {1}))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void isDisabledWithoutKeyIdOrSecret() {
+        assertThat(new ApiKeySigner("", "").isEnabled()).isFalse();
+        assertThat(new ApiKeySigner("k1", "").isEnabled()).isFalse();
+        assertThatThrownBy(() -> new ApiKeySigner("", "").sign(UUID.randomUUID(), List.of(), Instant.now(), new byte[1]))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsShortSecretsAndDottedKeyIds() {
+        assertThatThrownBy(() -> new ApiKeySigner("k1", "too-short"))
+            .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new ApiKeySigner("k.1", SECRET))
+            .isInstanceOf(IllegalStateException.class);
+    }
+}
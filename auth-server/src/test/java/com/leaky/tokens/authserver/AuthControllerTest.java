@@ -3,6 +3,7 @@ package com.leaky.tokens.authserver;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
@@ -17,6 +18,7 @@ import java.util.UUID;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.leaky.tokens.authserver.dto.ApiKeyCreateRequest;
 import com.leaky.tokens.authserver.dto.ApiKeyResponse;
+import com.leaky.tokens.authserver.dto.ApiKeyRevocationFilterResponse;
 import com.leaky.tokens.authserver.dto.ApiKeySummary;
 import com.leaky.tokens.authserver.dto.ApiKeyValidationResponse;
 import com.leaky.tokens.authserver.dto.AuthResponse;
@@ -342,4 +344,42 @@ class AuthControllerTest {
             .andExpect(jsonPath("$.userId").value(userId.toString()))
             .andExpect(jsonPath("$.roles[0]").value("USER"));
     }
+
+    @Test
+    void revocationFilterReturnsPayload() throws Exception {
+        AuthService authService = Mockito.mock(AuthService.class);
+        ApiKeyService apiKeyService = Mockito.mock(ApiKeyService.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+
+        when(apiKeyService.isServiceToken("service-secret")).thenReturn(true);
+        when(apiKeyService.revocationFilter())
+            .thenReturn(new ApiKeyRevocationFilterResponse(1024, 7, 2, null, "AAAA"));
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthController(authService, apiKeyService, metrics)).build();
+
+        mockMvc.perform(get("/internal/api-keys/revocations/filter")
+                .header("X-Service-Token", "service-secret"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.bits").value(1024))
+            .andExpect(jsonPath("$.hashes").value(7))
+            .andExpect(jsonPath("$.count").value(2))
+            .andExpect(jsonPath("$.filter").value("AAAA"));
+    }
+
+    @Test
+    void revocationFilterRejectsCallersWithoutTheServiceToken() throws Exception {
+        AuthService authService = Mockito.mock(AuthService.class);
+        ApiKeyService apiKeyService = Mockito.mock(ApiKeyService.class);
+        AuthMetrics metrics = Mockito.mock(AuthMetrics.class);
+
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new AuthController(authService, apiKeyService, metrics)).build();
+
+        mockMvc.perform(get("/internal/api-keys/revocations/filter"))
+            .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/internal/api-keys/revocations/filter")
+                .header("X-Service-Token", "guess"))
+            .andExpect(status().isUnauthorized());
+
+        verify(apiKeyService, never()).revocationFilter();
+    }
 }
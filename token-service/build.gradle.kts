@@ -57,6 +57,7 @@ dependencies {
     testImplementation("org.springframework.security:spring-security-test")
     testImplementation("org.testcontainers:junit-jupiter:1.20.6")
     testImplementation("org.testcontainers:postgresql:1.20.6")
+    testImplementation("org.springframework.kafka:spring-kafka-test")
     
     // Eureka Discovery Client
     implementation("org.springframework.cloud:spring-cloud-starter-netflix-eureka-client")
@@ -0,0 +1,48 @@
+package com.leaky.tokens.tokenservice;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Setter
+@Getter
+@Validated
+@ConfigurationProperties(prefix = "token.kafka")
+public class TokenKafkaProperties {
+    @Valid
+    private Producer producer = new Producer();
+    @Valid
+    private Topic usageTopic = new Topic();
+
+    @Setter
+    @Getter
+    public static class Producer {
+        private boolean idempotence = true;
+        @NotBlank
+        private String acks = "all";
+        @Min(0)
+        private int lingerMs = 10;
+        @Min(1)
+        private int batchSize = 65536;
+        @Pattern(regexp = "none|gzip|snappy|lz4|zstd")
+        private String compressionType = "lz4";
+        @Min(1)
+        @Max(5)
+        private int maxInFlightRequestsPerConnection = 5;
+    }
+
+    @Setter
+    @Getter
+    public static class Topic {
+        @Min(1)
+        private int partitions = 6;
+        @Min(1)
+        private short replicationFactor = 1;
+    }
+}
@@ -12,7 +12,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableKafka
 @EnableScheduling
-@EnableConfigurationProperties({TokenBucketProperties.class, TokenQuotaProperties.class, TokenTierProperties.class, TokenServiceFeatureFlags.class})
+@EnableConfigurationProperties({TokenBucketProperties.class, TokenQuotaProperties.class, TokenTierProperties.class, TokenServiceFeatureFlags.class, TokenKafkaProperties.class})
 @SpringBootApplication
 public class TokenServiceApplication {
     static void main(String[] args) {
@@ -5,34 +5,62 @@ import java.util.UUID;
 
 import com.leaky.tokens.tokenservice.outbox.TokenOutboxEntry;
 import com.leaky.tokens.tokenservice.outbox.TokenOutboxRepository;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Component;
 import tools.jackson.core.JacksonException;
 import tools.jackson.databind.ObjectMapper;
 
 @Component
-@RequiredArgsConstructor
 @ConditionalOnBean(TokenOutboxRepository.class)
 public class OutboxTokenUsagePublisher implements TokenUsagePublisher {
     private final TokenOutboxRepository repository;
     private final ObjectMapper objectMapper;
+    private final TokenUsageWireFormat wireFormat;
+    private final TokenUsageKeyStrategy keyStrategy;
+
+    public OutboxTokenUsagePublisher(TokenOutboxRepository repository,
+                                     ObjectMapper objectMapper,
+                                     @Value("${token.usage.wire-format:JSON}") TokenUsageWireFormat wireFormat,
+                                     @Value("${token.usage.key-strategy:USER_PROVIDER}") TokenUsageKeyStrategy keyStrategy) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.wireFormat = wireFormat;
+        this.keyStrategy = keyStrategy;
+    }
 
     @Override
     public void publish(TokenUsageEvent event) {
-        String payload = toJson(event);
         TokenOutboxEntry entry = new TokenOutboxEntry(
             UUID.randomUUID(),
             "TokenUsage",
             null,
             "TOKEN_USAGE",
-            payload,
+            null,
             Instant.now(),
             null
         );
+        entry.setMessageKey(messageKey(event));
+        if (wireFormat == TokenUsageWireFormat.BINARY) {
+            entry.setContentType(TokenUsageEventCodec.CONTENT_TYPE_BINARY);
+            entry.setPayloadBytes(TokenUsageEventCodec.encode(event));
+        } else {
+            entry.setPayload(toJson(event));
+        }
         repository.save(entry);
     }
 
+    private String messageKey(TokenUsageEvent event) {
+        return switch (keyStrategy) {
+            case USER_PROVIDER -> event.userId() == null || event.provider() == null
+                ? event.userId()
+                : event.userId() + ":" + event.provider();
+            case USER -> event.userId();
+            case PROVIDER -> event.provider();
+            case NONE -> null;
+        };
+    }
+
     private String toJson(TokenUsageEvent event) {
         try {
             return objectMapper.writeValueAsString(event);
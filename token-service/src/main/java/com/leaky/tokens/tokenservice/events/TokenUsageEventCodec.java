@@ -0,0 +1,99 @@
+package com.leaky.tokens.tokenservice.events;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Layout: version, flags (allowed, has-timestamp), tokens, epoch seconds, nanos,
+// then userId and provider as short-length-prefixed UTF-8 (-1 marks null).
+public final class TokenUsageEventCodec {
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+    public static final String CONTENT_TYPE_JSON = "application/json";
+    public static final String CONTENT_TYPE_BINARY = "application/vnd.leaky.token-usage.v1+binary";
+
+    static final byte VERSION = 1;
+    private static final int FLAG_ALLOWED = 1;
+    private static final int FLAG_TIMESTAMP = 1 << 1;
+    private static final int FIXED_SIZE = 1 + 1 + Long.BYTES + Long.BYTES + Integer.BYTES;
+
+    private TokenUsageEventCodec() {
+    }
+
+    public static byte[] encode(TokenUsageEvent event) {
+        byte[] userId = utf8(event.userId());
+        byte[] provider = utf8(event.provider());
+        int size = FIXED_SIZE + stringSize(userId) + stringSize(provider);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        int flags = 0;
+        if (event.allowed()) {
+            flags |= FLAG_ALLOWED;
+        }
+        Instant timestamp = event.timestamp();
+        if (timestamp != null) {
+            flags |= FLAG_TIMESTAMP;
+        }
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        buffer.putLong(event.tokens());
+        buffer.putLong(timestamp == null ? 0L : timestamp.getEpochSecond());
+        buffer.putInt(timestamp == null ? 0 : timestamp.getNano());
+        putString(buffer, userId);
+        putString(buffer, provider);
+        return buffer.array();
+    }
+
+    public static TokenUsageEvent decode(byte[] payload) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(payload);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported token usage encoding version: " + version);
+            }
+            int flags = buffer.get();
+            long tokens = buffer.getLong();
+            long seconds = buffer.getLong();
+            int nanos = buffer.getInt();
+            String userId = getString(buffer);
+            String provider = getString(buffer);
+            Instant timestamp = (flags & FLAG_TIMESTAMP) != 0 ? Instant.ofEpochSecond(seconds, nanos) : null;
+            return new TokenUsageEvent(userId, provider, tokens, (flags & FLAG_ALLOWED) != 0, timestamp);
+        } catch (BufferUnderflowException ex) {
+            throw new IllegalArgumentException("Truncated token usage payload", ex);
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int stringSize(byte[] value) {
+        return Short.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        if (value.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Token usage field exceeds " + Short.MAX_VALUE + " bytes");
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
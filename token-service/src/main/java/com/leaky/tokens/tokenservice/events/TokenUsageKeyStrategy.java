@@ -0,0 +1,8 @@
+package com.leaky.tokens.tokenservice.events;
+
+public enum TokenUsageKeyStrategy {
+    USER_PROVIDER,
+    USER,
+    PROVIDER,
+    NONE
+}
@@ -0,0 +1,6 @@
+package com.leaky.tokens.tokenservice.events;
+
+public enum TokenUsageWireFormat {
+    JSON,
+    BINARY
+}
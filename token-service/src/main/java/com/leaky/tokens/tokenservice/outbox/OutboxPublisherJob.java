@@ -1,28 +1,34 @@
 package com.leaky.tokens.tokenservice.outbox;
 
+import com.leaky.tokens.tokenservice.events.TokenUsageEventCodec;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component
 public class OutboxPublisherJob {
     private static final Logger logger = LoggerFactory.getLogger(OutboxPublisherJob.class);
 
     private final TokenOutboxRepository repository;
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
     private final String topic;
     private final int batchSize;
 
     public OutboxPublisherJob(TokenOutboxRepository repository,
-                              KafkaTemplate<String, String> kafkaTemplate,
+                              KafkaTemplate<String, byte[]> kafkaTemplate,
                               @Value("${token.usage.topic:token-usage}") String topic,
                               @Value("${token.outbox.batch-size:50}") int batchSize) {
         this.repository = repository;
@@ -41,15 +47,41 @@ public class OutboxPublisherJob {
 
         logger.info("Publishing batch of {} outbox entries", entries.size());
 
-        for (TokenOutboxEntry entry : entries) {
+        // Hand the whole batch to the producer before waiting so records share linger/batch slots,
+        // then mark every entry whose own send was acknowledged. Only the failed ones are retried next
+        // poll; re-sending an acknowledged entry would be counted twice downstream.
+        List<CompletableFuture<SendResult<String, byte[]>>> sends = new ArrayList<>(entries.size());
+        try {
+            for (TokenOutboxEntry entry : entries) {
+                sends.add(kafkaTemplate.send(toRecord(entry)));
+            }
+        } catch (Exception ex) {
+            logger.warn("Failed to hand outbox entry {} to the producer", entries.get(sends.size()).getId(), ex);
+        }
+        if (!sends.isEmpty()) {
+            kafkaTemplate.flush();
+        }
+
+        for (int i = 0; i < sends.size(); i++) {
+            TokenOutboxEntry entry = entries.get(i);
             try {
-                kafkaTemplate.send(topic, entry.getId().toString(), entry.getPayload()).get();
+                sends.get(i).get();
                 entry.setPublishedAt(Instant.now());
                 repository.save(entry);
             } catch (Exception ex) {
                 logger.warn("Failed to publish outbox entry {}", entry.getId(), ex);
-                break;
             }
         }
     }
+
+    private ProducerRecord<String, byte[]> toRecord(TokenOutboxEntry entry) {
+        byte[] value = entry.getPayloadBytes() != null
+            ? entry.getPayloadBytes()
+            : entry.getPayload().getBytes(StandardCharsets.UTF_8);
+        String contentType = entry.getContentType() == null ? TokenUsageEventCodec.CONTENT_TYPE_JSON : entry.getContentType();
+        String key = entry.getMessageKey() != null ? entry.getMessageKey() : entry.getId().toString();
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
+        record.headers().add(TokenUsageEventCodec.CONTENT_TYPE_HEADER, contentType.getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
 }
@@ -7,7 +7,6 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -18,7 +17,6 @@ import org.hibernate.type.SqlTypes;
 @Getter
 @Entity
 @NoArgsConstructor
-@AllArgsConstructor
 @Table(name = "token_outbox")
 public class TokenOutboxEntry {
     @Id
@@ -35,12 +33,37 @@ public class TokenOutboxEntry {
     private String eventType;
 
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "payload", nullable = false, columnDefinition = "jsonb")
+    @Column(name = "payload", columnDefinition = "jsonb")
     private String payload;
 
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType = "application/json";
+
+    @Column(name = "payload_bytes")
+    private byte[] payloadBytes;
+
+    @Column(name = "message_key")
+    private String messageKey;
+
     @Column(name = "created_at", nullable = false)
     private Instant createdAt;
 
     @Column(name = "published_at")
     private Instant publishedAt;
+
+    public TokenOutboxEntry(UUID id,
+                            String aggregateType,
+                            UUID aggregateId,
+                            String eventType,
+                            String payload,
+                            Instant createdAt,
+                            Instant publishedAt) {
+        this.id = id;
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.publishedAt = publishedAt;
+    }
 }
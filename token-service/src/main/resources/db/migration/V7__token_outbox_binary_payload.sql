@@ -0,0 +1,6 @@
+ALTER TABLE token_outbox ADD COLUMN IF NOT EXISTS content_type VARCHAR(100) NOT NULL DEFAULT 'application/json';
+ALTER TABLE token_outbox ADD COLUMN IF NOT EXISTS payload_bytes BYTEA;
+ALTER TABLE token_outbox ALTER COLUMN payload DROP NOT NULL;
+
+ALTER TABLE token_outbox ADD CONSTRAINT chk_token_outbox_payload
+    CHECK (payload IS NOT NULL OR payload_bytes IS NOT NULL);
@@ -0,0 +1 @@
+ALTER TABLE token_outbox ADD COLUMN IF NOT EXISTS message_key VARCHAR(255);
@@ -0,0 +1,29 @@
+package com.leaky.tokens.tokenservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+
+class KafkaConfigTest {
+    @Test
+    void producerConfigsApplyThroughputProfile() {
+        TokenKafkaProperties.Producer producer = new TokenKafkaProperties.Producer();
+        producer.setLingerMs(20);
+        producer.setBatchSize(131072);
+        producer.setCompressionType("zstd");
+
+        Map<String, Object> configs = KafkaConfig.producerConfigs("localhost:9092", producer);
+
+        assertThat(configs)
+            .containsEntry(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092")
+            .containsEntry(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true)
+            .containsEntry(ProducerConfig.ACKS_CONFIG, "all")
+            .containsEntry(ProducerConfig.LINGER_MS_CONFIG, 20)
+            .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 131072)
+            .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd")
+            .containsEntry(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+    }
+}
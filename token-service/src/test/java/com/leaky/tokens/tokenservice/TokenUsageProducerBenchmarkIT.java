@@ -0,0 +1,97 @@
+package com.leaky.tokens.tokenservice;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.leaky.tokens.tokenservice.events.TokenUsageEvent;
+import com.leaky.tokens.tokenservice.events.TokenUsageEventCodec;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+@EmbeddedKafka(partitions = 6, topics = TokenUsageProducerBenchmarkIT.TOPIC)
+class TokenUsageProducerBenchmarkIT {
+    static final String TOPIC = "token-usage-bench";
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenUsageProducerBenchmarkIT.class);
+    private static final int EVENTS = Integer.getInteger("bench.events", 20_000);
+    private static final int USERS = 500;
+
+    @Test
+    void comparesDefaultAndTunedProducerProfiles(EmbeddedKafkaBroker broker) throws Exception {
+        String bootstrap = broker.getBrokersAsString();
+        Map<String, Object> defaults = new HashMap<>();
+        defaults.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrap);
+        defaults.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        defaults.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        Map<String, Object> tuned = KafkaConfig.producerConfigs(bootstrap, new TokenKafkaProperties.Producer());
+
+        run("warmup", defaults, EVENTS / 10);
+        BenchResult baseline = run("default", defaults, EVENTS);
+        BenchResult optimized = run("tuned", tuned, EVENTS);
+
+        logger.info("producer benchmark events={} default={} tuned={}", EVENTS, baseline, optimized);
+        assertThat(baseline.acked()).isEqualTo(EVENTS);
+        assertThat(optimized.acked()).isEqualTo(EVENTS);
+    }
+
+    private BenchResult run(String label, Map<String, Object> configs, int events) throws Exception {
+        Map<String, Object> props = new HashMap<>(configs);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "bench-" + label);
+        DefaultKafkaProducerFactory<String, byte[]> factory = new DefaultKafkaProducerFactory<>(props);
+        try {
+            KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(factory);
+            List<CompletableFuture<SendResult<String, byte[]>>> futures = new ArrayList<>(events);
+            Instant timestamp = Instant.now();
+            long started = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                String userId = "00000000-0000-0000-0000-" + String.format("%012d", i % USERS);
+                byte[] payload = TokenUsageEventCodec.encode(
+                    new TokenUsageEvent(userId, "openai", 10 + (i % 90), true, timestamp.plusMillis(i))
+                );
+                futures.add(template.send(TOPIC, userId, payload));
+            }
+            template.flush();
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+            long elapsedNanos = System.nanoTime() - started;
+            return new BenchResult(
+                futures.size(),
+                events * 1_000_000_000.0 / elapsedNanos,
+                metric(template.metrics(), "outgoing-byte-total")
+            );
+        } finally {
+            factory.destroy();
+        }
+    }
+
+    private static double metric(Map<MetricName, ? extends Metric> metrics, String name) {
+        return metrics.entrySet().stream()
+            .filter(entry -> entry.getKey().name().equals(name) && entry.getKey().group().equals("producer-metrics"))
+            .mapToDouble(entry -> ((Number) entry.getValue().metricValue()).doubleValue())
+            .sum();
+    }
+
+    private record BenchResult(int acked, double eventsPerSecond, double outgoingBytes) {
+        @Override
+        public String toString() {
+            return String.format("%.0f events/s, %.0f bytes sent", eventsPerSecond, outgoingBytes);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.leaky.tokens.tokenservice.events;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.Instant;
@@ -31,7 +32,7 @@ class OutboxTokenUsagePublisherTest {
 
     @Test
     void publishPersistsSerializedEvent() throws Exception {
-        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(repository, objectMapper);
+        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(repository, objectMapper, TokenUsageWireFormat.JSON, TokenUsageKeyStrategy.USER);
         TokenUsageEvent event = new TokenUsageEvent("user-1", "openai", 25, true, Instant.now());
         when(objectMapper.writeValueAsString(event)).thenReturn("{\"ok\":true}");
 
@@ -43,14 +44,55 @@ class OutboxTokenUsagePublisherTest {
         assertThat(entry.getAggregateId()).isNull();
         assertThat(entry.getEventType()).isEqualTo("TOKEN_USAGE");
         assertThat(entry.getPayload()).isEqualTo("{\"ok\":true}");
+        assertThat(entry.getContentType()).isEqualTo(TokenUsageEventCodec.CONTENT_TYPE_JSON);
+        assertThat(entry.getPayloadBytes()).isNull();
+        assertThat(entry.getMessageKey()).isEqualTo("user-1");
         assertThat(entry.getPublishedAt()).isNull();
         assertThat(entry.getId()).isNotNull();
         assertThat(entry.getCreatedAt()).isNotNull();
     }
 
+    @Test
+    void publishPersistsBinaryEncodedEventWhenConfigured() {
+        OutboxTokenUsagePublisher publisher =
+            new OutboxTokenUsagePublisher(repository, objectMapper, TokenUsageWireFormat.BINARY, TokenUsageKeyStrategy.USER);
+        TokenUsageEvent event = new TokenUsageEvent("user-1", "openai", 25, true, Instant.parse("2026-02-07T13:00:00Z"));
+
+        publisher.publish(event);
+
+        verify(repository).save(entryCaptor.capture());
+        TokenOutboxEntry entry = entryCaptor.getValue();
+        assertThat(entry.getPayload()).isNull();
+        assertThat(entry.getContentType()).isEqualTo(TokenUsageEventCodec.CONTENT_TYPE_BINARY);
+        assertThat(TokenUsageEventCodec.decode(entry.getPayloadBytes())).isEqualTo(event);
+        verifyNoInteractions(objectMapper);
+    }
+
+    @Test
+    void publishKeysByUserAndProviderByDefaultStrategy() {
+        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(
+            repository, objectMapper, TokenUsageWireFormat.BINARY, TokenUsageKeyStrategy.USER_PROVIDER);
+
+        publisher.publish(new TokenUsageEvent("user-1", "openai", 25, true, Instant.now()));
+
+        verify(repository).save(entryCaptor.capture());
+        assertThat(entryCaptor.getValue().getMessageKey()).isEqualTo("user-1:openai");
+    }
+
+    @Test
+    void publishLeavesKeyUnsetWhenStrategyIsNone() {
+        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(
+            repository, objectMapper, TokenUsageWireFormat.BINARY, TokenUsageKeyStrategy.NONE);
+
+        publisher.publish(new TokenUsageEvent("user-1", "openai", 25, true, Instant.now()));
+
+        verify(repository).save(entryCaptor.capture());
+        assertThat(entryCaptor.getValue().getMessageKey()).isNull();
+    }
+
     @Test
     void publishThrowsWhenSerializationFails() throws Exception {
-        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(repository, objectMapper);
+        OutboxTokenUsagePublisher publisher = new OutboxTokenUsagePublisher(repository, objectMapper, TokenUsageWireFormat.JSON, TokenUsageKeyStrategy.USER);
         TokenUsageEvent event = new TokenUsageEvent("user-1", "openai", 25, false, Instant.now());
         when(objectMapper.writeValueAsString(event))
             .thenThrow(new JacksonException("boom") { } );
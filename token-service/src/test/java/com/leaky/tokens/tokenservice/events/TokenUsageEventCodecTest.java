@@ -0,0 +1,72 @@
+package com.leaky.tokens.tokenservice.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class TokenUsageEventCodecTest {
+    @Test
+    void roundTripsEvent() {
+        TokenUsageEvent event = new TokenUsageEvent(
+            "00000000-0000-0000-0000-000000000001",
+            "openai",
+            42L,
+            true,
+            Instant.parse("2026-02-07T13:00:00.123456789Z")
+        );
+
+        TokenUsageEvent decoded = TokenUsageEventCodec.decode(TokenUsageEventCodec.encode(event));
+
+        assertThat(decoded).isEqualTo(event);
+    }
+
+    @Test
+    void roundTripsNullFields() {
+        TokenUsageEvent event = new TokenUsageEvent(null, null, 0L, false, null);
+
+        TokenUsageEvent decoded = TokenUsageEventCodec.decode(TokenUsageEventCodec.encode(event));
+
+        assertThat(decoded).isEqualTo(event);
+    }
+
+    @Test
+    void encodingIsSmallerThanJson() {
+        TokenUsageEvent event = new TokenUsageEvent(
+            "00000000-0000-0000-0000-000000000001",
+            "openai",
+            42L,
+            true,
+            Instant.parse("2026-02-07T13:00:00Z")
+        );
+        String json = "{\"userId\":\"00000000-0000-0000-0000-000000000001\",\"provider\":\"openai\","
+            + "\"tokens\":42,\"allowed\":true,\"timestamp\":\"2026-02-07T13:00:00Z\"}";
+
+        assertThat(TokenUsageEventCodec.encode(event).length)
+            .isLessThan(json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void rejectsUnknownVersion() {
+        byte[] encoded = TokenUsageEventCodec.encode(new TokenUsageEvent("u", "p", 1L, true, Instant.now()));
+        encoded[0] = 99;
+
+        assertThatThrownBy(() -> TokenUsageEventCodec.decode(encoded))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("version");
+    }
+
+    @Test
+    void rejectsTruncatedPayload() {
+        byte[] encoded = TokenUsageEventCodec.encode(new TokenUsageEvent("user", "openai", 1L, true, Instant.now()));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+
+        assertThatThrownBy(() -> TokenUsageEventCodec.decode(truncated))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("Truncated");
+    }
+}
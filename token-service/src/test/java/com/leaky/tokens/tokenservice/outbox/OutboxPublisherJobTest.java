@@ -2,23 +2,26 @@ package com.leaky.tokens.tokenservice.outbox;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
-import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
+import com.leaky.tokens.tokenservice.events.TokenUsageEventCodec;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Pageable;
@@ -33,7 +36,10 @@ class OutboxPublisherJobTest {
     private TokenOutboxRepository repository;
 
     @Mock
-    private KafkaTemplate<String, String> kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Captor
+    private ArgumentCaptor<ProducerRecord<String, byte[]>> recordCaptor;
 
     @Captor
     private ArgumentCaptor<Pageable> pageableCaptor;
@@ -57,9 +63,7 @@ class OutboxPublisherJobTest {
         TokenOutboxEntry first = entry("TOKEN_PURCHASE_COMPLETED");
         TokenOutboxEntry second = entry("TOKEN_ALLOCATED");
         when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(first, second));
-        when(kafkaTemplate.send(eq(TOPIC), eq(first.getId().toString()), eq(first.getPayload())))
-            .thenReturn(CompletableFuture.completedFuture(null));
-        when(kafkaTemplate.send(eq(TOPIC), eq(second.getId().toString()), eq(second.getPayload())))
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
             .thenReturn(CompletableFuture.completedFuture(null));
 
         job.publishBatch();
@@ -67,27 +71,110 @@ class OutboxPublisherJobTest {
         assertThat(first.getPublishedAt()).isNotNull();
         assertThat(second.getPublishedAt()).isNotNull();
         verify(repository, times(2)).save(any(TokenOutboxEntry.class));
-        verify(kafkaTemplate, times(2)).send(eq(TOPIC), any(String.class), any(String.class));
+        verify(kafkaTemplate, times(2)).send(recordCaptor.capture());
+        List<ProducerRecord<String, byte[]>> records = recordCaptor.getAllValues();
+        assertThat(records).extracting(ProducerRecord::topic).containsOnly(TOPIC);
+        assertThat(records.get(0).key()).isEqualTo(first.getId().toString());
+        assertThat(new String(records.get(0).value(), StandardCharsets.UTF_8)).isEqualTo(first.getPayload());
+        assertThat(records.get(1).key()).isEqualTo(second.getId().toString());
+        assertThat(contentType(records.get(0))).isEqualTo("application/json");
+    }
+
+    @Test
+    void publishBatchSendsBinaryPayloadWithContentType() {
+        OutboxPublisherJob job = new OutboxPublisherJob(repository, kafkaTemplate, TOPIC, 10);
+        TokenOutboxEntry entry = entry("TOKEN_USAGE");
+        byte[] bytes = new byte[] {1, 2, 3};
+        entry.setPayload(null);
+        entry.setPayloadBytes(bytes);
+        entry.setContentType("application/vnd.leaky.token-usage.v1+binary");
+        when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(entry));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        job.publishBatch();
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().value()).isEqualTo(bytes);
+        assertThat(contentType(recordCaptor.getValue())).isEqualTo("application/vnd.leaky.token-usage.v1+binary");
+        assertThat(entry.getPublishedAt()).isNotNull();
+    }
+
+    @Test
+    void publishBatchUsesMessageKeyWhenPresent() {
+        OutboxPublisherJob job = new OutboxPublisherJob(repository, kafkaTemplate, TOPIC, 10);
+        TokenOutboxEntry entry = entry("TOKEN_USAGE");
+        entry.setMessageKey("user-1");
+        when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(entry));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        job.publishBatch();
+
+        verify(kafkaTemplate).send(recordCaptor.capture());
+        assertThat(recordCaptor.getValue().key()).isEqualTo("user-1");
+    }
+
+    @Test
+    void publishBatchSendsEveryEntryBeforeWaitingOnAny() {
+        OutboxPublisherJob job = new OutboxPublisherJob(repository, kafkaTemplate, TOPIC, 10);
+        TokenOutboxEntry first = entry("TOKEN_PURCHASE_COMPLETED");
+        TokenOutboxEntry second = entry("TOKEN_ALLOCATED");
+        when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(first, second));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(null));
+
+        job.publishBatch();
+
+        InOrder order = inOrder(kafkaTemplate, repository);
+        order.verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+        order.verify(kafkaTemplate).flush();
+        order.verify(repository, times(2)).save(any(TokenOutboxEntry.class));
     }
 
     @Test
-    void publishBatchStopsOnFailure() {
+    void publishBatchLeavesFailedEntryUnpublished() {
         OutboxPublisherJob job = new OutboxPublisherJob(repository, kafkaTemplate, TOPIC, 10);
         TokenOutboxEntry first = entry("TOKEN_PURCHASE_COMPLETED");
         TokenOutboxEntry second = entry("TOKEN_ALLOCATED");
-        CompletableFuture<SendResult<String, String>> failed = new CompletableFuture<>();
+        CompletableFuture<SendResult<String, byte[]>> failed = new CompletableFuture<>();
         failed.completeExceptionally(new RuntimeException("kafka down"));
         when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(first, second));
-        when(kafkaTemplate.send(eq(TOPIC), eq(first.getId().toString()), eq(first.getPayload())))
-            .thenReturn(failed);
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(failed, CompletableFuture.completedFuture(null));
 
         job.publishBatch();
 
         assertThat(first.getPublishedAt()).isNull();
+        assertThat(second.getPublishedAt()).isNotNull();
+        verify(repository, never()).save(first);
+        verify(repository).save(second);
+    }
+
+    @Test
+    void publishBatchMarksEveryAcknowledgedEntryAroundAFailure() {
+        OutboxPublisherJob job = new OutboxPublisherJob(repository, kafkaTemplate, TOPIC, 10);
+        TokenOutboxEntry first = entry("TOKEN_PURCHASE_COMPLETED");
+        TokenOutboxEntry second = entry("TOKEN_ALLOCATED");
+        TokenOutboxEntry third = entry("TOKEN_USAGE");
+        CompletableFuture<SendResult<String, byte[]>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException("kafka down"));
+        when(repository.findUnpublished(any(Pageable.class))).thenReturn(List.of(first, second, third));
+        when(kafkaTemplate.send(any(ProducerRecord.class)))
+            .thenReturn(CompletableFuture.completedFuture(null), failed, CompletableFuture.completedFuture(null));
+
+        job.publishBatch();
+
+        assertThat(first.getPublishedAt()).isNotNull();
         assertThat(second.getPublishedAt()).isNull();
-        verify(repository, never()).save(any(TokenOutboxEntry.class));
-        verify(kafkaTemplate).send(eq(TOPIC), eq(first.getId().toString()), eq(first.getPayload()));
-        verifyNoMoreInteractions(kafkaTemplate);
+        assertThat(third.getPublishedAt()).isNotNull();
+        verify(repository).save(first);
+        verify(repository).save(third);
+        verify(repository, times(2)).save(any(TokenOutboxEntry.class));
+    }
+
+    private static String contentType(ProducerRecord<String, byte[]> record) {
+        return new String(record.headers().lastHeader(TokenUsageEventCodec.CONTENT_TYPE_HEADER).value(), StandardCharsets.UTF_8);
     }
 
     private static TokenOutboxEntry entry(String eventType) {